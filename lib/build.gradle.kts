@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("application")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.shooter3d"
@@ -30,6 +31,7 @@ dependencies {
     
     // Tests
     testImplementation("org.junit.jupiter:junit-jupiter:5.10.0")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 
     
 }
@@ -47,6 +49,18 @@ java {
 }
 
 
+// Benchmarks (src/jmh) : gradle jmh
+jmh {
+    // Allocation rate per operation next to the timings
+    profilers.add("gc")
+    // 1M object maps need a large heap
+    jvmArgs.add("-Xmx8g")
+    // Restrict with -PjmhIncludes=<regex>
+    if (project.hasProperty("jmhIncludes")) {
+        includes.add(project.property("jmhIncludes") as String)
+    }
+}
+
 tasks.named<Test>("test") {
     useJUnitPlatform()
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.mygame.benchmarks;
+
+import com.mygame.world.Map;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.system.JmeSystem;
+
+/*
+ * Application that is never started : it only provides the asset manager and
+ * the root node the map and the players need, without window nor render loop.
+ */
+public class BenchmarkApp extends SimpleApplication {
+
+	// Ground area per object of the hand made map (about 8.5 x 8.5 units)
+	private static final float AREA_PER_OBJECT = 72f;
+
+	public BenchmarkApp() {
+		assetManager = JmeSystem.newAssetManager(
+				BenchmarkApp.class.getClassLoader().getResource("com/jme3/asset/Desktop.cfg"));
+	}
+
+	@Override
+	public void simpleInitApp() {
+	}
+
+	/*
+	 * Ground size keeping the object density of the hand made map
+	 */
+	public static float mapSizeFor(int objectCount) {
+		return Math.max(60f, (float) Math.sqrt(objectCount * AREA_PER_OBJECT));
+	}
+
+	/*
+	 * Generated map of objectCount props, same seed = same map
+	 */
+	public Map createMap(int objectCount, long seed) {
+		Map map = new Map(this, mapSizeFor(objectCount));
+		map.loadGeneratedMap(objectCount, seed);
+		return map;
+	}
+}
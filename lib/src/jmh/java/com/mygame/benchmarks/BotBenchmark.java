@@ -0,0 +1,66 @@
+package com.mygame.benchmarks;
+
+import com.mygame.entities.BotSystem;
+import com.mygame.world.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One simulation tick of botCount bots on a generated map, run by a pool of
+ * parallelism threads : compare the rows of a bot count to see how the tick
+ * scales with the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotBenchmark {
+
+	private static final float STEP = 1f / 60f;
+	private static final int OBJECT_COUNT = 10000;
+
+	@Param({"1000", "10000"})
+	public int botCount;
+
+	@Param({"1", "2", "4", "8"})
+	public int parallelism;
+
+	private Map map;
+	private ForkJoinPool pool;
+	private BotSystem bots;
+
+	@Setup
+	public void setup() {
+		map = new BenchmarkApp().createMap(OBJECT_COUNT, 1L);
+		pool = new ForkJoinPool(parallelism);
+		bots = new BotSystem(map, botCount, pool);
+		bots.spawnRandom(botCount, 3L);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public long tick() {
+		bots.tick(STEP);
+		return bots.getTickCount();
+	}
+}
@@ -0,0 +1,122 @@
+package com.mygame.benchmarks;
+
+import com.mygame.interest.InterestManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Ticks per second of area of interest on a large map : every entity takes
+ * a step and 64 observers need the entities around them. The interest
+ * manager updates the sets when cells change, the brute force version tests
+ * every observer against every entity. The perception benchmark is a nearest
+ * entity lookup per entity, as bots looking for players.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterestBenchmark {
+
+	private static final float MAP_SIZE = 2000f;
+	private static final float CELL_SIZE = 16f;
+	private static final float VIEW_DISTANCE = 120f;
+	private static final float STEP = 10f / 60f; // running speed during a tick
+	private static final int OBSERVER_COUNT = 64;
+
+	@Param({"1000", "10000"})
+	public int entityCount;
+
+	private InterestManager interest;
+	private int[] handles;
+	private float[] x, z, headingX, headingZ;
+	private boolean[] visible; // brute force sets, observer major
+
+	@Setup
+	public void setup() {
+		Random random = new Random(11L);
+		interest = new InterestManager(-MAP_SIZE / 2, -MAP_SIZE / 2, MAP_SIZE, MAP_SIZE, CELL_SIZE,
+				VIEW_DISTANCE, entityCount);
+		handles = new int[entityCount];
+		x = new float[entityCount];
+		z = new float[entityCount];
+		headingX = new float[entityCount];
+		headingZ = new float[entityCount];
+		for (int i = 0; i < entityCount; i++) {
+			x[i] = (random.nextFloat() - 0.5f) * MAP_SIZE;
+			z[i] = (random.nextFloat() - 0.5f) * MAP_SIZE;
+			float angle = random.nextFloat() * 6.2831855f;
+			headingX[i] = (float) Math.cos(angle) * STEP;
+			headingZ[i] = (float) Math.sin(angle) * STEP;
+			handles[i] = interest.add(x[i], z[i]);
+		}
+		for (int i = 0; i < OBSERVER_COUNT; i++) {
+			interest.observe(handles[i]);
+		}
+		visible = new boolean[OBSERVER_COUNT * entityCount];
+	}
+
+	/*
+	 * Entities walk straight and bounce on the border of the map
+	 */
+	private void walk() {
+		float half = MAP_SIZE / 2;
+		for (int i = 0; i < entityCount; i++) {
+			x[i] += headingX[i];
+			z[i] += headingZ[i];
+			if (x[i] < -half || x[i] > half) headingX[i] = -headingX[i];
+			if (z[i] < -half || z[i] > half) headingZ[i] = -headingZ[i];
+		}
+	}
+
+	@Benchmark
+	public int incremental() {
+		walk();
+		for (int i = 0; i < entityCount; i++) {
+			interest.move(handles[i], x[i], z[i]);
+		}
+		return interest.getInterest(handles[0]).size();
+	}
+
+	@Benchmark
+	public int bruteForce() {
+		walk();
+		float range = VIEW_DISTANCE * VIEW_DISTANCE;
+		int relevant = 0;
+		for (int o = 0; o < OBSERVER_COUNT; o++) {
+			int row = o * entityCount;
+			for (int i = 0; i < entityCount; i++) {
+				float dx = x[i] - x[o], dz = z[i] - z[o];
+				boolean inside = dx * dx + dz * dz <= range;
+				visible[row + i] = inside;
+				relevant += inside ? 1 : 0;
+			}
+		}
+		return relevant;
+	}
+
+	@Benchmark
+	public int perception() {
+		int seen = 0;
+		for (int i = 0; i < entityCount; i++) {
+			if (interest.nearest(x[i], z[i], 20f, handles[i]) >= 0) {
+				seen++;
+			}
+		}
+		return seen;
+	}
+}
@@ -0,0 +1,61 @@
+package com.mygame.benchmarks;
+
+import com.mygame.world.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Map construction, one fresh application per load (cold scene graph).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadMapBenchmark {
+
+	private BenchmarkApp app;
+
+	/*
+	 * Only the generated map depends on the object count
+	 */
+	@State(Scope.Thread)
+	public static class Generated {
+		@Param({"100", "10000", "1000000"})
+		public int objectCount;
+	}
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		app = new BenchmarkApp();
+	}
+
+	/*
+	 * Hand made map of the game
+	 */
+	@Benchmark
+	public Map loadMap() {
+		Map map = new Map(app);
+		map.loadMap();
+		return map;
+	}
+
+	@Benchmark
+	public Map loadGeneratedMap(Generated generated) {
+		return app.createMap(generated.objectCount, 1L);
+	}
+}
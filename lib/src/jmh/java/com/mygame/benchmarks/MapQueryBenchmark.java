@@ -0,0 +1,87 @@
+package com.mygame.benchmarks;
+
+import com.mygame.world.Map;
+import com.mygame.world.MapObject;
+
+import com.jme3.math.Vector3f;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Collision and ground queries against generated maps.
+ * Query points are random positions over the whole ground, cycled so every
+ * call hits a different cell.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapQueryBenchmark {
+
+	private static final int QUERY_COUNT = 4096; // power of two, see next()
+	private static final float PLAYER_RADIUS = 1f;
+
+	@Param({"100", "10000", "1000000"})
+	public int objectCount;
+
+	private Map map;
+	private MapObject[] objects;
+	private Vector3f[] queries;
+	private int cursor = 0;
+
+	@Setup
+	public void setup() {
+		map = new BenchmarkApp().createMap(objectCount, 1L);
+
+		List<MapObject> mapObjects = map.getMapObjects();
+		objects = mapObjects.toArray(new MapObject[0]);
+
+		float half = BenchmarkApp.mapSizeFor(objectCount) / 2;
+		Random random = new Random(2L);
+		queries = new Vector3f[QUERY_COUNT];
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			queries[i] = new Vector3f((random.nextFloat() * 2 - 1) * half,
+					random.nextFloat() * 6f, (random.nextFloat() * 2 - 1) * half);
+		}
+	}
+
+	private int next() {
+		cursor = (cursor + 1) & (QUERY_COUNT - 1);
+		return cursor;
+	}
+
+	@Benchmark
+	public boolean mapCheckCollision() {
+		return map.checkCollision(queries[next()], PLAYER_RADIUS);
+	}
+
+	@Benchmark
+	public float mapGetGroundHeightAt() {
+		return map.getGroundHeightAt(queries[next()]);
+	}
+
+	/*
+	 * Single object test, the object changes with the query point
+	 */
+	@Benchmark
+	public boolean mapObjectCheckCollision() {
+		int i = next();
+		return objects[i % objects.length].checkCollision(queries[i], PLAYER_RADIUS);
+	}
+}
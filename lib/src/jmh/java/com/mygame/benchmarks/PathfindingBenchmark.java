@@ -0,0 +1,111 @@
+package com.mygame.benchmarks;
+
+import com.mygame.entities.BotSystem;
+import com.mygame.navigation.NavGrid;
+import com.mygame.navigation.NavPath;
+import com.mygame.navigation.NavigationService;
+import com.mygame.navigation.PathFinder;
+import com.mygame.world.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Paths per second on generated maps : single A* searches between random
+ * cells (no cache), and batches of requests to the navigation service between
+ * a few spots, as bots heading for the same places (cached and merged
+ * requests, searches of the misses on the worker pool).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathfindingBenchmark {
+
+	private static final int PAIR_COUNT = 1024; // power of two, see the cursors
+	private static final int SPOT_COUNT = 64;
+	private static final int REQUEST_BATCH = 1024;
+
+	@Param({"1000", "10000"})
+	public int objectCount;
+
+	private NavGrid grid;
+	private PathFinder finder;
+	private NavigationService navigation;
+	private int[] starts;
+	private int[] goals;
+	private float[] spots; // x, z pairs
+	private final CompletableFuture<?>[] batch = new CompletableFuture<?>[REQUEST_BATCH];
+	private final Random random = new Random(6L);
+	private int cursor = 0;
+
+	@Setup
+	public void setup() {
+		Map map = new BenchmarkApp().createMap(objectCount, 1L);
+		grid = NavGrid.bake(map, BotSystem.WIDTH / 2, BotSystem.HEIGHT, 1f);
+		finder = new PathFinder(grid);
+		navigation = new NavigationService(grid);
+
+		float half = BenchmarkApp.mapSizeFor(objectCount) / 2 - 2f;
+		starts = new int[PAIR_COUNT];
+		goals = new int[PAIR_COUNT];
+		for (int i = 0; i < PAIR_COUNT; i++) {
+			starts[i] = randomWalkableCell(half);
+			goals[i] = randomWalkableCell(half);
+		}
+		spots = new float[SPOT_COUNT * 2];
+		for (int i = 0; i < SPOT_COUNT; i++) {
+			int cell = randomWalkableCell(half);
+			spots[i * 2] = grid.centerX(cell % grid.getCellsX());
+			spots[i * 2 + 1] = grid.centerZ(cell / grid.getCellsX());
+		}
+	}
+
+	private int randomWalkableCell(float half) {
+		while (true) {
+			int cell = grid.cellAt((random.nextFloat() * 2 - 1) * half, (random.nextFloat() * 2 - 1) * half);
+			if (grid.isWalkable(cell)) {
+				return cell;
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		navigation.shutdown();
+	}
+
+	@Benchmark
+	public NavPath search() {
+		int pair = cursor++ & (PAIR_COUNT - 1);
+		return finder.findPath(starts[pair], goals[pair]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(REQUEST_BATCH)
+	public int requests() {
+		for (int i = 0; i < REQUEST_BATCH; i++) {
+			int from = random.nextInt(SPOT_COUNT), to = random.nextInt(SPOT_COUNT);
+			batch[i] = navigation.requestPath(spots[from * 2], spots[from * 2 + 1], spots[to * 2], spots[to * 2 + 1]);
+		}
+		CompletableFuture.allOf(batch).join();
+		return navigation.getPendingCount();
+	}
+}
@@ -0,0 +1,76 @@
+package com.mygame.benchmarks;
+
+import com.mygame.entities.Player;
+import com.mygame.world.Map;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One full player update (simulation + scene node) on generated maps.
+ * The player walks with scripted inputs that change every second of
+ * simulated time, like in the headless simulation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerTickBenchmark {
+
+	private static final float STEP = 1f / 60f;
+	private static final int SCRIPT_PERIOD_TICKS = 60;
+
+	@Param({"100", "10000", "1000000"})
+	public int objectCount;
+
+	private Map map;
+	private Player player;
+	private Random script;
+	private long ticks = 0;
+
+	@Setup
+	public void setup() {
+		BenchmarkApp app = new BenchmarkApp();
+		map = app.createMap(objectCount, 1L);
+		player = new Player(app, map, false);
+		script = new Random(3L);
+
+		// Start from a free spot so the player actually moves
+		float half = BenchmarkApp.mapSizeFor(objectCount) / 2 - 2f;
+		Vector3f spawn = new Vector3f();
+		do {
+			spawn.set((script.nextFloat() * 2 - 1) * half, 1f, (script.nextFloat() * 2 - 1) * half);
+		} while (!map.isPositionValid(spawn, 1f));
+		player.setPosition(spawn);
+	}
+
+	@Benchmark
+	public void update() {
+		if (ticks++ % SCRIPT_PERIOD_TICKS == 0) {
+			player.setHorizontalAngle(script.nextFloat() * FastMath.TWO_PI);
+			player.setMoveState(0, script.nextFloat() < 0.8f);
+			player.setMoveState(3, script.nextFloat() < 0.2f);
+			if (script.nextFloat() < 0.3f) {
+				player.jump();
+			}
+		}
+		player.update(STEP);
+	}
+}
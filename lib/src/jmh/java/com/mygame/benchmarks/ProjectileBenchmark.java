@@ -0,0 +1,73 @@
+package com.mygame.benchmarks;
+
+import com.mygame.entities.ProjectileSystem;
+import com.mygame.world.Map;
+
+import com.jme3.math.FastMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One simulation tick of a projectile pool kept at liveCount projectiles on a
+ * generated map : the swept step of every projectile, then the launches that
+ * replace the ones that died (allocation free, see the gc profiler column).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectileBenchmark {
+
+	private static final float STEP = 1f / 60f;
+	private static final int OBJECT_COUNT = 10000;
+	private static final ProjectileSystem.Kind[] KINDS = ProjectileSystem.Kind.values();
+
+	@Param({"1000", "10000", "100000"})
+	public int liveCount;
+
+	private Map map;
+	private ProjectileSystem projectiles;
+	private Random random;
+	private float half;
+
+	@Setup
+	public void setup() {
+		map = new BenchmarkApp().createMap(OBJECT_COUNT, 1L);
+		projectiles = new ProjectileSystem(map, liveCount, null);
+		random = new Random(5L);
+		half = BenchmarkApp.mapSizeFor(OBJECT_COUNT) / 2 - 2f;
+		refill();
+	}
+
+	private void refill() {
+		while (projectiles.getLiveCount() < liveCount) {
+			float angle = random.nextFloat() * FastMath.TWO_PI;
+			float up = random.nextFloat() * 0.5f;
+			projectiles.spawn(KINDS[random.nextInt(KINDS.length)],
+					(random.nextFloat() * 2 - 1) * half, 1.5f, (random.nextFloat() * 2 - 1) * half,
+					FastMath.cos(angle), up, FastMath.sin(angle));
+		}
+	}
+
+	@Benchmark
+	public int tick() {
+		projectiles.step(STEP);
+		refill();
+		return projectiles.getLiveCount();
+	}
+}
@@ -0,0 +1,114 @@
+package com.mygame.benchmarks;
+
+import com.mygame.entities.HitscanSystem;
+import com.mygame.entities.Player;
+import com.mygame.world.Map;
+import com.mygame.world.RayQuery;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Hitscan rays per second on generated maps : single casts through the
+ * bounding volume hierarchy of the map, and ticks of batched shots through
+ * the hitscan system (map and player hit boxes, parallel above its threshold).
+ * Rays start at eye height at random spots with random horizontal directions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RaycastBenchmark {
+
+	private static final int RAY_COUNT = 4096; // power of two, see next()
+	private static final float RANGE = 150f;
+	private static final int TARGET_COUNT = 64;
+
+	@Param({"100", "10000", "1000000"})
+	public int objectCount;
+
+	// Shots per simulated tick, like as many automatic weapons firing at once
+	@Param({"64", "1024"})
+	public int batchSize;
+
+	private Map map;
+	private HitscanSystem hitscan;
+	private final RayQuery query = new RayQuery();
+	private Vector3f[] origins;
+	private Vector3f[] directions;
+	private int cursor = 0;
+
+	@Setup
+	public void setup() {
+		BenchmarkApp app = new BenchmarkApp();
+		map = app.createMap(objectCount, 1L);
+		map.prepareRaycasts();
+
+		float half = BenchmarkApp.mapSizeFor(objectCount) / 2 - 2f;
+		Random random = new Random(4L);
+		origins = new Vector3f[RAY_COUNT];
+		directions = new Vector3f[RAY_COUNT];
+		for (int i = 0; i < RAY_COUNT; i++) {
+			origins[i] = new Vector3f((random.nextFloat() * 2 - 1) * half, 1.5f, (random.nextFloat() * 2 - 1) * half);
+			float angle = random.nextFloat() * FastMath.TWO_PI;
+			directions[i] = new Vector3f(FastMath.cos(angle), (random.nextFloat() - 0.5f) * 0.1f, FastMath.sin(angle))
+					.normalizeLocal();
+		}
+
+		hitscan = new HitscanSystem(map);
+		for (int i = 0; i < TARGET_COUNT; i++) {
+			Player target = new Player(app, map, false);
+			target.setPosition(new Vector3f((random.nextFloat() * 2 - 1) * half, 1f, (random.nextFloat() * 2 - 1) * half));
+			hitscan.addTarget(target);
+		}
+	}
+
+	private int next() {
+		cursor = (cursor + 1) & (RAY_COUNT - 1);
+		return cursor;
+	}
+
+	@Benchmark
+	public float mapRaycast() {
+		int i = next();
+		Vector3f origin = origins[i], direction = directions[i];
+		map.raycast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, RANGE, query);
+		return query.distance;
+	}
+
+	/*
+	 * One tick of batchSize shots, reported per ray
+	 */
+	@Benchmark
+	@OperationsPerInvocation(1024)
+	public long hitscanTick() {
+		int batches = 1024 / batchSize;
+		for (int b = 0; b < batches; b++) {
+			for (int s = 0; s < batchSize; s++) {
+				int i = next();
+				Vector3f origin = origins[i];
+				hitscan.queue(null, origin.x, origin.y, origin.z, directions[i], RANGE, 0f);
+			}
+			hitscan.process();
+		}
+		return hitscan.getTotalShots();
+	}
+}
@@ -1,36 +1,177 @@
 package com.mygame;
 
+import com.mygame.profiling.ProfilerState;
+import com.mygame.states.GameOptions;
+import com.mygame.states.HeadlessState;
 import com.mygame.states.MenuState;
+import com.mygame.states.ServerState;
+import com.mygame.world.Map;
 
 import com.jme3.app.SimpleApplication;
 import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 
 public class Shooter3D extends SimpleApplication {
-	
+
+	// Settings of the game, the headless simulation or the server
+	private final GameOptions options = new GameOptions();
+	// Headless simulation (no window, no GPU)
+	private boolean headless = false;
+	// Dedicated server (headless, no local player)
+	private boolean server = false;
+
+	// Write the built-in map to this file and exit
+	private Path exportPath = null;
+	// Time the frames and write the summary to this file on exit (F3 shows the timings)
+	private Path profilePath = null;
+
+	/*
+	 * Usage : Shooter3D [--map FILE | --world SIZE] [--physics] [--bots N] [--profile FILE] [--headless [--players N] [--duration SECONDS] [--benchmark]]
+	 *                    [--no-batching] [--no-instancing] [--no-lod] [--no-culling]
+	 *         Shooter3D --server [--map FILE] [--port N] [--clients N [--latency MS] [--jitter MS] [--loss PERCENT]] [--duration SECONDS]
+	 *         Shooter3D --export-map FILE
+	 */
 	public static void main(String[] args) {
 		Shooter3D app = new Shooter3D();
-		
+		app.parseArguments(args);
+
+		if (app.headless || app.server || app.exportPath != null) {
+			AppSettings settings = new AppSettings(true);
+			// Real time simulation is paced by the frame rate, benchmark runs unbounded
+			settings.setFrameRate(app.options.isBenchmark() ? -1 : 60);
+			app.setSettings(settings);
+			app.setShowSettings(false);
+			app.start(JmeContext.Type.Headless);
+			return;
+		}
+
 		AppSettings settings = new AppSettings(true);
 		settings.setTitle("Shooter 3D");
 		settings.setResolution(1500, 900);
 		settings.setFullscreen(false);
 		settings.setVSync(true);
 		settings.setSamples(4);
-		
+
 		app.setSettings(settings);
 		app.setShowSettings(false);
 		app.start();
 	}
 
-	@Override 
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--headless":
+					headless = true;
+					break;
+				case "--benchmark":
+					options.setBenchmark(true);
+					break;
+				case "--players":
+					options.setPlayerCount(Integer.parseInt(args[++i]));
+					break;
+				case "--duration":
+					options.setDuration(Float.parseFloat(args[++i]));
+					break;
+				case "--server":
+					server = true;
+					break;
+				case "--port":
+					options.setPort(Integer.parseInt(args[++i]));
+					break;
+				case "--clients":
+					options.setClientCount(Integer.parseInt(args[++i]));
+					break;
+				case "--latency":
+					options.setLatency(Float.parseFloat(args[++i]));
+					break;
+				case "--jitter":
+					options.setJitter(Float.parseFloat(args[++i]));
+					break;
+				case "--loss":
+					options.setLoss(Float.parseFloat(args[++i]) / 100f);
+					break;
+				case "--map":
+					options.setMapPath(Paths.get(args[++i]));
+					break;
+				case "--world":
+					options.setWorldSize(Float.parseFloat(args[++i]));
+					break;
+				case "--bots":
+					options.setBotCount(Integer.parseInt(args[++i]));
+					break;
+				case "--physics":
+					options.setPhysics(true);
+					break;
+				case "--no-batching":
+					options.setStaticBatching(false);
+					break;
+				case "--no-instancing":
+					options.setInstancing(false);
+					break;
+				case "--no-lod":
+					options.setLevelOfDetail(false);
+					break;
+				case "--no-culling":
+					options.setVisibilityCulling(false);
+					break;
+				case "--profile":
+					profilePath = Paths.get(args[++i]);
+					break;
+				case "--export-map":
+					exportPath = Paths.get(args[++i]);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown argument: " + args[i]);
+			}
+		}
+	}
+
+	@Override
 	public void simpleInitApp() {
+		if (exportPath != null) {
+			exportMap();
+			return;
+		}
+		if (profilePath != null) {
+			stateManager.attach(new ProfilerState(profilePath, !headless && !server));
+		}
+		if (server) {
+			stateManager.attach(new ServerState(options));
+			return;
+		}
+		if (headless) {
+			stateManager.attach(new HeadlessState(options));
+			return;
+		}
+
 		// Disable flymcam cursor
 
 		flyCam.setEnabled(false);
 		setDisplayStatView(false);
-		
-		MenuState menuState = new MenuState();
+
+		MenuState menuState = new MenuState(options);
 		stateManager.attach(menuState);
 	}
-}
\ No newline at end of file
+
+	/*
+	 * Build the built-in map and write it as a binary map file
+	 */
+	private void exportMap() {
+		Map map = new Map(this);
+		map.loadMap();
+		try {
+			map.exportMap(exportPath);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot write map " + exportPath, e);
+		}
+		System.out.println("Exported " + map.getMapObjects().size() + " objects to " + exportPath);
+		map.unloadMap();
+		stop();
+	}
+}
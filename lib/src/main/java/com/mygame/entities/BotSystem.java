@@ -0,0 +1,495 @@
+package com.mygame.entities;
+
+import com.mygame.interest.InterestManager;
+import com.mygame.navigation.NavPath;
+import com.mygame.navigation.NavigationService;
+import com.mygame.world.Collider;
+import com.mygame.world.Map;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * AI controlled bots stored as packed primitive arrays, one index per bot.
+ * A tick splits the bots in ranges run by a fork/join pool : each bot only
+ * writes its own slots and reads the map (same movement and collision rules
+ * as Player), so the ranges need no synchronization and the tick scales
+ * with the cores. The scene sees every bot through one batched box mesh
+ * rewritten by syncScene(), interpolated between the last two ticks.
+ *
+ * Bots wander : every few seconds they pick a heading, walk or stop, and
+ * sometimes jump. A blocked bot turns around. Bots don't collide together.
+ * With a NavigationService they also walk to random goals along paths,
+ * requested asynchronously : a bot waits on the spot for its path. With a
+ * perception manager holding the players, a bot that sees one when it
+ * decides walks to it; the lookup only visits the cells around the bot.
+ */
+public class BotSystem {
+
+	// Below this many bots a range is run without splitting
+	private static final int GRAIN = 256;
+	private static final float MOVE_SPEED = 6f;
+	private static final float JUMP_SPEED = 15f;
+	private static final float GRAVITY = -30f;
+	public static final float WIDTH = 1f;
+	public static final float HEIGHT = 2f;
+	private static final int MIN_THINK_TICKS = 60;
+	private static final int MAX_THINK_TICKS = 180;
+	// Chance of a decision to walk to a goal when navigation is available
+	private static final float PATH_CHANCE = 0.5f;
+	private static final float WAYPOINT_REACHED = 0.3f;
+	// Players noticed by a bot and how often a chasing bot aims again
+	public static final float SIGHT_RANGE = 20f;
+	private static final int CHASE_THINK_TICKS = 15;
+	private static final float CHASE_STOP_DISTANCE = 2f;
+
+	private final Map gameMap;
+	// Bots tick on worker threads : the grid of the map, the physics world is render thread only
+	private final Collider collider;
+	private final ForkJoinPool pool;
+	private final int capacity;
+	private int count = 0;
+
+	// Bot state
+	private final float[] x, y, z;
+	private final float[] previousX, previousY, previousZ;
+	private final float[] velocityY;
+	private final float[] directionX, directionZ; // walk direction, scaled by the speed
+	private final boolean[] onGround;
+	private final int[] thinkTicks; // ticks before the next decision
+	private final long[] random; // xorshift state of each bot
+
+	// Paths followed, null when wandering
+	private NavigationService navigation;
+	private final NavPath[] paths;
+	private final int[] waypoints; // next waypoint of the path
+	private final CompletableFuture<NavPath>[] pathRequests;
+
+	// Players the bots can see, null if they see nobody
+	private InterestManager perception;
+	private final boolean[] chasing;
+
+	private float step; // time step of the running tick
+	private long ticks = 0;
+
+	// Batched mesh : one box of 8 corners per bot
+	private Mesh mesh;
+	private Geometry geometry;
+	private FloatBuffer positions;
+	private IntBuffer indices;
+	private int meshCount = -1; // bots drawn by the index buffer
+
+	public BotSystem(Map gameMap, int capacity) {
+		this(gameMap, capacity, ForkJoinPool.commonPool());
+	}
+
+	public BotSystem(Map gameMap, int capacity, ForkJoinPool pool) {
+		this.gameMap = gameMap;
+		this.collider = gameMap;
+		this.capacity = capacity;
+		this.pool = pool;
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+		previousX = new float[capacity];
+		previousY = new float[capacity];
+		previousZ = new float[capacity];
+		velocityY = new float[capacity];
+		directionX = new float[capacity];
+		directionZ = new float[capacity];
+		onGround = new boolean[capacity];
+		thinkTicks = new int[capacity];
+		random = new long[capacity];
+		paths = new NavPath[capacity];
+		waypoints = new int[capacity];
+		pathRequests = newRequests(capacity);
+		chasing = new boolean[capacity];
+	}
+
+	/*
+	 * No generic array creation : the array only ever holds path requests
+	 */
+	@SuppressWarnings("unchecked")
+	private static CompletableFuture<NavPath>[] newRequests(int capacity) {
+		return (CompletableFuture<NavPath>[]) new CompletableFuture<?>[capacity];
+	}
+
+	/*
+	 * Let the bots walk along paths of a navigation service, null to only wander
+	 */
+	public void setNavigation(NavigationService navigation) {
+		this.navigation = navigation;
+		for (int i = 0; i < count; i++) {
+			paths[i] = null;
+			pathRequests[i] = null;
+		}
+	}
+
+	/*
+	 * Let the bots notice the entities of a manager, null to see nobody. The
+	 * manager must not change during tick()
+	 */
+	public void setPerception(InterestManager perception) {
+		this.perception = perception;
+	}
+
+	/*
+	 * Add a bot standing at a position, return its index or -1 if full
+	 */
+	public int spawn(float px, float pz, long seed) {
+		if (count == capacity) {
+			return -1;
+		}
+		int i = count++;
+		x[i] = previousX[i] = px;
+		z[i] = previousZ[i] = pz;
+		y[i] = previousY[i] = collider.getGroundHeightAt(px, pz) + HEIGHT / 2;
+		velocityY[i] = 0f;
+		onGround[i] = true;
+		random[i] = seed * 0x9E3779B97F4A7C15L | 1L; // xorshift state can't be 0
+		thinkTicks[i] = 0;
+		paths[i] = null;
+		pathRequests[i] = null;
+		chasing[i] = false;
+		return i;
+	}
+
+	/*
+	 * Spawn bots at random free spots of the map, return how many were placed
+	 */
+	public int spawnRandom(int botCount, long seed) {
+		Random placement = new Random(seed);
+		float half = gameMap.getMapSize() / 2 - WIDTH;
+		int placed = 0;
+		for (int attempt = 0; placed < botCount && count < capacity && attempt < botCount * 20; attempt++) {
+			float px = (placement.nextFloat() * 2 - 1) * half;
+			float pz = (placement.nextFloat() * 2 - 1) * half;
+			float py = collider.getGroundHeightAt(px, pz) + HEIGHT / 2;
+			if (!collider.checkCollision(px, py, pz, WIDTH / 2)) {
+				spawn(px, pz, seed + placed);
+				placed++;
+			}
+		}
+		return placed;
+	}
+
+	/*
+	 * One simulation tick of every bot, in parallel on the pool
+	 */
+	public void tick(float dt) {
+		step = dt;
+		if (count <= GRAIN) {
+			tickRange(0, count);
+		} else {
+			pool.invoke(new TickTask(0, count));
+		}
+		ticks++;
+	}
+
+	private class TickTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final int end;
+
+		TickTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= GRAIN) {
+				tickRange(start, end);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new TickTask(start, middle), new TickTask(middle, end));
+		}
+	}
+
+	private void tickRange(int start, int end) {
+		float dt = step;
+		for (int i = start; i < end; i++) {
+			tickBot(i, dt);
+		}
+	}
+
+	/*
+	 * Same movement as Player.simulate with the simple collider
+	 */
+	private void tickBot(int i, float dt) {
+		previousX[i] = x[i];
+		previousY[i] = y[i];
+		previousZ[i] = z[i];
+		CompletableFuture<NavPath> request = pathRequests[i];
+		if (request != null && request.isDone()) {
+			pathRequests[i] = null;
+			NavPath path = request.isCompletedExceptionally() ? NavPath.NONE : request.join();
+			if (path.size() > 1) {
+				paths[i] = path;
+				waypoints[i] = 1; // the first waypoint is the cell the bot stands in
+			} else {
+				thinkTicks[i] = 0;
+			}
+		}
+		if (paths[i] != null) {
+			steer(i);
+		} else if (request == null && --thinkTicks[i] <= 0) {
+			think(i);
+		}
+
+		if (!onGround[i]) {
+			velocityY[i] += GRAVITY * dt;
+		}
+		float newX = x[i] + directionX[i] * dt;
+		float newY = y[i] + velocityY[i] * dt;
+		float newZ = z[i] + directionZ[i] * dt;
+
+		if (collider.checkCollision(newX, newY, newZ, WIDTH / 2)) {
+			// Blocked : turn around
+			directionX[i] = -directionX[i];
+			directionZ[i] = -directionZ[i];
+			paths[i] = null;
+			return;
+		}
+		x[i] = newX;
+		z[i] = newZ;
+		float groundHeight = collider.getGroundHeightAt(newX, newZ) + HEIGHT / 2;
+		if (newY <= groundHeight) {
+			y[i] = newY >= groundHeight - 1f ? groundHeight : HEIGHT / 2;
+			velocityY[i] = 0f;
+			onGround[i] = true;
+		} else {
+			y[i] = newY;
+			onGround[i] = false;
+		}
+	}
+
+	/*
+	 * New decision : heading, walk or stay, maybe jump
+	 */
+	private void think(int i) {
+		if (perception != null) {
+			int target = perception.nearest(x[i], z[i], SIGHT_RANGE, -1);
+			chasing[i] = target >= 0;
+			if (chasing[i]) {
+				chase(i, perception.getX(target), perception.getZ(target));
+				return;
+			}
+		}
+		if (navigation != null && nextFloat(i) < PATH_CHANCE) {
+			float half = gameMap.getMapSize() / 2;
+			float goalX = (nextFloat(i) * 2 - 1) * half;
+			float goalZ = (nextFloat(i) * 2 - 1) * half;
+			pathRequests[i] = navigation.requestPath(x[i], z[i], goalX, goalZ);
+			directionX[i] = 0f;
+			directionZ[i] = 0f;
+			return;
+		}
+		float heading = nextFloat(i) * FastMath.TWO_PI;
+		float speed = nextFloat(i) < 0.8f ? MOVE_SPEED : 0f;
+		directionX[i] = FastMath.cos(heading) * speed;
+		directionZ[i] = FastMath.sin(heading) * speed;
+		if (onGround[i] && nextFloat(i) < 0.2f) {
+			velocityY[i] = JUMP_SPEED;
+			onGround[i] = false;
+		}
+		thinkTicks[i] = MIN_THINK_TICKS + (int) (nextFloat(i) * (MAX_THINK_TICKS - MIN_THINK_TICKS));
+	}
+
+	/*
+	 * Walk straight to a player in sight, aiming again a few times per second
+	 */
+	private void chase(int i, float targetX, float targetZ) {
+		float dx = targetX - x[i];
+		float dz = targetZ - z[i];
+		float distance = (float) Math.sqrt(dx * dx + dz * dz);
+		if (distance < CHASE_STOP_DISTANCE) {
+			directionX[i] = 0f;
+			directionZ[i] = 0f;
+		} else {
+			directionX[i] = dx / distance * MOVE_SPEED;
+			directionZ[i] = dz / distance * MOVE_SPEED;
+		}
+		thinkTicks[i] = CHASE_THINK_TICKS;
+	}
+
+	/*
+	 * Walk toward the next waypoint of the path, back to wandering at its end
+	 */
+	private void steer(int i) {
+		NavPath path = paths[i];
+		float dx = path.getX(waypoints[i]) - x[i];
+		float dz = path.getZ(waypoints[i]) - z[i];
+		float distance = (float) Math.sqrt(dx * dx + dz * dz);
+		if (distance < WAYPOINT_REACHED) {
+			if (++waypoints[i] == path.size()) {
+				paths[i] = null;
+				thinkTicks[i] = MIN_THINK_TICKS;
+				directionX[i] = 0f;
+				directionZ[i] = 0f;
+			}
+			return;
+		}
+		directionX[i] = dx / distance * MOVE_SPEED;
+		directionZ[i] = dz / distance * MOVE_SPEED;
+	}
+
+	/*
+	 * Uniform float in [0, 1) from the xorshift generator of a bot
+	 */
+	private float nextFloat(int i) {
+		long s = random[i];
+		s ^= s << 13;
+		s ^= s >>> 7;
+		s ^= s << 17;
+		random[i] = s;
+		return (s >>> 40) / (float) (1 << 24);
+	}
+
+	/*
+	 * Batched mesh of the bots, created on the first call
+	 */
+	public Geometry getGeometry(AssetManager assetManager) {
+		if (geometry != null) {
+			return geometry;
+		}
+		positions = BufferUtils.createFloatBuffer(capacity * 8 * 3);
+		FloatBuffer colors = BufferUtils.createFloatBuffer(capacity * 8 * 4);
+		indices = BufferUtils.createIntBuffer(capacity * BOX_INDICES.length);
+		for (int b = 0; b < capacity; b++) {
+			for (int corner = 0; corner < 8; corner++) {
+				// Darker bottom corners give the boxes some depth without lighting
+				float shade = corner < 4 ? 0.45f : 0.9f;
+				colors.put(shade).put(shade * 0.3f).put(shade).put(1f);
+			}
+			for (int index : BOX_INDICES) {
+				indices.put(b * 8 + index);
+			}
+		}
+		colors.flip();
+		indices.flip();
+
+		mesh = new Mesh();
+		mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+		mesh.setBuffer(VertexBuffer.Type.Color, 4, colors);
+		mesh.setBuffer(VertexBuffer.Type.Index, 3, indices);
+		mesh.getBuffer(VertexBuffer.Type.Position).setUsage(VertexBuffer.Usage.Stream);
+		mesh.getBuffer(VertexBuffer.Type.Index).setUsage(VertexBuffer.Usage.Dynamic);
+
+		Material material = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+		material.setBoolean("VertexColor", true);
+		geometry = new Geometry("Bots", mesh);
+		geometry.setMaterial(material);
+		// Bots are all over the map, the bound is never recomputed
+		geometry.setCullHint(Spatial.CullHint.Never);
+		syncScene(1f);
+		return geometry;
+	}
+
+	// Corners 0-3 at the bottom, 4-7 at the top, counter clockwise seen from outside
+	private static final int[] BOX_INDICES = {
+			0, 2, 1, 0, 3, 2, // bottom
+			4, 5, 6, 4, 6, 7, // top
+			0, 1, 5, 0, 5, 4,
+			1, 2, 6, 1, 6, 5,
+			2, 3, 7, 2, 7, 6,
+			3, 0, 4, 3, 4, 7 };
+
+	/*
+	 * Write the boxes of every bot between the last two ticks, one pass, render thread only
+	 */
+	public void syncScene(float alpha) {
+		if (mesh == null) {
+			return;
+		}
+		float hw = WIDTH / 2, hh = HEIGHT / 2;
+		positions.clear();
+		for (int i = 0; i < count; i++) {
+			float cx = previousX[i] + (x[i] - previousX[i]) * alpha;
+			float cy = previousY[i] + (y[i] - previousY[i]) * alpha;
+			float cz = previousZ[i] + (z[i] - previousZ[i]) * alpha;
+			float bottom = cy - hh, top = cy + hh;
+			positions.put(cx - hw).put(bottom).put(cz - hw)
+					.put(cx + hw).put(bottom).put(cz - hw)
+					.put(cx + hw).put(bottom).put(cz + hw)
+					.put(cx - hw).put(bottom).put(cz + hw)
+					.put(cx - hw).put(top).put(cz - hw)
+					.put(cx + hw).put(top).put(cz - hw)
+					.put(cx + hw).put(top).put(cz + hw)
+					.put(cx - hw).put(top).put(cz + hw);
+		}
+		positions.flip();
+		mesh.getBuffer(VertexBuffer.Type.Position).updateData(positions);
+		
+		// Only draw the boxes of the spawned bots
+		if (meshCount != count) {
+			meshCount = count;
+			indices.clear();
+			indices.limit(count * BOX_INDICES.length);
+			mesh.getBuffer(VertexBuffer.Type.Index).updateData(indices);
+			mesh.updateCounts();
+		}
+	}
+
+	/*
+	 * Copy the position of a bot in store (no allocation)
+	 */
+	public Vector3f getPosition(int i, Vector3f store) {
+		return store.set(x[i], y[i], z[i]);
+	}
+
+	/*
+	 * Bots walking along a path
+	 */
+	public int getFollowingCount() {
+		int following = 0;
+		for (int i = 0; i < count; i++) {
+			if (paths[i] != null) {
+				following++;
+			}
+		}
+		return following;
+	}
+
+	/*
+	 * Bots walking to a player they saw
+	 */
+	public int getChasingCount() {
+		int chasingCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (chasing[i]) {
+				chasingCount++;
+			}
+		}
+		return chasingCount;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getTickCount() {
+		return ticks;
+	}
+}
@@ -0,0 +1,211 @@
+package com.mygame.entities;
+
+import com.mygame.world.Map;
+import com.mygame.world.ObjectBvh;
+import com.mygame.world.RayQuery;
+
+import com.jme3.math.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+ * Traces the hitscan shots of a simulation tick together. Shots are queued
+ * in flat arrays while the players simulate, then process() casts them all
+ * against the map (its bounding volume hierarchy, see Map.raycast) and the
+ * hit boxes of the targets, and applies the damage.
+ *
+ * Large batches are traced in parallel : the map and the snapshot of the
+ * target boxes are only read while tracing, the damage is applied after.
+ */
+public class HitscanSystem {
+
+	// Below this many shots the batch is traced on the calling thread
+	private static final int PARALLEL_THRESHOLD = 256;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final Map gameMap;
+	private final List<Player> targets = new ArrayList<>();
+	private final ThreadLocal<RayQuery> queries = ThreadLocal.withInitial(RayQuery::new);
+
+	// Shots queued during the tick
+	private int shotCount = 0;
+	private float[] originX = new float[INITIAL_CAPACITY];
+	private float[] originY = new float[INITIAL_CAPACITY];
+	private float[] originZ = new float[INITIAL_CAPACITY];
+	private float[] directionX = new float[INITIAL_CAPACITY];
+	private float[] directionY = new float[INITIAL_CAPACITY];
+	private float[] directionZ = new float[INITIAL_CAPACITY];
+	private float[] range = new float[INITIAL_CAPACITY];
+	private float[] damage = new float[INITIAL_CAPACITY];
+	private int[] shooter = new int[INITIAL_CAPACITY]; // target index of the shooter, -1 if none
+	// Results : target hit (-1 for none) and distance of the impact (range if nothing was hit)
+	private int[] hitTarget = new int[INITIAL_CAPACITY];
+	private float[] hitDistance = new float[INITIAL_CAPACITY];
+
+	// Hit boxes of the targets at the start of process()
+	private float[] boxes = new float[INITIAL_CAPACITY * 6];
+	private final Vector3f targetPosition = new Vector3f(); // scratch
+
+	// Statistics
+	private long totalShots = 0;
+	private long mapHits = 0;
+	private long targetHits = 0;
+
+	public HitscanSystem(Map gameMap) {
+		this.gameMap = gameMap;
+	}
+
+	/*
+	 * Players that can be hit by the shots
+	 */
+	public void addTarget(Player player) {
+		if (player.targetIndex >= 0) {
+			return;
+		}
+		player.targetIndex = targets.size();
+		targets.add(player);
+	}
+
+	public void removeTarget(Player player) {
+		int index = player.targetIndex;
+		if (index < 0) {
+			return;
+		}
+		int last = targets.size() - 1;
+		Player moved = targets.remove(last);
+		if (index != last) {
+			targets.set(index, moved);
+			moved.targetIndex = index;
+		}
+		player.targetIndex = -1;
+	}
+
+	/*
+	 * Queue a shot from a point in a normalized direction, traced on the next process()
+	 */
+	public void queue(Player from, float x, float y, float z, Vector3f direction, float shotRange, float shotDamage) {
+		if (shotCount == originX.length) {
+			grow(shotCount * 2);
+		}
+		int i = shotCount++;
+		originX[i] = x;
+		originY[i] = y;
+		originZ[i] = z;
+		directionX[i] = direction.x;
+		directionY[i] = direction.y;
+		directionZ[i] = direction.z;
+		range[i] = shotRange;
+		damage[i] = shotDamage;
+		shooter[i] = from != null ? from.targetIndex : -1;
+	}
+
+	/*
+	 * Trace every queued shot and apply the damage, render thread only
+	 */
+	public void process() {
+		if (shotCount == 0) {
+			return;
+		}
+		gameMap.prepareRaycasts();
+		snapshotTargets();
+
+		if (shotCount >= PARALLEL_THRESHOLD) {
+			IntStream.range(0, shotCount).parallel().forEach(this::trace);
+		} else {
+			for (int i = 0; i < shotCount; i++) {
+				trace(i);
+			}
+		}
+
+		for (int i = 0; i < shotCount; i++) {
+			if (hitTarget[i] >= 0) {
+				targets.get(hitTarget[i]).applyDamage(damage[i]);
+				targetHits++;
+			} else if (hitDistance[i] < range[i]) {
+				mapHits++;
+			}
+		}
+		totalShots += shotCount;
+		shotCount = 0;
+	}
+
+	private void snapshotTargets() {
+		int count = targets.size();
+		if (boxes.length < count * 6) {
+			boxes = new float[count * 6];
+		}
+		for (int t = 0; t < count; t++) {
+			Player target = targets.get(t);
+			Vector3f position = target.getPosition(targetPosition);
+			float halfWidth = target.getWidth() / 2, halfHeight = target.getHeight() / 2;
+			int b = t * 6;
+			boxes[b] = position.x - halfWidth;
+			boxes[b + 1] = position.y - halfHeight;
+			boxes[b + 2] = position.z - halfWidth;
+			boxes[b + 3] = position.x + halfWidth;
+			boxes[b + 4] = position.y + halfHeight;
+			boxes[b + 5] = position.z + halfWidth;
+		}
+	}
+
+	/*
+	 * Nearest of the map impact and the target boxes for one shot
+	 */
+	private void trace(int i) {
+		float ox = originX[i], oy = originY[i], oz = originZ[i];
+		float dx = directionX[i], dy = directionY[i], dz = directionZ[i];
+		RayQuery query = queries.get();
+		gameMap.raycast(ox, oy, oz, dx, dy, dz, range[i], query);
+		float distance = query.distance;
+
+		float invX = 1f / dx, invY = 1f / dy, invZ = 1f / dz;
+		int target = -1;
+		for (int t = 0, count = targets.size(); t < count; t++) {
+			if (t == shooter[i]) {
+				continue;
+			}
+			int b = t * 6;
+			float entry = ObjectBvh.slab(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5],
+					ox, oy, oz, invX, invY, invZ, distance);
+			if (entry >= 0f) {
+				distance = entry;
+				target = t;
+			}
+		}
+		hitTarget[i] = target;
+		hitDistance[i] = distance;
+	}
+
+	private void grow(int capacity) {
+		originX = Arrays.copyOf(originX, capacity);
+		originY = Arrays.copyOf(originY, capacity);
+		originZ = Arrays.copyOf(originZ, capacity);
+		directionX = Arrays.copyOf(directionX, capacity);
+		directionY = Arrays.copyOf(directionY, capacity);
+		directionZ = Arrays.copyOf(directionZ, capacity);
+		range = Arrays.copyOf(range, capacity);
+		damage = Arrays.copyOf(damage, capacity);
+		shooter = Arrays.copyOf(shooter, capacity);
+		hitTarget = Arrays.copyOf(hitTarget, capacity);
+		hitDistance = Arrays.copyOf(hitDistance, capacity);
+	}
+
+	public int getTargetCount() {
+		return targets.size();
+	}
+
+	public long getTotalShots() {
+		return totalShots;
+	}
+
+	public long getMapHits() {
+		return mapHits;
+	}
+
+	public long getTargetHits() {
+		return targetHits;
+	}
+}
@@ -0,0 +1,87 @@
+package com.mygame.entities;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+import java.util.Random;
+
+/*
+ * Automatic hitscan weapon : fires while the trigger is held, one shot every
+ * fireInterval seconds of simulated time. Shots leave in the aim direction
+ * scattered inside a cone of half angle spread.
+ */
+public class HitscanWeapon {
+
+	private final float fireInterval; // seconds
+	private final float damage;
+	private final float range;
+	private final float spread; // radians
+	private final Random scatter;
+
+	private float cooldown = 0f;
+
+	public HitscanWeapon(float fireInterval, float damage, float range, float spread, long seed) {
+		this.fireInterval = fireInterval;
+		this.damage = damage;
+		this.range = range;
+		this.spread = spread;
+		this.scatter = new Random(seed);
+	}
+
+	/*
+	 * Default automatic rifle : 10 shots per second
+	 */
+	public static HitscanWeapon rifle(long seed) {
+		return new HitscanWeapon(0.1f, 20f, 150f, 0.01f, seed);
+	}
+
+	/*
+	 * Advance the weapon by a simulation step, return the number of shots fired during it
+	 */
+	public int advance(float step, boolean triggerHeld) {
+		cooldown -= step;
+		if (!triggerHeld) {
+			cooldown = Math.max(cooldown, 0f);
+			return 0;
+		}
+		int shots = 0;
+		while (cooldown <= 0f) {
+			shots++;
+			cooldown += fireInterval;
+		}
+		return shots;
+	}
+
+	/*
+	 * Direction of one shot : the aim (normalized) scattered by the spread, written in store
+	 */
+	public Vector3f scatter(Vector3f aim, Vector3f store) {
+		if (spread <= 0f) {
+			return store.set(aim);
+		}
+		float angle = scatter.nextFloat() * FastMath.TWO_PI;
+		float offset = scatter.nextFloat() * spread;
+		// Any axis orthogonal to the aim, then a second one
+		float ux = -aim.z, uy = 0f, uz = aim.x;
+		float length = FastMath.sqrt(ux * ux + uz * uz);
+		if (length < 1e-4f) {
+			ux = 1f;
+			uz = 0f;
+			length = 1f;
+		}
+		ux /= length;
+		uz /= length;
+		float vx = aim.y * uz - aim.z * uy, vy = aim.z * ux - aim.x * uz, vz = aim.x * uy - aim.y * ux;
+		float cos = FastMath.cos(angle) * offset, sin = FastMath.sin(angle) * offset;
+		store.set(aim.x + ux * cos + vx * sin, aim.y + uy * cos + vy * sin, aim.z + uz * cos + vz * sin);
+		return store.normalizeLocal();
+	}
+
+	public float getDamage() {
+		return damage;
+	}
+
+	public float getRange() {
+		return range;
+	}
+}
@@ -1,14 +1,19 @@
 package com.mygame.entities;
 
+import com.mygame.profiling.FrameTimings;
+import com.mygame.world.Collider;
 import com.mygame.world.Map;
+import com.mygame.world.PhysicsWorld;
 
 import com.jme3.app.SimpleApplication;
+import com.jme3.bullet.control.CharacterControl;
 import com.jme3.input.InputManager;
 import com.jme3.input.KeyInput;
 import com.jme3.input.MouseInput;
 import com.jme3.input.controls.ActionListener;
 import com.jme3.input.controls.AnalogListener;
 import com.jme3.input.controls.KeyTrigger;
+import com.jme3.input.controls.MouseButtonTrigger;
 import com.jme3.input.controls.MouseAxisTrigger;
 import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
@@ -26,6 +31,12 @@ public class Player implements ActionListener, AnalogListener {
 	private Node playerNode;
 	private Geometry playerGeometry;
 	private Map gameMap;
+	// Collisions of the simple backend, from the map (grid or physics world)
+	private Collider collider;
+	
+	// Bullet character moved by the physics step when the map has a physics world
+	private PhysicsWorld physics;
+	private CharacterControl character;
 	
 	// Player stats
 	private Vector3f position;
@@ -35,6 +46,20 @@ public class Player implements ActionListener, AnalogListener {
 	private float gravity = -30f;
 	private float playerHeight = 2f;
 	private float playerWidth = 1f;
+	private static final float MAX_HEALTH = 100f;
+	private float health = MAX_HEALTH;
+	private int deaths = 0;
+	
+	// Weapon, its shots are traced by the hitscan system of the game (none = no shooting)
+	private static final float EYE_HEIGHT = 0.5f; // above the center
+	private HitscanWeapon weapon;
+	private HitscanSystem hitscan;
+	private boolean triggerHeld = false;
+	// Grenades are launched in this pool (none = no grenades)
+	private ProjectileSystem projectiles;
+	private boolean throwRequested = false;
+	// Index in the hitscan targets, -1 if not a target
+	int targetIndex = -1;
 	
 	// Camera control
 	private float horizontalAngle = 0f; // Horizontal rotation (yaw)
@@ -44,23 +69,69 @@ public class Player implements ActionListener, AnalogListener {
 	private float maxLookDown = -25f * FastMath.DEG_TO_RAD;
 	
 	// Player state
+	private boolean localControl;
 	private boolean isOnGround = false;
+	// Jumps start at the next simulation tick, so a replayed input jumps at the same tick
+	private boolean jumpRequested = false;
 	private boolean[] moveStates = new boolean[4]; // Z, Q, S, D || W, A, S, D
 	
+	// Scratch objects reused each frame to keep update() allocation free
+	private static final Vector3f FORWARD_AXIS = new Vector3f(0, 0, -1);
+	private static final Vector3f CAMERA_OFFSET = new Vector3f(0, 2.5f, 5f);
+	private final Quaternion yawRotation = new Quaternion();
+	private final Quaternion pitchRotation = new Quaternion();
+	private final Quaternion cameraRotation = new Quaternion();
+	private final Vector3f forward = new Vector3f();
+	private final Vector3f right = new Vector3f();
+	private final Vector3f movement = new Vector3f();
+	private final Vector3f newPosition = new Vector3f();
+	private final Vector3f jumpImpulse = new Vector3f();
+	private final Vector3f cameraPosition = new Vector3f();
+	private final Vector3f lookAtPosition = new Vector3f();
+	private final Vector3f aim = new Vector3f();
+	private final Vector3f shotDirection = new Vector3f();
+	
+	// States used to interpolate the rendering between two simulation ticks
+	private final Vector3f previousPosition = new Vector3f();
+	private final Vector3f renderPosition = new Vector3f();
+	
 	public Player(SimpleApplication app, Map gameMap) {
+		this(app, gameMap, true);
+	}
+	
+	/*
+	 * A player not controlled by the local user has no input mapping and does not
+	 * drive the camera, it is moved through the scripted input methods
+	 */
+	public Player(SimpleApplication app, Map gameMap, boolean localControl) {
 		this.app = app;
+		this.localControl = localControl;
 		this.gameMap = gameMap;
 		this.playerNode = new Node("Player Node");
 		this.velocity = new Vector3f(0, 0, 0);
 		
 		// Spawn position
 		this.position = gameMap.getPlayerSpawnPosition().clone();
+		this.previousPosition.set(position);
+		this.renderPosition.set(position);
+		this.weapon = HitscanWeapon.rifle(0L);
 		
-		createPlayerModel();
-		setupInputs();
+		this.physics = gameMap.getPhysics();
+		this.collider = gameMap.getCollider();
+		if (physics != null) {
+			character = physics.addCharacter(position, playerWidth, playerHeight);
+			character.setJumpSpeed(jumpSpeed);
+			character.setFallSpeed(-gravity);
+			character.setGravity(new Vector3f(0, gravity, 0));
+		}
 		
-		// Hide cursor for a better control
-		app.getInputManager().setCursorVisible(false);
+		createPlayerModel();
+		if (localControl) {
+			setupInputs();
+			
+			// Hide cursor for a better control
+			app.getInputManager().setCursorVisible(false);
+		}
 	}
 	
 	/*
@@ -92,6 +163,8 @@ public class Player implements ActionListener, AnalogListener {
 		inputManager.addMapping("Strafe Left", new KeyTrigger(KeyInput.KEY_A));
 		inputManager.addMapping("Strafe Right", new KeyTrigger(KeyInput.KEY_D));
 		inputManager.addMapping("Jump", new KeyTrigger(KeyInput.KEY_SPACE));
+		inputManager.addMapping("Fire", new MouseButtonTrigger(MouseInput.BUTTON_LEFT));
+		inputManager.addMapping("Throw", new MouseButtonTrigger(MouseInput.BUTTON_RIGHT));
 		
 		// Mouse controls
 		inputManager.addMapping("Mouse X-", new MouseAxisTrigger(MouseInput.AXIS_X, false));
@@ -102,37 +175,103 @@ public class Player implements ActionListener, AnalogListener {
 		
 		// Listeners
 		inputManager.addListener(this, "Move Forward", "Move Backward", "Strafe Left", "Strafe Right");
-		inputManager.addListener(this, "Jump");
+		inputManager.addListener(this, "Jump", "Fire", "Throw");
 		inputManager.addListener(this, "Mouse X", "Mouse X-", "Mouse Y", "Mouse Y-");
 	}
 	
 	/* 
-	 * Update player logic
+	 * Simulate and render in one call (variable time step)
 	 */
 	public void update(float tpf) {
+		simulate(tpf);
+		render(1f);
+	}
+	
+	/* 
+	 * Update player logic (no allocation : only scratch objects are used)
+	 */
+	public void simulate(float tpf) {
+		long start = FrameTimings.begin();
+		move(tpf);
+		fireWeapon(tpf);
+		FrameTimings.end(FrameTimings.Phase.PLAYER_UPDATE, start);
+	}
+	
+	/*
+	 * Movement part of a tick only, the weapon is left as it is. Replaying
+	 * inputs already simulated must not fire them again.
+	 */
+	public void simulateMovement(float tpf) {
+		long start = FrameTimings.begin();
+		move(tpf);
+		FrameTimings.end(FrameTimings.Phase.PLAYER_UPDATE, start);
+	}
+	
+	private void move(float tpf) {
+		previousPosition.set(position);
+		if (jumpRequested) {
+			jumpRequested = false;
+			startJump();
+		}
+		
+		if (character != null) {
+			moveCharacter();
+		} else {
+			moveAndCollide(tpf);
+		}
+	}
+	
+	/*
+	 * Horizontal movement wanted by the inputs during a time step, written in movement
+	 */
+	private void computeMovement(float step) {
 		// Calculate directions of movement based on the angles of the camera
-		Vector3f forward = getCameraDirection();
-		Vector3f right = forward.cross(Vector3f.UNIT_Y).normalize();
+		computeCameraDirection(forward);
+		forward.cross(Vector3f.UNIT_Y, right).normalizeLocal();
 		
 		// Apply horizontal movement
-		Vector3f movement = new Vector3f(0, 0, 0);
+		movement.set(0, 0, 0);
 		
-		if (moveStates[0]) movement.addLocal(forward.mult(moveSpeed * tpf));
-		if (moveStates[1]) movement.addLocal(right.mult(-moveSpeed * tpf));
-		if (moveStates[2]) movement.addLocal(forward.mult(-moveSpeed * tpf));
-		if (moveStates[3]) movement.addLocal(right.mult(moveSpeed * tpf));
+		if (moveStates[0]) movement.scaleAdd(moveSpeed * step, forward, movement);
+		if (moveStates[1]) movement.scaleAdd(-moveSpeed * step, right, movement);
+		if (moveStates[2]) movement.scaleAdd(-moveSpeed * step, forward, movement);
+		if (moveStates[3]) movement.scaleAdd(moveSpeed * step, right, movement);
+	}
+	
+	/*
+	 * Physics backend : give the walk direction to the character, the physics
+	 * step moves it (gravity and collisions included)
+	 */
+	private void moveCharacter() {
+		computeMovement(physics.getStepTime());
+		character.setWalkDirection(movement);
+		character.getPhysicsLocation(position);
+		isOnGround = character.onGround();
+	}
+	
+	/*
+	 * Simple backend : integrate the movement and check it against the collider of the map
+	 */
+	private void moveAndCollide(float tpf) {
+		computeMovement(tpf);
 		
 		// Apply gravity
 		if (!isOnGround) velocity.y += gravity * tpf;
 		
 		// Calculate new position
-		Vector3f newPosition = position.add(movement).add(velocity.mult(tpf));
+		newPosition.set(position).addLocal(movement);
+		newPosition.x += velocity.x * tpf;
+		newPosition.y += velocity.y * tpf;
+		newPosition.z += velocity.z * tpf;
 		// Verify collisions with map
-		if (gameMap.isPositionValid(newPosition, playerWidth)) {
+		long collisionStart = FrameTimings.begin();
+		boolean valid = !collider.checkCollision(newPosition.x, newPosition.y, newPosition.z, playerWidth / 2);
+		float groundHeight = valid ? collider.getGroundHeightAt(newPosition.x, newPosition.z) + playerHeight / 2 : 0f;
+		FrameTimings.end(FrameTimings.Phase.COLLISION, collisionStart);
+		if (valid) {
 			position.x = newPosition.x;
 			position.z = newPosition.z;
 			// Collisions with ground
-			float groundHeight = gameMap.getGroundHeightAt(newPosition) + playerHeight / 2;
 			if (newPosition.y <= groundHeight) {
 				if (newPosition.y >= groundHeight - 1f) {
 					position.y = groundHeight;
@@ -147,27 +286,78 @@ public class Player implements ActionListener, AnalogListener {
 			}
 			
 		} 
+ 	}
+	
+	/*
+	 * Queue the shots of the tick, from the eyes of the player toward the aim of the camera
+	 */
+	private void fireWeapon(float step) {
+		int shots = weapon.advance(step, triggerHeld);
+		boolean throwing = throwRequested && projectiles != null;
+		throwRequested = false;
+		if ((shots == 0 || hitscan == null) && !throwing) {
+			return;
+		}
+		yawRotation.fromAngleNormalAxis(horizontalAngle, Vector3f.UNIT_Y);
+		pitchRotation.fromAngleNormalAxis(verticalAngle, Vector3f.UNIT_X);
+		yawRotation.mult(pitchRotation, cameraRotation);
+		cameraRotation.mult(FORWARD_AXIS, aim).normalizeLocal();
+		
+		if (throwing) {
+			projectiles.spawn(ProjectileSystem.Kind.GRENADE, position.x, position.y + EYE_HEIGHT, position.z,
+					aim.x, aim.y, aim.z);
+		}
+		if (hitscan == null) {
+			return;
+		}
+		for (int i = 0; i < shots; i++) {
+			weapon.scatter(aim, shotDirection);
+			hitscan.queue(this, position.x, position.y + EYE_HEIGHT, position.z, shotDirection,
+					weapon.getRange(), weapon.getDamage());
+		}
+	}
+	
+	/*
+	 * Hit by a shot : back to the spawn point with full health when dead
+	 */
+	public void applyDamage(float damage) {
+		health -= damage;
+		if (health <= 0f) {
+			deaths++;
+			health = MAX_HEALTH;
+			setPosition(gameMap.getPlayerSpawnPosition());
+		}
+	}
+	
+	/*
+	 * Place the model and the camera between the last two simulated states
+	 */
+	public void render(float alpha) {
+		renderPosition.set(previousPosition).interpolateLocal(position, alpha);
 		
-
 		updatePlayerPosition();
 		
 		// update camera to follow the player
-		updateCamera();
- 	}
+		if (localControl) {
+			updateCamera();
+		}
+	}
 	
-	private Vector3f getCameraDirection() {
-		Quaternion yawRotation = new Quaternion();
-		yawRotation.fromAngleAxis(horizontalAngle, Vector3f.UNIT_Y);
+	/*
+	 * Horizontal direction the camera looks at, written in store
+	 */
+	private Vector3f computeCameraDirection(Vector3f store) {
+		yawRotation.fromAngleNormalAxis(horizontalAngle, Vector3f.UNIT_Y);
 		
-		Vector3f forward = yawRotation.mult(Vector3f.UNIT_Z.negate());
-		return forward.normalize();
+		yawRotation.mult(FORWARD_AXIS, store);
+		return store.normalizeLocal();
 	}
 	
 	/*
 	 * Update model player position 
 	 */
 	private void updatePlayerPosition() {
-		playerNode.setLocalTranslation(position);
+		playerNode.setLocalTranslation(renderPosition);
 	}
 	
 	/*
@@ -176,26 +366,23 @@ public class Player implements ActionListener, AnalogListener {
 	private void updateCamera() {
 		
 		// Create rotations for camera
-		Quaternion yawRotation = new Quaternion();
-		Quaternion pitchRotation = new Quaternion();
-		
-		yawRotation.fromAngleAxis(horizontalAngle, Vector3f.UNIT_Y);
-		pitchRotation.fromAngleAxis(verticalAngle, Vector3f.UNIT_X);
+		yawRotation.fromAngleNormalAxis(horizontalAngle, Vector3f.UNIT_Y);
+		pitchRotation.fromAngleNormalAxis(verticalAngle, Vector3f.UNIT_X);
 		
 		// Combine rotations
-		Quaternion cameraRotation = yawRotation.mult(pitchRotation);
+		yawRotation.mult(pitchRotation, cameraRotation);
 		
 		// Position the camera behind the player
-		Vector3f cameraOffset = cameraRotation.mult(new Vector3f(0, 2.5f, 5f));
-		Vector3f cameraPosition = position.add(cameraOffset);
+		cameraRotation.mult(CAMERA_OFFSET, cameraPosition);
+		cameraPosition.addLocal(renderPosition);
 		
 		// Direction of the view
-		Vector3f lookDirection = cameraRotation.mult(Vector3f.UNIT_Z.negate());
-		Vector3f lookAt = position.add(lookDirection);
+		cameraRotation.mult(FORWARD_AXIS, lookAtPosition);
+		lookAtPosition.addLocal(renderPosition);
 		
 		// Apply to the camera
 		app.getCamera().setLocation(cameraPosition);
-		app.getCamera().lookAt(lookAt, Vector3f.UNIT_Y);
+		app.getCamera().lookAt(lookAtPosition, Vector3f.UNIT_Y);
 	}
 	
 	@Override
@@ -214,11 +401,18 @@ public class Player implements ActionListener, AnalogListener {
 			moveStates[3] = isPressed;
 			break;
 		case "Jump":
-			if (isPressed && isOnGround) {
-				velocity.y = jumpSpeed;
-				isOnGround = false;
+			if (isPressed) {
+				jump();
 			}
 			break;	
+		case "Fire":
+			triggerHeld = isPressed;
+			break;
+		case "Throw":
+			if (isPressed) {
+				throwGrenade();
+			}
+			break;
 		}
 	}
 	
@@ -247,18 +441,62 @@ public class Player implements ActionListener, AnalogListener {
 		}
 	}
 	
+	// Scripted input (bots, headless simulation, network)
+	
+	/*
+	 * Set a movement key state : 0 forward, 1 left, 2 backward, 3 right
+	 */
+	public void setMoveState(int direction, boolean active) {
+		moveStates[direction] = active;
+	}
+	
+	/*
+	 * Jump on the next simulation tick if the player stands on the ground then
+	 */
+	public void jump() {
+		jumpRequested = true;
+	}
+	
+	private void startJump() {
+		if (character != null) {
+			if (character.onGround()) {
+				character.jump(jumpImpulse.set(0, jumpSpeed, 0));
+			}
+		} else if (isOnGround) {
+			velocity.y = jumpSpeed;
+			isOnGround = false;
+		}
+	}
+	
+	public void setHorizontalAngle(float horizontalAngle) {
+		this.horizontalAngle = horizontalAngle;
+	}
+	
+	public void setVerticalAngle(float verticalAngle) {
+		this.verticalAngle = FastMath.clamp(verticalAngle, maxLookDown, maxLookUp);
+	}
+	
 	/*
 	 * Cleanup player resources
 	 */
 	public void cleanup() {
 		app.getRootNode().detachChild(playerNode);
+		if (character != null) {
+			physics.removeCharacter(character);
+			character = null;
+		}
 		
+		if (!localControl) {
+			return;
+		}
 		InputManager inputManager = app.getInputManager();
 		inputManager.deleteMapping("Move Forward");
 		inputManager.deleteMapping("Move Backward");
 		inputManager.deleteMapping("Strafe Left");
 		inputManager.deleteMapping("Strafe Right");
 		inputManager.deleteMapping("Jump");
+		inputManager.deleteMapping("Fire");
+		inputManager.deleteMapping("Throw");
 		inputManager.deleteMapping("Mouse X");
 		inputManager.deleteMapping("Mouse X-");
 		inputManager.deleteMapping("Mouse Y");
@@ -273,14 +511,112 @@ public class Player implements ActionListener, AnalogListener {
 		return position.clone();
 	}
 	
+	/*
+	 * Copy the player position in store (no allocation)
+	 */
+	public Vector3f getPosition(Vector3f store) {
+		return store.set(position);
+	}
+	
 	/* 
 	 * Set a new position
 	 */
 	public void setPosition(Vector3f newPosition) {
 		this.position = newPosition.clone();
+		if (character != null) {
+			character.warp(position);
+		}
+		// Teleport : no interpolation from the old position
+		previousPosition.set(position);
+		renderPosition.set(position);
 		updatePlayerPosition();
 	}
 	
+	/*
+	 * Shots are queued in this system, null to disable the weapon
+	 */
+	public void setHitscan(HitscanSystem hitscan) {
+		this.hitscan = hitscan;
+	}
+	
+	/*
+	 * Grenades are launched in this pool, null to disable them
+	 */
+	public void setProjectiles(ProjectileSystem projectiles) {
+		this.projectiles = projectiles;
+	}
+	
+	/*
+	 * Launch a grenade toward the aim on the next simulation tick
+	 */
+	public void throwGrenade() {
+		throwRequested = true;
+	}
+	
+	public void setWeapon(HitscanWeapon weapon) {
+		this.weapon = weapon;
+	}
+	
+	public void setTriggerHeld(boolean triggerHeld) {
+		this.triggerHeld = triggerHeld;
+	}
+	
+	public boolean isTriggerHeld() {
+		return triggerHeld;
+	}
+	
+	/*
+	 * Movement key state : 0 forward, 1 left, 2 backward, 3 right
+	 */
+	public boolean getMoveState(int direction) {
+		return moveStates[direction];
+	}
+	
+	public boolean isJumpRequested() {
+		return jumpRequested;
+	}
+	
+	public boolean isThrowRequested() {
+		return throwRequested;
+	}
+	
+	public float getVelocityY() {
+		return velocity.y;
+	}
+	
+	public boolean isOnGround() {
+		return isOnGround;
+	}
+	
+	/*
+	 * Put the player back in a simulated state (network reconciliation), no
+	 * allocation and no interpolation reset : the next ticks are simulated from it
+	 */
+	public void restoreMovement(float x, float y, float z, float velocityY, boolean onGround) {
+		position.set(x, y, z);
+		velocity.set(0f, velocityY, 0f);
+		isOnGround = onGround;
+		if (character != null) {
+			character.warp(position);
+		}
+	}
+	
+	public float getHealth() {
+		return health;
+	}
+	
+	public int getDeaths() {
+		return deaths;
+	}
+	
+	public float getWidth() {
+		return playerWidth;
+	}
+	
+	public float getHeight() {
+		return playerHeight;
+	}
+	
 	public float getHorizontalAngle() {
 		return horizontalAngle;
 	}
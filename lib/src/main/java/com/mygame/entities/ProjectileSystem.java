@@ -0,0 +1,299 @@
+package com.mygame.entities;
+
+import com.mygame.world.Map;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.stream.IntStream;
+
+/*
+ * Pool of physical projectiles (grenades, rockets, slow bullets) stored in
+ * primitive arrays. Slots are recycled through a free list and every buffer
+ * is allocated up front, so spawning and stepping never allocate.
+ *
+ * One step moves every live projectile in a single loop : gravity, then a
+ * swept test of the move against the map (Map.sweep) so fast projectiles
+ * can't tunnel through thin objects. Large pools are stepped in parallel,
+ * each slot only being written by its own iteration. All projectiles are
+ * drawn as one point mesh rewritten by updateMesh().
+ */
+public class ProjectileSystem {
+
+	public enum Kind {
+		// speed (units/s), gravity scale, lifetime (s), sticks on impact instead of dying
+		GRENADE(18f, 1f, 3f, true, new ColorRGBA(0.2f, 0.8f, 0.2f, 1f)),
+		ROCKET(35f, 0f, 4f, false, new ColorRGBA(1f, 0.5f, 0.1f, 1f)),
+		SLOW_BULLET(60f, 0.2f, 2f, false, new ColorRGBA(1f, 1f, 0.3f, 1f));
+
+		public final float speed;
+		final float gravityScale;
+		final float lifetime;
+		final boolean sticky;
+		final ColorRGBA color;
+
+		Kind(float speed, float gravityScale, float lifetime, boolean sticky, ColorRGBA color) {
+			this.speed = speed;
+			this.gravityScale = gravityScale;
+			this.lifetime = lifetime;
+			this.sticky = sticky;
+			this.color = color;
+		}
+	}
+
+	private static final Kind[] KINDS = Kind.values();
+	private static final float GRAVITY = -30f; // same as the players
+	private static final int PARALLEL_THRESHOLD = 4096;
+	private static final float POINT_SIZE = 4f;
+	// Life of a projectile that died on an impact (expired ones are slightly below 0)
+	private static final float IMPACT = -1000f;
+
+	private final Map gameMap;
+	private final int capacity;
+	private final float mapLimit; // projectiles leaving the map die
+
+	// Slots [0, highWater) may be alive
+	private final float[] x, y, z;
+	private final float[] velocityX, velocityY, velocityZ;
+	private final float[] life; // seconds left, <= 0 once dead
+	private final byte[] kind;
+	private final boolean[] alive;
+	private final boolean[] resting; // stuck grenade waiting for its fuse
+	private final int[] freeSlots;
+	private int freeCount = 0;
+	private int highWater = 0;
+	private int liveCount = 0;
+	private float gravityStep; // gravity of the current step, read by the parallel loop
+
+	// Point mesh, positions and colors of the live projectiles
+	private final Mesh mesh;
+	private final Geometry geometry;
+	private final FloatBuffer positions;
+	private final FloatBuffer colors;
+
+	// Statistics
+	private long spawned = 0;
+	private long dropped = 0;
+	private long impacts = 0;
+
+	/*
+	 * Pool of capacity projectiles, drawn with a material of the asset manager
+	 * (null for a pool without visuals, headless simulation)
+	 */
+	public ProjectileSystem(Map gameMap, int capacity, AssetManager assetManager) {
+		this.gameMap = gameMap;
+		this.capacity = capacity;
+		this.mapLimit = gameMap.getMapSize() / 2;
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+		velocityX = new float[capacity];
+		velocityY = new float[capacity];
+		velocityZ = new float[capacity];
+		life = new float[capacity];
+		kind = new byte[capacity];
+		alive = new boolean[capacity];
+		resting = new boolean[capacity];
+		freeSlots = new int[capacity];
+
+		if (assetManager == null) {
+			mesh = null;
+			geometry = null;
+			positions = null;
+			colors = null;
+			return;
+		}
+		positions = BufferUtils.createFloatBuffer(capacity * 3);
+		colors = BufferUtils.createFloatBuffer(capacity * 4);
+		mesh = new Mesh();
+		mesh.setMode(Mesh.Mode.Points);
+		mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+		mesh.setBuffer(VertexBuffer.Type.Color, 4, colors);
+		mesh.getBuffer(VertexBuffer.Type.Position).setUsage(VertexBuffer.Usage.Stream);
+		mesh.getBuffer(VertexBuffer.Type.Color).setUsage(VertexBuffer.Usage.Stream);
+		positions.limit(0);
+		colors.limit(0);
+		mesh.updateCounts();
+
+		Material material = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+		material.setBoolean("VertexColor", true);
+		material.setFloat("PointSize", POINT_SIZE);
+		geometry = new Geometry("Projectiles", mesh);
+		geometry.setMaterial(material);
+		// Projectiles are all over the map, the bound is never recomputed
+		geometry.setCullHint(Spatial.CullHint.Never);
+	}
+
+	/*
+	 * Launch a projectile in a normalized direction, return its slot or -1 if the pool is full
+	 */
+	public int spawn(Kind projectileKind, float px, float py, float pz, float dx, float dy, float dz) {
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else if (highWater < capacity) {
+			slot = highWater;
+		} else {
+			dropped++;
+			return -1;
+		}
+		highWater = Math.max(highWater, slot + 1);
+
+		float speed = projectileKind.speed;
+		x[slot] = px;
+		y[slot] = py;
+		z[slot] = pz;
+		velocityX[slot] = dx * speed;
+		velocityY[slot] = dy * speed;
+		velocityZ[slot] = dz * speed;
+		life[slot] = projectileKind.lifetime;
+		kind[slot] = (byte) projectileKind.ordinal();
+		alive[slot] = true;
+		resting[slot] = false;
+		liveCount++;
+		spawned++;
+		return slot;
+	}
+
+	/*
+	 * Move every projectile by a simulation step, then recycle the dead ones
+	 */
+	public void step(float dt) {
+		if (liveCount == 0) {
+			return;
+		}
+		gravityStep = GRAVITY * dt;
+		if (liveCount >= PARALLEL_THRESHOLD) {
+			IntStream.range(0, highWater).parallel().forEach(i -> move(i, dt));
+		} else {
+			for (int i = 0; i < highWater; i++) {
+				move(i, dt);
+			}
+		}
+
+		// Free the slots of the dead, the free list is only touched here
+		for (int i = 0; i < highWater; i++) {
+			if (alive[i] && life[i] <= 0f) {
+				if (life[i] == IMPACT) {
+					impacts++;
+				}
+				alive[i] = false;
+				freeSlots[freeCount++] = i;
+				liveCount--;
+			}
+		}
+		while (highWater > 0 && !alive[highWater - 1]) {
+			highWater--;
+		}
+	}
+
+	/*
+	 * One projectile step, only writes slot i
+	 */
+	private void move(int i, float dt) {
+		if (!alive[i]) {
+			return;
+		}
+		life[i] -= dt;
+		if (life[i] <= 0f || resting[i]) {
+			return;
+		}
+		Kind k = KINDS[kind[i]];
+		float vx = velocityX[i], vy = velocityY[i] + gravityStep * k.gravityScale, vz = velocityZ[i];
+
+		float dx = vx * dt, dy = vy * dt, dz = vz * dt;
+		float fraction = gameMap.sweep(x[i], y[i], z[i], dx, dy, dz);
+		x[i] += dx * fraction;
+		y[i] += dy * fraction;
+		z[i] += dz * fraction;
+
+		if (fraction < 1f) {
+			if (k.sticky) {
+				resting[i] = true;
+			} else {
+				life[i] = IMPACT;
+			}
+		} else if (Math.abs(x[i]) > mapLimit || Math.abs(z[i]) > mapLimit) {
+			life[i] = 0f;
+		}
+		velocityX[i] = vx;
+		velocityY[i] = vy;
+		velocityZ[i] = vz;
+	}
+
+	/*
+	 * Write the live projectiles in the point mesh, render thread only
+	 */
+	public void updateMesh() {
+		if (mesh == null) {
+			return;
+		}
+		positions.clear();
+		colors.clear();
+		for (int i = 0; i < highWater; i++) {
+			if (alive[i]) {
+				positions.put(x[i]).put(y[i]).put(z[i]);
+				ColorRGBA color = KINDS[kind[i]].color;
+				colors.put(color.r).put(color.g).put(color.b).put(color.a);
+			}
+		}
+		positions.flip();
+		colors.flip();
+		mesh.getBuffer(VertexBuffer.Type.Position).updateData(positions);
+		mesh.getBuffer(VertexBuffer.Type.Color).updateData(colors);
+		mesh.updateCounts();
+	}
+
+	/*
+	 * Kill every projectile
+	 */
+	public void clear() {
+		for (int i = 0; i < highWater; i++) {
+			alive[i] = false;
+		}
+		freeCount = 0;
+		highWater = 0;
+		liveCount = 0;
+		updateMesh();
+	}
+
+	/*
+	 * Point mesh of the projectiles, null without visuals
+	 */
+	public Geometry getGeometry() {
+		return geometry;
+	}
+
+	public int getLiveCount() {
+		return liveCount;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getSpawnedCount() {
+		return spawned;
+	}
+
+	/*
+	 * Spawns refused because the pool was full
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	/*
+	 * Projectiles that died on an impact (sticky ones excluded)
+	 */
+	public long getImpactCount() {
+		return impacts;
+	}
+}
@@ -0,0 +1,429 @@
+package com.mygame.interest;
+
+import com.mygame.world.Map;
+
+import java.util.Arrays;
+
+/*
+ * Area of interest over the XZ plane of a map : entities (players, bots...)
+ * are registered by handle in a uniform grid, and observers among them get
+ * the set of entities around them. The sets are updated incrementally, only
+ * when an entity or an observer changes cell, by visiting the observers and
+ * cells near the move instead of every pair.
+ *
+ * An entity enters a set within the view distance (in cells, Chebyshev) and
+ * leaves it one cell further, so an entity walking along a cell border does
+ * not flicker in and out. Positions outside the grid are clamped to the
+ * border cells, like SpatialGrid.
+ *
+ * Sets are for network replication, the radius queries for perception. All
+ * changes come from one thread, queries can run from any number of threads
+ * while nothing moves (for example during a parallel bot tick).
+ */
+public class InterestManager {
+
+	// Upper bound of cells per axis, the cell size grows with the area instead
+	private static final int MAX_CELLS_PER_AXIS = 256;
+	private static final int NONE = -1;
+
+	private final float originX;
+	private final float originZ;
+	private final float cellSize;
+	private final float invCellSize;
+	private final int cellsX;
+	private final int cellsZ;
+	// Cells around an observer where entities enter and leave its set
+	private final int enterRadius;
+	private final int leaveRadius;
+
+	// Entities and observers of each cell : heads of intrusive linked lists
+	private final int[] cellEntities;
+	private final int[] cellObservers;
+	private final int[] entityNext, entityPrevious;
+	private final int[] observerNext, observerPrevious;
+
+	// Entity state by handle, cell NONE for a free handle
+	private final int capacity;
+	private final int[] entityCell;
+	private final float[] entityX, entityZ;
+	private final InterestSet[] sets; // null if the entity does not observe
+	private final int[] freeHandles;
+	private int freeCount = 0;
+	private int usedHandles = 0;
+	private int entityCount = 0;
+	private int observerCount = 0;
+
+	// Statistics
+	private long cellChanges = 0;
+	private long setChanges = 0;
+
+	/*
+	 * Grid over an area of the XZ plane, view distance in world units
+	 */
+	public InterestManager(float originX, float originZ, float width, float depth, float preferredCellSize,
+			float viewDistance, int capacity) {
+		float largestSide = Math.max(width, depth);
+		this.cellSize = Math.max(preferredCellSize, largestSide / MAX_CELLS_PER_AXIS);
+		this.invCellSize = 1f / cellSize;
+		this.originX = originX;
+		this.originZ = originZ;
+		this.cellsX = Math.max(1, (int) Math.ceil(width / cellSize));
+		this.cellsZ = Math.max(1, (int) Math.ceil(depth / cellSize));
+		this.enterRadius = Math.max(1, (int) Math.ceil(viewDistance / cellSize));
+		this.leaveRadius = enterRadius + 1;
+
+		this.cellEntities = new int[cellsX * cellsZ];
+		this.cellObservers = new int[cellsX * cellsZ];
+		Arrays.fill(cellEntities, NONE);
+		Arrays.fill(cellObservers, NONE);
+		this.capacity = capacity;
+		this.entityNext = new int[capacity];
+		this.entityPrevious = new int[capacity];
+		this.observerNext = new int[capacity];
+		this.observerPrevious = new int[capacity];
+		this.entityCell = new int[capacity];
+		Arrays.fill(entityCell, NONE);
+		this.entityX = new float[capacity];
+		this.entityZ = new float[capacity];
+		this.sets = new InterestSet[capacity];
+		this.freeHandles = new int[capacity];
+	}
+
+	/*
+	 * Grid over the ground of a map
+	 */
+	public InterestManager(Map gameMap, float preferredCellSize, float viewDistance, int capacity) {
+		this(-gameMap.getMapSize() / 2, -gameMap.getMapSize() / 2, gameMap.getMapSize(), gameMap.getMapSize(),
+				preferredCellSize, viewDistance, capacity);
+	}
+
+	/*
+	 * Register an entity at a position, return its handle or -1 if full. It
+	 * joins the sets of the observers around it at once
+	 */
+	public int add(float x, float z) {
+		int handle;
+		if (freeCount > 0) {
+			handle = freeHandles[--freeCount];
+		} else if (usedHandles < capacity) {
+			handle = usedHandles++;
+		} else {
+			return NONE;
+		}
+		int cell = cellOf(x, z);
+		entityX[handle] = x;
+		entityZ[handle] = z;
+		entityCell[handle] = cell;
+		linkEntity(handle, cell);
+		entityCount++;
+		updateObserversAround(handle, cell, cell);
+		return handle;
+	}
+
+	/*
+	 * Unregister an entity, it leaves every set and stops observing
+	 */
+	public void remove(int handle) {
+		int cell = entityCell[handle];
+		if (cell == NONE) {
+			return;
+		}
+		unobserve(handle);
+		int cx = cell % cellsX, cz = cell / cellsX;
+		for (int z = Math.max(0, cz - leaveRadius); z <= Math.min(cellsZ - 1, cz + leaveRadius); z++) {
+			for (int x = Math.max(0, cx - leaveRadius); x <= Math.min(cellsX - 1, cx + leaveRadius); x++) {
+				for (int o = cellObservers[z * cellsX + x]; o != NONE; o = observerNext[o]) {
+					if (sets[o].remove(handle)) {
+						setChanges++;
+					}
+				}
+			}
+		}
+		unlinkEntity(handle, cell);
+		entityCell[handle] = NONE;
+		freeHandles[freeCount++] = handle;
+		entityCount--;
+	}
+
+	/*
+	 * New position of an entity, the sets only change when it crosses a cell
+	 */
+	public void move(int handle, float x, float z) {
+		entityX[handle] = x;
+		entityZ[handle] = z;
+		int oldCell = entityCell[handle];
+		int newCell = cellOf(x, z);
+		if (newCell == oldCell) {
+			return;
+		}
+		cellChanges++;
+		unlinkEntity(handle, oldCell);
+		linkEntity(handle, newCell);
+		entityCell[handle] = newCell;
+		if (sets[handle] != null) {
+			unlinkObserver(handle, oldCell);
+			linkObserver(handle, newCell);
+			updateOwnSet(handle, oldCell, newCell);
+		}
+		updateObserversAround(handle, oldCell, newCell);
+	}
+
+	/*
+	 * Make an entity an observer, return its set filled with the entities around it
+	 */
+	public InterestSet observe(int handle) {
+		if (sets[handle] != null) {
+			return sets[handle];
+		}
+		InterestSet set = new InterestSet(capacity);
+		sets[handle] = set;
+		int cell = entityCell[handle];
+		linkObserver(handle, cell);
+		observerCount++;
+		int cx = cell % cellsX, cz = cell / cellsX;
+		for (int z = Math.max(0, cz - enterRadius); z <= Math.min(cellsZ - 1, cz + enterRadius); z++) {
+			for (int x = Math.max(0, cx - enterRadius); x <= Math.min(cellsX - 1, cx + enterRadius); x++) {
+				for (int e = cellEntities[z * cellsX + x]; e != NONE; e = entityNext[e]) {
+					set.add(e);
+				}
+			}
+		}
+		setChanges += set.size();
+		return set;
+	}
+
+	public void unobserve(int handle) {
+		InterestSet set = sets[handle];
+		if (set == null) {
+			return;
+		}
+		unlinkObserver(handle, entityCell[handle]);
+		set.clear();
+		sets[handle] = null;
+		observerCount--;
+	}
+
+	/*
+	 * An entity moved from a cell to another (or appeared) : it enters the
+	 * sets of the observers now close enough and leaves the sets of those now
+	 * too far. Observers between the two radiuses keep it as it was
+	 */
+	private void updateObserversAround(int handle, int oldCell, int newCell) {
+		int ox = oldCell % cellsX, oz = oldCell / cellsX;
+		int nx = newCell % cellsX, nz = newCell / cellsX;
+		// Observers that may have it : around the old cell
+		for (int z = Math.max(0, oz - leaveRadius); z <= Math.min(cellsZ - 1, oz + leaveRadius); z++) {
+			for (int x = Math.max(0, ox - leaveRadius); x <= Math.min(cellsX - 1, ox + leaveRadius); x++) {
+				int distance = Math.max(Math.abs(x - nx), Math.abs(z - nz));
+				for (int o = cellObservers[z * cellsX + x]; o != NONE; o = observerNext[o]) {
+					if (distance <= enterRadius ? sets[o].add(handle) : distance > leaveRadius && sets[o].remove(handle)) {
+						setChanges++;
+					}
+				}
+			}
+		}
+		// Observers that may get it : around the new cell, the ones visited above are done
+		for (int z = Math.max(0, nz - enterRadius); z <= Math.min(cellsZ - 1, nz + enterRadius); z++) {
+			for (int x = Math.max(0, nx - enterRadius); x <= Math.min(cellsX - 1, nx + enterRadius); x++) {
+				if (Math.max(Math.abs(x - ox), Math.abs(z - oz)) <= leaveRadius) {
+					continue;
+				}
+				for (int o = cellObservers[z * cellsX + x]; o != NONE; o = observerNext[o]) {
+					if (sets[o].add(handle)) {
+						setChanges++;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * An observer moved from a cell to another : the entities of the cells
+	 * it left behind leave its set, those of the cells it reached enter it
+	 */
+	private void updateOwnSet(int handle, int oldCell, int newCell) {
+		InterestSet set = sets[handle];
+		int ox = oldCell % cellsX, oz = oldCell / cellsX;
+		int nx = newCell % cellsX, nz = newCell / cellsX;
+		for (int z = Math.max(0, oz - leaveRadius); z <= Math.min(cellsZ - 1, oz + leaveRadius); z++) {
+			for (int x = Math.max(0, ox - leaveRadius); x <= Math.min(cellsX - 1, ox + leaveRadius); x++) {
+				if (Math.max(Math.abs(x - nx), Math.abs(z - nz)) <= leaveRadius) {
+					continue;
+				}
+				for (int e = cellEntities[z * cellsX + x]; e != NONE; e = entityNext[e]) {
+					if (set.remove(e)) {
+						setChanges++;
+					}
+				}
+			}
+		}
+		for (int z = Math.max(0, nz - enterRadius); z <= Math.min(cellsZ - 1, nz + enterRadius); z++) {
+			for (int x = Math.max(0, nx - enterRadius); x <= Math.min(cellsX - 1, nx + enterRadius); x++) {
+				if (Math.max(Math.abs(x - ox), Math.abs(z - oz)) <= enterRadius) {
+					continue;
+				}
+				for (int e = cellEntities[z * cellsX + x]; e != NONE; e = entityNext[e]) {
+					if (set.add(e)) {
+						setChanges++;
+					}
+				}
+			}
+		}
+	}
+
+	// Perception queries, read only
+
+	/*
+	 * Entities within a distance of a point, handles written in out (at most
+	 * out.length), return how many were written
+	 */
+	public int query(float x, float z, float range, int[] out) {
+		int found = 0;
+		float rangeSquared = range * range;
+		int endX = cellX(x + range), endZ = cellZ(z + range);
+		for (int cz = cellZ(z - range); cz <= endZ; cz++) {
+			for (int cx = cellX(x - range); cx <= endX; cx++) {
+				for (int e = cellEntities[cz * cellsX + cx]; e != NONE; e = entityNext[e]) {
+					float dx = entityX[e] - x, dz = entityZ[e] - z;
+					if (dx * dx + dz * dz <= rangeSquared) {
+						if (found == out.length) {
+							return found;
+						}
+						out[found++] = e;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/*
+	 * Closest entity within a distance of a point other than exclude (-1 for
+	 * none), -1 if there is none
+	 */
+	public int nearest(float x, float z, float range, int exclude) {
+		int nearest = NONE;
+		float best = range * range;
+		int endX = cellX(x + range), endZ = cellZ(z + range);
+		for (int cz = cellZ(z - range); cz <= endZ; cz++) {
+			for (int cx = cellX(x - range); cx <= endX; cx++) {
+				for (int e = cellEntities[cz * cellsX + cx]; e != NONE; e = entityNext[e]) {
+					float dx = entityX[e] - x, dz = entityZ[e] - z;
+					float distance = dx * dx + dz * dz;
+					if (distance <= best && e != exclude) {
+						best = distance;
+						nearest = e;
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	// Intrusive lists
+
+	private void linkEntity(int handle, int cell) {
+		int head = cellEntities[cell];
+		entityNext[handle] = head;
+		entityPrevious[handle] = NONE;
+		if (head != NONE) {
+			entityPrevious[head] = handle;
+		}
+		cellEntities[cell] = handle;
+	}
+
+	private void unlinkEntity(int handle, int cell) {
+		int next = entityNext[handle], previous = entityPrevious[handle];
+		if (previous == NONE) {
+			cellEntities[cell] = next;
+		} else {
+			entityNext[previous] = next;
+		}
+		if (next != NONE) {
+			entityPrevious[next] = previous;
+		}
+	}
+
+	private void linkObserver(int handle, int cell) {
+		int head = cellObservers[cell];
+		observerNext[handle] = head;
+		observerPrevious[handle] = NONE;
+		if (head != NONE) {
+			observerPrevious[head] = handle;
+		}
+		cellObservers[cell] = handle;
+	}
+
+	private void unlinkObserver(int handle, int cell) {
+		int next = observerNext[handle], previous = observerPrevious[handle];
+		if (previous == NONE) {
+			cellObservers[cell] = next;
+		} else {
+			observerNext[previous] = next;
+		}
+		if (next != NONE) {
+			observerPrevious[next] = previous;
+		}
+	}
+
+	// Cell lookups, coordinates are clamped to the grid
+
+	private int cellOf(float x, float z) {
+		return cellZ(z) * cellsX + cellX(x);
+	}
+
+	private int cellX(float x) {
+		int cx = (int) Math.floor((x - originX) * invCellSize);
+		return cx < 0 ? 0 : (cx >= cellsX ? cellsX - 1 : cx);
+	}
+
+	private int cellZ(float z) {
+		int cz = (int) Math.floor((z - originZ) * invCellSize);
+		return cz < 0 ? 0 : (cz >= cellsZ ? cellsZ - 1 : cz);
+	}
+
+	/*
+	 * Set of an observer, null if the entity does not observe
+	 */
+	public InterestSet getInterest(int handle) {
+		return sets[handle];
+	}
+
+	public float getX(int handle) {
+		return entityX[handle];
+	}
+
+	public float getZ(int handle) {
+		return entityZ[handle];
+	}
+
+	public int getEntityCount() {
+		return entityCount;
+	}
+
+	public int getObserverCount() {
+		return observerCount;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/*
+	 * Entities and observers that crossed a cell border
+	 */
+	public long getCellChangeCount() {
+		return cellChanges;
+	}
+
+	/*
+	 * Entities that entered or left a set
+	 */
+	public long getSetChangeCount() {
+		return setChanges;
+	}
+}
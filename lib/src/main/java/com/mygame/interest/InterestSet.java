@@ -0,0 +1,65 @@
+package com.mygame.interest;
+
+import java.util.Arrays;
+
+/*
+ * Entities relevant to one observer, kept up to date by the InterestManager.
+ * Members are entity handles in no particular order. A slot per handle gives
+ * constant time membership tests, adds and removes.
+ */
+public class InterestSet {
+
+	private final int[] members;
+	private final int[] slots; // index in members of each handle, -1 if absent
+	private int size = 0;
+
+	InterestSet(int capacity) {
+		members = new int[capacity];
+		slots = new int[capacity];
+		Arrays.fill(slots, -1);
+	}
+
+	boolean add(int handle) {
+		if (slots[handle] >= 0) {
+			return false;
+		}
+		slots[handle] = size;
+		members[size++] = handle;
+		return true;
+	}
+
+	boolean remove(int handle) {
+		int slot = slots[handle];
+		if (slot < 0) {
+			return false;
+		}
+		// Swap with the last member
+		int last = members[--size];
+		members[slot] = last;
+		slots[last] = slot;
+		slots[handle] = -1;
+		return true;
+	}
+
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			slots[members[i]] = -1;
+		}
+		size = 0;
+	}
+
+	public boolean contains(int handle) {
+		return slots[handle] >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Handle of a member, index below size()
+	 */
+	public int get(int index) {
+		return members[index];
+	}
+}
@@ -0,0 +1,232 @@
+package com.mygame.navigation;
+
+import com.mygame.world.Map;
+
+import java.util.stream.IntStream;
+
+/*
+ * Walkability grid of a map baked once at load time. A cell is walkable when
+ * an agent standing at its center, on the floor (platforms included), does
+ * not collide with the map : the same rules as the players and bots, so the
+ * houses, trees, pillars and perimeter walls block it. Each cell also keeps
+ * its floor height, an agent can step from a cell to a neighbour at most
+ * MAX_CLIMB higher (the ground snap of the movement code) and drop any height.
+ *
+ * The grid is immutable once baked and safe to read from any thread. Objects
+ * moved or removed later are not seen until the grid is baked again.
+ */
+public class NavGrid {
+
+	// Upper bound of cells per axis, the cell size grows with the map instead
+	private static final int MAX_CELLS_PER_AXIS = 512;
+	// Highest step up between two neighbour cells, as the ground snap of Player and BotSystem
+	public static final float MAX_CLIMB = 1f;
+	// Neighbour offsets of the move bits : 4 straight then 4 diagonal
+	static final int[] NEIGHBOUR_X = {1, -1, 0, 0, 1, 1, -1, -1};
+	static final int[] NEIGHBOUR_Z = {0, 0, 1, -1, 1, -1, 1, -1};
+
+	private final float originX;
+	private final float originZ;
+	private final float cellSize;
+	private final float invCellSize;
+	private final int cellsX;
+	private final int cellsZ;
+	private final boolean[] walkable;
+	private final float[] floor;
+	// Bit n set when canMove to neighbour n is allowed, the searches only read these
+	private final byte[] moves;
+	private int walkableCount = 0;
+
+	private NavGrid(float originX, float originZ, float side, float preferredCellSize) {
+		this.cellSize = Math.max(preferredCellSize, side / MAX_CELLS_PER_AXIS);
+		this.invCellSize = 1f / cellSize;
+		this.originX = originX;
+		this.originZ = originZ;
+		this.cellsX = Math.max(1, (int) Math.ceil(side / cellSize));
+		this.cellsZ = cellsX;
+		this.walkable = new boolean[cellsX * cellsZ];
+		this.floor = new float[cellsX * cellsZ];
+		this.moves = new byte[cellsX * cellsZ];
+	}
+
+	/*
+	 * Bake the grid of a loaded map for agents of the given radius and height.
+	 * Rows are tested in parallel on the common pool (collision queries only
+	 * read the map). Streamed chunks are not part of the grid.
+	 */
+	public static NavGrid bake(Map map, float agentRadius, float agentHeight, float preferredCellSize) {
+		float side = map.getMapSize();
+		NavGrid grid = new NavGrid(-side / 2, -side / 2, side, preferredCellSize);
+		IntStream.range(0, grid.cellsZ).parallel().forEach(cz -> {
+			for (int cx = 0; cx < grid.cellsX; cx++) {
+				int cell = cz * grid.cellsX + cx;
+				float x = grid.centerX(cx), z = grid.centerZ(cz);
+				float height = map.getGroundHeightAt(x, z);
+				grid.floor[cell] = height;
+				grid.walkable[cell] = !map.checkCollision(x, height + agentHeight / 2, z, agentRadius);
+			}
+		});
+		for (int cell = 0; cell < grid.walkable.length; cell++) {
+			if (grid.walkable[cell]) {
+				grid.walkableCount++;
+				grid.moves[cell] = grid.computeMoves(cell);
+			}
+		}
+		return grid;
+	}
+
+	// Cell lookups, coordinates are clamped to the grid
+
+	public int cellX(float x) {
+		int cx = (int) Math.floor((x - originX) * invCellSize);
+		return cx < 0 ? 0 : (cx >= cellsX ? cellsX - 1 : cx);
+	}
+
+	public int cellZ(float z) {
+		int cz = (int) Math.floor((z - originZ) * invCellSize);
+		return cz < 0 ? 0 : (cz >= cellsZ ? cellsZ - 1 : cz);
+	}
+
+	public int cellIndex(int cx, int cz) {
+		return cz * cellsX + cx;
+	}
+
+	public int cellAt(float x, float z) {
+		return cellX(x) + cellZ(z) * cellsX;
+	}
+
+	public float centerX(int cx) {
+		return originX + (cx + 0.5f) * cellSize;
+	}
+
+	public float centerZ(int cz) {
+		return originZ + (cz + 0.5f) * cellSize;
+	}
+
+	public boolean isWalkable(int cell) {
+		return walkable[cell];
+	}
+
+	public float getFloor(int cell) {
+		return floor[cell];
+	}
+
+	/*
+	 * An agent can go from a walkable cell to a walkable neighbour
+	 */
+	public boolean canStep(int from, int to) {
+		return walkable[to] && floor[to] - floor[from] <= MAX_CLIMB;
+	}
+
+	/*
+	 * Closest walkable cell to a cell within a square ring search of radius
+	 * cells, -1 if there is none (a goal inside a house is moved out of it)
+	 */
+	public int nearestWalkable(int cell, int radius) {
+		if (walkable[cell]) {
+			return cell;
+		}
+		int cx = cell % cellsX, cz = cell / cellsX;
+		for (int ring = 1; ring <= radius; ring++) {
+			int best = -1;
+			int bestDistance = Integer.MAX_VALUE;
+			for (int z = Math.max(0, cz - ring); z <= Math.min(cellsZ - 1, cz + ring); z++) {
+				for (int x = Math.max(0, cx - ring); x <= Math.min(cellsX - 1, cx + ring); x++) {
+					if (Math.max(Math.abs(x - cx), Math.abs(z - cz)) != ring) {
+						continue;
+					}
+					int candidate = z * cellsX + x;
+					int distance = (x - cx) * (x - cx) + (z - cz) * (z - cz);
+					if (walkable[candidate] && distance < bestDistance) {
+						best = candidate;
+						bestDistance = distance;
+					}
+				}
+			}
+			if (best >= 0) {
+				return best;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * An agent can walk straight from the center of a cell to the center of
+	 * another : every cell crossed (sampled every quarter cell) is walkable
+	 * and no step climbs more than MAX_CLIMB
+	 */
+	public boolean isStraightWalkable(int from, int to) {
+		float ax = centerX(from % cellsX), az = centerZ(from / cellsX);
+		float bx = centerX(to % cellsX), bz = centerZ(to / cellsX);
+		float length = (float) Math.sqrt((bx - ax) * (bx - ax) + (bz - az) * (bz - az));
+		int samples = (int) Math.ceil(length * invCellSize * 4f);
+		int previous = from;
+		for (int s = 1; s <= samples; s++) {
+			float t = s / (float) samples;
+			int cell = cellAt(ax + (bx - ax) * t, az + (bz - az) * t);
+			if (cell != previous) {
+				if (!canMove(previous, cell)) {
+					return false;
+				}
+				previous = cell;
+			}
+		}
+		return true;
+	}
+
+	private byte computeMoves(int cell) {
+		int cx = cell % cellsX, cz = cell / cellsX;
+		int bits = 0;
+		for (int n = 0; n < 8; n++) {
+			int nx = cx + NEIGHBOUR_X[n], nz = cz + NEIGHBOUR_Z[n];
+			if (nx >= 0 && nz >= 0 && nx < cellsX && nz < cellsZ && canMove(cell, nz * cellsX + nx)) {
+				bits |= 1 << n;
+			}
+		}
+		return (byte) bits;
+	}
+
+	/*
+	 * Neighbours an agent can move to from a cell, bit n for the offset
+	 * (NEIGHBOUR_X[n], NEIGHBOUR_Z[n]), the borders of the grid excluded
+	 */
+	public int getMoves(int cell) {
+		return moves[cell] & 0xFF;
+	}
+
+	/*
+	 * Step to one of the 8 neighbours, a diagonal step also needs both cells
+	 * it cuts the corner of (the agent would scrape the obstacle otherwise)
+	 */
+	boolean canMove(int from, int to) {
+		if (!canStep(from, to)) {
+			return false;
+		}
+		int dx = to % cellsX - from % cellsX;
+		int dz = to / cellsX - from / cellsX;
+		if (dx != 0 && dz != 0) {
+			return canStep(from, from + dx) && canStep(from, from + dz * cellsX);
+		}
+		return true;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	public int getCellsX() {
+		return cellsX;
+	}
+
+	public int getCellsZ() {
+		return cellsZ;
+	}
+
+	public int getCellCount() {
+		return walkable.length;
+	}
+
+	public int getWalkableCount() {
+		return walkableCount;
+	}
+}
@@ -0,0 +1,45 @@
+package com.mygame.navigation;
+
+/*
+ * Waypoints of a path on the XZ plane, from the start cell to the goal cell.
+ * Immutable : one cached path is shared by every agent that asked for it.
+ * An empty path means the goal can't be reached.
+ */
+public final class NavPath {
+
+	public static final NavPath NONE = new NavPath(new float[0]);
+
+	private final float[] points; // x, z pairs
+
+	NavPath(float[] points) {
+		this.points = points;
+	}
+
+	public int size() {
+		return points.length / 2;
+	}
+
+	public boolean isEmpty() {
+		return points.length == 0;
+	}
+
+	public float getX(int waypoint) {
+		return points[waypoint * 2];
+	}
+
+	public float getZ(int waypoint) {
+		return points[waypoint * 2 + 1];
+	}
+
+	/*
+	 * Length along the waypoints
+	 */
+	public float getLength() {
+		float length = 0f;
+		for (int i = 2; i < points.length; i += 2) {
+			float dx = points[i] - points[i - 2], dz = points[i + 1] - points[i - 1];
+			length += (float) Math.sqrt(dx * dx + dz * dz);
+		}
+		return length;
+	}
+}
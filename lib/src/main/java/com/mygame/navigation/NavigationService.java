@@ -0,0 +1,168 @@
+package com.mygame.navigation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Answers path requests on a pool of worker threads, each with its own
+ * PathFinder. Positions are snapped to the cells of the grid, so requests
+ * between the same cells share one answer : cached paths are returned at
+ * once, and a request for a search already queued or running gets the
+ * future of that search instead of starting another one.
+ *
+ * Requests can come from any thread, results are completed on the workers.
+ */
+public class NavigationService {
+
+	private static final int DEFAULT_CACHE_CAPACITY = 8192;
+	// Cells searched around a blocked start or goal for a walkable one
+	private static final int SNAP_RADIUS = 4;
+
+	private final NavGrid grid;
+	private final PathCache cache;
+	private final ExecutorService workers;
+	private final ThreadLocal<PathFinder> finders;
+	// Searches queued or running by cache key
+	private final ConcurrentHashMap<Long, CompletableFuture<NavPath>> pending = new ConcurrentHashMap<>();
+
+	// Statistics
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder merged = new LongAdder();
+	private final LongAdder searches = new LongAdder();
+
+	public NavigationService(NavGrid grid) {
+		this(grid, Math.max(1, Runtime.getRuntime().availableProcessors() - 1), DEFAULT_CACHE_CAPACITY);
+	}
+
+	public NavigationService(NavGrid grid, int threads, int cacheCapacity) {
+		this.grid = grid;
+		this.cache = new PathCache(cacheCapacity);
+		this.finders = ThreadLocal.withInitial(() -> new PathFinder(grid));
+		this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "Path Finder");
+			thread.setDaemon(true);
+			// Searches must not steal time from the render thread
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		});
+	}
+
+	/*
+	 * Path from a position to another, completed with NavPath.NONE if the goal
+	 * can't be reached (or the service was shut down)
+	 */
+	public CompletableFuture<NavPath> requestPath(float startX, float startZ, float goalX, float goalZ) {
+		requests.increment();
+		int start = grid.nearestWalkable(grid.cellAt(startX, startZ), SNAP_RADIUS);
+		int goal = grid.nearestWalkable(grid.cellAt(goalX, goalZ), SNAP_RADIUS);
+		if (start < 0 || goal < 0) {
+			return CompletableFuture.completedFuture(NavPath.NONE);
+		}
+		long key = PathCache.key(start, goal);
+		NavPath cached = cache.get(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+
+		CompletableFuture<NavPath> future = new CompletableFuture<>();
+		CompletableFuture<NavPath> running = pending.putIfAbsent(key, future);
+		if (running != null) {
+			merged.increment();
+			return running;
+		}
+		// The search may have finished between the cache lookup and putIfAbsent
+		cached = cache.peek(key);
+		if (cached != null) {
+			pending.remove(key, future);
+			future.complete(cached);
+			return future;
+		}
+		try {
+			workers.execute(() -> search(key, start, goal, future));
+		} catch (RejectedExecutionException e) {
+			pending.remove(key, future);
+			future.complete(NavPath.NONE);
+		}
+		return future;
+	}
+
+	/*
+	 * Same as requestPath but searched on the calling thread
+	 */
+	public NavPath findPath(float startX, float startZ, float goalX, float goalZ) {
+		requests.increment();
+		int start = grid.nearestWalkable(grid.cellAt(startX, startZ), SNAP_RADIUS);
+		int goal = grid.nearestWalkable(grid.cellAt(goalX, goalZ), SNAP_RADIUS);
+		if (start < 0 || goal < 0) {
+			return NavPath.NONE;
+		}
+		long key = PathCache.key(start, goal);
+		NavPath path = cache.get(key);
+		if (path == null) {
+			searches.increment();
+			path = finders.get().findPath(start, goal);
+			cache.put(key, path);
+		}
+		return path;
+	}
+
+	private void search(long key, int start, int goal, CompletableFuture<NavPath> future) {
+		try {
+			searches.increment();
+			NavPath path = finders.get().findPath(start, goal);
+			// Cached before leaving pending, so a new request finds one or the other
+			cache.put(key, path);
+			// Out of pending before completing, so the callers see no search left
+			pending.remove(key, future);
+			future.complete(path);
+		} catch (RuntimeException e) {
+			pending.remove(key, future);
+			future.completeExceptionally(e);
+		}
+	}
+
+	/*
+	 * Stop the workers, queued requests are dropped
+	 */
+	public void shutdown() {
+		workers.shutdownNow();
+		for (CompletableFuture<NavPath> future : pending.values()) {
+			future.complete(NavPath.NONE);
+		}
+		pending.clear();
+	}
+
+	public NavGrid getGrid() {
+		return grid;
+	}
+
+	public PathCache getCache() {
+		return cache;
+	}
+
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	/*
+	 * Requests answered by a search another request had already started
+	 */
+	public long getMergedCount() {
+		return merged.sum();
+	}
+
+	/*
+	 * A* searches actually run
+	 */
+	public long getSearchCount() {
+		return searches.sum();
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+}
@@ -0,0 +1,76 @@
+package com.mygame.navigation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Least recently used paths by start and goal cell. Bots crossing the same
+ * areas ask the same questions, the cache answers them without a search.
+ * Unreachable goals are cached too (NavPath.NONE). Thread safe.
+ */
+public class PathCache {
+
+	private final int capacity;
+	private final LinkedHashMap<Long, NavPath> paths;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	public PathCache(int capacity) {
+		this.capacity = capacity;
+		this.paths = new LinkedHashMap<Long, NavPath>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, NavPath> eldest) {
+				return size() > PathCache.this.capacity;
+			}
+		};
+	}
+
+	public static long key(int start, int goal) {
+		return ((long) start << 32) | (goal & 0xFFFFFFFFL);
+	}
+
+	/*
+	 * Cached path of a key, null if it is not cached
+	 */
+	public synchronized NavPath get(long key) {
+		NavPath path = paths.get(key);
+		if (path == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return path;
+	}
+
+	/*
+	 * Same as get without counting a hit or a miss
+	 */
+	synchronized NavPath peek(long key) {
+		return paths.get(key);
+	}
+
+	public synchronized void put(long key, NavPath path) {
+		paths.put(key, path);
+	}
+
+	public synchronized void clear() {
+		paths.clear();
+	}
+
+	public synchronized int size() {
+		return paths.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
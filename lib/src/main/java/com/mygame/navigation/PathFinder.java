@@ -0,0 +1,220 @@
+package com.mygame.navigation;
+
+import java.util.Arrays;
+
+/*
+ * A* search on a NavGrid with 8 neighbours and the octile distance as
+ * heuristic. Cells are visited through primitive arrays stamped with a search
+ * number, so a search never clears nor allocates them : only the returned
+ * path is allocated. The cell path is then shortened to the cells where it
+ * turns (string pulling with NavGrid.isStraightWalkable).
+ *
+ * Not thread safe, each thread searching uses its own finder.
+ */
+public class PathFinder {
+
+	private static final float DIAGONAL = 1.41421356f;
+	// Slightly favours cells closer to the goal on equal cost, fewer cells visited on open ground
+	private static final float HEURISTIC_WEIGHT = 1.001f;
+	private static final int[] NEIGHBOUR_X = NavGrid.NEIGHBOUR_X;
+	private static final int[] NEIGHBOUR_Z = NavGrid.NEIGHBOUR_Z;
+
+	private final NavGrid grid;
+	private final int maxExpansions;
+
+	// Per cell search state, valid when the stamp matches the current search
+	private final float[] cost;
+	private final int[] parent;
+	private final int[] openStamp;
+	private final int[] closedStamp;
+	private int search = 0;
+
+	// Open list : binary heap of cells by estimated total cost, stale entries are skipped
+	private int[] heapCells = new int[256];
+	private float[] heapKeys = new float[256];
+	private int heapSize = 0;
+
+	// Cells of the last path, goal first
+	private int[] trail = new int[256];
+
+	private int expanded = 0;
+
+	public PathFinder(NavGrid grid) {
+		this(grid, grid.getCellCount());
+	}
+
+	/*
+	 * A search giving up after maxExpansions cells reports the goal unreachable
+	 */
+	public PathFinder(NavGrid grid, int maxExpansions) {
+		this.grid = grid;
+		this.maxExpansions = maxExpansions;
+		int cells = grid.getCellCount();
+		cost = new float[cells];
+		parent = new int[cells];
+		openStamp = new int[cells];
+		closedStamp = new int[cells];
+	}
+
+	/*
+	 * Path between the centers of two walkable cells, NavPath.NONE if there is none
+	 */
+	public NavPath findPath(int start, int goal) {
+		expanded = 0;
+		if (!grid.isWalkable(start) || !grid.isWalkable(goal)) {
+			return NavPath.NONE;
+		}
+		if (++search == 0) {
+			// Stamps wrapped around : forget every old search
+			Arrays.fill(openStamp, 0);
+			Arrays.fill(closedStamp, 0);
+			search = 1;
+		}
+		int cellsX = grid.getCellsX();
+		int goalX = goal % cellsX, goalZ = goal / cellsX;
+
+		heapSize = 0;
+		cost[start] = 0f;
+		parent[start] = -1;
+		openStamp[start] = search;
+		push(start, heuristic(start % cellsX, start / cellsX, goalX, goalZ));
+
+		while (heapSize > 0) {
+			int cell = pop();
+			if (closedStamp[cell] == search) {
+				continue;
+			}
+			closedStamp[cell] = search;
+			if (cell == goal) {
+				return buildPath(goal);
+			}
+			if (++expanded > maxExpansions) {
+				break;
+			}
+
+			int cx = cell % cellsX, cz = cell / cellsX;
+			int moves = grid.getMoves(cell);
+			for (int n = 0; n < 8; n++) {
+				if ((moves & (1 << n)) == 0) {
+					continue;
+				}
+				int nx = cx + NEIGHBOUR_X[n], nz = cz + NEIGHBOUR_Z[n];
+				int next = nz * cellsX + nx;
+				if (closedStamp[next] == search) {
+					continue;
+				}
+				float nextCost = cost[cell] + (n < 4 ? 1f : DIAGONAL);
+				if (openStamp[next] != search || nextCost < cost[next]) {
+					openStamp[next] = search;
+					cost[next] = nextCost;
+					parent[next] = cell;
+					push(next, nextCost + heuristic(nx, nz, goalX, goalZ));
+				}
+			}
+		}
+		return NavPath.NONE;
+	}
+
+	private static float heuristic(int x, int z, int goalX, int goalZ) {
+		int dx = Math.abs(goalX - x), dz = Math.abs(goalZ - z);
+		int straight = Math.abs(dx - dz);
+		return (Math.min(dx, dz) * DIAGONAL + straight) * HEURISTIC_WEIGHT;
+	}
+
+	/*
+	 * Walk the parents back from the goal and keep the cells where the path
+	 * turns, then drop the turns the agent can go straight past
+	 */
+	private NavPath buildPath(int goal) {
+		int cellsX = grid.getCellsX();
+		int length = 0;
+		int previousStep = 0;
+		for (int cell = goal; cell != -1; cell = parent[cell]) {
+			int next = parent[cell];
+			int step = next == -1 ? 0 : next - cell;
+			// Keep the goal, the start and the cells where the step changes
+			if (length == 0 || next == -1 || step != previousStep) {
+				if (length == trail.length) {
+					trail = Arrays.copyOf(trail, length * 2);
+				}
+				trail[length++] = cell;
+			}
+			previousStep = step;
+		}
+
+		// trail runs from the goal (0) to the start (length - 1)
+		float[] points = new float[length * 2];
+		int anchor = length - 1;
+		int count = addPoint(points, 0, trail[anchor], cellsX);
+		while (anchor > 0) {
+			int next = anchor - 1;
+			while (next > 0 && grid.isStraightWalkable(trail[anchor], trail[next - 1])) {
+				next--;
+			}
+			count = addPoint(points, count, trail[next], cellsX);
+			anchor = next;
+		}
+		return new NavPath(Arrays.copyOf(points, count));
+	}
+
+	private int addPoint(float[] points, int count, int cell, int cellsX) {
+		points[count] = grid.centerX(cell % cellsX);
+		points[count + 1] = grid.centerZ(cell / cellsX);
+		return count + 2;
+	}
+
+	private void push(int cell, float key) {
+		if (heapSize == heapCells.length) {
+			heapCells = Arrays.copyOf(heapCells, heapSize * 2);
+			heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+		}
+		int i = heapSize++;
+		while (i > 0) {
+			int up = (i - 1) >>> 1;
+			if (heapKeys[up] <= key) {
+				break;
+			}
+			heapCells[i] = heapCells[up];
+			heapKeys[i] = heapKeys[up];
+			i = up;
+		}
+		heapCells[i] = cell;
+		heapKeys[i] = key;
+	}
+
+	private int pop() {
+		int top = heapCells[0];
+		int lastCell = heapCells[--heapSize];
+		float lastKey = heapKeys[heapSize];
+		int i = 0;
+		while (true) {
+			int child = i * 2 + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				child++;
+			}
+			if (heapKeys[child] >= lastKey) {
+				break;
+			}
+			heapCells[i] = heapCells[child];
+			heapKeys[i] = heapKeys[child];
+			i = child;
+		}
+		heapCells[i] = lastCell;
+		heapKeys[i] = lastKey;
+		return top;
+	}
+
+	/*
+	 * Cells expanded by the last search
+	 */
+	public int getExpandedCount() {
+		return expanded;
+	}
+
+	public NavGrid getGrid() {
+		return grid;
+	}
+}
@@ -0,0 +1,197 @@
+package com.mygame.network;
+
+import com.mygame.entities.Player;
+
+import com.jme3.math.Vector3f;
+
+import java.io.IOException;
+
+/*
+ * Client side prediction of the local player : every tick its input is sent
+ * and simulated at once, without waiting for the server. The inputs and the
+ * states they led to are kept in a ring until the server acknowledges them.
+ * When a snapshot arrives, the predicted state of the input it acks is
+ * compared to the exact state the server sent : on a mismatch the player is
+ * put back in the server state and the inputs not acknowledged yet are
+ * simulated again on top of it (rollback and replay).
+ *
+ * The ring is preallocated and a replay only uses the player state, a
+ * reconciliation does not allocate. A replay moves the player only, the
+ * weapon does not fire or cool down again. Only the simple movement backend is
+ * deterministic, a player driven by the physics character is not predicted
+ * exactly and gets corrected on most snapshots.
+ */
+public class ClientPrediction {
+
+	// Inputs kept for replay, a power of two over the round trip in ticks
+	private static final int HISTORY_LENGTH = 128;
+	private static final int HISTORY_MASK = HISTORY_LENGTH - 1;
+	// Distance under which a prediction matches the server (float noise)
+	private static final float TOLERANCE = 1e-3f;
+	private static final int MOVEMENT_BUTTONS = ~(Protocol.FIRE | Protocol.THROW);
+
+	private final GameClient client;
+	private final Player player;
+
+	// Input of each sequence and the state right after it was simulated
+	private final int[] sequences = new int[HISTORY_LENGTH];
+	private final int[] buttons = new int[HISTORY_LENGTH];
+	private final float[] yaws = new float[HISTORY_LENGTH];
+	private final float[] pitches = new float[HISTORY_LENGTH];
+	private final float[] xs = new float[HISTORY_LENGTH];
+	private final float[] ys = new float[HISTORY_LENGTH];
+	private final float[] zs = new float[HISTORY_LENGTH];
+	private final float[] velocities = new float[HISTORY_LENGTH];
+	private final boolean[] grounded = new boolean[HISTORY_LENGTH];
+	private int latestSequence = 0;
+	private int ackedSequence = 0;
+	private final Vector3f scratchPosition = new Vector3f();
+
+	// Statistics
+	private long reconciliations = 0;
+	private long comparisons = 0;
+	private long corrections = 0;
+	private long replayedInputs = 0;
+	private double errorSum = 0;
+	private float maxError = 0f;
+
+	public ClientPrediction(GameClient client, Player player) {
+		this.client = client;
+		this.player = player;
+	}
+
+	/*
+	 * One client tick : read the server, correct the prediction, then send
+	 * and simulate the current input of the player
+	 */
+	public void tick(float step) throws IOException {
+		Snapshot snapshot = client.poll();
+		if (snapshot != null && snapshot.hasSelf && snapshot.inputAck > ackedSequence) {
+			reconcile(snapshot.self, snapshot.inputAck, step);
+		}
+
+		// The angles as the server will get them, so both sides simulate the same input
+		int pressed = InputCommand.capture(player);
+		float yaw = InputCommand.roundAngle(player.getHorizontalAngle());
+		float pitch = InputCommand.roundAngle(player.getVerticalAngle());
+		int sequence = client.sendInput(pressed, yaw, pitch);
+		InputCommand.apply(player, pressed, yaw, pitch);
+		player.simulate(step);
+		store(sequence, pressed, yaw, pitch);
+	}
+
+	private void reconcile(MovementState server, int ack, float step) {
+		ackedSequence = ack;
+		reconciliations++;
+		int slot = ack & HISTORY_MASK;
+		boolean known = sequences[slot] == ack;
+		if (known) {
+			float dx = xs[slot] - server.x;
+			float dy = ys[slot] - server.y;
+			float dz = zs[slot] - server.z;
+			float error = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+			comparisons++;
+			errorSum += error;
+			maxError = Math.max(maxError, error);
+			if (error <= TOLERANCE && grounded[slot] == server.onGround
+					&& Math.abs(velocities[slot] - server.velocityY) <= TOLERANCE) {
+				return;
+			}
+		}
+		corrections++;
+
+		// Live input of the player, replaying overwrites it
+		int liveButtons = InputCommand.capture(player);
+		float liveYaw = player.getHorizontalAngle();
+		float livePitch = player.getVerticalAngle();
+
+		server.applyTo(player);
+		// Older than the ring : nothing left to replay, restart from the server state
+		int first = Math.max(ack + 1, latestSequence - HISTORY_LENGTH + 1);
+		for (int sequence = first; sequence <= latestSequence; sequence++) {
+			int s = sequence & HISTORY_MASK;
+			if (sequences[s] != sequence) {
+				continue;
+			}
+			// Movement only : the shots and grenades of these inputs were already fired
+			InputCommand.apply(player, buttons[s] & MOVEMENT_BUTTONS, yaws[s], pitches[s]);
+			player.simulateMovement(step);
+			saveState(s);
+			replayedInputs++;
+		}
+
+		InputCommand.apply(player, liveButtons, liveYaw, livePitch);
+	}
+
+	private void store(int sequence, int pressed, float yaw, float pitch) {
+		int slot = sequence & HISTORY_MASK;
+		sequences[slot] = sequence;
+		buttons[slot] = pressed;
+		yaws[slot] = yaw;
+		pitches[slot] = pitch;
+		saveState(slot);
+		latestSequence = sequence;
+	}
+
+	private void saveState(int slot) {
+		Vector3f position = player.getPosition(scratchPosition);
+		xs[slot] = position.x;
+		ys[slot] = position.y;
+		zs[slot] = position.z;
+		velocities[slot] = player.getVelocityY();
+		grounded[slot] = player.isOnGround();
+	}
+
+	public Player getPlayer() {
+		return player;
+	}
+
+	public GameClient getClient() {
+		return client;
+	}
+
+	/*
+	 * Inputs sent but not acknowledged by the server yet
+	 */
+	public int getPendingInputs() {
+		return latestSequence - ackedSequence;
+	}
+
+	/*
+	 * Server states compared to a prediction
+	 */
+	public long getReconciliations() {
+		return reconciliations;
+	}
+
+	/*
+	 * Rollbacks : predictions that did not match the server
+	 */
+	public long getCorrections() {
+		return corrections;
+	}
+
+	public long getReplayedInputs() {
+		return replayedInputs;
+	}
+
+	/*
+	 * Mean distance between the predicted and the server position
+	 */
+	public float getMeanError() {
+		return comparisons == 0 ? 0f : (float) (errorSum / comparisons);
+	}
+
+	public float getMaxError() {
+		return maxError;
+	}
+
+	public void resetStatistics() {
+		reconciliations = 0;
+		comparisons = 0;
+		corrections = 0;
+		replayedInputs = 0;
+		errorSum = 0;
+		maxError = 0f;
+	}
+}
@@ -0,0 +1,97 @@
+package com.mygame.network;
+
+import com.mygame.entities.Player;
+
+import java.net.SocketAddress;
+
+/*
+ * Server side state of a connected client : its address, its player, what it
+ * acknowledged, the inputs received but not simulated yet and the snapshots
+ * sent to it. Only touched by the server tick.
+ */
+class ClientSession {
+
+	// Inputs received ahead of the simulation, a power of two
+	static final int INPUT_QUEUE_LENGTH = 32;
+	private static final int INPUT_QUEUE_MASK = INPUT_QUEUE_LENGTH - 1;
+	// Players per snapshot before it grows
+	private static final int INITIAL_SNAPSHOT_CAPACITY = 16;
+
+	final SocketAddress address;
+	final int id;
+	final Player player;
+	// Entity of the player in the interest manager of the server
+	final int interestHandle;
+	// Snapshots sent to this client, each one has the players it is interested in
+	final SnapshotHistory history = new SnapshotHistory(INITIAL_SNAPSHOT_CAPACITY);
+	// Quantized state of the player for the snapshots of the tick
+	final int[] state = new int[Snapshot.FIELDS];
+
+	// Last snapshot tick the client received, 0 until the first ack
+	int ackedTick = 0;
+	// Last input simulated, older inputs arriving late are dropped
+	int inputSequence = 0;
+	// Newest input received
+	int receivedSequence = 0;
+	// Queued inputs by sequence, a slot is valid if its stamp is the sequence
+	final int[] queuedSequences = new int[INPUT_QUEUE_LENGTH];
+	final int[] queuedButtons = new int[INPUT_QUEUE_LENGTH];
+	final float[] queuedYaws = new float[INPUT_QUEUE_LENGTH];
+	final float[] queuedPitches = new float[INPUT_QUEUE_LENGTH];
+	long lastHeard;
+
+	// Statistics
+	long bytesSent = 0;
+	long bytesReceived = 0;
+	long snapshotsSent = 0;
+	long inputsSkipped = 0;
+
+	ClientSession(SocketAddress address, int id, Player player, int interestHandle, long now) {
+		this.address = address;
+		this.id = id;
+		this.player = player;
+		this.interestHandle = interestHandle;
+		this.lastHeard = now;
+	}
+
+	/*
+	 * Keep an input until its tick, false if it was already simulated
+	 */
+	boolean queueInput(int sequence, int buttons, float yaw, float pitch) {
+		if (sequence <= inputSequence) {
+			return false;
+		}
+		if (receivedSequence == 0 || sequence - inputSequence > INPUT_QUEUE_LENGTH) {
+			// First input, or the client ran far ahead : resume from there
+			if (receivedSequence > 0) {
+				inputsSkipped += sequence - 1 - inputSequence;
+			}
+			inputSequence = sequence - 1;
+		}
+		int slot = sequence & INPUT_QUEUE_MASK;
+		queuedSequences[slot] = sequence;
+		queuedButtons[slot] = buttons;
+		queuedYaws[slot] = yaw;
+		queuedPitches[slot] = pitch;
+		receivedSequence = Math.max(receivedSequence, sequence);
+		return true;
+	}
+
+	/*
+	 * Slot of the next input to simulate, -1 if none was received. An input
+	 * still missing when a newer one is there was lost with all its copies :
+	 * it is skipped
+	 */
+	int nextInput() {
+		while (inputSequence < receivedSequence) {
+			int sequence = inputSequence + 1;
+			int slot = sequence & INPUT_QUEUE_MASK;
+			if (queuedSequences[slot] == sequence) {
+				return slot;
+			}
+			inputSequence = sequence;
+			inputsSkipped++;
+		}
+		return -1;
+	}
+}
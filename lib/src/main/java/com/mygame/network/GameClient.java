@@ -0,0 +1,234 @@
+package com.mygame.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/*
+ * Network side of a client : connects to a GameServer, sends one input per
+ * tick and decodes the snapshots against the ones it already received. Every
+ * input carries the tick of the newest snapshot decoded, which the server
+ * uses as the baseline of the next deltas, and repeats the previous inputs
+ * so the server still gets them all when a datagram is lost.
+ *
+ * Non blocking, the owner polls it once per tick from a single thread.
+ */
+public class GameClient {
+
+	// Ticks between two connection requests until the server accepts
+	private static final int CONNECT_RETRY_TICKS = 30;
+
+	private final InetSocketAddress serverAddress;
+	private DatagramChannel channel;
+
+	private int playerId = -1;
+	private int serverTickRate = 0;
+	private int snapshotInterval = 0;
+	private boolean disconnected = false;
+	private int connectTimer = 0;
+
+	private int inputSequence = 0;
+	// Last inputs sent, quantized, indexed by sequence
+	private final int[] recentButtons = new int[Protocol.REDUNDANT_INPUTS];
+	private final int[] recentYaws = new int[Protocol.REDUNDANT_INPUTS];
+	private final int[] recentPitches = new int[Protocol.REDUNDANT_INPUTS];
+	private final SnapshotHistory history = new SnapshotHistory(GameServer.MAX_CLIENTS);
+	private Snapshot latest;
+
+	private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(Protocol.MAX_PACKET);
+	private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(Protocol.MAX_PACKET);
+
+	// Statistics
+	private long bytesSent = 0;
+	private long bytesReceived = 0;
+	private long snapshotsReceived = 0;
+	private long snapshotsDropped = 0;
+
+	public GameClient(InetSocketAddress serverAddress) {
+		this.serverAddress = serverAddress;
+	}
+
+	/*
+	 * Open the channel and ask to join, the server answers on a later poll
+	 */
+	public void connect() throws IOException {
+		channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+		channel.connect(serverAddress);
+		sendConnect();
+	}
+
+	private void sendConnect() throws IOException {
+		Protocol.writeHeader(sendBuffer, Protocol.CONNECT);
+		Protocol.putVarInt(sendBuffer, Protocol.VERSION);
+		send();
+	}
+
+	/*
+	 * Read every datagram received since the last poll, return the newest
+	 * snapshot decoded or null if none arrived
+	 */
+	public Snapshot poll() throws IOException {
+		Snapshot newest = null;
+		if (playerId < 0 && !disconnected && ++connectTimer >= CONNECT_RETRY_TICKS) {
+			connectTimer = 0;
+			sendConnect();
+		}
+		while (true) {
+			receiveBuffer.clear();
+			if (channel.read(receiveBuffer) <= 0) {
+				return newest;
+			}
+			receiveBuffer.flip();
+			bytesReceived += receiveBuffer.remaining();
+			try {
+				switch (Protocol.readHeader(receiveBuffer)) {
+					case Protocol.ACCEPT:
+						playerId = Protocol.getVarInt(receiveBuffer);
+						serverTickRate = Protocol.getVarInt(receiveBuffer);
+						snapshotInterval = Protocol.getVarInt(receiveBuffer);
+						break;
+					case Protocol.SNAPSHOT:
+						Snapshot snapshot = readSnapshot();
+						if (snapshot != null) {
+							newest = snapshot;
+						}
+						break;
+					case Protocol.DISCONNECT:
+						disconnected = true;
+						playerId = -1;
+						break;
+					default:
+						break;
+				}
+			} catch (RuntimeException e) {
+				// Truncated datagram, ignored
+			}
+		}
+	}
+
+	private Snapshot readSnapshot() {
+		// Older than the newest : out of order, it would overwrite a live baseline
+		receiveBuffer.mark();
+		int tick = Protocol.getVarInt(receiveBuffer);
+		receiveBuffer.reset();
+		if (latest != null && tick <= latest.tick) {
+			snapshotsDropped++;
+			return null;
+		}
+		Snapshot snapshot = SnapshotCodec.read(receiveBuffer, history);
+		if (snapshot == null) {
+			snapshotsDropped++;
+			return null;
+		}
+		snapshotsReceived++;
+		latest = snapshot;
+		return snapshot;
+	}
+
+	/*
+	 * Send the input of a client tick (buttons of Protocol), return its sequence number
+	 */
+	public int sendInput(int buttons, float yaw, float pitch) throws IOException {
+		inputSequence++;
+		int slot = inputSequence % Protocol.REDUNDANT_INPUTS;
+		recentButtons[slot] = buttons;
+		recentYaws[slot] = Protocol.quantizeAngle(yaw);
+		recentPitches[slot] = Protocol.quantizeAngle(pitch);
+		if (playerId < 0) {
+			return inputSequence;
+		}
+		int count = Math.min(inputSequence, Protocol.REDUNDANT_INPUTS);
+		Protocol.writeHeader(sendBuffer, Protocol.INPUT);
+		Protocol.putVarInt(sendBuffer, inputSequence);
+		Protocol.putVarInt(sendBuffer, latest == null ? 0 : latest.tick);
+		sendBuffer.put((byte) count);
+		for (int i = 0; i < count; i++) {
+			slot = (inputSequence - i) % Protocol.REDUNDANT_INPUTS;
+			sendBuffer.put((byte) recentButtons[slot]);
+			sendBuffer.putShort((short) recentYaws[slot]);
+			sendBuffer.putShort((short) recentPitches[slot]);
+		}
+		send();
+		return inputSequence;
+	}
+
+	private void send() throws IOException {
+		sendBuffer.flip();
+		bytesSent += sendBuffer.remaining();
+		channel.write(sendBuffer);
+	}
+
+	/*
+	 * Leave the server and close the channel
+	 */
+	public void disconnect() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			if (playerId >= 0) {
+				Protocol.writeHeader(sendBuffer, Protocol.DISCONNECT);
+				send();
+			}
+			channel.close();
+		} catch (IOException e) {
+			// Closing anyway
+		}
+		channel = null;
+		playerId = -1;
+	}
+
+	public boolean isConnected() {
+		return playerId >= 0;
+	}
+
+	/*
+	 * The server refused or closed the connection
+	 */
+	public boolean isDisconnected() {
+		return disconnected;
+	}
+
+	/*
+	 * Id of the player of this client in the snapshots, -1 until accepted
+	 */
+	public int getPlayerId() {
+		return playerId;
+	}
+
+	public int getServerTickRate() {
+		return serverTickRate;
+	}
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	/*
+	 * Newest snapshot decoded, null before the first one
+	 */
+	public Snapshot getLatestSnapshot() {
+		return latest;
+	}
+
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	public long getSnapshotsReceived() {
+		return snapshotsReceived;
+	}
+
+	/*
+	 * Snapshots ignored : out of order, or delta against a baseline already gone
+	 */
+	public long getSnapshotsDropped() {
+		return snapshotsDropped;
+	}
+}
@@ -0,0 +1,424 @@
+package com.mygame.network;
+
+import com.mygame.entities.HitscanSystem;
+import com.mygame.entities.HitscanWeapon;
+import com.mygame.entities.Player;
+import com.mygame.entities.ProjectileSystem;
+import com.mygame.interest.InterestManager;
+import com.mygame.interest.InterestSet;
+import com.mygame.world.Map;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.math.Vector3f;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * Authoritative simulation of the players of remote clients. One non blocking
+ * UDP channel serves every client : each tick drains the received datagrams
+ * (connections and inputs), simulates the players on the map, then every
+ * SNAPSHOT_INTERVAL ticks sends each client the state of the players in its
+ * area of interest, delta encoded against the last snapshot that client
+ * acknowledged. A player leaving the area is left out of the next snapshot,
+ * one entering it is sent in full.
+ *
+ * A player moves one simulation step per input of its client, in sequence
+ * order, never without one : the client predicting its own player from the
+ * same inputs ends up in the same state. Each snapshot gives the client the
+ * exact state of its player after the last input simulated, the start of its
+ * replay when the prediction was wrong.
+ *
+ * Everything runs on the thread calling tick(), the channel is never blocking
+ * so a slow or silent client can't stall the others. Clients silent for
+ * TIMEOUT are dropped.
+ */
+public class GameServer {
+
+	public static final int DEFAULT_PORT = 27960;
+	public static final int MAX_CLIENTS = 64;
+	public static final int SNAPSHOT_INTERVAL = 2; // ticks between snapshots
+	private static final long TIMEOUT = 5_000_000_000L; // nanoseconds
+	private static final int PROJECTILE_CAPACITY = 1 << 14;
+	// Inputs simulated per client and tick, so a client catches up after a late burst
+	private static final int MAX_INPUTS_PER_TICK = 8;
+	// Players further than this are not replicated to a client
+	public static final float VIEW_DISTANCE = 120f;
+	private static final float INTEREST_CELL_SIZE = 16f;
+
+	private final SimpleApplication app;
+	private final Map gameMap;
+	private final int tickRate;
+	private final HitscanSystem hitscan;
+	private final ProjectileSystem projectiles;
+	private final InterestManager interest;
+	private DatagramChannel channel;
+
+	private final HashMap<SocketAddress, ClientSession> sessions = new HashMap<>();
+	private final List<ClientSession> clients = new ArrayList<>();
+	private final ClientSession[] clientsByHandle = new ClientSession[MAX_CLIENTS];
+	private int nextPlayerId = 1;
+	private int tick = 0;
+
+	private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(Protocol.MAX_PACKET);
+	private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(Protocol.MAX_PACKET);
+	private final Vector3f scratchPosition = new Vector3f();
+	private final MovementState scratchMovement = new MovementState();
+	private final long[] scratchOrder = new long[MAX_CLIENTS];
+	private final int[] scratchButtons = new int[Protocol.REDUNDANT_INPUTS];
+	private final float[] scratchYaws = new float[Protocol.REDUNDANT_INPUTS];
+	private final float[] scratchPitches = new float[Protocol.REDUNDANT_INPUTS];
+
+	// Statistics
+	private long bytesSent = 0;
+	private long bytesReceived = 0;
+	private long packetsReceived = 0;
+	private long fullSnapshots = 0;
+	private long deltaSnapshots = 0;
+	private long rejectedPackets = 0;
+	private long replicatedPlayers = 0;
+
+	public GameServer(SimpleApplication app, Map gameMap, int tickRate) {
+		this.app = app;
+		this.gameMap = gameMap;
+		this.tickRate = tickRate;
+		this.hitscan = new HitscanSystem(gameMap);
+		this.projectiles = new ProjectileSystem(gameMap, PROJECTILE_CAPACITY, null);
+		this.interest = new InterestManager(gameMap, INTEREST_CELL_SIZE, VIEW_DISTANCE, MAX_CLIENTS);
+	}
+
+	/*
+	 * Listen on a port of every interface (0 = any free port, see getPort)
+	 */
+	public void open(int port) throws IOException {
+		channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+		channel.bind(new InetSocketAddress(port));
+	}
+
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+	}
+
+	/*
+	 * One simulation tick : read the clients, simulate, send the snapshots
+	 */
+	public void tick(float step) throws IOException {
+		long now = System.nanoTime();
+		receivePackets(now);
+		dropSilentClients(now);
+
+		for (ClientSession client : clients) {
+			simulateInputs(client, step);
+		}
+		hitscan.process();
+		projectiles.step(step);
+		for (ClientSession client : clients) {
+			// After the shots : a killed player respawned somewhere else
+			Vector3f position = client.player.getPosition(scratchPosition);
+			interest.move(client.interestHandle, position.x, position.z);
+		}
+
+		tick++;
+		if (tick % SNAPSHOT_INTERVAL == 0) {
+			for (ClientSession client : clients) {
+				captureState(client);
+			}
+			for (ClientSession client : clients) {
+				sendSnapshot(client);
+			}
+		}
+	}
+
+	private void receivePackets(long now) throws IOException {
+		while (true) {
+			receiveBuffer.clear();
+			SocketAddress from = channel.receive(receiveBuffer);
+			if (from == null) {
+				return;
+			}
+			receiveBuffer.flip();
+			packetsReceived++;
+			bytesReceived += receiveBuffer.remaining();
+
+			byte type = Protocol.readHeader(receiveBuffer);
+			ClientSession client = sessions.get(from);
+			if (client != null) {
+				client.lastHeard = now;
+				client.bytesReceived += receiveBuffer.limit();
+			}
+			try {
+				switch (type) {
+					case Protocol.CONNECT:
+						handleConnect(from, client, now);
+						break;
+					case Protocol.INPUT:
+						if (client != null) {
+							readInput(client);
+						}
+						break;
+					case Protocol.DISCONNECT:
+						if (client != null) {
+							removeClient(client);
+						}
+						break;
+					default:
+						rejectedPackets++;
+						break;
+				}
+			} catch (RuntimeException e) {
+				// Truncated or malformed datagram
+				rejectedPackets++;
+			}
+		}
+	}
+
+	private void handleConnect(SocketAddress from, ClientSession client, long now) throws IOException {
+		if (Protocol.getVarInt(receiveBuffer) != Protocol.VERSION) {
+			send(from, Protocol.DISCONNECT);
+			return;
+		}
+		if (client == null) {
+			if (clients.size() >= MAX_CLIENTS) {
+				send(from, Protocol.DISCONNECT);
+				return;
+			}
+			Player player = new Player(app, gameMap, false);
+			Vector3f spawn = gameMap.getPlayerSpawnPosition();
+			player.setPosition(spawn);
+			player.setWeapon(HitscanWeapon.rifle(nextPlayerId));
+			player.setHitscan(hitscan);
+			player.setProjectiles(projectiles);
+			hitscan.addTarget(player);
+			int handle = interest.add(spawn.x, spawn.z);
+			interest.observe(handle);
+			client = new ClientSession(from, nextPlayerId++, player, handle, now);
+			clientsByHandle[handle] = client;
+			sessions.put(from, client);
+			clients.add(client);
+		}
+		// Sent again for every connect, the first accept may have been lost
+		Protocol.writeHeader(sendBuffer, Protocol.ACCEPT);
+		Protocol.putVarInt(sendBuffer, client.id);
+		Protocol.putVarInt(sendBuffer, tickRate);
+		Protocol.putVarInt(sendBuffer, SNAPSHOT_INTERVAL);
+		sendBuffer.flip();
+		bytesSent += sendBuffer.remaining();
+		client.bytesSent += sendBuffer.remaining();
+		channel.send(sendBuffer, from);
+	}
+
+	private void readInput(ClientSession client) {
+		int sequence = Protocol.getVarInt(receiveBuffer);
+		int ackedTick = Protocol.getVarInt(receiveBuffer);
+		int count = receiveBuffer.get() & 0xFF;
+		if (count == 0 || count > Protocol.REDUNDANT_INPUTS) {
+			rejectedPackets++;
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			scratchButtons[i] = receiveBuffer.get() & 0xFF;
+			scratchYaws[i] = Protocol.dequantizeAngle(receiveBuffer.getShort() & 0xFFFF);
+			scratchPitches[i] = Protocol.dequantizeAngle(receiveBuffer.getShort() & 0xFFFF);
+		}
+		if (ackedTick > client.ackedTick && ackedTick <= tick) {
+			client.ackedTick = ackedTick;
+		}
+		// Oldest first, the copies of inputs already queued or simulated are ignored
+		for (int i = count - 1; i >= 0; i--) {
+			client.queueInput(sequence - i, scratchButtons[i], scratchYaws[i], scratchPitches[i]);
+		}
+	}
+
+	/*
+	 * Move the player of a client one step per input received, in order
+	 */
+	private void simulateInputs(ClientSession client, float step) {
+		Player player = client.player;
+		for (int i = 0; i < MAX_INPUTS_PER_TICK; i++) {
+			int slot = client.nextInput();
+			if (slot < 0) {
+				return;
+			}
+			InputCommand.apply(player, client.queuedButtons[slot], client.queuedYaws[slot], client.queuedPitches[slot]);
+			player.simulate(step);
+			client.inputSequence = client.queuedSequences[slot];
+		}
+	}
+
+	private void captureState(ClientSession client) {
+		Player player = client.player;
+		Vector3f position = player.getPosition(scratchPosition);
+		int[] state = client.state;
+		state[Snapshot.X] = Protocol.quantizePosition(position.x);
+		state[Snapshot.Y] = Protocol.quantizePosition(position.y);
+		state[Snapshot.Z] = Protocol.quantizePosition(position.z);
+		state[Snapshot.YAW] = Protocol.quantizeAngle(player.getHorizontalAngle());
+		state[Snapshot.PITCH] = Protocol.quantizeAngle(player.getVerticalAngle());
+		state[Snapshot.HEALTH] = Math.round(player.getHealth());
+	}
+
+	/*
+	 * Snapshot of the players around a client, sorted by id as the codec needs
+	 */
+	private Snapshot captureSnapshot(ClientSession client) {
+		InterestSet relevant = interest.getInterest(client.interestHandle);
+		int count = relevant.size();
+		for (int i = 0; i < count; i++) {
+			int handle = relevant.get(i);
+			scratchOrder[i] = (long) clientsByHandle[handle].id << 32 | handle;
+		}
+		Arrays.sort(scratchOrder, 0, count);
+
+		Snapshot snapshot = client.history.slot(tick);
+		for (int i = 0; i < count; i++) {
+			ClientSession other = clientsByHandle[(int) scratchOrder[i]];
+			int[] state = other.state;
+			snapshot.add(other.id, state[Snapshot.X], state[Snapshot.Y], state[Snapshot.Z],
+					state[Snapshot.YAW], state[Snapshot.PITCH], state[Snapshot.HEALTH]);
+		}
+		replicatedPlayers += count;
+		return snapshot;
+	}
+
+	private void sendSnapshot(ClientSession client) throws IOException {
+		Snapshot snapshot = captureSnapshot(client);
+		// Delta against the last state the client has, in full if it has none left
+		Snapshot baseline = client.ackedTick > 0 ? client.history.get(client.ackedTick) : null;
+		if (baseline == null) {
+			fullSnapshots++;
+		} else {
+			deltaSnapshots++;
+		}
+		Protocol.writeHeader(sendBuffer, Protocol.SNAPSHOT);
+		scratchMovement.copyFrom(client.player);
+		SnapshotCodec.write(sendBuffer, snapshot, baseline, client.inputSequence, scratchMovement);
+		sendBuffer.flip();
+		int size = sendBuffer.remaining();
+		if (channel.send(sendBuffer, client.address) > 0) {
+			bytesSent += size;
+			client.bytesSent += size;
+			client.snapshotsSent++;
+		}
+	}
+
+	private void send(SocketAddress to, byte type) throws IOException {
+		Protocol.writeHeader(sendBuffer, type);
+		sendBuffer.flip();
+		bytesSent += sendBuffer.remaining();
+		channel.send(sendBuffer, to);
+	}
+
+	private void dropSilentClients(long now) {
+		for (int i = clients.size() - 1; i >= 0; i--) {
+			ClientSession client = clients.get(i);
+			if (now - client.lastHeard > TIMEOUT) {
+				removeClient(client);
+			}
+		}
+	}
+
+	private void removeClient(ClientSession client) {
+		sessions.remove(client.address);
+		clients.remove(client);
+		interest.remove(client.interestHandle);
+		clientsByHandle[client.interestHandle] = null;
+		hitscan.removeTarget(client.player);
+		client.player.cleanup();
+	}
+
+	/*
+	 * Tell the clients and release the channel and the players
+	 */
+	public void close() {
+		for (ClientSession client : new ArrayList<>(clients)) {
+			try {
+				send(client.address, Protocol.DISCONNECT);
+			} catch (IOException e) {
+				// Closing anyway
+			}
+			removeClient(client);
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				System.err.println("Cannot close server channel: " + e.getMessage());
+			}
+			channel = null;
+		}
+	}
+
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	/*
+	 * Bytes sent to the client at an index (connection order)
+	 */
+	public long getClientBytesSent(int index) {
+		return clients.get(index).bytesSent;
+	}
+
+	/*
+	 * Inputs of the client at an index lost with all their copies
+	 */
+	public long getClientInputsSkipped(int index) {
+		return clients.get(index).inputsSkipped;
+	}
+
+	public int getTick() {
+		return tick;
+	}
+
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	public long getPacketsReceived() {
+		return packetsReceived;
+	}
+
+	public long getFullSnapshotCount() {
+		return fullSnapshots;
+	}
+
+	public long getDeltaSnapshotCount() {
+		return deltaSnapshots;
+	}
+
+	public long getRejectedPacketCount() {
+		return rejectedPackets;
+	}
+
+	/*
+	 * Players sent in all the snapshots so far, over the snapshot count it is
+	 * the average area of interest of a client
+	 */
+	public long getReplicatedPlayerCount() {
+		return replicatedPlayers;
+	}
+
+	public InterestManager getInterest() {
+		return interest;
+	}
+
+	public HitscanSystem getHitscan() {
+		return hitscan;
+	}
+
+	public ProjectileSystem getProjectiles() {
+		return projectiles;
+	}
+}
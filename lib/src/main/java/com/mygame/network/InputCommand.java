@@ -0,0 +1,58 @@
+package com.mygame.network;
+
+import com.mygame.entities.Player;
+
+/*
+ * Conversion between the input state of a Player and the buttons and angles
+ * sent over the network. The server and the predicting client apply inputs
+ * through the same method, so a tick is simulated the same on both sides.
+ */
+public final class InputCommand {
+
+	private static final int[] MOVE_BUTTONS = {
+			Protocol.MOVE_FORWARD, Protocol.MOVE_LEFT, Protocol.MOVE_BACKWARD, Protocol.MOVE_RIGHT };
+
+	private InputCommand() {
+	}
+
+	/*
+	 * Buttons held or requested on a player for its next tick
+	 */
+	public static int capture(Player player) {
+		int buttons = 0;
+		for (int direction = 0; direction < MOVE_BUTTONS.length; direction++) {
+			if (player.getMoveState(direction)) {
+				buttons |= MOVE_BUTTONS[direction];
+			}
+		}
+		if (player.isTriggerHeld()) buttons |= Protocol.FIRE;
+		if (player.isJumpRequested()) buttons |= Protocol.JUMP;
+		if (player.isThrowRequested()) buttons |= Protocol.THROW;
+		return buttons;
+	}
+
+	/*
+	 * Angle as the other side sees it after quantization
+	 */
+	public static float roundAngle(float radians) {
+		return Protocol.dequantizeAngle(Protocol.quantizeAngle(radians));
+	}
+
+	/*
+	 * Set the inputs of a player for its next tick
+	 */
+	public static void apply(Player player, int buttons, float yaw, float pitch) {
+		player.setHorizontalAngle(yaw);
+		player.setVerticalAngle(pitch);
+		for (int direction = 0; direction < MOVE_BUTTONS.length; direction++) {
+			player.setMoveState(direction, (buttons & MOVE_BUTTONS[direction]) != 0);
+		}
+		player.setTriggerHeld((buttons & Protocol.FIRE) != 0);
+		if ((buttons & Protocol.JUMP) != 0) {
+			player.jump();
+		}
+		if ((buttons & Protocol.THROW) != 0) {
+			player.throwGrenade();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.mygame.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/*
+ * UDP relay between clients and a server that degrades the link like a real
+ * network : every datagram is delayed by half the round trip latency plus a
+ * random jitter (so they can arrive out of order) and lost with a given rate,
+ * in both directions. Clients connect to getAddress() instead of the server,
+ * each one is relayed through its own channel so the server still sees one
+ * address per client.
+ *
+ * Non blocking, pumped once per tick from the thread of the clients. The
+ * datagrams in flight are pooled, the relay allocates only for new clients.
+ */
+public class LinkConditioner {
+
+	private final InetSocketAddress serverAddress;
+	private final long delay; // nanoseconds, one way
+	private final long jitter; // nanoseconds, one way
+	private final float lossRate;
+	private final Random random;
+
+	private DatagramChannel front;
+	private final HashMap<SocketAddress, Route> routes = new HashMap<>();
+	private final List<Route> routeList = new ArrayList<>();
+	private final PriorityQueue<Datagram> inFlight = new PriorityQueue<>();
+	private final ArrayDeque<Datagram> pool = new ArrayDeque<>();
+	private long nextOrder = 0;
+
+	// Statistics
+	private long relayed = 0;
+	private long dropped = 0;
+
+	/*
+	 * One client : its address and the channel relaying it to the server
+	 */
+	private static class Route {
+		final SocketAddress client;
+		final DatagramChannel upstream;
+
+		Route(SocketAddress client, DatagramChannel upstream) {
+			this.client = client;
+			this.upstream = upstream;
+		}
+	}
+
+	/*
+	 * A datagram waiting for its delivery time, ordered by time then arrival
+	 */
+	private static class Datagram implements Comparable<Datagram> {
+		final ByteBuffer data = ByteBuffer.allocateDirect(Protocol.MAX_PACKET);
+		Route route;
+		boolean toServer;
+		long dueTime;
+		long order;
+
+		@Override
+		public int compareTo(Datagram other) {
+			int byTime = Long.compare(dueTime, other.dueTime);
+			return byTime != 0 ? byTime : Long.compare(order, other.order);
+		}
+	}
+
+	/*
+	 * Latency is the round trip added in milliseconds, jitter the most added
+	 * at random to each way, loss the fraction of datagrams dropped each way
+	 */
+	public LinkConditioner(InetSocketAddress serverAddress, float latency, float jitter, float loss, long seed) {
+		this.serverAddress = serverAddress;
+		this.delay = (long) (latency * 1e6f / 2f);
+		this.jitter = (long) (jitter * 1e6f);
+		this.lossRate = loss;
+		this.random = new Random(seed);
+	}
+
+	/*
+	 * Listen on a free loopback port
+	 */
+	public void open() throws IOException {
+		front = DatagramChannel.open();
+		front.configureBlocking(false);
+		front.bind(new InetSocketAddress("127.0.0.1", 0));
+	}
+
+	/*
+	 * Address the clients connect to
+	 */
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) front.getLocalAddress();
+	}
+
+	/*
+	 * Receive from both sides and deliver the datagrams that are due
+	 */
+	public void pump() throws IOException {
+		long now = System.nanoTime();
+		while (true) {
+			Datagram datagram = obtain();
+			SocketAddress from = front.receive(datagram.data);
+			if (from == null) {
+				pool.push(datagram);
+				break;
+			}
+			Route route = routes.get(from);
+			if (route == null) {
+				route = openRoute(from);
+			}
+			schedule(datagram, route, true, now);
+		}
+		for (Route route : routeList) {
+			while (true) {
+				Datagram datagram = obtain();
+				if (route.upstream.read(datagram.data) <= 0) {
+					pool.push(datagram);
+					break;
+				}
+				schedule(datagram, route, false, now);
+			}
+		}
+
+		while (!inFlight.isEmpty() && inFlight.peek().dueTime <= now) {
+			Datagram datagram = inFlight.poll();
+			datagram.data.flip();
+			if (datagram.toServer) {
+				datagram.route.upstream.write(datagram.data);
+			} else {
+				front.send(datagram.data, datagram.route.client);
+			}
+			datagram.route = null;
+			pool.push(datagram);
+			relayed++;
+		}
+	}
+
+	private Route openRoute(SocketAddress client) throws IOException {
+		DatagramChannel upstream = DatagramChannel.open();
+		upstream.configureBlocking(false);
+		upstream.connect(serverAddress);
+		Route route = new Route(client, upstream);
+		routes.put(client, route);
+		routeList.add(route);
+		return route;
+	}
+
+	private Datagram obtain() {
+		Datagram datagram = pool.isEmpty() ? new Datagram() : pool.pop();
+		datagram.data.clear();
+		return datagram;
+	}
+
+	private void schedule(Datagram datagram, Route route, boolean toServer, long now) {
+		if (random.nextFloat() < lossRate) {
+			pool.push(datagram);
+			dropped++;
+			return;
+		}
+		datagram.route = route;
+		datagram.toServer = toServer;
+		datagram.dueTime = now + delay + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0L);
+		datagram.order = nextOrder++;
+		inFlight.add(datagram);
+	}
+
+	/*
+	 * Close every channel, the datagrams in flight are lost
+	 */
+	public void close() {
+		for (Route route : routeList) {
+			try {
+				route.upstream.close();
+			} catch (IOException e) {
+				// Closing anyway
+			}
+		}
+		routeList.clear();
+		routes.clear();
+		inFlight.clear();
+		if (front != null) {
+			try {
+				front.close();
+			} catch (IOException e) {
+				System.err.println("Cannot close relay channel: " + e.getMessage());
+			}
+			front = null;
+		}
+	}
+
+	public long getRelayedCount() {
+		return relayed;
+	}
+
+	public long getDroppedCount() {
+		return dropped;
+	}
+}
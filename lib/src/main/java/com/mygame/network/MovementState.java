@@ -0,0 +1,32 @@
+package com.mygame.network;
+
+import com.mygame.entities.Player;
+
+import com.jme3.math.Vector3f;
+
+/*
+ * Exact movement state of a player : what a client needs to restart its
+ * prediction from the authoritative state. Sent unquantized to the player it
+ * belongs to only, so a replay from it matches the server bit for bit.
+ */
+public class MovementState {
+
+	public float x, y, z;
+	public float velocityY;
+	public boolean onGround;
+
+	private final Vector3f scratch = new Vector3f();
+
+	public void copyFrom(Player player) {
+		Vector3f position = player.getPosition(scratch);
+		x = position.x;
+		y = position.y;
+		z = position.z;
+		velocityY = player.getVelocityY();
+		onGround = player.isOnGround();
+	}
+
+	public void applyTo(Player player) {
+		player.restoreMovement(x, y, z, velocityY, onGround);
+	}
+}
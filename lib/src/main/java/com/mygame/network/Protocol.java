@@ -0,0 +1,118 @@
+package com.mygame.network;
+
+import com.jme3.math.FastMath;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Wire format shared by the server and the clients. Every datagram starts
+ * with the protocol id and a message type. Integers are written as varints
+ * (7 bits per byte) and signed values zigzag encoded, so the small deltas of
+ * the snapshots take one or two bytes.
+ *
+ * Positions are quantized to 1/64 unit and angles to 1/65536 turn before
+ * they are sent : the server and the clients compare and delta the quantized
+ * values, never the floats.
+ */
+public final class Protocol {
+
+	public static final short PROTOCOL_ID = 0x5333;
+	public static final int VERSION = 2;
+	// Under the usual MTU so snapshots are never fragmented
+	public static final int MAX_PACKET = 1400;
+
+	// Message types
+	public static final byte CONNECT = 1; // client : version
+	public static final byte ACCEPT = 2; // server : player id, tick rate
+	public static final byte INPUT = 3; // client : newest input sequence, acked tick, count, then newest first buttons, yaw, pitch
+	public static final byte SNAPSHOT = 4; // server : see SnapshotCodec
+	public static final byte DISCONNECT = 5; // either side, no payload
+
+	// Input buttons
+	public static final int MOVE_FORWARD = 1;
+	public static final int MOVE_LEFT = 1 << 1;
+	public static final int MOVE_BACKWARD = 1 << 2;
+	public static final int MOVE_RIGHT = 1 << 3;
+	public static final int JUMP = 1 << 4;
+	public static final int FIRE = 1 << 5;
+	public static final int THROW = 1 << 6;
+
+	// Inputs repeated in every INPUT message, a lost datagram is covered by the next ones
+	public static final int REDUNDANT_INPUTS = 3;
+
+	private static final float POSITION_SCALE = 64f;
+	private static final float ANGLE_SCALE = 65536f / FastMath.TWO_PI;
+
+	private Protocol() {
+	}
+
+	/*
+	 * Start a datagram of a type in a cleared buffer
+	 */
+	public static void writeHeader(ByteBuffer out, byte type) {
+		out.clear();
+		out.putShort(PROTOCOL_ID);
+		out.put(type);
+	}
+
+	/*
+	 * Type of a received datagram (flipped buffer), -1 if it is not ours
+	 */
+	public static byte readHeader(ByteBuffer in) {
+		if (in.remaining() < 3 || in.getShort() != PROTOCOL_ID) {
+			return -1;
+		}
+		return in.get();
+	}
+
+	public static int quantizePosition(float value) {
+		return Math.round(value * POSITION_SCALE);
+	}
+
+	public static float dequantizePosition(int value) {
+		return value / POSITION_SCALE;
+	}
+
+	/*
+	 * Angle in [0, 65536), one unit is 1/65536 turn
+	 */
+	public static int quantizeAngle(float radians) {
+		return Math.round(radians * ANGLE_SCALE) & 0xFFFF;
+	}
+
+	/*
+	 * Angle in [-PI, PI)
+	 */
+	public static float dequantizeAngle(int value) {
+		return (short) value / ANGLE_SCALE;
+	}
+
+	public static void putVarInt(ByteBuffer out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	public static int getVarInt(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	public static void putSignedVarInt(ByteBuffer out, int value) {
+		putVarInt(out, (value << 1) ^ (value >> 31));
+	}
+
+	public static int getSignedVarInt(ByteBuffer in) {
+		int value = getVarInt(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
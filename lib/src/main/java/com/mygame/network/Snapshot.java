@@ -0,0 +1,128 @@
+package com.mygame.network;
+
+import java.util.Arrays;
+
+/*
+ * Quantized state of every player at a server tick, sorted by player id.
+ * The fields of an entity are packed in one int array so a snapshot is
+ * copied, compared and delta encoded without objects.
+ */
+public class Snapshot {
+
+	// Fields of an entity, in wire order
+	public static final int X = 0;
+	public static final int Y = 1;
+	public static final int Z = 2;
+	public static final int YAW = 3;
+	public static final int PITCH = 4;
+	public static final int HEALTH = 5;
+	public static final int FIELDS = 6;
+
+	int tick = -1;
+	// Last input sequence of the receiving client applied in this state (0 = none)
+	int inputAck = 0;
+	int count = 0;
+	int[] ids;
+	int[] fields;
+	// Exact state of the player of the receiving client, after the input acked
+	final MovementState self = new MovementState();
+	boolean hasSelf = false;
+
+	public Snapshot(int capacity) {
+		ids = new int[capacity];
+		fields = new int[capacity * FIELDS];
+	}
+
+	void clear(int newTick) {
+		tick = newTick;
+		inputAck = 0;
+		count = 0;
+		hasSelf = false;
+	}
+
+	/*
+	 * Append an entity, ids must come in increasing order
+	 */
+	void add(int id, int x, int y, int z, int yaw, int pitch, int health) {
+		ensureCapacity(count + 1);
+		ids[count] = id;
+		int f = count * FIELDS;
+		fields[f + X] = x;
+		fields[f + Y] = y;
+		fields[f + Z] = z;
+		fields[f + YAW] = yaw;
+		fields[f + PITCH] = pitch;
+		fields[f + HEALTH] = health;
+		count++;
+	}
+
+	void ensureCapacity(int capacity) {
+		if (capacity > ids.length) {
+			int size = Math.max(capacity, ids.length * 2);
+			ids = Arrays.copyOf(ids, size);
+			fields = Arrays.copyOf(fields, size * FIELDS);
+		}
+	}
+
+	/*
+	 * Index of an entity, -1 if it is not in the snapshot
+	 */
+	public int indexOf(int id) {
+		int index = Arrays.binarySearch(ids, 0, count, id);
+		return index >= 0 ? index : -1;
+	}
+
+	public int getTick() {
+		return tick;
+	}
+
+	public int getInputAck() {
+		return inputAck;
+	}
+
+	/*
+	 * Exact state of the player of this client, null if the snapshot has none
+	 */
+	public MovementState getSelf() {
+		return hasSelf ? self : null;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int getId(int index) {
+		return ids[index];
+	}
+
+	/*
+	 * Quantized field of an entity (see Protocol)
+	 */
+	public int getField(int index, int field) {
+		return fields[index * FIELDS + field];
+	}
+
+	public float getX(int index) {
+		return Protocol.dequantizePosition(fields[index * FIELDS + X]);
+	}
+
+	public float getY(int index) {
+		return Protocol.dequantizePosition(fields[index * FIELDS + Y]);
+	}
+
+	public float getZ(int index) {
+		return Protocol.dequantizePosition(fields[index * FIELDS + Z]);
+	}
+
+	public float getYaw(int index) {
+		return Protocol.dequantizeAngle(fields[index * FIELDS + YAW]);
+	}
+
+	public float getPitch(int index) {
+		return Protocol.dequantizeAngle(fields[index * FIELDS + PITCH]);
+	}
+
+	public int getHealth(int index) {
+		return fields[index * FIELDS + HEALTH];
+	}
+}
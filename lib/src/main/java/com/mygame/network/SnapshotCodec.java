@@ -0,0 +1,186 @@
+package com.mygame.network;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/*
+ * Delta compression of snapshots against a baseline the client acknowledged.
+ *
+ * Payload : tick, ticks back to the baseline (0 = none, every entity sent
+ * in full), input ack of the client, a flag byte then the unquantized
+ * movement state of the player of the client if the flag has SELF, entity
+ * count, then for each entity the
+ * gap to the previous id, a byte with one bit per changed field (bit 7 = not
+ * in the baseline) and the zigzag varint delta of each changed field. An
+ * entity that did not move costs two bytes, one that was left out of the
+ * list is gone. Angle deltas wrap around the turn.
+ */
+public final class SnapshotCodec {
+
+	private static final int NEW_ENTITY = 0x80;
+	private static final int ALL_FIELDS = (1 << Snapshot.FIELDS) - 1;
+	// Flags of the own player state
+	private static final int SELF = 1;
+	private static final int SELF_ON_GROUND = 1 << 1;
+
+	private SnapshotCodec() {
+	}
+
+	/*
+	 * Write a snapshot after the header, baseline null for a full snapshot,
+	 * self null if the client has no player
+	 */
+	public static void write(ByteBuffer out, Snapshot current, Snapshot baseline, int inputAck, MovementState self) {
+		Protocol.putVarInt(out, current.tick);
+		Protocol.putVarInt(out, baseline == null ? 0 : current.tick - baseline.tick);
+		Protocol.putVarInt(out, inputAck);
+		if (self == null) {
+			out.put((byte) 0);
+		} else {
+			out.put((byte) (SELF | (self.onGround ? SELF_ON_GROUND : 0)));
+			out.putFloat(self.x);
+			out.putFloat(self.y);
+			out.putFloat(self.z);
+			out.putFloat(self.velocityY);
+		}
+		Protocol.putVarInt(out, current.count);
+
+		int previousId = -1;
+		int b = 0;
+		for (int i = 0; i < current.count; i++) {
+			int id = current.ids[i];
+			Protocol.putVarInt(out, id - previousId - 1);
+			previousId = id;
+
+			// Both lists are sorted by id : walk the baseline along
+			if (baseline != null) {
+				while (b < baseline.count && baseline.ids[b] < id) {
+					b++;
+				}
+			}
+			int f = i * Snapshot.FIELDS;
+			if (baseline == null || b == baseline.count || baseline.ids[b] != id) {
+				out.put((byte) (NEW_ENTITY | ALL_FIELDS));
+				for (int field = 0; field < Snapshot.FIELDS; field++) {
+					Protocol.putSignedVarInt(out, current.fields[f + field]);
+				}
+				continue;
+			}
+			int base = b * Snapshot.FIELDS;
+			int mask = 0;
+			for (int field = 0; field < Snapshot.FIELDS; field++) {
+				if (current.fields[f + field] != baseline.fields[base + field]) {
+					mask |= 1 << field;
+				}
+			}
+			out.put((byte) mask);
+			for (int field = 0; field < Snapshot.FIELDS; field++) {
+				if ((mask & (1 << field)) != 0) {
+					Protocol.putSignedVarInt(out, delta(field, current.fields[f + field], baseline.fields[base + field]));
+				}
+			}
+		}
+	}
+
+	/*
+	 * Decode a snapshot payload into the history of the client, return the
+	 * snapshot or null if its baseline is no longer known or the payload is
+	 * malformed
+	 */
+	public static Snapshot read(ByteBuffer in, SnapshotHistory history) {
+		Snapshot snapshot = null;
+		try {
+			int tick = Protocol.getVarInt(in);
+			int baselineOffset = Protocol.getVarInt(in);
+			Snapshot baseline = null;
+			if (baselineOffset != 0) {
+				baseline = history.get(tick - baselineOffset);
+				if (baseline == null) {
+					return null;
+				}
+			}
+			int inputAck = Protocol.getVarInt(in);
+			int flags = in.get();
+			float x = 0f, y = 0f, z = 0f, velocityY = 0f;
+			if ((flags & SELF) != 0) {
+				x = in.getFloat();
+				y = in.getFloat();
+				z = in.getFloat();
+				velocityY = in.getFloat();
+			}
+			int count = Protocol.getVarInt(in);
+			if (count < 0 || count > in.remaining() / 2) {
+				return null; // every entity takes at least two bytes
+			}
+
+			snapshot = history.slot(tick);
+			snapshot.inputAck = inputAck;
+			if ((flags & SELF) != 0) {
+				MovementState self = snapshot.self;
+				self.x = x;
+				self.y = y;
+				self.z = z;
+				self.velocityY = velocityY;
+				self.onGround = (flags & SELF_ON_GROUND) != 0;
+				snapshot.hasSelf = true;
+			}
+			snapshot.ensureCapacity(count);
+			int previousId = -1;
+			int b = 0;
+			for (int i = 0; i < count; i++) {
+				int id = previousId + 1 + Protocol.getVarInt(in);
+				previousId = id;
+				int mask = in.get() & 0xFF;
+				int f = i * Snapshot.FIELDS;
+				snapshot.ids[i] = id;
+
+				if ((mask & NEW_ENTITY) != 0) {
+					for (int field = 0; field < Snapshot.FIELDS; field++) {
+						snapshot.fields[f + field] = Protocol.getSignedVarInt(in);
+					}
+					continue;
+				}
+				if (baseline == null) {
+					snapshot.tick = -1;
+					return null;
+				}
+				while (b < baseline.count && baseline.ids[b] < id) {
+					b++;
+				}
+				if (b == baseline.count || baseline.ids[b] != id) {
+					snapshot.tick = -1;
+					return null;
+				}
+				int base = b * Snapshot.FIELDS;
+				for (int field = 0; field < Snapshot.FIELDS; field++) {
+					int value = baseline.fields[base + field];
+					if ((mask & (1 << field)) != 0) {
+						value = undelta(field, value, Protocol.getSignedVarInt(in));
+					}
+					snapshot.fields[f + field] = value;
+				}
+			}
+			snapshot.count = count;
+			return snapshot;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			if (snapshot != null) {
+				snapshot.tick = -1;
+			}
+			return null;
+		}
+	}
+
+	private static int delta(int field, int value, int base) {
+		if (field == Snapshot.YAW || field == Snapshot.PITCH) {
+			return (short) (value - base); // shortest way around the turn
+		}
+		return value - base;
+	}
+
+	private static int undelta(int field, int base, int delta) {
+		if (field == Snapshot.YAW || field == Snapshot.PITCH) {
+			return (base + delta) & 0xFFFF;
+		}
+		return base + delta;
+	}
+}
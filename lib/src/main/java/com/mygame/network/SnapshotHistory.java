@@ -0,0 +1,37 @@
+package com.mygame.network;
+
+/*
+ * Ring of the last snapshots by tick. The server keeps the snapshots it sent
+ * to encode deltas against the tick a client acknowledged, the client keeps
+ * the ones it received to decode them. Both sides use the same length, so a
+ * baseline the server still has is also still on the client.
+ */
+public class SnapshotHistory {
+
+	public static final int LENGTH = 64; // ticks, about a second at the snapshot rate
+
+	private final Snapshot[] snapshots = new Snapshot[LENGTH];
+
+	public SnapshotHistory(int entityCapacity) {
+		for (int i = 0; i < LENGTH; i++) {
+			snapshots[i] = new Snapshot(entityCapacity);
+		}
+	}
+
+	/*
+	 * Slot to write the snapshot of a tick in, cleared
+	 */
+	Snapshot slot(int tick) {
+		Snapshot snapshot = snapshots[Math.floorMod(tick, LENGTH)];
+		snapshot.clear(tick);
+		return snapshot;
+	}
+
+	/*
+	 * Snapshot of a tick, null if it was never stored or was overwritten
+	 */
+	public Snapshot get(int tick) {
+		Snapshot snapshot = snapshots[Math.floorMod(tick, LENGTH)];
+		return snapshot.tick == tick ? snapshot : null;
+	}
+}
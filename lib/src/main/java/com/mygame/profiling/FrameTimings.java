@@ -0,0 +1,66 @@
+package com.mygame.profiling;
+
+/*
+ * Time spent in each phase of the current frame, filled by the engine hooks
+ * of ProfilerState and by probes in the game code :
+ *
+ *   long start = FrameTimings.begin();
+ *   ...
+ *   FrameTimings.end(FrameTimings.Phase.COLLISION, start);
+ *
+ * Probes cost a static field read while profiling is off. Render thread only.
+ */
+public final class FrameTimings {
+
+	public enum Phase {
+		FRAME,
+		INPUT,
+		APP_STATES,
+		GAME_UPDATE,
+		PLAYER_UPDATE,
+		COLLISION,
+		SCENE_GRAPH,
+		RENDER
+	}
+
+	private static boolean enabled = false;
+	private static final long[] frameNanos = new long[Phase.values().length];
+
+	private FrameTimings() {
+	}
+
+	/*
+	 * Start of a timed section, 0 when profiling is off
+	 */
+	public static long begin() {
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+	public static void end(Phase phase, long begin) {
+		if (begin != 0L) {
+			frameNanos[phase.ordinal()] += System.nanoTime() - begin;
+		}
+	}
+
+	static void add(Phase phase, long nanos) {
+		frameNanos[phase.ordinal()] += nanos;
+	}
+
+	/*
+	 * Time of a phase in the current frame, which starts over at 0
+	 */
+	static long take(Phase phase) {
+		long nanos = frameNanos[phase.ordinal()];
+		frameNanos[phase.ordinal()] = 0L;
+		return nanos;
+	}
+
+	static void setEnabled(boolean enabled) {
+		FrameTimings.enabled = enabled;
+		java.util.Arrays.fill(frameNanos, 0L);
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+}
@@ -0,0 +1,230 @@
+package com.mygame.profiling;
+
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.font.BitmapFont;
+import com.jme3.font.BitmapText;
+import com.jme3.input.KeyInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.KeyTrigger;
+import com.jme3.math.ColorRGBA;
+import com.jme3.profile.AppProfiler;
+import com.jme3.profile.AppStep;
+import com.jme3.profile.SpStep;
+import com.jme3.profile.VpStep;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/*
+ * Times each phase of the frame and keeps the latencies in histograms.
+ * Engine phases (input, app states, scene graph, render) come from the
+ * AppProfiler steps of the application, game phases from the FrameTimings
+ * probes. The optional HUD (F3) shows p50 / p99 / max over the last seconds,
+ * the summary of the whole session is written to a file on exit so runs of
+ * the same scripted session can be compared.
+ */
+public class ProfilerState extends AbstractAppState implements AppProfiler, ActionListener {
+
+	private static final FrameTimings.Phase[] PHASES = FrameTimings.Phase.values();
+	private static final float HUD_REFRESH = 0.5f; // seconds
+	private static final float HUD_WINDOW = 5f; // seconds of frames shown by the HUD
+	private static final String TOGGLE_HUD = "Toggle Profiler";
+
+	private final Path summaryPath; // null = no summary
+	private final boolean hudEnabled;
+
+	private final LatencyHistogram[] session = new LatencyHistogram[PHASES.length];
+	private final LatencyHistogram[] window = new LatencyHistogram[PHASES.length];
+
+	// Engine step being timed, null between the timed steps
+	private FrameTimings.Phase stepPhase = null;
+	private long stepStart = 0L;
+	private long frameStart = 0L;
+	private long sessionStart = 0L;
+
+	private SimpleApplication app;
+	private BitmapText hud;
+	private boolean hudVisible = false;
+	private float hudTimer = 0f;
+	private float windowTimer = 0f;
+
+	public ProfilerState(Path summaryPath, boolean hudEnabled) {
+		this.summaryPath = summaryPath;
+		this.hudEnabled = hudEnabled;
+		for (int i = 0; i < PHASES.length; i++) {
+			session[i] = new LatencyHistogram();
+			window[i] = new LatencyHistogram();
+		}
+	}
+
+	@Override
+	public void initialize(AppStateManager stateManager, Application app) {
+		super.initialize(stateManager, app);
+		this.app = (SimpleApplication) app;
+
+		FrameTimings.setEnabled(true);
+		app.setAppProfiler(this);
+		sessionStart = System.nanoTime();
+
+		if (hudEnabled) {
+			BitmapFont font = app.getAssetManager().loadFont("Interface/Fonts/Console.fnt");
+			hud = new BitmapText(font);
+			hud.setColor(ColorRGBA.Yellow);
+			hud.setLocalTranslation(10, app.getCamera().getHeight() - 10, 0);
+			app.getInputManager().addMapping(TOGGLE_HUD, new KeyTrigger(KeyInput.KEY_F3));
+			app.getInputManager().addListener(this, TOGGLE_HUD);
+		}
+	}
+
+	@Override
+	public void appStep(AppStep step) {
+		long now = System.nanoTime();
+		if (stepPhase != null) {
+			FrameTimings.add(stepPhase, now - stepStart);
+		}
+		stepStart = now;
+
+		switch (step) {
+			case BeginFrame:
+				if (frameStart != 0L) {
+					endFrame(now - frameStart);
+				}
+				frameStart = now;
+				stepPhase = null;
+				break;
+			case ProcessInput:
+				stepPhase = FrameTimings.Phase.INPUT;
+				break;
+			case StateManagerUpdate:
+				stepPhase = FrameTimings.Phase.APP_STATES;
+				break;
+			case SpatialUpdate:
+				stepPhase = FrameTimings.Phase.SCENE_GRAPH;
+				break;
+			case StateManagerRender:
+			case RenderFrame:
+			case RenderPreviewViewPorts:
+			case RenderMainViewPorts:
+			case RenderPostViewPorts:
+				stepPhase = FrameTimings.Phase.RENDER;
+				break;
+			default:
+				stepPhase = null;
+				break;
+		}
+	}
+
+	/*
+	 * Record the phases of the frame that just ended
+	 */
+	private void endFrame(long frameNanos) {
+		FrameTimings.add(FrameTimings.Phase.FRAME, frameNanos);
+		for (int i = 0; i < PHASES.length; i++) {
+			long nanos = FrameTimings.take(PHASES[i]);
+			session[i].record(nanos);
+			window[i].record(nanos);
+		}
+	}
+
+	@Override
+	public void appSubStep(String... additionalInfo) {
+	}
+
+	@Override
+	public void vpStep(VpStep step, ViewPort vp, RenderQueue.Bucket bucket) {
+	}
+
+	@Override
+	public void spStep(SpStep step, String... additionalInfo) {
+	}
+
+	@Override
+	public void update(float tpf) {
+		super.update(tpf);
+		if (hud == null || !hudVisible) {
+			return;
+		}
+		hudTimer += tpf;
+		windowTimer += tpf;
+		if (hudTimer >= HUD_REFRESH) {
+			hudTimer = 0f;
+			hud.setText(formatTable(window));
+		}
+		if (windowTimer >= HUD_WINDOW) {
+			windowTimer = 0f;
+			for (LatencyHistogram histogram : window) {
+				histogram.reset();
+			}
+		}
+	}
+
+	@Override
+	public void onAction(String name, boolean isPressed, float tpf) {
+		if (name.equals(TOGGLE_HUD) && isPressed) {
+			hudVisible = !hudVisible;
+			if (hudVisible) {
+				hud.setText(formatTable(window));
+				app.getGuiNode().attachChild(hud);
+			} else {
+				hud.removeFromParent();
+			}
+		}
+	}
+
+	/*
+	 * One line per phase : p50, p99 and max in milliseconds
+	 */
+	private static String formatTable(LatencyHistogram[] histograms) {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format(Locale.ROOT, "%-14s %8s %8s %8s %8s%n", "phase (ms)", "mean", "p50", "p99", "max"));
+		for (int i = 0; i < PHASES.length; i++) {
+			LatencyHistogram histogram = histograms[i];
+			text.append(String.format(Locale.ROOT, "%-14s %8.3f %8.3f %8.3f %8.3f%n",
+					PHASES[i].name().toLowerCase(Locale.ROOT),
+					histogram.getMean() / 1e6,
+					histogram.percentile(0.5) / 1e6,
+					histogram.percentile(0.99) / 1e6,
+					histogram.getMax() / 1e6));
+		}
+		return text.toString();
+	}
+
+	private void writeSummary() {
+		long frames = session[FrameTimings.Phase.FRAME.ordinal()].getCount();
+		double seconds = (System.nanoTime() - sessionStart) / 1e9;
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(summaryPath))) {
+			out.printf(Locale.ROOT, "frames %d, %.1f s, %.1f fps%n", frames, seconds, frames / Math.max(seconds, 1e-9));
+			out.print(formatTable(session));
+		} catch (IOException e) {
+			System.err.println("Cannot write profile summary " + summaryPath + ": " + e.getMessage());
+			return;
+		}
+		System.out.println("Profile summary written to " + summaryPath);
+	}
+
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		if (app.getAppProfiler() == this) {
+			app.setAppProfiler(null);
+		}
+		FrameTimings.setEnabled(false);
+
+		if (hud != null) {
+			hud.removeFromParent();
+			app.getInputManager().deleteMapping(TOGGLE_HUD);
+			app.getInputManager().removeListener(this);
+		}
+		if (summaryPath != null) {
+			writeSummary();
+		}
+	}
+}
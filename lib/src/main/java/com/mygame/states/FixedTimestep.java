@@ -0,0 +1,61 @@
+package com.mygame.states;
+
+/*
+ * Accumulator turning variable frame times into fixed simulation ticks.
+ * The number of ticks per frame is bounded : after a long stall the extra
+ * time is dropped instead of being caught up (no death spiral).
+ */
+public class FixedTimestep {
+
+	private final float step;
+	private final int maxTicksPerFrame;
+	private float accumulator = 0f;
+	private long droppedTicks = 0;
+
+	public FixedTimestep(float step, int maxTicksPerFrame) {
+		this.step = step;
+		this.maxTicksPerFrame = maxTicksPerFrame;
+	}
+
+	/*
+	 * Add the frame time, return the number of ticks to simulate this frame
+	 */
+	public int advance(float tpf) {
+		accumulator += tpf;
+		int ticks = (int) (accumulator / step);
+		if (ticks > maxTicksPerFrame) {
+			// Too far behind : keep the fractional part, forget the rest
+			droppedTicks += ticks - maxTicksPerFrame;
+			accumulator -= ticks * step;
+			ticks = maxTicksPerFrame;
+		} else {
+			accumulator -= ticks * step;
+		}
+		if (accumulator < 0f) {
+			accumulator = 0f;
+		}
+		return ticks;
+	}
+
+	/*
+	 * Position between the last two ticks (0 = previous tick, 1 = last tick)
+	 */
+	public float getAlpha() {
+		return Math.min(1f, accumulator / step);
+	}
+
+	public float getStep() {
+		return step;
+	}
+
+	/*
+	 * Ticks skipped by the catch-up limit since creation
+	 */
+	public long getDroppedTicks() {
+		return droppedTicks;
+	}
+
+	public void reset() {
+		accumulator = 0f;
+	}
+}
@@ -0,0 +1,184 @@
+package com.mygame.states;
+
+import com.mygame.network.GameServer;
+
+import java.nio.file.Path;
+
+/*
+ * Settings of a game given on the command line, shared by the states that
+ * start one (menu, game, headless simulation, dedicated server). Each state
+ * reads the settings it needs, the defaults play the built-in map alone.
+ */
+public class GameOptions {
+
+	// Binary map file to play, null for the built-in map
+	private Path mapPath = null;
+	// Side of the streamed procedural world, 0 to play the map instead
+	private float worldSize = 0f;
+	// Collide through the Bullet physics space instead of the map grid
+	private boolean physics = false;
+	// AI bots simulated next to the players
+	private int botCount = 0;
+
+	// Rendering optimizations of the map, all on unless turned off to compare
+	private boolean staticBatching = true;
+	private boolean instancing = true;
+	private boolean levelOfDetail = true;
+	private boolean visibilityCulling = true;
+
+	// Headless simulation : scripted players, seconds to run (0 = until killed), unbounded tick rate
+	private int playerCount = 16;
+	private float duration = 0f;
+	private boolean benchmark = false;
+
+	// Dedicated server : port, simulated clients and their link
+	private int port = GameServer.DEFAULT_PORT;
+	private int clientCount = 0;
+	private float latency = 0f; // round trip, milliseconds
+	private float jitter = 0f; // milliseconds
+	private float loss = 0f; // rate in [0, 1]
+
+	public Path getMapPath() {
+		return mapPath;
+	}
+
+	public GameOptions setMapPath(Path mapPath) {
+		this.mapPath = mapPath;
+		return this;
+	}
+
+	public float getWorldSize() {
+		return worldSize;
+	}
+
+	public GameOptions setWorldSize(float worldSize) {
+		this.worldSize = worldSize;
+		return this;
+	}
+
+	public boolean isPhysics() {
+		return physics;
+	}
+
+	public GameOptions setPhysics(boolean physics) {
+		this.physics = physics;
+		return this;
+	}
+
+	public int getBotCount() {
+		return botCount;
+	}
+
+	public GameOptions setBotCount(int botCount) {
+		this.botCount = botCount;
+		return this;
+	}
+
+	public boolean isStaticBatching() {
+		return staticBatching;
+	}
+
+	public GameOptions setStaticBatching(boolean staticBatching) {
+		this.staticBatching = staticBatching;
+		return this;
+	}
+
+	public boolean isInstancing() {
+		return instancing;
+	}
+
+	public GameOptions setInstancing(boolean instancing) {
+		this.instancing = instancing;
+		return this;
+	}
+
+	public boolean isLevelOfDetail() {
+		return levelOfDetail;
+	}
+
+	public GameOptions setLevelOfDetail(boolean levelOfDetail) {
+		this.levelOfDetail = levelOfDetail;
+		return this;
+	}
+
+	public boolean isVisibilityCulling() {
+		return visibilityCulling;
+	}
+
+	public GameOptions setVisibilityCulling(boolean visibilityCulling) {
+		this.visibilityCulling = visibilityCulling;
+		return this;
+	}
+
+	public int getPlayerCount() {
+		return playerCount;
+	}
+
+	public GameOptions setPlayerCount(int playerCount) {
+		this.playerCount = playerCount;
+		return this;
+	}
+
+	public float getDuration() {
+		return duration;
+	}
+
+	public GameOptions setDuration(float duration) {
+		this.duration = duration;
+		return this;
+	}
+
+	public boolean isBenchmark() {
+		return benchmark;
+	}
+
+	public GameOptions setBenchmark(boolean benchmark) {
+		this.benchmark = benchmark;
+		return this;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public GameOptions setPort(int port) {
+		this.port = port;
+		return this;
+	}
+
+	public int getClientCount() {
+		return clientCount;
+	}
+
+	public GameOptions setClientCount(int clientCount) {
+		this.clientCount = clientCount;
+		return this;
+	}
+
+	public float getLatency() {
+		return latency;
+	}
+
+	public GameOptions setLatency(float latency) {
+		this.latency = latency;
+		return this;
+	}
+
+	public float getJitter() {
+		return jitter;
+	}
+
+	public GameOptions setJitter(float jitter) {
+		this.jitter = jitter;
+		return this;
+	}
+
+	public float getLoss() {
+		return loss;
+	}
+
+	public GameOptions setLoss(float loss) {
+		this.loss = loss;
+		return this;
+	}
+}
@@ -1,7 +1,17 @@
 package com.mygame.states;
 
+import com.mygame.interest.InterestManager;
+import com.mygame.navigation.NavGrid;
+import com.mygame.navigation.NavigationService;
+import com.mygame.profiling.FrameTimings;
+import com.mygame.world.ChunkStreamer;
 import com.mygame.world.Map;
+import com.mygame.world.PhysicsWorld;
+import com.mygame.world.ProceduralChunkGenerator;
+import com.mygame.entities.BotSystem;
+import com.mygame.entities.HitscanSystem;
 import com.mygame.entities.Player;
+import com.mygame.entities.ProjectileSystem;
 
 import com.jme3.app.Application;
 import com.jme3.app.SimpleApplication;
@@ -12,12 +22,70 @@ import com.jme3.input.controls.ActionListener;
 import com.jme3.input.controls.KeyTrigger;
 import com.jme3.math.Vector3f;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 
 public class GameState extends AbstractAppState implements ActionListener {
 	
 	private SimpleApplication app;
 	private Map gameMap;
 	private Player player;
+	private HitscanSystem hitscan;
+	private ProjectileSystem projectiles;
+	private static final int PROJECTILE_CAPACITY = 1 << 17;
+	
+	// Simulation runs at a fixed rate, rendering interpolates between ticks
+	private static final float SIMULATION_STEP = 1f / 60f;
+	private static final int MAX_TICKS_PER_FRAME = 5;
+	private FixedTimestep timestep = new FixedTimestep(SIMULATION_STEP, MAX_TICKS_PER_FRAME);
+	
+	// Map, world and bots to play with
+	private final GameOptions options;
+	private BotSystem bots;
+	// Paths of the bots, not available in a streamed world
+	private NavigationService navigation;
+	// The player as the bots see it
+	private InterestManager perception;
+	private int playerHandle;
+	private static final float NAV_CELL_SIZE = 1f;
+	private static final float PERCEPTION_CELL_SIZE = 8f;
+	private static final long WORLD_SEED = 42L;
+	private final Vector3f playerPosition = new Vector3f(); // scratch
+	// Map already built by the menu loader, attached on initialize
+	private Map preloadedMap;
+	
+	public GameState() {
+		this(new GameOptions(), null);
+	}
+	
+	/*
+	 * Start with a map built in the background (see MenuState), or load it
+	 * synchronously on initialize when preloadedMap is null
+	 */
+	public GameState(GameOptions options, Map preloadedMap) {
+		this.options = options;
+		this.preloadedMap = preloadedMap;
+	}
+	
+	/*
+	 * New empty map with the game settings, streamed in chunks if worldSize > 0.
+	 * The physics backend only handles maps that are not streamed.
+	 */
+	static Map createMap(SimpleApplication app, GameOptions options) {
+		float worldSize = options.getWorldSize();
+		Map map = new Map(app);
+		map.setStaticBatching(options.isStaticBatching());
+		map.setInstancing(options.isInstancing());
+		map.setLevelOfDetail(options.isLevelOfDetail());
+		map.setVisibilityCulling(options.isVisibilityCulling());
+		if (worldSize > 0) {
+			map.setStreamer(new ChunkStreamer(app, worldSize, new ProceduralChunkGenerator(WORLD_SEED)));
+		} else if (options.isPhysics()) {
+			map.setPhysics(new PhysicsWorld(app.getStateManager()));
+		}
+		return map;
+	}
 	
 	@Override
 	public void initialize(AppStateManager stateManager, Application app) {
@@ -28,24 +96,98 @@ public class GameState extends AbstractAppState implements ActionListener {
 		setupInputs();
 		
 		// Create and load map
-		gameMap = new Map(this.app);
-		gameMap.loadMap();
+		if (preloadedMap != null) {
+			gameMap = preloadedMap;
+			gameMap.attachMap();
+			preloadedMap = null;
+		} else {
+			gameMap = createMap(this.app, options);
+			buildMap(gameMap, options.getMapPath());
+			gameMap.attachMap();
+		}
 		
 		// Create player
 		player = new Player(this.app, gameMap);
+		hitscan = new HitscanSystem(gameMap);
+		// Bots are not targets : they have no health, shots stop on the map or on players
+		hitscan.addTarget(player);
+		player.setHitscan(hitscan);
+		projectiles = new ProjectileSystem(gameMap, PROJECTILE_CAPACITY, this.app.getAssetManager());
+		this.app.getRootNode().attachChild(projectiles.getGeometry());
+		player.setProjectiles(projectiles);
+		
+		int botCount = options.getBotCount();
+		if (botCount > 0) {
+			bots = new BotSystem(gameMap, botCount);
+			bots.spawnRandom(botCount, WORLD_SEED);
+			this.app.getRootNode().attachChild(bots.getGeometry(this.app.getAssetManager()));
+			if (gameMap.getStreamer() == null) {
+				navigation = new NavigationService(NavGrid.bake(gameMap, BotSystem.WIDTH / 2, BotSystem.HEIGHT, NAV_CELL_SIZE));
+				bots.setNavigation(navigation);
+			}
+		}
+		
 		Vector3f spawnPos = gameMap.getPlayerSpawnPosition();
 		player.setPosition(spawnPos.clone());
+		if (bots != null) {
+			perception = new InterestManager(gameMap, PERCEPTION_CELL_SIZE, BotSystem.SIGHT_RANGE, 1);
+			playerHandle = perception.add(spawnPos.x, spawnPos.z);
+			bots.setPerception(perception);
+		}
 		this.app.getCamera().setLocation(spawnPos);
 	}
 	
+	/*
+	 * Build the map file if any, the built-in map otherwise (or if the file can't be read).
+	 * A streamed world ignores the map file.
+	 * Does not attach the map, safe to call from a loading thread.
+	 */
+	static void buildMap(Map map, Path mapPath) {
+		if (mapPath != null && map.getStreamer() == null) {
+			try {
+				map.buildMap(mapPath);
+				return;
+			} catch (IOException e) {
+				System.err.println("Cannot load map " + mapPath + ": " + e.getMessage());
+				map.unloadMap();
+			}
+		}
+		map.buildMap();
+	}
+	
 	@Override
 	public void update(float tpf) {
 		super.update(tpf);
+		long start = FrameTimings.begin();
 		
-		// Update player
+		// Update player with fixed ticks
 		if (player != null) {
-			player.update(tpf);
+			// Load the chunks around the player before simulating in them
+			gameMap.updateStreaming(player.getPosition(playerPosition));
+			
+			int ticks = timestep.advance(tpf);
+			for (int i = 0; i < ticks; i++) {
+				player.simulate(timestep.getStep());
+				// Shots fired during the tick are traced together
+				hitscan.process();
+				projectiles.step(timestep.getStep());
+				if (bots != null) {
+					player.getPosition(playerPosition);
+					perception.move(playerHandle, playerPosition.x, playerPosition.z);
+					bots.tick(timestep.getStep());
+				}
+			}
+			player.render(timestep.getAlpha());
+			projectiles.updateMesh();
+			if (bots != null) {
+				bots.syncScene(timestep.getAlpha());
+			}
+			
+			// Levels of detail and visibility follow the camera placed by the player
+			gameMap.updateLod(app.getCamera().getLocation());
+			gameMap.updateVisibility(player.getPosition(playerPosition), app.getCamera().getLocation());
 		}
+		FrameTimings.end(FrameTimings.Phase.GAME_UPDATE, start);
 	}
 	
 	private void setupInputs() {
@@ -69,7 +211,7 @@ public class GameState extends AbstractAppState implements ActionListener {
 		app.getStateManager().detach(this);
 		
 		// Reactivate menu
-		MenuState menuState = new MenuState();
+		MenuState menuState = new MenuState(options);
 		app.getStateManager().attach(menuState);
 	}
 	
@@ -81,6 +223,10 @@ public class GameState extends AbstractAppState implements ActionListener {
 		app.getInputManager().deleteMapping("Toggle Debug");
 		app.getInputManager().removeListener(this);
 		
+		if (navigation != null) {
+			navigation.shutdown();
+		}
+		
 		// Unload map
 		if (gameMap != null) {
 			gameMap.unloadMap();
@@ -0,0 +1,252 @@
+package com.mygame.states;
+
+import com.mygame.interest.InterestManager;
+import com.mygame.navigation.NavGrid;
+import com.mygame.navigation.NavigationService;
+import com.mygame.world.Map;
+import com.mygame.world.VisibilityCuller;
+import com.mygame.entities.BotSystem;
+import com.mygame.entities.HitscanSystem;
+import com.mygame.entities.HitscanWeapon;
+import com.mygame.entities.Player;
+import com.mygame.entities.ProjectileSystem;
+
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+/*
+ * Simulation without display : loads the map, drives players with scripted
+ * inputs and reports the number of simulation ticks per second.
+ * In real time mode ticks follow the fixed timestep, in benchmark mode each
+ * frame runs a batch of ticks as fast as possible.
+ */
+public class HeadlessState extends AbstractAppState {
+
+	private static final float SIMULATION_STEP = 1f / 60f;
+	private static final int MAX_TICKS_PER_FRAME = 5;
+	private static final int BENCHMARK_TICKS_PER_FRAME = 100;
+	// Scripted players change their input every second of simulated time
+	private static final int SCRIPT_PERIOD_TICKS = 60;
+
+	private SimpleApplication app;
+	private Map gameMap;
+	private Player[] players;
+	private HitscanSystem hitscan;
+	private ProjectileSystem projectiles;
+	private BotSystem bots;
+	private NavigationService navigation;
+	// Players seen by the bots, null without bots
+	private InterestManager perception;
+	private int[] perceptionHandles;
+	private static final int PROJECTILE_CAPACITY = 1 << 17;
+	private static final long BOT_SEED = 7L;
+	private static final float NAV_CELL_SIZE = 1f;
+	private static final float PERCEPTION_CELL_SIZE = 8f;
+	private Random[] scripts;
+	private final Vector3f scratchPosition = new Vector3f();
+
+	private final int playerCount;
+	private final float duration;
+	private final boolean benchmark;
+	private final Path mapPath; // null for the built-in map
+	private final int botCount;
+	private FixedTimestep timestep = new FixedTimestep(SIMULATION_STEP, MAX_TICKS_PER_FRAME);
+
+	// Statistics
+	private long totalTicks = 0;
+	private long ticksSinceReport = 0;
+	private long shotsAtLastReport = 0;
+	private long pathsAtLastReport = 0;
+	private long startTime;
+	private long lastReportTime;
+
+	/*
+	 * Scripted players, duration, benchmark mode, map and bots of the options
+	 */
+	public HeadlessState(GameOptions options) {
+		this.botCount = options.getBotCount();
+		this.playerCount = options.getPlayerCount();
+		this.duration = options.getDuration();
+		this.benchmark = options.isBenchmark();
+		this.mapPath = options.getMapPath();
+	}
+
+	@Override
+	public void initialize(AppStateManager stateManager, Application app) {
+		super.initialize(stateManager, app);
+		this.app = (SimpleApplication) app;
+
+		gameMap = new Map(this.app);
+		// Only to report how much the precomputed visibility would cull
+		gameMap.setVisibilityCulling(true);
+		if (mapPath == null) {
+			gameMap.loadMap();
+		} else {
+			try {
+				gameMap.loadMap(mapPath);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot load map " + mapPath, e);
+			}
+		}
+
+		players = new Player[playerCount];
+		scripts = new Random[playerCount];
+		hitscan = new HitscanSystem(gameMap);
+		projectiles = new ProjectileSystem(gameMap, PROJECTILE_CAPACITY, null);
+		for (int i = 0; i < playerCount; i++) {
+			players[i] = new Player(this.app, gameMap, false);
+			players[i].setPosition(gameMap.getPlayerSpawnPosition());
+			players[i].setWeapon(HitscanWeapon.rifle(i));
+			players[i].setHitscan(hitscan);
+			players[i].setProjectiles(projectiles);
+			hitscan.addTarget(players[i]);
+			scripts[i] = new Random(i);
+		}
+
+		bots = new BotSystem(gameMap, botCount);
+		bots.spawnRandom(botCount, BOT_SEED);
+		if (botCount > 0) {
+			navigation = new NavigationService(NavGrid.bake(gameMap, BotSystem.WIDTH / 2, BotSystem.HEIGHT, NAV_CELL_SIZE));
+			bots.setNavigation(navigation);
+
+			perception = new InterestManager(gameMap, PERCEPTION_CELL_SIZE, BotSystem.SIGHT_RANGE, playerCount);
+			perceptionHandles = new int[playerCount];
+			for (int i = 0; i < playerCount; i++) {
+				Vector3f position = players[i].getPosition(scratchPosition);
+				perceptionHandles[i] = perception.add(position.x, position.z);
+			}
+			bots.setPerception(perception);
+		}
+
+		startTime = System.nanoTime();
+		lastReportTime = startTime;
+		System.out.println("Headless simulation: " + playerCount + " players, " + bots.getCount() + " bots, "
+				+ gameMap.getMapObjects().size() + " map objects" + (benchmark ? ", benchmark mode" : ""));
+	}
+
+	@Override
+	public void update(float tpf) {
+		super.update(tpf);
+
+		int ticks = benchmark ? BENCHMARK_TICKS_PER_FRAME : timestep.advance(tpf);
+		for (int t = 0; t < ticks; t++) {
+			tick();
+		}
+
+		long now = System.nanoTime();
+		if (now - lastReportTime >= 1_000_000_000L) {
+			float seconds = (now - lastReportTime) / 1e9f;
+			long shots = hitscan.getTotalShots() - shotsAtLastReport;
+			System.out.printf("%.0f ticks/s (%.0f player updates/s, %.0f bot updates/s, %.0f shots/s), %d projectiles, visibility culls %.0f%% of the map%n",
+					ticksSinceReport / seconds, ticksSinceReport * playerCount / seconds,
+					ticksSinceReport * bots.getCount() / seconds, shots / seconds,
+					projectiles.getLiveCount(), getCulledFraction() * 100);
+			if (navigation != null) {
+				long paths = navigation.getRequestCount() - pathsAtLastReport;
+				System.out.printf("  %.0f path requests/s, %d searches, %d merged, %d cache hits, %d bots on a path%n",
+						paths / seconds, navigation.getSearchCount(), navigation.getMergedCount(),
+						navigation.getCache().getHits(), bots.getFollowingCount());
+				pathsAtLastReport = navigation.getRequestCount();
+			}
+			if (perception != null) {
+				System.out.printf("  %d bots chasing a player, %d player cell changes%n",
+						bots.getChasingCount(), perception.getCellChangeCount());
+			}
+			ticksSinceReport = 0;
+			shotsAtLastReport = hitscan.getTotalShots();
+			lastReportTime = now;
+		}
+
+		if (duration > 0 && (now - startTime) / 1e9f >= duration) {
+			float seconds = (now - startTime) / 1e9f;
+			System.out.printf("Done: %d ticks in %.2f s, average %.0f ticks/s%n",
+					totalTicks, seconds, totalTicks / seconds);
+			app.stop();
+		}
+	}
+
+	/*
+	 * One simulation tick for every player
+	 */
+	private void tick() {
+		boolean newScript = totalTicks % SCRIPT_PERIOD_TICKS == 0;
+		for (int i = 0; i < playerCount; i++) {
+			if (newScript) {
+				applyScript(players[i], scripts[i]);
+			}
+			players[i].simulate(SIMULATION_STEP);
+		}
+		hitscan.process();
+		projectiles.step(SIMULATION_STEP);
+		if (perception != null) {
+			for (int i = 0; i < playerCount; i++) {
+				Vector3f position = players[i].getPosition(scratchPosition);
+				perception.move(perceptionHandles[i], position.x, position.z);
+			}
+		}
+		bots.tick(SIMULATION_STEP);
+		totalTicks++;
+		ticksSinceReport++;
+	}
+
+	/*
+	 * Pick new random inputs for a player
+	 */
+	private void applyScript(Player player, Random script) {
+		player.setHorizontalAngle(script.nextFloat() * FastMath.TWO_PI);
+		player.setMoveState(0, script.nextFloat() < 0.8f);
+		player.setMoveState(1, script.nextFloat() < 0.2f);
+		player.setMoveState(2, false);
+		player.setMoveState(3, script.nextFloat() < 0.2f);
+		player.setVerticalAngle((script.nextFloat() - 0.5f) * 0.2f);
+		player.setTriggerHeld(script.nextFloat() < 0.5f);
+		if (script.nextFloat() < 0.2f) {
+			player.throwGrenade();
+		}
+		if (script.nextFloat() < 0.3f) {
+			player.jump();
+		}
+	}
+
+	/*
+	 * Average fraction of the map spatials hidden by visibility culling from the player positions
+	 */
+	public float getCulledFraction() {
+		VisibilityCuller culler = gameMap.getVisibilityCuller();
+		if (culler == null || playerCount == 0) {
+			return 0f;
+		}
+		float culled = 0f;
+		for (Player player : players) {
+			Vector3f position = player.getPosition(scratchPosition);
+			culled += culler.getCulledFraction(position.x, position.z);
+		}
+		return culled / playerCount;
+	}
+
+	public long getTotalTicks() {
+		return totalTicks;
+	}
+
+	@Override
+	public void cleanup() {
+		super.cleanup();
+
+		for (Player player : players) {
+			player.cleanup();
+		}
+		if (navigation != null) {
+			navigation.shutdown();
+		}
+		gameMap.unloadMap();
+	}
+}
@@ -1,5 +1,7 @@
 package com.mygame.states;
 
+import com.mygame.world.Map;
+
 import com.jme3.app.Application;
 import com.jme3.app.SimpleApplication;
 import com.jme3.app.state.AbstractAppState;
@@ -26,6 +28,23 @@ public class MenuState extends AbstractAppState implements ActionListener  {
 	private Geometry startButton;
 	private BitmapFont guiFont;
 	
+	// Settings given to the game
+	private final GameOptions options;
+	
+	// Background map loading, progress written by the loader and shown by update()
+	private BitmapText loadingText;
+	private boolean loading = false;
+	private volatile String loadingStage = "";
+	private volatile float loadingProgress = 0f;
+	
+	public MenuState() {
+		this(new GameOptions());
+	}
+	
+	public MenuState(GameOptions options) {
+		this.options = options;
+	}
+	
 	@Override
 	public void initialize(AppStateManager stateManager, Application app) {
 		super.initialize(stateManager, app);
@@ -103,14 +122,90 @@ public class MenuState extends AbstractAppState implements ActionListener  {
 		}
 	}
 	
+	/*
+	 * Build the map on a background thread, the menu stays responsive and
+	 * shows the progress until the game starts
+	 */
 	private void startGame() {
+		if (loading) {
+			return;
+		}
+		loading = true;
+		
+		// Replace the button (and the reason of a failed attempt) by the progress text
+		guiNode.detachChild(startButton);
+		guiNode.detachChild(startButtonText);
+		if (loadingText != null) {
+			guiNode.detachChild(loadingText);
+		}
+		loadingText = new BitmapText(guiFont);
+		loadingText.setSize(guiFont.getCharSet().getRenderedSize());
+		loadingText.setColor(ColorRGBA.White);
+		loadingText.setLocalTranslation(
+			(app.getCamera().getWidth() - 200) / 2,
+			(app.getCamera().getHeight() + loadingText.getLineHeight()) / 2,
+			1
+		);
+		guiNode.attachChild(loadingText);
+		
+		Map map = GameState.createMap(app, options);
+		map.setLoadListener((stage, progress) -> {
+			loadingStage = stage;
+			loadingProgress = progress;
+		});
+		
+		Thread loader = new Thread(() -> {
+			try {
+				GameState.buildMap(map, options.getMapPath());
+				map.setLoadListener(null);
+				// The scene graph is only touched on the render thread
+				app.enqueue(() -> enterGame(map));
+			} catch (RuntimeException e) {
+				String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+				System.err.println("Cannot build the map: " + reason);
+				app.enqueue(() -> loadingFailed(reason));
+			}
+		}, "Map Loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+	
+	/*
+	 * Map built : leave the menu and start the game with it
+	 */
+	private void enterGame(Map map) {
 		// Disable menu
 		cleanup();
 		// Create and activate game state
-		GameState gameState = new GameState();
+		GameState gameState = new GameState(options, map);
 		app.getStateManager().attach(gameState);
 	}
 	
+	/*
+	 * Show the button again so the player can retry, the reason under it
+	 */
+	private void loadingFailed(String reason) {
+		loading = false;
+		loadingText.setText("Loading failed: " + reason);
+		loadingText.setColor(ColorRGBA.Red);
+		loadingText.setLocalTranslation(
+			(app.getCamera().getWidth() - loadingText.getLineWidth()) / 2,
+			(app.getCamera().getHeight() - 50) / 2 - 20,
+			1
+		);
+		guiNode.attachChild(startButton);
+		guiNode.attachChild(startButtonText);
+	}
+	
+	@Override
+	public void update(float tpf) {
+		super.update(tpf);
+		
+		if (loading) {
+			loadingText.setText("Loading " + loadingStage + " " + (int) (loadingProgress * 100) + "%");
+		}
+	}
+	
 	@Override
 	public void cleanup() {
 		super.cleanup();
@@ -119,6 +214,9 @@ public class MenuState extends AbstractAppState implements ActionListener  {
 		guiNode.detachChild(titleText);
 		guiNode.detachChild(startButton);
 		guiNode.detachChild(startButtonText);
+		if (loadingText != null) {
+			guiNode.detachChild(loadingText);
+		}
 		
 		// Clean inputs
 		app.getInputManager().deleteMapping("Start Game");
@@ -0,0 +1,284 @@
+package com.mygame.states;
+
+import com.mygame.entities.Player;
+import com.mygame.network.ClientPrediction;
+import com.mygame.network.GameClient;
+import com.mygame.network.GameServer;
+import com.mygame.network.InputCommand;
+import com.mygame.network.LinkConditioner;
+import com.mygame.network.Protocol;
+import com.mygame.network.Snapshot;
+import com.mygame.profiling.LatencyHistogram;
+import com.mygame.world.Map;
+
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.math.FastMath;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Random;
+
+/*
+ * Dedicated server : loads the map without display and runs a GameServer at
+ * a fixed tick rate. Optional simulated clients connect over loopback from
+ * the same process with scripted inputs, so the server can be measured
+ * without real players. Each one predicts its own player, and can go through
+ * a LinkConditioner adding latency, jitter and loss to measure how far the
+ * predictions drift from the server. Reports every second the server tick
+ * time, the bandwidth per client and the prediction corrections.
+ */
+public class ServerState extends AbstractAppState {
+
+	private static final int TICK_RATE = 60;
+	private static final float SIMULATION_STEP = 1f / TICK_RATE;
+	private static final int MAX_TICKS_PER_FRAME = 5;
+	// Simulated clients change their input every second
+	private static final int SCRIPT_PERIOD_TICKS = 60;
+
+	private SimpleApplication app;
+	private Map gameMap;
+	private GameServer server;
+	private GameClient[] clients;
+	private ClientPrediction[] predictions;
+	private LinkConditioner link; // null on a perfect loopback
+	private Random[] scripts;
+	private int[] buttons;
+	private float[] yaws;
+	private float[] pitches;
+
+	private final Path mapPath; // null for the built-in map
+	private final int port;
+	private final int clientCount;
+	private final float duration;
+	private final float latency;
+	private final float jitter;
+	private final float loss;
+	private FixedTimestep timestep = new FixedTimestep(SIMULATION_STEP, MAX_TICKS_PER_FRAME);
+
+	// Statistics
+	private final LatencyHistogram tickTimes = new LatencyHistogram();
+	private long totalTicks = 0;
+	private long startTime;
+	private long lastReportTime;
+	private long bytesSentAtLastReport = 0;
+	private long bytesReceivedAtLastReport = 0;
+	private long snapshotsAtLastReport = 0;
+	private long replicatedAtLastReport = 0;
+
+	/*
+	 * Map, port, duration and simulated clients (with their link) of the options
+	 */
+	public ServerState(GameOptions options) {
+		this.mapPath = options.getMapPath();
+		this.port = options.getPort();
+		this.clientCount = options.getClientCount();
+		this.duration = options.getDuration();
+		this.latency = options.getLatency();
+		this.jitter = options.getJitter();
+		this.loss = options.getLoss();
+	}
+
+	@Override
+	public void initialize(AppStateManager stateManager, Application app) {
+		super.initialize(stateManager, app);
+		this.app = (SimpleApplication) app;
+
+		gameMap = new Map(this.app);
+		try {
+			if (mapPath == null) {
+				gameMap.loadMap();
+			} else {
+				gameMap.loadMap(mapPath);
+			}
+			server = new GameServer(this.app, gameMap, TICK_RATE);
+			server.open(port);
+
+			clients = new GameClient[clientCount];
+			predictions = new ClientPrediction[clientCount];
+			scripts = new Random[clientCount];
+			buttons = new int[clientCount];
+			yaws = new float[clientCount];
+			pitches = new float[clientCount];
+			InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", server.getPort());
+			if (clientCount > 0 && (latency > 0 || jitter > 0 || loss > 0)) {
+				link = new LinkConditioner(loopback, latency, jitter, loss, 1L);
+				link.open();
+				loopback = link.getAddress();
+			}
+			for (int i = 0; i < clientCount; i++) {
+				clients[i] = new GameClient(loopback);
+				clients[i].connect();
+				predictions[i] = new ClientPrediction(clients[i], new Player(this.app, gameMap, false));
+				scripts[i] = new Random(i);
+			}
+			System.out.println("Server listening on port " + server.getPort() + ", "
+					+ gameMap.getMapObjects().size() + " map objects, " + clientCount + " simulated clients");
+			if (link != null) {
+				System.out.printf("Simulated link : %.0f ms round trip, %.0f ms jitter, %.1f%% loss%n",
+						latency, jitter, loss * 100f);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot start the server", e);
+		}
+		startTime = System.nanoTime();
+		lastReportTime = startTime;
+	}
+
+	@Override
+	public void update(float tpf) {
+		super.update(tpf);
+
+		try {
+			int ticks = timestep.advance(tpf);
+			for (int t = 0; t < ticks; t++) {
+				tickClients();
+				pumpLink();
+				long start = System.nanoTime();
+				server.tick(SIMULATION_STEP);
+				tickTimes.record(System.nanoTime() - start);
+				pumpLink();
+				totalTicks++;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Server network error", e);
+		}
+
+		long now = System.nanoTime();
+		if (now - lastReportTime >= 1_000_000_000L) {
+			report((now - lastReportTime) / 1e9f);
+			lastReportTime = now;
+		}
+		if (duration > 0 && (now - startTime) / 1e9f >= duration) {
+			System.out.printf("Done: %d ticks, %d full and %d delta snapshots, %d rejected packets%n",
+					totalTicks, server.getFullSnapshotCount(), server.getDeltaSnapshotCount(),
+					server.getRejectedPacketCount());
+			app.stop();
+		}
+	}
+
+	/*
+	 * Simulated clients read their snapshots, then predict and send the input of the tick
+	 */
+	private void tickClients() throws IOException {
+		boolean newScript = totalTicks % SCRIPT_PERIOD_TICKS == 0;
+		for (int i = 0; i < clientCount; i++) {
+			if (newScript) {
+				applyScript(i);
+			}
+			InputCommand.apply(predictions[i].getPlayer(), buttons[i], yaws[i], pitches[i]);
+			predictions[i].tick(SIMULATION_STEP);
+			// Edge buttons are only pressed for one tick
+			buttons[i] &= ~(Protocol.JUMP | Protocol.THROW);
+		}
+	}
+
+	private void pumpLink() throws IOException {
+		if (link != null) {
+			link.pump();
+		}
+	}
+
+	private void applyScript(int i) {
+		Random script = scripts[i];
+		int pressed = 0;
+		if (script.nextFloat() < 0.8f) pressed |= Protocol.MOVE_FORWARD;
+		if (script.nextFloat() < 0.2f) pressed |= Protocol.MOVE_LEFT;
+		if (script.nextFloat() < 0.2f) pressed |= Protocol.MOVE_RIGHT;
+		if (script.nextFloat() < 0.5f) pressed |= Protocol.FIRE;
+		if (script.nextFloat() < 0.2f) pressed |= Protocol.THROW;
+		if (script.nextFloat() < 0.3f) pressed |= Protocol.JUMP;
+		buttons[i] = pressed;
+		yaws[i] = script.nextFloat() * FastMath.TWO_PI;
+		pitches[i] = (script.nextFloat() - 0.5f) * 0.2f;
+	}
+
+	private void report(float seconds) {
+		int connected = server.getClientCount();
+		long sent = server.getBytesSent() - bytesSentAtLastReport;
+		long received = server.getBytesReceived() - bytesReceivedAtLastReport;
+		bytesSentAtLastReport = server.getBytesSent();
+		bytesReceivedAtLastReport = server.getBytesReceived();
+
+		long maxClientBytes = 0;
+		for (int i = 0; i < connected; i++) {
+			maxClientBytes = Math.max(maxClientBytes, server.getClientBytesSent(i));
+		}
+		float perClient = connected == 0 ? 0f : sent / seconds / connected;
+		System.out.printf("%d clients, tick p50 %.3f ms p99 %.3f ms max %.3f ms, per client %.1f kB/s out %.1f kB/s in, "
+						+ "most sent to a client %d kB%n",
+				connected, tickTimes.percentile(0.5) / 1e6, tickTimes.percentile(0.99) / 1e6, tickTimes.getMax() / 1e6,
+				perClient / 1024f, connected == 0 ? 0f : received / seconds / connected / 1024f, maxClientBytes / 1024);
+		tickTimes.reset();
+
+		long snapshots = server.getFullSnapshotCount() + server.getDeltaSnapshotCount();
+		long replicated = server.getReplicatedPlayerCount();
+		if (snapshots > snapshotsAtLastReport) {
+			System.out.printf("  interest : %.1f players per snapshot, %d cell changes, %d set changes%n",
+					(float) (replicated - replicatedAtLastReport) / (snapshots - snapshotsAtLastReport),
+					server.getInterest().getCellChangeCount(), server.getInterest().getSetChangeCount());
+		}
+		snapshotsAtLastReport = snapshots;
+		replicatedAtLastReport = replicated;
+
+		if (clientCount > 0) {
+			long decoded = 0, dropped = 0;
+			int entities = 0;
+			for (GameClient client : clients) {
+				decoded += client.getSnapshotsReceived();
+				dropped += client.getSnapshotsDropped();
+				Snapshot latest = client.getLatestSnapshot();
+				entities = Math.max(entities, latest == null ? 0 : latest.size());
+			}
+			System.out.printf("  simulated clients : %d snapshots decoded, %d dropped, %d players in the last one%n",
+					decoded, dropped, entities);
+
+			long reconciliations = 0, corrections = 0, replayed = 0;
+			int pending = 0;
+			float meanError = 0f, maxError = 0f;
+			for (ClientPrediction prediction : predictions) {
+				reconciliations += prediction.getReconciliations();
+				corrections += prediction.getCorrections();
+				replayed += prediction.getReplayedInputs();
+				pending += prediction.getPendingInputs();
+				meanError += prediction.getMeanError() / clientCount;
+				maxError = Math.max(maxError, prediction.getMaxError());
+				prediction.resetStatistics();
+			}
+			System.out.printf("  prediction : %d corrections in %d acks, %d inputs replayed, %.1f inputs in flight, "
+							+ "error mean %.4f max %.4f%n",
+					corrections, reconciliations, replayed, (float) pending / clientCount, meanError, maxError);
+			if (link != null) {
+				long skipped = 0;
+				for (int i = 0; i < connected; i++) {
+					skipped += server.getClientInputsSkipped(i);
+				}
+				System.out.printf("  link : %d datagrams relayed, %d dropped in total, %d inputs lost with all their copies%n",
+						link.getRelayedCount(), link.getDroppedCount(), skipped);
+			}
+		}
+	}
+
+	public long getTotalTicks() {
+		return totalTicks;
+	}
+
+	@Override
+	public void cleanup() {
+		super.cleanup();
+
+		for (int i = 0; i < clientCount; i++) {
+			clients[i].disconnect();
+			predictions[i].getPlayer().cleanup();
+		}
+		if (link != null) {
+			link.close();
+		}
+		server.close();
+		gameMap.unloadMap();
+	}
+}
@@ -0,0 +1,26 @@
+package com.mygame.world;
+
+import com.jme3.math.Vector3f;
+
+/*
+ * Source of the objects of a streamed world, one chunk at a time.
+ * Called on the chunk loader threads, possibly for several chunks at once,
+ * and again each time a released chunk comes back in range : the same chunk
+ * must always give the same objects.
+ */
+public interface ChunkGenerator {
+
+	/*
+	 * Receives the objects of a chunk, positions and sizes as given to MapObject
+	 */
+	interface Sink {
+		void add(MapObject.ObjectType type, Vector3f position, Vector3f size);
+	}
+
+	/*
+	 * Emit the objects of the chunk covering [minX, minX + size] x [minZ, minZ + size].
+	 * Object footprints must stay inside this area, collision queries only look
+	 * at the chunks under the tested position.
+	 */
+	void generate(int chunkX, int chunkZ, float minX, float minZ, float size, Sink sink);
+}
@@ -0,0 +1,512 @@
+package com.mygame.world;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.scene.Node;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Streams the objects of a large world in square chunks around a focus point
+ * (the player). Chunks entering the load radius are built on loader threads
+ * and attached on the render thread. Chunks leaving the unload radius are
+ * detached but stay built in an LRU cache, so walking back and forth does not
+ * rebuild them.
+ *
+ * Attached, cached and building chunks share a memory budget : when it is
+ * reached the least recently used cached chunks are released, and if that is
+ * not enough the farthest chunks are not loaded until memory is freed.
+ *
+ * Everything except preload runs on the render thread, the loaders only build
+ * new chunks and hand them back through a queue.
+ */
+public class ChunkStreamer {
+
+	private static final float DEFAULT_CHUNK_SIZE = 64f;
+	private static final float DEFAULT_LOAD_RADIUS = 160f;
+	private static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+	// Memory booked for a chunk before the first one was built
+	private static final long DEFAULT_CHUNK_BYTES = 512L << 10;
+	private static final int LOADER_THREADS = 2;
+
+	private final SimpleApplication app;
+	private final ChunkGenerator generator;
+	private final float worldSize;
+	private final float chunkSize;
+	private final float origin; // the world is centered on (0, 0)
+	private final int chunksPerAxis;
+
+	private float loadRadius = DEFAULT_LOAD_RADIUS;
+	private float unloadRadius = DEFAULT_LOAD_RADIUS + DEFAULT_CHUNK_SIZE;
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+	// Visual options of the map, read by the loaders
+	private volatile boolean staticBatching = false;
+	private volatile boolean instancing = false;
+	private volatile boolean levelOfDetail = false;
+	private volatile float batchCellSize = 20f;
+	private volatile boolean debugMode = false;
+
+	private final Node streamNode = new Node("Streamed Chunks");
+	// Attached chunks by index (chunkZ * chunksPerAxis + chunkX), read by the collision queries
+	private final WorldChunk[] attached;
+	private final List<WorldChunk> attachedChunks = new ArrayList<>();
+	// Detached chunks still built, least recently used first
+	private final LinkedHashMap<Integer, WorldChunk> cache = new LinkedHashMap<>(16, 0.75f, true);
+	// Chunks given to the loaders, their finished builds come back through completed
+	private final HashSet<Integer> building = new HashSet<>();
+	private final ConcurrentLinkedQueue<WorldChunk> completed = new ConcurrentLinkedQueue<>();
+	private final ExecutorService loaders;
+
+	// Estimated memory of the attached, cached and building chunks
+	private long usedBytes = 0;
+	private long builtBytes = 0;
+
+	// Chunk of the last focus, the chunk sets are only recomputed when it changes
+	private float focusX, focusZ;
+	private int focusChunkX = Integer.MIN_VALUE;
+	private int focusChunkZ = Integer.MIN_VALUE;
+	private boolean rescan = true;
+
+	// Statistics
+	private int builtChunks = 0;
+	private int cacheHits = 0;
+	private int evictions = 0;
+
+	public ChunkStreamer(SimpleApplication app, float worldSize, ChunkGenerator generator) {
+		this(app, worldSize, DEFAULT_CHUNK_SIZE, generator);
+	}
+
+	public ChunkStreamer(SimpleApplication app, float worldSize, float chunkSize, ChunkGenerator generator) {
+		this.app = app;
+		this.generator = generator;
+		this.chunkSize = chunkSize;
+		this.chunksPerAxis = Math.max(1, (int) Math.ceil(worldSize / chunkSize));
+		this.worldSize = chunksPerAxis * chunkSize;
+		this.origin = -this.worldSize / 2;
+		this.attached = new WorldChunk[chunksPerAxis * chunksPerAxis];
+		this.loaders = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+			Thread thread = new Thread(runnable, "Chunk Loader");
+			thread.setDaemon(true);
+			// Loading must not steal time from the render thread
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		});
+	}
+
+	/*
+	 * Options of the map applied to the chunks built from now on
+	 */
+	void setVisualOptions(boolean staticBatching, boolean instancing, boolean levelOfDetail, float batchCellSize,
+			boolean debugMode) {
+		this.staticBatching = staticBatching;
+		this.instancing = instancing;
+		this.levelOfDetail = levelOfDetail;
+		this.batchCellSize = batchCellSize;
+		this.debugMode = debugMode;
+	}
+
+	/*
+	 * Build the chunks in the load radius of a position on the calling thread,
+	 * the next update attaches them. Used while the map loads so the player
+	 * does not spawn in an empty world. The listener may be null.
+	 */
+	public void preload(float x, float z, Map.LoadListener listener) {
+		List<WorldChunk> chunks = new ArrayList<>();
+		int range = (int) Math.ceil(loadRadius / chunkSize);
+		int centerX = chunkCoordinate(x), centerZ = chunkCoordinate(z);
+		for (int cz = Math.max(0, centerZ - range); cz <= Math.min(chunksPerAxis - 1, centerZ + range); cz++) {
+			for (int cx = Math.max(0, centerX - range); cx <= Math.min(chunksPerAxis - 1, centerX + range); cx++) {
+				if (distanceSquared(cx, cz, x, z) <= loadRadius * loadRadius) {
+					chunks.add(createChunk(cx, cz));
+				}
+			}
+		}
+
+		for (int i = 0; i < chunks.size(); i++) {
+			if (listener != null) {
+				listener.onProgress("Chunks", i / (float) chunks.size());
+			}
+			buildChunk(chunks.get(i));
+		}
+	}
+
+	/*
+	 * Follow the focus : attach the finished builds, unload the chunks out of
+	 * the unload radius and start loading the missing ones in the load radius
+	 */
+	public void update(float x, float z) {
+		focusX = x;
+		focusZ = z;
+
+		WorldChunk chunk;
+		while ((chunk = completed.poll()) != null) {
+			onChunkBuilt(chunk);
+		}
+
+		int chunkX = chunkCoordinate(x), chunkZ = chunkCoordinate(z);
+		if (chunkX != focusChunkX || chunkZ != focusChunkZ) {
+			focusChunkX = chunkX;
+			focusChunkZ = chunkZ;
+			rescan = true;
+		}
+		if (rescan) {
+			rescan = false;
+			unloadFarChunks();
+			loadNearChunks();
+		}
+	}
+
+	/*
+	 * A loader finished a chunk : book its real size and attach it if it is still wanted
+	 */
+	private void onChunkBuilt(WorldChunk chunk) {
+		building.remove(chunk.index);
+		usedBytes += chunk.getMemoryBytes() - chunk.reservedBytes;
+		chunk.reservedBytes = 0;
+		builtBytes += chunk.getMemoryBytes();
+		builtChunks++;
+
+		if (distanceSquared(chunk.chunkX, chunk.chunkZ, focusX, focusZ) <= unloadRadius * unloadRadius) {
+			attach(chunk);
+		} else {
+			cache.put(chunk.index, chunk);
+			evict(0);
+		}
+		// Memory may have been freed, or more chunks may fit
+		rescan = true;
+	}
+
+	private void unloadFarChunks() {
+		for (int i = attachedChunks.size() - 1; i >= 0; i--) {
+			WorldChunk chunk = attachedChunks.get(i);
+			if (distanceSquared(chunk.chunkX, chunk.chunkZ, focusX, focusZ) > unloadRadius * unloadRadius) {
+				attachedChunks.remove(i);
+				attached[chunk.index] = null;
+				streamNode.detachChild(chunk.getNode());
+				cache.put(chunk.index, chunk);
+			}
+		}
+		evict(0);
+	}
+
+	private void loadNearChunks() {
+		// Missing chunks in the load radius, closest first
+		List<Integer> missing = new ArrayList<>();
+		int range = (int) Math.ceil(loadRadius / chunkSize);
+		for (int cz = Math.max(0, focusChunkZ - range); cz <= Math.min(chunksPerAxis - 1, focusChunkZ + range); cz++) {
+			for (int cx = Math.max(0, focusChunkX - range); cx <= Math.min(chunksPerAxis - 1, focusChunkX + range); cx++) {
+				int index = cz * chunksPerAxis + cx;
+				if (attached[index] == null && !building.contains(index)
+						&& distanceSquared(cx, cz, focusX, focusZ) <= loadRadius * loadRadius) {
+					missing.add(index);
+				}
+			}
+		}
+		missing.sort(Comparator.comparingDouble(index ->
+				distanceSquared(index % chunksPerAxis, index / chunksPerAxis, focusX, focusZ)));
+
+		// Cached chunks come back first, so the builds below can't evict them
+		for (Iterator<Integer> it = missing.iterator(); it.hasNext();) {
+			WorldChunk chunk = cache.remove(it.next());
+			if (chunk != null) {
+				attach(chunk);
+				cacheHits++;
+				it.remove();
+			}
+		}
+
+		long expectedBytes = builtChunks > 0 ? builtBytes / builtChunks : DEFAULT_CHUNK_BYTES;
+		for (int index : missing) {
+			if (!evict(expectedBytes)) {
+				// Over budget : the farther chunks wait until memory is freed
+				break;
+			}
+			WorldChunk chunk = createChunk(index % chunksPerAxis, index / chunksPerAxis);
+			chunk.reservedBytes = expectedBytes;
+			usedBytes += expectedBytes;
+			building.add(index);
+			loaders.execute(() -> buildChunk(chunk));
+		}
+	}
+
+	/*
+	 * Release least recently used cached chunks until extraBytes more fit in the
+	 * budget, return false if they don't fit even with an empty cache
+	 */
+	private boolean evict(long extraBytes) {
+		Iterator<WorldChunk> it = cache.values().iterator();
+		while (usedBytes + extraBytes > memoryBudget && it.hasNext()) {
+			WorldChunk chunk = it.next();
+			it.remove();
+			usedBytes -= chunk.getMemoryBytes();
+			chunk.release();
+			evictions++;
+		}
+		return usedBytes + extraBytes <= memoryBudget;
+	}
+
+	private void attach(WorldChunk chunk) {
+		attached[chunk.index] = chunk;
+		attachedChunks.add(chunk);
+		chunk.setDebugMode(debugMode);
+		streamNode.attachChild(chunk.getNode());
+	}
+
+	private WorldChunk createChunk(int chunkX, int chunkZ) {
+		return new WorldChunk(chunkX, chunkZ, chunkZ * chunksPerAxis + chunkX,
+				origin + chunkX * chunkSize, origin + chunkZ * chunkSize, chunkSize);
+	}
+
+	/*
+	 * Build a chunk (any thread) and hand it to the render thread. A chunk that
+	 * fails to build comes back empty instead of being retried forever.
+	 */
+	private void buildChunk(WorldChunk chunk) {
+		try {
+			chunk.build(app, generator, staticBatching, instancing, levelOfDetail, batchCellSize, debugMode);
+		} catch (RuntimeException e) {
+			System.err.println("Cannot build chunk " + chunk.chunkX + "," + chunk.chunkZ + ": " + e.getMessage());
+			chunk.release();
+		}
+		completed.add(chunk);
+	}
+
+	private int chunkCoordinate(float coordinate) {
+		int c = (int) Math.floor((coordinate - origin) / chunkSize);
+		return c < 0 ? 0 : (c >= chunksPerAxis ? chunksPerAxis - 1 : c);
+	}
+
+	/*
+	 * Squared distance from a point to the area of a chunk (0 inside)
+	 */
+	private float distanceSquared(int chunkX, int chunkZ, float x, float z) {
+		float minX = origin + chunkX * chunkSize, minZ = origin + chunkZ * chunkSize;
+		float dx = Math.max(Math.max(minX - x, 0f), x - (minX + chunkSize));
+		float dz = Math.max(Math.max(minZ - z, 0f), z - (minZ + chunkSize));
+		return dx * dx + dz * dz;
+	}
+
+	// Queries on the attached chunks, render thread only
+
+	/*
+	 * Same as Map.sweep on the attached chunks under the segment
+	 */
+	public float sweep(float ox, float oy, float oz, float dx, float dy, float dz) {
+		int startX = chunkCoordinate(Math.min(ox, ox + dx)), endX = chunkCoordinate(Math.max(ox, ox + dx));
+		int startZ = chunkCoordinate(Math.min(oz, oz + dz)), endZ = chunkCoordinate(Math.max(oz, oz + dz));
+		float fraction = 1f;
+		
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				WorldChunk chunk = attached[cz * chunksPerAxis + cx];
+				if (chunk != null) {
+					fraction = Math.min(fraction, chunk.sweep(ox, oy, oz, dx, dy, dz));
+				}
+			}
+		}
+		return fraction;
+	}
+	
+	/*
+	 * Nearest hit of a ray on the objects of the attached chunks, see Map.raycast.
+	 * Objects lie inside their chunk : only the chunks crossed by the ray are
+	 * cast, front to back (2D DDA on the XZ plane) until a hit is nearer than
+	 * the next chunk.
+	 */
+	public boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz, RayQuery query) {
+		// Part of the ray over the world, no chunk outside
+		float end = origin + worldSize;
+		float tEnter = 0f, tExit = query.distance;
+		if (dx != 0) {
+			float t1 = (origin - ox) / dx, t2 = (end - ox) / dx;
+			tEnter = Math.max(tEnter, Math.min(t1, t2));
+			tExit = Math.min(tExit, Math.max(t1, t2));
+		} else if (ox < origin || ox > end) {
+			return false;
+		}
+		if (dz != 0) {
+			float t1 = (origin - oz) / dz, t2 = (end - oz) / dz;
+			tEnter = Math.max(tEnter, Math.min(t1, t2));
+			tExit = Math.min(tExit, Math.max(t1, t2));
+		} else if (oz < origin || oz > end) {
+			return false;
+		}
+		if (tEnter > tExit) {
+			return false;
+		}
+
+		int cx = chunkCoordinate(ox + dx * tEnter), cz = chunkCoordinate(oz + dz * tEnter);
+		int stepX = dx > 0 ? 1 : -1, stepZ = dz > 0 ? 1 : -1;
+		float tDeltaX = dx != 0 ? chunkSize / Math.abs(dx) : Float.POSITIVE_INFINITY;
+		float tDeltaZ = dz != 0 ? chunkSize / Math.abs(dz) : Float.POSITIVE_INFINITY;
+		float tMaxX = dx != 0 ? (origin + (cx + (stepX > 0 ? 1 : 0)) * chunkSize - ox) / dx : Float.POSITIVE_INFINITY;
+		float tMaxZ = dz != 0 ? (origin + (cz + (stepZ > 0 ? 1 : 0)) * chunkSize - oz) / dz : Float.POSITIVE_INFINITY;
+
+		boolean hit = false;
+		while (true) {
+			WorldChunk chunk = attached[cz * chunksPerAxis + cx];
+			if (chunk != null && chunk.raycast(ox, oy, oz, dx, dy, dz, query)) {
+				hit = true;
+			}
+			// Every chunk left starts farther than the nearest hit or the end of the ray
+			float tNext = Math.min(tMaxX, tMaxZ);
+			if (tNext >= query.distance || tNext > tExit) {
+				break;
+			}
+			if (tMaxX < tMaxZ) {
+				cx += stepX;
+				tMaxX += tDeltaX;
+			} else {
+				cz += stepZ;
+				tMaxZ += tDeltaZ;
+			}
+			if (cx < 0 || cz < 0 || cx >= chunksPerAxis || cz >= chunksPerAxis) {
+				break;
+			}
+		}
+		return hit;
+	}
+	
+	/*
+	 * Same rules as Map.checkCollision, chunks not loaded yet are empty
+	 */
+	public boolean checkCollision(float x, float y, float z, float radius) {
+		int startX = chunkCoordinate(x - radius), endX = chunkCoordinate(x + radius);
+		int startZ = chunkCoordinate(z - radius), endZ = chunkCoordinate(z + radius);
+
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				WorldChunk chunk = attached[cz * chunksPerAxis + cx];
+				if (chunk != null && chunk.checkCollision(x, y, z, radius)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Highest platform under a point, 0 (the ground) if none or if its chunk is not loaded
+	 */
+	public float getGroundHeightAt(float x, float z) {
+		WorldChunk chunk = attached[chunkCoordinate(z) * chunksPerAxis + chunkCoordinate(x)];
+		return chunk != null ? chunk.getGroundHeightAt(x, z) : 0f;
+	}
+
+	/*
+	 * Level of detail pass of the attached chunks
+	 */
+	public void updateLod(float cameraX, float cameraZ) {
+		for (int i = 0; i < attachedChunks.size(); i++) {
+			attachedChunks.get(i).updateLod(cameraX, cameraZ);
+		}
+	}
+
+	public void setDebugMode(boolean debug) {
+		this.debugMode = debug;
+		for (WorldChunk chunk : attachedChunks) {
+			chunk.setDebugMode(debug);
+		}
+	}
+
+	/*
+	 * Stop the loaders and release every chunk, the streamer can't be used anymore
+	 */
+	public void shutdown() {
+		loaders.shutdownNow();
+		for (WorldChunk chunk : attachedChunks) {
+			attached[chunk.index] = null;
+			chunk.release();
+		}
+		attachedChunks.clear();
+		for (WorldChunk chunk : cache.values()) {
+			chunk.release();
+		}
+		cache.clear();
+		completed.clear();
+		building.clear();
+		streamNode.removeFromParent();
+		usedBytes = 0;
+	}
+
+	/*
+	 * Chunks are loaded when their area comes closer than loadRadius from the focus,
+	 * and unloaded one chunk farther so moving along a border does not reload them
+	 */
+	public void setLoadRadius(float loadRadius) {
+		this.loadRadius = loadRadius;
+		this.unloadRadius = loadRadius + chunkSize;
+		rescan = true;
+	}
+
+	/*
+	 * Estimated memory allowed for the attached, cached and building chunks
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+		rescan = true;
+	}
+
+	// Getters
+
+	/*
+	 * Node holding the attached chunks, child of the map node
+	 */
+	public Node getNode() {
+		return streamNode;
+	}
+
+	/*
+	 * Side of the world, rounded up to a whole number of chunks
+	 */
+	public float getWorldSize() {
+		return worldSize;
+	}
+
+	public float getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getAttachedChunkCount() {
+		return attachedChunks.size();
+	}
+
+	public int getCachedChunkCount() {
+		return cache.size();
+	}
+
+	public int getBuildingChunkCount() {
+		return building.size();
+	}
+
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/*
+	 * Chunks built since creation, cached chunks reattached and cached chunks released
+	 */
+	public int getBuiltChunkCount() {
+		return builtChunks;
+	}
+
+	public int getCacheHits() {
+		return cacheHits;
+	}
+
+	public int getEvictions() {
+		return evictions;
+	}
+}
@@ -0,0 +1,18 @@
+package com.mygame.world;
+
+/*
+ * Collision queries of a map. Map answers them with its own grid of cached
+ * bounds, PhysicsWorld with the Bullet physics space of the same objects.
+ */
+public interface Collider {
+
+	/*
+	 * True if a sphere touches an object or leaves the map
+	 */
+	boolean checkCollision(float x, float y, float z, float radius);
+
+	/*
+	 * Height of what a player would stand on at a point, 0 for the ground
+	 */
+	float getGroundHeightAt(float x, float z);
+}
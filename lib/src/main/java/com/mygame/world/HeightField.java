@@ -0,0 +1,154 @@
+package com.mygame.world;
+
+import java.util.Arrays;
+
+/*
+ * Rasterized ground heights over the map, one value per cell.
+ * A cell stores the highest platform that covers it entirely. Cells crossed
+ * by a platform edge are flagged as border cells : their height depends on
+ * the exact position, so lookups there return NaN and the caller falls back
+ * to the exact per-platform check.
+ */
+public class HeightField {
+
+	private static final int MAX_CELLS_PER_AXIS = 512;
+	private static final float BASE_HEIGHT = 0f;
+
+	private final float originX;
+	private final float originZ;
+	private final float cellSize;
+	private final float invCellSize;
+	// Cells are widened by this margin so rounding in lookups never picks a wrong cell
+	private final float epsilon;
+	private final int cellsX;
+	private final int cellsZ;
+
+	private final float[] heights;
+	private final boolean[] border;
+
+	public HeightField(float originX, float originZ, float width, float depth, float preferredCellSize) {
+		float largestSide = Math.max(width, depth);
+		this.cellSize = Math.max(preferredCellSize, largestSide / MAX_CELLS_PER_AXIS);
+		this.invCellSize = 1f / cellSize;
+		this.epsilon = cellSize * 1e-3f;
+		this.originX = originX;
+		this.originZ = originZ;
+		this.cellsX = Math.max(1, (int) Math.ceil(width / cellSize));
+		this.cellsZ = Math.max(1, (int) Math.ceil(depth / cellSize));
+		this.heights = new float[cellsX * cellsZ];
+		this.border = new boolean[cellsX * cellsZ];
+		clear();
+	}
+
+	/*
+	 * Return the ground height at a position, or NaN if it has to be computed exactly
+	 */
+	public float lookup(float x, float z) {
+		int cx = (int) Math.floor((x - originX) * invCellSize);
+		int cz = (int) Math.floor((z - originZ) * invCellSize);
+		if (cx < 0 || cz < 0 || cx >= cellsX || cz >= cellsZ) {
+			return Float.NaN;
+		}
+		int cell = cz * cellsX + cx;
+		return border[cell] ? Float.NaN : heights[cell];
+	}
+
+	/*
+	 * Add a platform to the cells under its footprint
+	 */
+	public void addPlatform(ObjectBounds bounds, int id) {
+		int startX = clampX(bounds.minX[id] - epsilon), endX = clampX(bounds.maxX[id] + epsilon);
+		int startZ = clampZ(bounds.minZ[id] - epsilon), endZ = clampZ(bounds.maxZ[id] + epsilon);
+
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				rasterize(bounds, id, cx, cz);
+			}
+		}
+	}
+
+	/*
+	 * Recompute the cells of an area from the platforms still in the map,
+	 * used when a platform is removed or moved away
+	 */
+	public void rebuildArea(float minX, float minZ, float maxX, float maxZ, ObjectBounds bounds, SpatialGrid grid) {
+		int startX = clampX(minX - epsilon), endX = clampX(maxX + epsilon);
+		int startZ = clampZ(minZ - epsilon), endZ = clampZ(maxZ + epsilon);
+
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				int cell = cz * cellsX + cx;
+				heights[cell] = BASE_HEIGHT;
+				border[cell] = false;
+
+				// Candidates are the objects indexed around this cell
+				float cellMinX = originX + cx * cellSize - epsilon;
+				float cellMinZ = originZ + cz * cellSize - epsilon;
+				float cellMaxX = cellMinX + cellSize + 2 * epsilon;
+				float cellMaxZ = cellMinZ + cellSize + 2 * epsilon;
+				int gridStartX = grid.cellX(cellMinX), gridEndX = grid.cellX(cellMaxX);
+				int gridStartZ = grid.cellZ(cellMinZ), gridEndZ = grid.cellZ(cellMaxZ);
+
+				for (int gz = gridStartZ; gz <= gridEndZ; gz++) {
+					for (int gx = gridStartX; gx <= gridEndX; gx++) {
+						int gridCell = grid.cellIndex(gx, gz);
+						int[] ids = grid.getCellObjects(gridCell);
+						int count = grid.getCellCount(gridCell);
+						for (int i = 0; i < count; i++) {
+							if (bounds.platform[ids[i]]) {
+								rasterize(bounds, ids[i], cx, cz);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Reset every cell to the base ground
+	 */
+	public final void clear() {
+		Arrays.fill(heights, BASE_HEIGHT);
+		Arrays.fill(border, false);
+	}
+
+	/*
+	 * Merge one platform into one cell
+	 */
+	private void rasterize(ObjectBounds bounds, int id, int cx, int cz) {
+		float cellMinX = originX + cx * cellSize - epsilon;
+		float cellMinZ = originZ + cz * cellSize - epsilon;
+		float cellMaxX = cellMinX + cellSize + 2 * epsilon;
+		float cellMaxZ = cellMinZ + cellSize + 2 * epsilon;
+
+		// Platform not over this cell
+		if (bounds.maxX[id] < cellMinX || bounds.minX[id] > cellMaxX ||
+				bounds.maxZ[id] < cellMinZ || bounds.minZ[id] > cellMaxZ) {
+			return;
+		}
+
+		int cell = cz * cellsX + cx;
+		boolean covers = bounds.minX[id] <= cellMinX && bounds.maxX[id] >= cellMaxX &&
+						bounds.minZ[id] <= cellMinZ && bounds.maxZ[id] >= cellMaxZ;
+		if (covers) {
+			heights[cell] = Math.max(heights[cell], bounds.maxY[id]);
+		} else {
+			border[cell] = true;
+		}
+	}
+
+	private int clampX(float x) {
+		int cx = (int) Math.floor((x - originX) * invCellSize);
+		return cx < 0 ? 0 : (cx >= cellsX ? cellsX - 1 : cx);
+	}
+
+	private int clampZ(float z) {
+		int cz = (int) Math.floor((z - originZ) * invCellSize);
+		return cz < 0 ? 0 : (cz >= cellsZ ? cellsZ - 1 : cz);
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+}
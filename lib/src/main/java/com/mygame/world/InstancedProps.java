@@ -0,0 +1,111 @@
+package com.mygame.world;
+
+import com.jme3.material.Material;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.instancing.InstancedGeometry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Hardware instanced rendering of repeated props (tree trunks, foliage, pillars).
+ * Each instance is a detached Geometry carrying only a world transform and
+ * pointing to a shared mesh. Instances sharing a mesh and a material are drawn
+ * by one InstancedGeometry whose transform buffer is rewritten only when an
+ * instance is added, removed or moved.
+ */
+public class InstancedProps extends Node {
+
+	private final List<Group> groups = new ArrayList<>();
+
+	public InstancedProps() {
+		super("Instanced Props");
+	}
+
+	/*
+	 * Add an instance, its local transform is used as its world transform
+	 */
+	public void addInstance(Geometry instance) {
+		// Detached : nothing else computes its world matrix from the local transform
+		instance.updateGeometricState();
+		Group group = findGroup(instance.getMesh(), instance.getMaterial());
+		if (group == null) {
+			group = new Group(instance.getMesh(), instance.getMaterial());
+			groups.add(group);
+			attachChild(group.geometry);
+		}
+		group.geometry.addInstance(instance);
+		group.dirty = true;
+	}
+
+	public void removeInstance(Geometry instance) {
+		Group group = findGroup(instance.getMesh(), instance.getMaterial());
+		if (group != null) {
+			group.geometry.deleteInstance(instance);
+			group.dirty = true;
+		}
+	}
+
+	/*
+	 * Notify that an instance transform changed
+	 */
+	public void instanceMoved(Geometry instance) {
+		instance.updateGeometricState();
+		Group group = findGroup(instance.getMesh(), instance.getMaterial());
+		if (group != null) {
+			group.dirty = true;
+		}
+	}
+
+	/*
+	 * Number of instances drawn by this node
+	 */
+	public int getInstanceCount() {
+		int count = 0;
+		for (Group group : groups) {
+			count += group.geometry.getNumInstances();
+		}
+		return count;
+	}
+
+	@Override
+	public void updateLogicalState(float tpf) {
+		super.updateLogicalState(tpf);
+
+		// Upload transforms only for groups that changed
+		for (Group group : groups) {
+			if (group.dirty) {
+				// No camera : every instance is written, no per frame culling pass
+				group.geometry.updateInstances(null);
+				group.geometry.forceRefresh(false, true, false);
+				group.dirty = false;
+			}
+		}
+	}
+
+	private Group findGroup(Mesh mesh, Material material) {
+		for (Group group : groups) {
+			if (group.mesh == mesh && group.material == material) {
+				return group;
+			}
+		}
+		return null;
+	}
+
+	private static class Group {
+		final Mesh mesh;
+		final Material material;
+		final InstancedGeometry geometry;
+		boolean dirty = true;
+
+		Group(Mesh mesh, Material material) {
+			this.mesh = mesh;
+			this.material = material;
+			this.geometry = new InstancedGeometry("Instanced " + material.getParamValue("Color"));
+			this.geometry.setMesh(mesh);
+			this.geometry.setMaterial(material);
+		}
+	}
+}
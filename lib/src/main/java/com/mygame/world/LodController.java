@@ -0,0 +1,175 @@
+package com.mygame.world;
+
+import java.util.Arrays;
+
+/*
+ * Distance based level of detail for the trees and pillars of a map (or of a
+ * streamed chunk). Object positions are kept in primitive arrays, so the
+ * per frame pass is a distance test per object and only the objects whose
+ * distance band changed touch the scene graph. The pass is skipped while the
+ * camera stays still.
+ *
+ * Each switch distance has a hysteresis band : an object goes to the coarser
+ * level beyond distance + hysteresis and comes back below distance - hysteresis,
+ * so it does not flicker when the camera moves along a threshold.
+ */
+public class LodController {
+
+	// Levels 0 to HIDDEN - 1 have a mesh, HIDDEN is not drawn
+	public static final int HIDDEN = 3;
+
+	private static final float[] DEFAULT_DISTANCES = {40f, 100f, 250f};
+	private static final float DEFAULT_HYSTERESIS = 5f;
+	// Camera movement (units) before the next pass
+	private static final float MIN_MOVE = 0.5f;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final InstancedProps instancedProps; // null if the objects are not instanced
+
+	// Squared switch distances : level l is left for l + 1 beyond up[l], for l - 1 below down[l]
+	private final float[] threshold = new float[HIDDEN];
+	private final float[] up = new float[HIDDEN + 1];
+	private final float[] down = new float[HIDDEN + 1];
+
+	private MapObject[] objects = new MapObject[INITIAL_CAPACITY];
+	private float[] x = new float[INITIAL_CAPACITY];
+	private float[] z = new float[INITIAL_CAPACITY];
+	private byte[] level = new byte[INITIAL_CAPACITY];
+	private int count = 0;
+
+	private float lastX = Float.NaN;
+	private float lastZ = Float.NaN;
+	private long switches = 0;
+
+	public LodController(InstancedProps instancedProps) {
+		this.instancedProps = instancedProps;
+		setDistances(DEFAULT_DISTANCES, DEFAULT_HYSTERESIS);
+	}
+
+	/*
+	 * Switch distances from level 0 to 1, 1 to 2 and 2 to hidden, with a hysteresis half width
+	 */
+	public final void setDistances(float[] distances, float hysteresis) {
+		for (int l = 0; l < HIDDEN; l++) {
+			threshold[l] = distances[l] * distances[l];
+		}
+		for (int l = 0; l <= HIDDEN; l++) {
+			float upDistance = l < HIDDEN ? distances[l] + hysteresis : Float.POSITIVE_INFINITY;
+			float downDistance = l > 0 ? Math.max(0f, distances[l - 1] - hysteresis) : 0f;
+			up[l] = upDistance * upDistance;
+			down[l] = downDistance * downDistance;
+		}
+		lastX = Float.NaN; // Re-evaluate everything on the next pass
+	}
+
+	/*
+	 * Start handling an object (must have levels of detail), it is at level 0
+	 */
+	public void add(MapObject object) {
+		if (count == objects.length) {
+			int capacity = count * 2;
+			objects = Arrays.copyOf(objects, capacity);
+			x = Arrays.copyOf(x, capacity);
+			z = Arrays.copyOf(z, capacity);
+			level = Arrays.copyOf(level, capacity);
+		}
+		objects[count] = object;
+		x[count] = object.worldCenter.x;
+		z[count] = object.worldCenter.z;
+		level[count] = (byte) object.getLodLevel();
+		object.lodIndex = count++;
+		lastX = Float.NaN;
+	}
+
+	/*
+	 * Stop handling an object, it goes back to full detail
+	 */
+	public void remove(MapObject object) {
+		int index = object.lodIndex;
+		if (index < 0) {
+			return;
+		}
+		object.setLodLevel(0, instancedProps);
+		object.lodIndex = -1;
+
+		int last = --count;
+		if (index != last) {
+			objects[index] = objects[last];
+			x[index] = x[last];
+			z[index] = z[last];
+			level[index] = level[last];
+			objects[index].lodIndex = index;
+		}
+		objects[last] = null;
+	}
+
+	/*
+	 * The object moved, its level is checked on the next pass
+	 */
+	public void moved(MapObject object) {
+		int index = object.lodIndex;
+		if (index >= 0) {
+			x[index] = object.worldCenter.x;
+			z[index] = object.worldCenter.z;
+			lastX = Float.NaN;
+		}
+	}
+
+	/*
+	 * Per frame pass (render thread), horizontal distance to the camera
+	 */
+	public void update(float cameraX, float cameraZ) {
+		float moveX = cameraX - lastX, moveZ = cameraZ - lastZ;
+		if (moveX * moveX + moveZ * moveZ < MIN_MOVE * MIN_MOVE) {
+			return; // false for NaN : forced pass
+		}
+		lastX = cameraX;
+		lastZ = cameraZ;
+
+		for (int i = 0; i < count; i++) {
+			float dx = x[i] - cameraX, dz = z[i] - cameraZ;
+			float distance = dx * dx + dz * dz;
+			int current = level[i];
+			if (distance > up[current] || distance < down[current]) {
+				int target = 0;
+				while (target < HIDDEN && distance > threshold[target]) {
+					target++;
+				}
+				level[i] = (byte) target;
+				objects[i].setLodLevel(target, instancedProps);
+				switches++;
+			}
+		}
+	}
+
+	/*
+	 * Forget every object without touching them (the objects are being dropped)
+	 */
+	public void clear() {
+		Arrays.fill(objects, 0, count, null);
+		count = 0;
+		lastX = Float.NaN;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/*
+	 * Number of objects at each level, HIDDEN included (debug and tests)
+	 */
+	public int[] countLevels() {
+		int[] levels = new int[HIDDEN + 1];
+		for (int i = 0; i < count; i++) {
+			levels[level[i]]++;
+		}
+		return levels;
+	}
+
+	/*
+	 * Level changes since creation
+	 */
+	public long getSwitchCount() {
+		return switches;
+	}
+}
@@ -6,13 +6,18 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
 import com.jme3.scene.shape.Quad;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
-public class Map {
+public class Map implements Collider {
 	
 	private SimpleApplication app;
 	private Node mapNode;
@@ -23,28 +28,357 @@ public class Map {
 	// List of objects
 	private List<MapObject> mapObjects;
 	
+	// Spatial index of the objects, ids are indices in mapObjects
+	private SpatialGrid objectGrid;
+	private float gridCellSize = 4f;
+	
+	// Cached world space AABBs of the objects, same indices as mapObjects
+	private ObjectBounds bounds;
+	
+	// Max walkable height per cell, built as platforms are added
+	private HeightField heightField;
+	private float heightFieldCellSize = 1f;
+	
+	// Hierarchy of the object bounds for ray casts, null until needed after a change
+	private ObjectBvh objectBvh;
+	
 	// Debug mode to show collision boxes
 	private boolean debugMode = false;
 	
+	// Merge static visuals after construction (fewer draw calls)
+	private boolean staticBatching = false;
+	private float batchCellSize = 20f;
+	private StaticBatcher.Report batchReport;
+	
+	// Draw trees and pillars with hardware instancing
+	private boolean instancing = false;
+	private InstancedProps instancedProps;
+	
+	// Lower detail trees and pillars far from the camera
+	private boolean levelOfDetail = false;
+	private LodController lod;
+	
+	// Hide what houses and walls occlude from the player (precomputed visibility)
+	private boolean visibilityCulling = false;
+	private float visibilityCellSize = 4f;
+	private VisibilityCuller visibilityCuller;
+	
+	// Binary file the map was loaded from, null for built-in maps
+	private MapFile mapFile;
+	
+	// Loads the objects of large worlds in chunks around the player, null for other maps
+	private ChunkStreamer streamer;
+	
+	// Bullet backend for the collisions, null to use the grid collider alone
+	private PhysicsWorld physics;
+	
+	// Receives the construction progress, may be null
+	private volatile LoadListener loadListener;
+	private static final int PROGRESS_INTERVAL = 1024; // objects between two reports
+	
+	/*
+	 * Progress of the map construction (0 to 1 inside each stage).
+	 * Called on the thread building the map, or on the pool workers creating
+	 * the objects of a map file : implementations must be thread safe.
+	 */
+	public interface LoadListener {
+		void onProgress(String stage, float progress);
+	}
+	
 	public Map(SimpleApplication app) {
+		this(app, 60f);
+	}
+	
+	/*
+	 * Map with a custom ground size (generated maps)
+	 */
+	public Map(SimpleApplication app, float mapSize) {
 		this.app = app;
+		this.mapSize = mapSize;
 		this.mapNode = new Node("Map Node");
 		this.mapObjects = new ArrayList<>();
+		this.objectGrid = createObjectGrid();
+		this.bounds = new ObjectBounds();
+		this.heightField = createHeightField();
+		this.instancedProps = new InstancedProps();
+		this.mapNode.attachChild(instancedProps);
+		this.lod = new LodController(instancedProps);
+	}
+	
+	/*
+	 * Create an empty grid covering the map and its perimeter walls
+	 */
+	private SpatialGrid createObjectGrid() {
+		float margin = gridCellSize;
+		return new SpatialGrid(-mapSize / 2 - margin, -mapSize / 2 - margin,
+				mapSize + 2 * margin, mapSize + 2 * margin, gridCellSize);
+	}
+	
+	/*
+	 * Create a flat height field covering the map and its perimeter walls
+	 */
+	private HeightField createHeightField() {
+		float margin = heightFieldCellSize;
+		return new HeightField(-mapSize / 2 - margin, -mapSize / 2 - margin,
+				mapSize + 2 * margin, mapSize + 2 * margin, heightFieldCellSize);
 	}
 	
 	/* 
 	 * Load and creates all elements of the map
 	 */
 	public void loadMap() {
+		buildMap();
+		attachMap();
+	}
+	
+	/*
+	 * Create all elements of the built-in map without touching the scene of the
+	 * application, so it can run on a background thread (see attachMap)
+	 */
+	public void buildMap() {
+		if (streamer != null) {
+			buildStreamedWorld();
+			return;
+		}
+		
+		reportProgress("Ground", 0f);
 		createGround();
+		reportProgress("Walls", 0f);
 		createPerimeterWalls();
+		reportProgress("Houses", 0f);
 		createHouses();
+		reportProgress("Trees", 0f);
 		createTrees();
+		reportProgress("Structures", 0f);
 		createStructures();
 		//createDecorations();
 		
-		// Attach the map node to the rootNode
+		finishObjects();
+		reportProgress("Done", 1f);
+	}
+	
+	/*
+	 * Ground and limits of a streamed world. The objects come from the chunks
+	 * around the spawn point (built here) and then around the player (see updateStreaming)
+	 */
+	private void buildStreamedWorld() {
+		reportProgress("Ground", 0f);
+		createGround();
+		reportProgress("Walls", 0f);
+		createPerimeterWalls();
+		
+		streamer.setVisualOptions(staticBatching, instancing, levelOfDetail, batchCellSize, debugMode);
+		Vector3f spawn = getPlayerSpawnPosition();
+		streamer.preload(spawn.x, spawn.z, this::reportProgress);
+		mapNode.attachChild(streamer.getNode());
+		reportProgress("Done", 1f);
+	}
+	
+	/*
+	 * Load and release the streamed chunks around a position, render thread only
+	 */
+	public void updateStreaming(Vector3f focus) {
+		if (streamer != null) {
+			streamer.update(focus.x, focus.z);
+		}
+	}
+	
+	/*
+	 * Per frame level of detail pass around the camera, render thread only
+	 */
+	public void updateLod(Vector3f cameraLocation) {
+		lod.update(cameraLocation.x, cameraLocation.z);
+		if (streamer != null) {
+			streamer.updateLod(cameraLocation.x, cameraLocation.z);
+		}
+	}
+	
+	/*
+	 * Cull what can't be seen from the player or the camera, render thread only
+	 */
+	public void updateVisibility(Vector3f playerPosition, Vector3f cameraLocation) {
+		if (visibilityCuller != null) {
+			visibilityCuller.update(playerPosition.x, playerPosition.z, cameraLocation.x, cameraLocation.z);
+		}
+	}
+	
+	/*
+	 * Attach the built map node to the rootNode, render thread only
+	 */
+	public void attachMap() {
 		app.getRootNode().attachChild(mapNode);
+		if (physics != null) {
+			physics.addMap(mapObjects, bounds, mapSize);
+		}
+	}
+	
+	/*
+	 * Once every object exists : static batches, levels of detail and visibility
+	 */
+	private void finishObjects() {
+		if (staticBatching) {
+			reportProgress("Batching", 0f);
+			batchReport = new StaticBatcher(batchCellSize).batch(mapNode, mapObjects);
+		}
+		
+		// Only the visuals left out of the batches can change their level of detail
+		if (levelOfDetail) {
+			for (MapObject object : mapObjects) {
+				if (object.hasLod()) {
+					lod.add(object);
+				}
+			}
+		}
+		
+		if (visibilityCulling) {
+			reportProgress("Visibility", 0f);
+			buildVisibility();
+		}
+		
+		prepareRaycasts();
+	}
+	
+	/*
+	 * Compute which cells see which with the houses and walls as occluders, then
+	 * register the spatials of the map node (the batches one by one) for culling.
+	 * Instanced props are drawn as a whole and are not culled.
+	 */
+	private void buildVisibility() {
+		boolean[] occluder = new boolean[mapObjects.size()];
+		for (int id = 0; id < mapObjects.size(); id++) {
+			MapObject.ObjectType type = mapObjects.get(id).getType();
+			occluder[id] = type == MapObject.ObjectType.HOUSE || type == MapObject.ObjectType.WALL;
+		}
+		
+		VisibilitySet visibilitySet = VisibilitySet.build(-mapSize / 2, -mapSize / 2, mapSize, mapSize,
+				visibilityCellSize, bounds, occluder, this::getGroundHeightAt);
+		visibilityCuller = new VisibilityCuller(visibilitySet);
+		for (Spatial child : mapNode.getChildren()) {
+			if (child == instancedProps) {
+				continue;
+			}
+			if (child instanceof Node && StaticBatcher.BATCH_NODE_NAME.equals(child.getName())) {
+				for (Spatial batch : ((Node) child).getChildren()) {
+					visibilityCuller.add(batch);
+				}
+			} else {
+				visibilityCuller.add(child);
+			}
+		}
+	}
+	
+	private void reportProgress(String stage, float progress) {
+		LoadListener listener = loadListener;
+		if (listener != null) {
+			listener.onProgress(stage, progress);
+		}
+	}
+	
+	public void setLoadListener(LoadListener loadListener) {
+		this.loadListener = loadListener;
+	}
+	
+	/*
+	 * Load a procedural map : ground, perimeter walls and propCount random props.
+	 * Used by benchmarks and stress tests, props may overlap.
+	 */
+	public void loadGeneratedMap(int propCount, long seed) {
+		createGround();
+		createPerimeterWalls();
+		
+		Random random = new Random(seed);
+		MapObject.ObjectType[] types = {
+				MapObject.ObjectType.HOUSE, MapObject.ObjectType.TREE, MapObject.ObjectType.TREE,
+				MapObject.ObjectType.TREE, MapObject.ObjectType.PILLAR, MapObject.ObjectType.FENCE,
+				MapObject.ObjectType.PLATFORM };
+		
+		for (int i = 0; i < propCount; i++) {
+			MapObject.ObjectType type = types[random.nextInt(types.length)];
+			float x = (random.nextFloat() - 0.5f) * (mapSize - 4);
+			float z = (random.nextFloat() - 0.5f) * (mapSize - 4);
+			Vector3f size;
+			switch (type) {
+				case HOUSE:
+					size = new Vector3f(4 + random.nextFloat() * 4, 4 + random.nextFloat() * 2, 5 + random.nextFloat() * 7);
+					break;
+				case TREE:
+					float width = 0.8f + random.nextFloat() * 0.6f;
+					size = new Vector3f(width, 6f + random.nextFloat() * 4f, width);
+					break;
+				case FENCE:
+					size = random.nextBoolean() ? new Vector3f(4, 2, 0.2f) : new Vector3f(0.2f, 2, 4);
+					break;
+				case PLATFORM:
+					size = new Vector3f(4 + random.nextFloat() * 6, 1, 4 + random.nextFloat() * 6);
+					break;
+				default:
+					size = new Vector3f(1, 4, 1);
+					break;
+			}
+			float y = type == MapObject.ObjectType.PLATFORM ? 3.5f : size.y / 2;
+			addMapObject(new MapObject(app, type, new Vector3f(x, y, z), size, instancing));
+		}
+		
+		finishObjects();
+		attachMap();
+	}
+	
+	/*
+	 * Load a map from a binary map file (see MapFile).
+	 * The ground size comes from the file, so the grid and the height field are rebuilt.
+	 */
+	public void loadMap(Path path) throws IOException {
+		buildMap(path);
+		attachMap();
+	}
+	
+	/*
+	 * Same as buildMap for a map file. The objects (meshes, materials) are
+	 * created in parallel, then registered in order on the calling thread.
+	 */
+	public void buildMap(Path path) throws IOException {
+		mapFile = MapFile.open(path);
+		mapSize = mapFile.getMapSize();
+		objectGrid = createObjectGrid();
+		heightField = createHeightField();
+		
+		reportProgress("Ground", 0f);
+		createGround();
+		
+		MapFile file = mapFile;
+		int count = file.getObjectCount();
+		MapObject[] objects = new MapObject[count];
+		AtomicInteger built = new AtomicInteger();
+		reportProgress("Objects", 0f);
+		IntStream.range(0, count).parallel().forEach(i -> {
+			Vector3f position = new Vector3f(file.getPositionX(i), file.getPositionY(i), file.getPositionZ(i));
+			Vector3f size = new Vector3f(file.getSizeX(i), file.getSizeY(i), file.getSizeZ(i));
+			objects[i] = new MapObject(app, file.getType(i), position, size, instancing);
+			int done = built.incrementAndGet();
+			if (done % PROGRESS_INTERVAL == 0) {
+				reportProgress("Objects", done / (float) count);
+			}
+		});
+		
+		reportProgress("Collision data", 0f);
+		// The index of the file holds the grid cells (ids from 0), only the bounds are left to compute
+		boolean indexed = mapObjects.isEmpty() && file.loadIndex(objectGrid);
+		for (int i = 0; i < count; i++) {
+			addMapObject(objects[i], indexed);
+			if (i % PROGRESS_INTERVAL == 0) {
+				reportProgress("Collision data", i / (float) count);
+			}
+		}
+		
+		finishObjects();
+		reportProgress("Done", 1f);
+	}
+	
+	/*
+	 * Write the loaded objects to a binary map file
+	 */
+	public void exportMap(Path path) throws IOException {
+		MapFile.write(path, mapSize, mapObjects);
 	}
 	
 	/*
@@ -55,8 +389,8 @@ public class Map {
 		Quad groundQuad = new Quad(mapSize, mapSize);
 		Geometry groundGeometry = new Geometry("Ground", groundQuad);
 		
-		Material groundMaterial = new Material(app.getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-		groundMaterial.setColor("Color", new ColorRGBA(0.3f, 0.6f, 0.2f, 1.0f)); // Green Grass
+		Material groundMaterial = MaterialCache.get(app.getAssetManager())
+				.getUnshaded(new ColorRGBA(0.3f, 0.6f, 0.2f, 1.0f)); // Green Grass
 		groundGeometry.setMaterial(groundMaterial);
 		
 		// Position the ground : centered in (0,0,0) and horizontal
@@ -93,8 +427,8 @@ public class Map {
 			Quad patchQuad = new Quad(size, size);
 			Geometry patchGeometry = new Geometry("Stone Patch", patchQuad);
 			
-			Material stoneMaterial = new Material(app.getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-			stoneMaterial.setColor("Color", new ColorRGBA(0.5f, 0.5f, 0.5f, 1f));
+			Material stoneMaterial = MaterialCache.get(app.getAssetManager())
+					.getUnshaded(new ColorRGBA(0.5f, 0.5f, 0.5f, 1f));
 			patchGeometry.setMaterial(stoneMaterial);
 			
 			patchGeometry.rotate(-90f * (float)Math.PI / 180f, 0, 0);
@@ -189,7 +523,7 @@ public class Map {
 			
 			MapObject tree = new MapObject(app, MapObject.ObjectType.TREE,
 					new Vector3f(x, height / 2, z),
-					new Vector3f(width, height, width));
+					new Vector3f(width, height, width), instancing);
 			addMapObject(tree);
 		}
 	}
@@ -212,7 +546,7 @@ public class Map {
 			
 			MapObject pillar = new MapObject(app, MapObject.ObjectType.PILLAR,
 					new Vector3f(x, 2f, z),
-					new Vector3f(1, 4, 1));
+					new Vector3f(1, 4, 1), instancing);
 			addMapObject(pillar);
 		}
 	}
@@ -241,10 +575,22 @@ public class Map {
 	 * Check if a position is too close from others already put objects
 	 */
 	private boolean isTooCloseToOtherObjects(Vector3f position, float minDistance) {
-		for (MapObject obj : mapObjects) {
-			float distance = obj.getPosition().distance(position);
-			if (distance < minDistance) {
-				return true;
+		// The center of an object is always inside its footprint, so looking
+		// in the cells around the position finds every close object
+		int startX = objectGrid.cellX(position.x - minDistance), endX = objectGrid.cellX(position.x + minDistance);
+		int startZ = objectGrid.cellZ(position.z - minDistance), endZ = objectGrid.cellZ(position.z + minDistance);
+		
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				int cell = objectGrid.cellIndex(cx, cz);
+				int[] ids = objectGrid.getCellObjects(cell);
+				int count = objectGrid.getCellCount(cell);
+				for (int i = 0; i < count; i++) {
+					float distance = mapObjects.get(ids[i]).getPosition().distance(position);
+					if (distance < minDistance) {
+						return true;
+					}
+				}
 			}
 		}
 		return false;
@@ -254,9 +600,108 @@ public class Map {
 	 * Add a MapObject to the list and to the scene
 	 */
 	private void addMapObject(MapObject object) {
+		addMapObject(object, false);
+	}
+	
+	/*
+	 * Same as addMapObject, indexed is true if the grid already holds the object
+	 */
+	private void addMapObject(MapObject object, boolean indexed) {
 		mapObjects.add(object);
 		object.setDebugMode(debugMode);
 		mapNode.attachChild(object.getNode());
+		for (Geometry part : object.getInstanceParts()) {
+			instancedProps.addInstance(part);
+		}
+		
+		// Cache the world bounds and index the footprint of the object
+		object.refreshWorldBounds();
+		int id = bounds.add(object);
+		objectBvh = null;
+		if (!indexed) {
+			objectGrid.insert(id, bounds.minX[id], bounds.minZ[id], bounds.maxX[id], bounds.maxZ[id]);
+		}
+		if (bounds.platform[id]) {
+			heightField.addPlatform(bounds, id);
+		}
+	}
+	
+	/*
+	 * Remove a MapObject from the list and from the scene
+	 */
+	public void removeMapObject(MapObject object) {
+		int id = mapObjects.indexOf(object);
+		if (id < 0) {
+			return;
+		}
+		float minX = bounds.minX[id], minZ = bounds.minZ[id];
+		float maxX = bounds.maxX[id], maxZ = bounds.maxZ[id];
+		boolean wasPlatform = bounds.platform[id];
+		objectGrid.remove(id, minX, minZ, maxX, maxZ);
+		lod.remove(object);
+		if (physics != null) {
+			physics.removeObject(object);
+		}
+		if (visibilityCuller != null) {
+			visibilityCuller.remove(object.getNode());
+		}
+		
+		// The last object takes the free index so ids stay dense
+		int last = mapObjects.size() - 1;
+		if (id != last) {
+			objectGrid.remove(last, bounds.minX[last], bounds.minZ[last], bounds.maxX[last], bounds.maxZ[last]);
+			mapObjects.set(id, mapObjects.get(last));
+		}
+		mapObjects.remove(last);
+		bounds.removeSwap(id);
+		objectBvh = null;
+		if (id != last) {
+			objectGrid.insert(id, bounds.minX[id], bounds.minZ[id], bounds.maxX[id], bounds.maxZ[id]);
+		}
+		
+		mapNode.detachChild(object.getNode());
+		for (Geometry part : object.getInstanceParts()) {
+			instancedProps.removeInstance(part);
+		}
+		object.release();
+		
+		if (wasPlatform) {
+			heightField.rebuildArea(minX, minZ, maxX, maxZ, bounds, objectGrid);
+		}
+	}
+	
+	/*
+	 * Move an object of the map, its cached bounds are only rebuilt if it really moved.
+	 * Visuals merged by static batching stay where they were batched.
+	 */
+	public void moveMapObject(MapObject object, Vector3f newPosition) {
+		int id = mapObjects.indexOf(object);
+		if (id < 0) {
+			return;
+		}
+		float oldMinX = bounds.minX[id], oldMinZ = bounds.minZ[id];
+		float oldMaxX = bounds.maxX[id], oldMaxZ = bounds.maxZ[id];
+		
+		if (object.setPosition(newPosition)) {
+			for (Geometry part : object.getInstanceParts()) {
+				instancedProps.instanceMoved(part);
+			}
+			lod.moved(object);
+			if (visibilityCuller != null) {
+				visibilityCuller.refresh(object.getNode());
+			}
+			bounds.set(id, object);
+			objectBvh = null;
+			if (physics != null) {
+				physics.moveObject(object, bounds, id);
+			}
+			objectGrid.remove(id, oldMinX, oldMinZ, oldMaxX, oldMaxZ);
+			objectGrid.insert(id, bounds.minX[id], bounds.minZ[id], bounds.maxX[id], bounds.maxZ[id]);
+			if (bounds.platform[id]) {
+				heightField.rebuildArea(oldMinX, oldMinZ, oldMaxX, oldMaxZ, bounds, objectGrid);
+				heightField.addPlatform(bounds, id);
+			}
+		}
 	}
 	
 	/*
@@ -267,45 +712,123 @@ public class Map {
 		for (MapObject obj : mapObjects) {
 			obj.setDebugMode(debug);
 		}
+		if (streamer != null) {
+			streamer.setDebugMode(debug);
+		}
+		if (physics != null) {
+			physics.setDebugEnabled(debug);
+		}
 	}
 	
 	/*
 	 * Check collisions with all objects of the map
 	 */
 	public boolean checkCollision(Vector3f position, float radius) {
+		return checkCollision(position.x, position.y, position.z, radius);
+	}
+	
+	/*
+	 * Same as checkCollision(Vector3f, float), runs on the cached bounds only
+	 * (same rules as MapObject.checkCollision)
+	 */
+	@Override
+	public boolean checkCollision(float x, float y, float z, float radius) {
 		// Check map limits
-		if (position.x - radius < - mapSize / 2 || position.x + radius > mapSize / 2 ||
-				position.z - radius < - mapSize / 2 || position.z + radius > mapSize / 2) {
+		if (x - radius < - mapSize / 2 || x + radius > mapSize / 2 ||
+				z - radius < - mapSize / 2 || z + radius > mapSize / 2) {
 			return true;
 		}
 		
-		// Check collision with objects
-		for (MapObject obj : mapObjects) {
-			if (obj.checkCollision(position, radius)) {
-				return true;
+		// Check collision with the objects of the cells touched by the sphere
+		if (bounds.collides(objectGrid, x, y, z, radius)) {
+			return true;
+		}
+		
+		// Then with the streamed chunks under the sphere
+		return streamer != null && streamer.checkCollision(x, y, z, radius);
+	}
+	
+	/*
+	 * Build the ray cast hierarchy if the objects changed since the last one.
+	 * Must be called on the thread changing the map before casting from other threads.
+	 */
+	public void prepareRaycasts() {
+		if (objectBvh == null) {
+			objectBvh = new ObjectBvh(bounds, mapObjects.toArray(new MapObject[0]));
+		}
+	}
+	
+	/*
+	 * Nearest hit of a ray (normalized direction) within maxDistance on the map
+	 * objects, the streamed chunks and the ground, written in query. Casts only
+	 * read the map : several threads can cast at once after prepareRaycasts.
+	 */
+	public boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz,
+			float maxDistance, RayQuery query) {
+		query.reset(maxDistance);
+		ObjectBvh bvh = objectBvh;
+		if (bvh == null) {
+			prepareRaycasts();
+			bvh = objectBvh;
+		}
+		boolean hit = bvh.raycast(ox, oy, oz, dx, dy, dz, query);
+		if (streamer != null && streamer.raycast(ox, oy, oz, dx, dy, dz, query)) {
+			hit = true;
+		}
+		
+		// The ground plane
+		if (dy < 0f) {
+			float t = Math.max(0f, -oy / dy);
+			if (t < query.distance) {
+				query.distance = t;
+				query.object = null;
+				hit = true;
 			}
 		}
+		return hit;
+	}
+	
+	/*
+	 * Fraction of the segment from (ox, oy, oz) to (ox + dx, oy + dy, oz + dz)
+	 * travelled before hitting an object, a streamed chunk object or the ground,
+	 * 1 if the segment is free. Swept collision of short moves (projectiles),
+	 * only reads the map : safe from several threads.
+	 */
+	public float sweep(float ox, float oy, float oz, float dx, float dy, float dz) {
+		float fraction = bounds.sweep(objectGrid, ox, oy, oz, dx, dy, dz);
+		if (streamer != null) {
+			fraction = Math.min(fraction, streamer.sweep(ox, oy, oz, dx, dy, dz));
+		}
 		
-		return false;
+		// The ground plane
+		if (dy < 0f) {
+			float t = Math.max(0f, -oy / dy);
+			if (t < fraction) {
+				fraction = t;
+			}
+		}
+		return fraction;
 	}
 	
 	/*
 	 * Find ground height at a given position (count platforms)
 	 */
 	public float getGroundHeightAt(Vector3f position) {
-		float maxHeight = 0f; // base ground height
-		
-		// Check platforms
-		for (MapObject obj : mapObjects) {
-			if (obj.getType() == MapObject.ObjectType.PLATFORM) {
-				float platformHeight = obj.getGroundHeightAt(position);
-				if (platformHeight > maxHeight) {
-					maxHeight = platformHeight;
-				}
-			}
+		return getGroundHeightAt(position.x, position.z);
+	}
+	
+	@Override
+	public float getGroundHeightAt(float x, float z) {
+		float height = heightField.lookup(x, z);
+		if (Float.isNaN(height)) {
+			// Near a platform edge : check the platforms of this grid cell
+			height = bounds.platformHeightAt(objectGrid, x, z);
 		}
 		
-		return maxHeight;
+		if (streamer != null) {
+			height = Math.max(height, streamer.getGroundHeightAt(x, z));
+		}
+		return height;
 	}
 	/* 
 	 * Delete all map elements
@@ -315,7 +838,121 @@ public class Map {
 			app.getRootNode().detachChild(mapNode);
 		}
 		mapNode.detachAllChildren();
+		instancedProps = new InstancedProps();
+		mapNode.attachChild(instancedProps);
+		lod = new LodController(instancedProps);
+		visibilityCuller = null;
+		for (MapObject object : mapObjects) {
+			object.release();
+		}
 		mapObjects.clear();
+		objectGrid.clear();
+		bounds.clear();
+		heightField.clear();
+		objectBvh = null;
+		mapFile = null;
+		if (streamer != null) {
+			streamer.shutdown();
+			streamer = null;
+		}
+		if (physics != null) {
+			physics.shutdown();
+			physics = null;
+		}
+	}
+	
+	/*
+	 * Mapped file of the loaded map (its object columns), null for built-in maps
+	 */
+	public MapFile getMapFile() {
+		return mapFile;
+	}
+	
+	/*
+	 * Stream the objects of a large world in chunks instead of building them all,
+	 * must be set before loadMap. The ground and the walls cover the whole world.
+	 */
+	public void setStreamer(ChunkStreamer streamer) {
+		this.streamer = streamer;
+		mapSize = streamer.getWorldSize();
+		objectGrid = createObjectGrid();
+		heightField = createHeightField();
+	}
+	
+	/*
+	 * Chunk streamer of the world, null if the map is not streamed
+	 */
+	public ChunkStreamer getStreamer() {
+		return streamer;
+	}
+	
+	/*
+	 * Collide with Bullet bodies of the map objects, registered when the map is
+	 * attached (render thread). Not used by streamed worlds.
+	 */
+	public void setPhysics(PhysicsWorld physics) {
+		this.physics = physics;
+	}
+	
+	public PhysicsWorld getPhysics() {
+		return physics;
+	}
+	
+	/*
+	 * Backend the players collide with : the physics world if any, the grid of the map otherwise
+	 */
+	public Collider getCollider() {
+		return physics != null ? physics : this;
+	}
+	
+	/*
+	 * Enable/Disable static batching, must be set before loadMap
+	 */
+	public void setStaticBatching(boolean staticBatching) {
+		this.staticBatching = staticBatching;
+	}
+	
+	/*
+	 * Enable/Disable instanced trees and pillars, must be set before loadMap
+	 */
+	public void setInstancing(boolean instancing) {
+		this.instancing = instancing;
+	}
+	
+	/*
+	 * Enable/Disable levels of detail for trees and pillars, must be set before loadMap
+	 */
+	public void setLevelOfDetail(boolean levelOfDetail) {
+		this.levelOfDetail = levelOfDetail;
+	}
+	
+	/*
+	 * Enable/Disable the precomputed visibility culling, must be set before loadMap.
+	 * Streamed worlds are not culled.
+	 */
+	public void setVisibilityCulling(boolean visibilityCulling) {
+		this.visibilityCulling = visibilityCulling;
+	}
+	
+	/*
+	 * Visibility culling of the map, null if it is disabled
+	 */
+	public VisibilityCuller getVisibilityCuller() {
+		return visibilityCuller;
+	}
+	
+	/*
+	 * Level of detail state of the map objects (the streamed chunks have their own)
+	 */
+	public LodController getLodController() {
+		return lod;
+	}
+	
+	/*
+	 * Geometry and draw call counts of the last batching, null if it did not run
+	 */
+	public StaticBatcher.Report getBatchReport() {
+		return batchReport;
 	}
 	
 	// Getters 
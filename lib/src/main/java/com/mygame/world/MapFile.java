@@ -0,0 +1,250 @@
+package com.mygame.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/*
+ * Binary map layout, read through a memory mapped file.
+ *
+ * Little endian, every section is 4 bytes aligned :
+ *   header  : magic, version, mapSize, objectCount, originX, originZ,
+ *             cellSize, cellsX, cellsZ, indexEntries
+ *   types   : one byte per object (ObjectType ordinal), padded to 4 bytes
+ *   columns : posX, posY, posZ, sizeX, sizeY, sizeZ (objectCount floats each)
+ *   index   : cellStart (cells + 1 ints) then the object ids of every cell
+ *
+ * Opening a file maps it and validates the header and the object types, the
+ * columns are views on the mapped buffer read while the map builds its
+ * objects. The index is the collision grid of the map (see SpatialGrid) : a
+ * map loading the file copies its cells instead of inserting every footprint.
+ */
+public class MapFile {
+
+	public static final int MAGIC = 0x4D443353; // "S3DM"
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 40;
+	// Cell size of the object grid of Map, the index is built on the same grid
+	private static final float PREFERRED_CELL_SIZE = 4f;
+
+	private final float mapSize;
+	private final int objectCount;
+	private final float originX, originZ, cellSize;
+	private final int cellsX, cellsZ, indexEntries;
+
+	private final ByteBuffer types;
+	private final FloatBuffer posX, posY, posZ;
+	private final FloatBuffer sizeX, sizeY, sizeZ;
+	private final IntBuffer cellStart, cellObjects;
+
+	private MapFile(ByteBuffer buffer) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a map file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported map file version " + buffer.getInt(4));
+		}
+		mapSize = buffer.getFloat(8);
+		objectCount = buffer.getInt(12);
+		originX = buffer.getFloat(16);
+		originZ = buffer.getFloat(20);
+		cellSize = buffer.getFloat(24);
+		cellsX = buffer.getInt(28);
+		cellsZ = buffer.getInt(32);
+		indexEntries = buffer.getInt(36);
+
+		if (!(mapSize > 0f) || objectCount < 0 || cellsX <= 0 || cellsZ <= 0 || indexEntries < 0) {
+			throw new IOException("Corrupted map file header");
+		}
+		if (buffer.capacity() != fileSize(objectCount, (long) cellsX * cellsZ, indexEntries)) {
+			throw new IOException("Map file size does not match its " + objectCount + " objects");
+		}
+
+		int offset = HEADER_SIZE;
+		types = slice(buffer, offset, objectCount);
+		int typeCount = MapObject.ObjectType.values().length;
+		for (int i = 0; i < objectCount; i++) {
+			int type = types.get(i) & 0xFF;
+			if (type >= typeCount) {
+				throw new IOException("Unknown type " + type + " of object " + i + " in map file");
+			}
+		}
+		offset += align(objectCount);
+		posX = slice(buffer, offset, objectCount * 4).asFloatBuffer();
+		offset += objectCount * 4;
+		posY = slice(buffer, offset, objectCount * 4).asFloatBuffer();
+		offset += objectCount * 4;
+		posZ = slice(buffer, offset, objectCount * 4).asFloatBuffer();
+		offset += objectCount * 4;
+		sizeX = slice(buffer, offset, objectCount * 4).asFloatBuffer();
+		offset += objectCount * 4;
+		sizeY = slice(buffer, offset, objectCount * 4).asFloatBuffer();
+		offset += objectCount * 4;
+		sizeZ = slice(buffer, offset, objectCount * 4).asFloatBuffer();
+		offset += objectCount * 4;
+		int cells = cellsX * cellsZ;
+		cellStart = slice(buffer, offset, (cells + 1) * 4).asIntBuffer();
+		offset += (cells + 1) * 4;
+		cellObjects = slice(buffer, offset, indexEntries * 4).asIntBuffer();
+	}
+
+	/*
+	 * Map a file in memory (read only)
+	 */
+	public static MapFile open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// The mapping stays valid once the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new MapFile(buffer);
+		}
+	}
+
+	/*
+	 * Write the objects of a map, positions and sizes as given to MapObject
+	 */
+	public static void write(Path path, float mapSize, List<MapObject> objects) throws IOException {
+		int count = objects.size();
+
+		// Index on the grid a map of this size builds, so loading can copy its cells
+		float margin = PREFERRED_CELL_SIZE;
+		SpatialGrid grid = new SpatialGrid(-mapSize / 2 - margin, -mapSize / 2 - margin,
+				mapSize + 2 * margin, mapSize + 2 * margin, PREFERRED_CELL_SIZE);
+		for (int i = 0; i < count; i++) {
+			MapObject object = objects.get(i);
+			grid.insert(i, object.worldCenter.x - object.halfSize.x, object.worldCenter.z - object.halfSize.z,
+					object.worldCenter.x + object.halfSize.x, object.worldCenter.z + object.halfSize.z);
+		}
+		int cells = grid.getCellsX() * grid.getCellsZ();
+		int indexEntries = 0;
+		for (int c = 0; c < cells; c++) {
+			indexEntries += grid.getCellCount(c);
+		}
+
+		long size = fileSize(count, cells, indexEntries);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(MAGIC).putInt(VERSION).putFloat(mapSize).putInt(count);
+			buffer.putFloat(grid.getOriginX()).putFloat(grid.getOriginZ()).putFloat(grid.getCellSize());
+			buffer.putInt(grid.getCellsX()).putInt(grid.getCellsZ()).putInt(indexEntries);
+
+			for (MapObject object : objects) {
+				buffer.put((byte) object.getType().ordinal());
+			}
+			buffer.position(HEADER_SIZE + align(count));
+
+			// Positions and sizes as given to the constructor, not the world bounds
+			for (MapObject object : objects) buffer.putFloat(object.getPosition().x);
+			for (MapObject object : objects) buffer.putFloat(object.getPosition().y);
+			for (MapObject object : objects) buffer.putFloat(object.getPosition().z);
+			for (MapObject object : objects) buffer.putFloat(object.halfSize.x * 2);
+			for (MapObject object : objects) buffer.putFloat(object.halfSize.y * 2);
+			for (MapObject object : objects) buffer.putFloat(object.halfSize.z * 2);
+
+			int start = 0;
+			buffer.putInt(start);
+			for (int c = 0; c < cells; c++) {
+				start += grid.getCellCount(c);
+				buffer.putInt(start);
+			}
+			for (int c = 0; c < cells; c++) {
+				int[] ids = grid.getCellObjects(c);
+				for (int i = 0; i < grid.getCellCount(c); i++) {
+					buffer.putInt(ids[i]);
+				}
+			}
+			buffer.force();
+		}
+	}
+
+	private static long fileSize(int objectCount, long cells, int indexEntries) {
+		return HEADER_SIZE + align(objectCount) + 6L * objectCount * 4 + (cells + 1) * 4L + indexEntries * 4L;
+	}
+
+	private static int align(int bytes) {
+		return (bytes + 3) & ~3;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		return buffer.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/*
+	 * Copy the cell index into an empty grid. False if the grid is not the one
+	 * the index was built on, the caller then inserts the footprints itself.
+	 */
+	boolean loadIndex(SpatialGrid grid) throws IOException {
+		if (grid.getOriginX() != originX || grid.getOriginZ() != originZ || grid.getCellSize() != cellSize
+				|| grid.getCellsX() != cellsX || grid.getCellsZ() != cellsZ) {
+			return false;
+		}
+		int cells = cellsX * cellsZ;
+		if (cellStart.get(0) != 0 || cellStart.get(cells) != indexEntries) {
+			throw new IOException("Corrupted map file index");
+		}
+		for (int c = 0; c < cells; c++) {
+			int start = cellStart.get(c), end = cellStart.get(c + 1);
+			if (end < start || end > indexEntries) {
+				throw new IOException("Corrupted map file index at cell " + c);
+			}
+			int[] ids = new int[end - start];
+			cellObjects.get(start, ids);
+			for (int id : ids) {
+				if (id < 0 || id >= objectCount) {
+					throw new IOException("Unknown object " + id + " in cell " + c + " of map file");
+				}
+			}
+			grid.setCell(c, ids);
+		}
+		return true;
+	}
+
+	// Object columns
+
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	public float getMapSize() {
+		return mapSize;
+	}
+
+	public MapObject.ObjectType getType(int i) {
+		return MapObject.ObjectType.values()[types.get(i) & 0xFF];
+	}
+
+	public float getPositionX(int i) {
+		return posX.get(i);
+	}
+
+	public float getPositionY(int i) {
+		return posY.get(i);
+	}
+
+	public float getPositionZ(int i) {
+		return posZ.get(i);
+	}
+
+	public float getSizeX(int i) {
+		return sizeX.get(i);
+	}
+
+	public float getSizeY(int i) {
+		return sizeY.get(i);
+	}
+
+	public float getSizeZ(int i) {
+		return sizeZ.get(i);
+	}
+}
@@ -6,11 +6,14 @@ import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
-import com.jme3.scene.shape.Box;
-import com.jme3.scene.shape.Cylinder;
+import com.jme3.scene.Spatial;
 import com.jme3.texture.Texture;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /*
  * Unified class for all objects of the map : collision + visual
  */
@@ -28,17 +31,51 @@ public class MapObject {
 	private SimpleApplication app;
 	private Node objectNode;
 	private Geometry visualGeometry;
-	private Geometry collisionGeometry;
+	private Spatial visualRoot; // Everything rendered for this object
+	private Geometry collisionGeometry; // Created on first use by debug mode
+	private String collisionName;
+	private Vector3f collisionHalfExtents;
 	private ObjectType type;
 	private Vector3f position;
 	private Vector3f size;
 	private boolean debugMode = false;
 	
+	// Instanced trees and pillars : detached geometries drawn by InstancedProps
+	private boolean instanced;
+	private List<Geometry> instanceParts = new ArrayList<>();
+	
+	// Meshes taken from MeshCache, given back by release
+	private final List<Mesh> sharedMeshes = new ArrayList<>();
+	
+	// Cylinder segments (axis, radial) for each level of detail
+	private static final int[][] TRUNK_LODS = {{8, 16}, {3, 8}, {2, 5}};
+	private static final int[][] PILLAR_LODS = {{12, 24}, {3, 12}, {2, 6}};
+	
+	// Parts changing mesh with the level of detail and their mesh per level, null without LOD
+	private List<Geometry> lodParts;
+	private List<Mesh[]> lodMeshes;
+	private int lodLevel = 0;
+	int lodIndex = -1; // Slot in the owning LodController
+	
+	// Cached world space bounds, refreshed only when the transform changes
+	final Vector3f halfSize;
+	final Vector3f worldCenter = new Vector3f();
+	
 	public MapObject(SimpleApplication app, ObjectType type, Vector3f position, Vector3f size) {
+		this(app, type, position, size, false);
+	}
+	
+	/*
+	 * When instanced is true, trees and pillars share their meshes and are
+	 * rendered through InstancedProps instead of their own node
+	 */
+	public MapObject(SimpleApplication app, ObjectType type, Vector3f position, Vector3f size, boolean instanced) {
 		this.app = app;
 		this.type = type;
+		this.instanced = instanced && (type == ObjectType.TREE || type == ObjectType.PILLAR);
 		this.position = position.clone();
 		this.size = size.clone();
+		this.halfSize = size.mult(0.5f);
 		this.objectNode = new Node("MapObject_" + type.name());
 		
 		createObject();
@@ -71,6 +108,7 @@ public class MapObject {
 		
 		// Position the object
 		objectNode.setLocalTranslation(position);
+		refreshWorldBounds();
 	}
 	
 	/* 
@@ -78,18 +116,16 @@ public class MapObject {
 	 */
 	private void createWall() {
 		// Invisible collision shape
-		Box collisionBox = new Box(size.x / 2, size.y / 2, size.z / 2);
-		collisionGeometry = new Geometry("Wall Collision", collisionBox);
+		setCollisionShape("Wall Collision", size.x / 2, size.y / 2, size.z / 2);
 		
 		// Visual with texture
-		Box visualBox = new Box(size.x / 2, size.y / 2, size.z / 2);
-		visualGeometry = new Geometry("wall Visual", visualBox);
+		visualGeometry = new Geometry("wall Visual", box(size.x / 2, size.y / 2, size.z / 2));
 		
 		Material wallMaterial = createMaterial("Brick");
 		visualGeometry.setMaterial(wallMaterial);
 		
-		objectNode.attachChild(visualGeometry);
-		if (debugMode) objectNode.attachChild(visualGeometry);
+		visualRoot = visualGeometry;
+		objectNode.attachChild(visualRoot);
 	}
 	
 	/* 
@@ -97,28 +133,25 @@ public class MapObject {
 	 */
 	private void createHouse() {
 		// Invisible collision shape : simple box
-		Box collisionBox = new Box(size.x / 2, size.y / 2, size.z / 2);
-		collisionGeometry = new Geometry("House Collision", collisionBox);
+		setCollisionShape("House Collision", size.x / 2, size.y / 2, size.z / 2);
 		
 		// Visual : differents parts
 		Node houseNode = new Node("House Visual");
 		
 		// Walls
-		Box houseWalls = new Box(size.x / 2, size.y / 2, size.z / 2);
-		Geometry wallsGeometry = new Geometry("House Walls", houseWalls);
+		Geometry wallsGeometry = new Geometry("House Walls", box(size.x / 2, size.y / 2, size.z / 2));
 		wallsGeometry.setMaterial(createMaterial("House"));
 		houseNode.attachChild(wallsGeometry);
 		
 		// Roof
-		Box roof = new Box(size.x / 2 + 0.2f, 0.3f , size.z / 2 + 0.2f);
-		Geometry roofGeometry = new Geometry("House Roof", roof);
+		Geometry roofGeometry = new Geometry("House Roof", box(size.x / 2 + 0.2f, 0.3f , size.z / 2 + 0.2f));
 		roofGeometry.setLocalTranslation(0, size.y / 2 + 0.3f, 0);
 		roofGeometry.setMaterial(createMaterial("Roof"));
 		houseNode.attachChild(roofGeometry);
 		
 		visualGeometry = wallsGeometry; // For references
+		visualRoot = houseNode;
 		objectNode.attachChild(houseNode);
-		if (debugMode) objectNode.attachChild(collisionGeometry);
 	}
 	
 	/* 
@@ -127,32 +160,35 @@ public class MapObject {
 	private void createTree() {
 		// Collision shape : cylinder
 		float trunkRadius = Math.min(size.x, size.z) * 0.15f;
-		Box collisionBox = new Box(trunkRadius, size.y / 2, trunkRadius);
-		collisionGeometry = new Geometry("Tree Collision", collisionBox);
+		setCollisionShape("Tree Collision", trunkRadius, size.y / 2, trunkRadius);
+		if (instanced) {
+			createInstancedTree();
+			return;
+		}
+		
 		// Visual - trunk + foliage
 		Node treeNode = new Node("Tree Visual");
 		
 		// Trunk
 		float visualTrunkRadius = Math.min(size.x, size.z) * 0.3f;
-		Cylinder trunk = new Cylinder(8, 16, visualTrunkRadius, size.y * 0.7f, true);
-		Geometry trunkGeometry = new Geometry("Tree Trunk", trunk);
+		Geometry trunkGeometry = new Geometry("Tree Trunk", cylinder(8, 16, visualTrunkRadius, size.y * 0.7f, true));
 		trunkGeometry.setLocalTranslation(0, size.y * 0.35f - size.y / 2, 0);
 		trunkGeometry.setMaterial(createMaterial("TreeTrunk"));
 
 		trunkGeometry.rotate(-90f * (float)Math.PI / 180f, 0, 0);
 		treeNode.attachChild(trunkGeometry);
+		addLodCylinder(trunkGeometry, TRUNK_LODS, visualTrunkRadius, size.y * 0.7f);
 		
 		// Foliage
 		float foliageSize = Math.min(size.x, size.z) * 0.8f;
-		Box foliage = new Box(foliageSize, foliageSize, foliageSize);
-		Geometry foliageGeometry = new Geometry("Tree Foliage", foliage);
+		Geometry foliageGeometry = new Geometry("Tree Foliage", box(foliageSize, foliageSize, foliageSize));
 		foliageGeometry.setLocalTranslation(0, size.y * 0.7f - size.y / 2, 0);
 		foliageGeometry.setMaterial(createMaterial("Foliage"));
 		treeNode.attachChild(foliageGeometry);
 		
 		visualGeometry = trunkGeometry;
+		visualRoot = treeNode;
 		objectNode.attachChild(treeNode);
-		if (debugMode) objectNode.attachChild(collisionGeometry);
 		
 	}
 	
@@ -161,16 +197,14 @@ public class MapObject {
 	 */
 	private void createPlatform() {
 		// Collision and visual are the same for visuals
-		Box collisionBox = new Box(size.x / 2, size.y / 2, size.z / 2);
-		collisionGeometry = new Geometry("Platform Collision",  collisionBox);
+		setCollisionShape("Platform Collision", size.x / 2, size.y / 2, size.z / 2);
 
-		Box platformBox = new Box(size.x / 2, size.y / 2, size.z / 2);
-		Geometry visualGeometry = new Geometry("Platform", platformBox);
+		visualGeometry = new Geometry("Platform", box(size.x / 2, size.y / 2, size.z / 2));
 		
 		visualGeometry.setMaterial(createMaterial("Stone"));
 		
-		objectNode.attachChild(visualGeometry);
-		if (debugMode)  objectNode.attachChild(collisionGeometry);
+		visualRoot = visualGeometry;
+		objectNode.attachChild(visualRoot);
 	}
 	
 	/*
@@ -180,17 +214,116 @@ public class MapObject {
 		float radius = Math.min(size.x, size.z) / 2;
 		
 		// Collision - simple box
-		Box collisionBox = new Box(radius, size.y / 2, radius);
-		collisionGeometry = new Geometry("Pillar Collision", collisionBox);
+		setCollisionShape("Pillar Collision", radius, size.y / 2, radius);
+		
+		if (instanced) {
+			createInstancedPillar();
+			return;
+		}
 		
 		// Visual - cylinder with details
-		Cylinder pillarCylinder = new Cylinder(12, 24, radius, size.y, true);
-		visualGeometry = new Geometry("Pillar", pillarCylinder);
+		visualGeometry = new Geometry("Pillar", cylinder(12, 24, radius, size.y, true));
 		visualGeometry.setMaterial(createMaterial("Marble"));
 		visualGeometry.rotate(-90f * (float)Math.PI / 180f, 0, 0);
+		addLodCylinder(visualGeometry, PILLAR_LODS, radius, size.y);
+		
+		visualRoot = visualGeometry;
+		objectNode.attachChild(visualRoot);
+	}
+	
+	/*
+	 * Remember the collision box, its geometry is only built for debug display
+	 */
+	private void setCollisionShape(String name, float halfX, float halfY, float halfZ) {
+		collisionName = name;
+		collisionHalfExtents = new Vector3f(halfX, halfY, halfZ);
+	}
+	
+	/*
+	 * Tree made of instances of the shared unit trunk and foliage meshes
+	 */
+	private void createInstancedTree() {
+		float visualTrunkRadius = Math.min(size.x, size.z) * 0.3f;
+		Geometry trunkGeometry = new Geometry("Tree Trunk", cylinder(8, 16, 1f, 1f, true));
+		trunkGeometry.setLocalScale(visualTrunkRadius, visualTrunkRadius, size.y * 0.7f);
+		trunkGeometry.rotate(-90f * (float)Math.PI / 180f, 0, 0);
+		trunkGeometry.setLocalTranslation(0, size.y * 0.35f - size.y / 2, 0);
+		trunkGeometry.setMaterial(createInstancedMaterial("TreeTrunk"));
+		addInstancePart(trunkGeometry);
+		addLodCylinder(trunkGeometry, TRUNK_LODS, 1f, 1f);
+		
+		float foliageSize = Math.min(size.x, size.z) * 0.8f;
+		Geometry foliageGeometry = new Geometry("Tree Foliage", box(1f, 1f, 1f));
+		foliageGeometry.setLocalScale(foliageSize);
+		foliageGeometry.setLocalTranslation(0, size.y * 0.7f - size.y / 2, 0);
+		foliageGeometry.setMaterial(createInstancedMaterial("Foliage"));
+		addInstancePart(foliageGeometry);
 		
-		objectNode.attachChild(visualGeometry);
-		if (debugMode) objectNode.attachChild(collisionGeometry);
+		visualGeometry = trunkGeometry;
+	}
+	
+	/*
+	 * Pillar made of an instance of the shared unit cylinder
+	 */
+	private void createInstancedPillar() {
+		float radius = Math.min(size.x, size.z) / 2;
+		visualGeometry = new Geometry("Pillar", cylinder(12, 24, 1f, 1f, true));
+		visualGeometry.setLocalScale(radius, radius, size.y);
+		visualGeometry.rotate(-90f * (float)Math.PI / 180f, 0, 0);
+		visualGeometry.setMaterial(createInstancedMaterial("Marble"));
+		addInstancePart(visualGeometry);
+		addLodCylinder(visualGeometry, PILLAR_LODS, 1f, 1f);
+	}
+	
+	/*
+	 * Register a cylinder part with one mesh per level of detail (same radius and height)
+	 */
+	private void addLodCylinder(Geometry part, int[][] segments, float radius, float height) {
+		if (lodParts == null) {
+			lodParts = new ArrayList<>();
+			lodMeshes = new ArrayList<>();
+		}
+		Mesh[] meshes = new Mesh[segments.length];
+		for (int level = 0; level < segments.length; level++) {
+			meshes[level] = cylinder(segments[level][0], segments[level][1], radius, height, true);
+		}
+		lodParts.add(part);
+		lodMeshes.add(meshes);
+	}
+	
+	/*
+	 * Shared meshes of the object, counted in MeshCache until release
+	 */
+	private Mesh box(float halfX, float halfY, float halfZ) {
+		Mesh mesh = MeshCache.box(halfX, halfY, halfZ);
+		sharedMeshes.add(mesh);
+		return mesh;
+	}
+	
+	private Mesh cylinder(int axisSamples, int radialSamples, float radius, float height, boolean closed) {
+		Mesh mesh = MeshCache.cylinder(axisSamples, radialSamples, radius, height, closed);
+		sharedMeshes.add(mesh);
+		return mesh;
+	}
+	
+	/*
+	 * Give the shared meshes back to MeshCache once the object leaves its map or
+	 * chunk. Its geometries keep their meshes, they are just not shared anymore.
+	 */
+	void release() {
+		for (Mesh mesh : sharedMeshes) {
+			MeshCache.release(mesh);
+		}
+		sharedMeshes.clear();
+	}
+	
+	/*
+	 * Instance parts are not attached to the object node,
+	 * so their local transform is moved to world space
+	 */
+	private void addInstancePart(Geometry part) {
+		part.setLocalTranslation(part.getLocalTranslation().add(position));
+		instanceParts.add(part);
 	}
 	
 	/*
@@ -198,48 +331,58 @@ public class MapObject {
 	 */
 	private void createFence() {
 		// Colision - simple box
-		Box collisionBox = new Box(size.x / 2, size.y / 2, size.z / 2);
-		collisionGeometry = new Geometry("Fence Collision", collisionBox);
+		setCollisionShape("Fence Collision", size.x / 2, size.y / 2, size.z / 2);
 		
 		// Visual - textured fence
-		Box fenceBox = new Box(size.x / 2, size.y / 2, size.z / 2);
-		visualGeometry = new Geometry("Fence", fenceBox);
+		visualGeometry = new Geometry("Fence", box(size.x / 2, size.y / 2, size.z / 2));
 		visualGeometry.setMaterial(createMaterial("Wood"));
 		
-		objectNode.attachChild(visualGeometry);
-		if (debugMode) objectNode.attachChild(collisionGeometry);
+		visualRoot = visualGeometry;
+		objectNode.attachChild(visualRoot);
 	}
 	
 	
 	private Material createMaterial(String matType) {
-		Material mat = new Material(app.getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");;
+		// Shared with every object using the same material
+		return MaterialCache.get(app.getAssetManager()).getUnshaded(materialColor(matType));
+	}
+	
+	private Material createInstancedMaterial(String matType) {
+		return MaterialCache.get(app.getAssetManager()).getInstanced(materialColor(matType));
+	}
+	
+	private ColorRGBA materialColor(String matType) {
+		ColorRGBA color;
 		switch (matType) {
 			case "Brick":
-		        mat.setColor("Color", new ColorRGBA(0.7f, 0.4f, 0.3f, 1.0f)); // Red Brick
-		        break;
+				color = new ColorRGBA(0.7f, 0.4f, 0.3f, 1.0f); // Red Brick
+				break;
 			case "House":
-		        mat.setColor("Color", new ColorRGBA(0.9f, 0.9f, 0.8f, 1.0f)); // Off-White
-		        break;
+				color = new ColorRGBA(0.9f, 0.9f, 0.8f, 1.0f); // Off-White
+				break;
 			case "Roof":
-		        mat.setColor("Color", new ColorRGBA(0.5f, 0.2f, 0.2f, 1.0f)); // Dark Red
-		        break;
+				color = new ColorRGBA(0.5f, 0.2f, 0.2f, 1.0f); // Dark Red
+				break;
 			case "TreeTrunk":
-		        mat.setColor("Color", new ColorRGBA(0.4f, 0.2f, 0.1f, 1.0f)); // Brown
-		        break;
+				color = new ColorRGBA(0.4f, 0.2f, 0.1f, 1.0f); // Brown
+				break;
 			case "Foliage":
-		        mat.setColor("Color", new ColorRGBA(0.1f, 0.6f, 0.1f, 1.0f)); // Green Foliage
+				color = new ColorRGBA(0.1f, 0.6f, 0.1f, 1.0f); // Green Foliage
 				break;
 			case "Stone":
-		        mat.setColor("Color", new ColorRGBA(0.6f, 0.6f, 0.6f, 1.0f)); // Gray Stone
+				color = new ColorRGBA(0.6f, 0.6f, 0.6f, 1.0f); // Gray Stone
 				break;
 			case "Marble":
-		        mat.setColor("Color", new ColorRGBA(0.95f, 0.95f, 0.9f, 1.0f)); // White Marble
+				color = new ColorRGBA(0.95f, 0.95f, 0.9f, 1.0f); // White Marble
 				break;
 			case "Wood":
-		        mat.setColor("Color", new ColorRGBA(0.6f, 0.4f, 0.2f, 1.0f)); // Brown wood
+				color = new ColorRGBA(0.6f, 0.4f, 0.2f, 1.0f); // Brown wood
+				break;
+			default:
+				color = ColorRGBA.White;
 				break;
 		}
-		return mat;
+		return color;
 	}
 	
 	// Public Methods
@@ -248,19 +391,19 @@ public class MapObject {
 	 * Test collision with a given position
 	 */
 	public boolean checkCollision(Vector3f testPosition, float radius) {
-		Vector3f worldPos = objectNode.getWorldTranslation();
+		Vector3f worldPos = worldCenter;
 		
 		// Standard collision for most objects
-		boolean collision = testPosition.x + radius > worldPos.x - size.x / 2 &&
-							testPosition.x - radius < worldPos.x + size.x / 2 &&
-							testPosition.z + radius > worldPos.z - size.z / 2 &&
-							testPosition.z - radius < worldPos.z + size.z / 2;
+		boolean collision = testPosition.x + radius > worldPos.x - halfSize.x &&
+							testPosition.x - radius < worldPos.x + halfSize.x &&
+							testPosition.z + radius > worldPos.z - halfSize.z &&
+							testPosition.z - radius < worldPos.z + halfSize.z;
 		
 		// For platfrom, check height differently
 		if (type == ObjectType.PLATFORM) {
 			// The player can climb onto the platform if he comes from above
-			boolean onTop = testPosition.y >= worldPos.y + size.y / 2 - 0.5f;
-			boolean inRange = testPosition.y <= worldPos.y + size.y / 2 + 2f;
+			boolean onTop = testPosition.y >= worldPos.y + halfSize.y - 0.5f;
+			boolean inRange = testPosition.y <= worldPos.y + halfSize.y + 2f;
 			
 			if (collision && onTop && inRange) {
 				// No collision if we're over the platform
@@ -268,8 +411,8 @@ public class MapObject {
 			}
 		}
 		if (collision) {
-			return testPosition.y + radius > worldPos.y - size.y / 2 &&
-					testPosition.y - radius < worldPos.y + size.y / 2;
+			return testPosition.y + radius > worldPos.y - halfSize.y &&
+					testPosition.y - radius < worldPos.y + halfSize.y;
 		}
 		return false;
 	}
@@ -279,31 +422,58 @@ public class MapObject {
 	 */
 	public float getGroundHeightAt(Vector3f testPosition) {
 		if (type == ObjectType.PLATFORM) {
-			Vector3f worldPos = objectNode.getWorldTranslation();
+			Vector3f worldPos = worldCenter;
 			
 			// Check if we're above the platform
-			boolean overPlatform = testPosition.x >= worldPos.x - size.x / 2 &&
-									testPosition.x <= worldPos.x + size.x / 2 &&
-									testPosition.z >= worldPos.z - size.z / 2 &&
-									testPosition.z <= worldPos.z + size.z / 2;
+			boolean overPlatform = testPosition.x >= worldPos.x - halfSize.x &&
+									testPosition.x <= worldPos.x + halfSize.x &&
+									testPosition.z >= worldPos.z - halfSize.z &&
+									testPosition.z <= worldPos.z + halfSize.z;
 									
 			if (overPlatform) {
-				return worldPos.y + size.y / 2; // Height above the platform
+				return worldPos.y + halfSize.y; // Height above the platform
 			}
 		}
 		
 		return Float.NEGATIVE_INFINITY; // No ground here
 	}
+	/*
+	 * Move the object, return true if its transform actually changed.
+	 * Only the owning Map moves objects so it can keep its bounds in sync.
+	 */
+	boolean setPosition(Vector3f newPosition) {
+		if (newPosition.equals(position)) {
+			return false;
+		}
+		for (Geometry part : instanceParts) {
+			part.setLocalTranslation(part.getLocalTranslation().subtract(position).addLocal(newPosition));
+		}
+		position.set(newPosition);
+		objectNode.setLocalTranslation(position);
+		refreshWorldBounds();
+		return true;
+	}
+	
+	/*
+	 * Recompute the cached world center from the scene graph
+	 */
+	final void refreshWorldBounds() {
+		worldCenter.set(objectNode.getWorldTranslation());
+	}
+	
 	/* 
 	 * Enable/Disable debug mode (show collisions boxes)
 	 */
 	public void setDebugMode(boolean debug) {
 		this.debugMode = debug;
 		
+		if (debug && collisionGeometry == null && collisionHalfExtents != null) {
+			collisionGeometry = new Geometry(collisionName,
+					box(collisionHalfExtents.x, collisionHalfExtents.y, collisionHalfExtents.z));
+		}
+		
 		if (debug && collisionGeometry != null && collisionGeometry.getParent() == null) {
-			Material debugMat = new Material(app.getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-			debugMat.setColor("Color", new ColorRGBA(1, 0, 0, 0.3f));
-			debugMat.getAdditionalRenderState().setBlendMode(com.jme3.material.RenderState.BlendMode.Alpha);
+			Material debugMat = MaterialCache.get(app.getAssetManager()).getTransparent(new ColorRGBA(1, 0, 0, 0.3f));
 			collisionGeometry.setMaterial(debugMat);
 			objectNode.attachChild(collisionGeometry);
 		} else if (!debug && collisionGeometry != null) {
@@ -311,6 +481,87 @@ public class MapObject {
 		}
 	}
 	
+	/*
+	 * Visual part of the object, null once it has been merged into a static batch
+	 */
+	Spatial getVisualRoot() {
+		return visualRoot;
+	}
+	
+	/*
+	 * Remove the visual from the object (its geometry now lives in a batch)
+	 */
+	void releaseVisual() {
+		if (visualRoot != null) {
+			visualRoot.removeFromParent();
+			visualRoot = null;
+		}
+	}
+	
+	/*
+	 * True if the object has levels of detail : trees and pillars that were not
+	 * merged into a static batch
+	 */
+	boolean hasLod() {
+		return lodParts != null && (instanced || visualRoot != null);
+	}
+	
+	/*
+	 * Switch the visual to a level of detail, LodController.HIDDEN hides it.
+	 * Instance parts change of instancing group, so they are removed from
+	 * instancedProps before their mesh changes.
+	 */
+	void setLodLevel(int level, InstancedProps instancedProps) {
+		if (level == lodLevel || lodParts == null) {
+			return;
+		}
+		boolean wasVisible = lodLevel < LodController.HIDDEN;
+		boolean visible = level < LodController.HIDDEN;
+		
+		if (instanced && wasVisible) {
+			for (Geometry part : instanceParts) {
+				instancedProps.removeInstance(part);
+			}
+		}
+		if (visible) {
+			for (int i = 0; i < lodParts.size(); i++) {
+				lodParts.get(i).setMesh(lodMeshes.get(i)[level]);
+			}
+		}
+		if (instanced) {
+			if (visible) {
+				for (Geometry part : instanceParts) {
+					instancedProps.addInstance(part);
+				}
+			}
+		} else if (visualRoot != null) {
+			visualRoot.setCullHint(visible ? Spatial.CullHint.Inherit : Spatial.CullHint.Always);
+		}
+		lodLevel = level;
+	}
+	
+	int getLodLevel() {
+		return lodLevel;
+	}
+	
+	/*
+	 * Meshes the object holds in MeshCache, every level of detail included
+	 */
+	List<Mesh> getSharedMeshes() {
+		return sharedMeshes;
+	}
+	
+	/*
+	 * Detached geometries to draw through InstancedProps, empty if not instanced
+	 */
+	List<Geometry> getInstanceParts() {
+		return instanceParts;
+	}
+	
+	public boolean isInstanced() {
+		return instanced;
+	}
+	
 	public Node getNode() {
 		return objectNode;
 	}
@@ -0,0 +1,96 @@
+package com.mygame.world;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.math.ColorRGBA;
+
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+/*
+ * Registry of shared materials, one registry per AssetManager.
+ * Objects asking for the same material type and color get the same instance,
+ * so the renderer does not switch state or upload parameters for each of them.
+ * Shared materials must not be modified by their users.
+ */
+public class MaterialCache {
+
+	private static final String UNSHADED = "Common/MatDefs/Misc/Unshaded.j3md";
+
+	private static final WeakHashMap<AssetManager, MaterialCache> caches = new WeakHashMap<>();
+
+	private final AssetManager assetManager;
+	private final HashMap<String, Material> materials = new HashMap<>();
+
+	private MaterialCache(AssetManager assetManager) {
+		this.assetManager = assetManager;
+	}
+
+	/*
+	 * Return the registry of an AssetManager, created on first use
+	 */
+	public static MaterialCache get(AssetManager assetManager) {
+		synchronized (caches) {
+			return caches.computeIfAbsent(assetManager, MaterialCache::new);
+		}
+	}
+
+	/*
+	 * Opaque unshaded material of a given color
+	 */
+	public synchronized Material getUnshaded(ColorRGBA color) {
+		String key = "Unshaded:" + color;
+		Material mat = materials.get(key);
+		if (mat == null) {
+			mat = new Material(assetManager, UNSHADED);
+			mat.setColor("Color", color.clone());
+			materials.put(key, mat);
+		}
+		return mat;
+	}
+
+	/*
+	 * Unshaded material of a given color for hardware instanced geometries
+	 */
+	public synchronized Material getInstanced(ColorRGBA color) {
+		String key = "Instanced:" + color;
+		Material mat = materials.get(key);
+		if (mat == null) {
+			mat = new Material(assetManager, UNSHADED);
+			mat.setColor("Color", color.clone());
+			mat.setBoolean("UseInstancing", true);
+			materials.put(key, mat);
+		}
+		return mat;
+	}
+	
+	/*
+	 * Alpha blended unshaded material (debug overlays)
+	 */
+	public synchronized Material getTransparent(ColorRGBA color) {
+		String key = "Transparent:" + color;
+		Material mat = materials.get(key);
+		if (mat == null) {
+			mat = new Material(assetManager, UNSHADED);
+			mat.setColor("Color", color.clone());
+			mat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.Alpha);
+			materials.put(key, mat);
+		}
+		return mat;
+	}
+
+	/*
+	 * Number of materials alive in this registry
+	 */
+	public synchronized int getMaterialCount() {
+		return materials.size();
+	}
+
+	/*
+	 * Drop every cached material
+	 */
+	public synchronized void clear() {
+		materials.clear();
+	}
+}
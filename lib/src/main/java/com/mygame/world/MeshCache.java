@@ -0,0 +1,93 @@
+package com.mygame.world;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.shape.Box;
+import com.jme3.scene.shape.Cylinder;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/*
+ * Interned meshes keyed by shape type and dimensions.
+ * Every geometry asking for the same shape gets the same Mesh instance,
+ * shared meshes must never be modified by their users.
+ * Entries are reference counted : every mesh handed out must be given back
+ * with release, the entry is dropped when its last user releases it, so
+ * chunks of random shapes do not pile up in the cache.
+ */
+public class MeshCache {
+
+	private static final class Entry {
+		final String key;
+		final Mesh mesh;
+		int references;
+
+		Entry(String key, Mesh mesh) {
+			this.key = key;
+			this.mesh = mesh;
+		}
+	}
+
+	// Guarded by the class lock, loader threads build chunks concurrently
+	private static final HashMap<String, Entry> entries = new HashMap<>();
+	private static final IdentityHashMap<Mesh, Entry> byMesh = new IdentityHashMap<>();
+
+	private MeshCache() {
+	}
+
+	/*
+	 * Box centered on the origin with the given half extents
+	 */
+	public static Mesh box(float halfX, float halfY, float halfZ) {
+		String key = "Box:" + halfX + ":" + halfY + ":" + halfZ;
+		synchronized (MeshCache.class) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = add(key, new Box(halfX, halfY, halfZ));
+			}
+			entry.references++;
+			return entry.mesh;
+		}
+	}
+
+	/*
+	 * Cylinder along the Z axis, same parameters as com.jme3.scene.shape.Cylinder
+	 */
+	public static Mesh cylinder(int axisSamples, int radialSamples, float radius, float height, boolean closed) {
+		String key = "Cylinder:" + axisSamples + ":" + radialSamples + ":" + radius + ":" + height + ":" + closed;
+		synchronized (MeshCache.class) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = add(key, new Cylinder(axisSamples, radialSamples, radius, height, closed));
+			}
+			entry.references++;
+			return entry.mesh;
+		}
+	}
+
+	private static Entry add(String key, Mesh mesh) {
+		Entry entry = new Entry(key, mesh);
+		entries.put(key, entry);
+		byMesh.put(mesh, entry);
+		return entry;
+	}
+
+	/*
+	 * Give back a mesh returned by box or cylinder. Geometries still using it
+	 * keep it alive, the next request of the same shape just builds a new one.
+	 */
+	public static synchronized void release(Mesh mesh) {
+		Entry entry = byMesh.get(mesh);
+		if (entry != null && --entry.references == 0) {
+			entries.remove(entry.key);
+			byMesh.remove(mesh);
+		}
+	}
+
+	/*
+	 * Number of distinct meshes alive in the cache
+	 */
+	public static synchronized int getMeshCount() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,166 @@
+package com.mygame.world;
+
+import com.jme3.math.Vector3f;
+
+import java.util.Arrays;
+
+/*
+ * World space AABBs of the map objects stored as parallel float arrays.
+ * Index i matches the object at index i in the map object list, so the
+ * collision loops only read primitive arrays and never touch the scene graph.
+ */
+public class ObjectBounds {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	float[] minX = new float[INITIAL_CAPACITY];
+	float[] minY = new float[INITIAL_CAPACITY];
+	float[] minZ = new float[INITIAL_CAPACITY];
+	float[] maxX = new float[INITIAL_CAPACITY];
+	float[] maxY = new float[INITIAL_CAPACITY];
+	float[] maxZ = new float[INITIAL_CAPACITY];
+	boolean[] platform = new boolean[INITIAL_CAPACITY];
+	int count = 0;
+
+	/*
+	 * Append the bounds of an object, return its index
+	 */
+	public int add(MapObject object) {
+		if (count == minX.length) {
+			grow(count * 2);
+		}
+		set(count, object);
+		return count++;
+	}
+
+	/*
+	 * Overwrite the bounds at an index with the cached bounds of an object
+	 */
+	public void set(int index, MapObject object) {
+		Vector3f center = object.worldCenter;
+		Vector3f half = object.halfSize;
+		minX[index] = center.x - half.x;
+		minY[index] = center.y - half.y;
+		minZ[index] = center.z - half.z;
+		maxX[index] = center.x + half.x;
+		maxY[index] = center.y + half.y;
+		maxZ[index] = center.z + half.z;
+		platform[index] = object.getType() == MapObject.ObjectType.PLATFORM;
+	}
+
+	/*
+	 * Move the last entry into the given index (mirrors a swap remove in the object list)
+	 */
+	public void removeSwap(int index) {
+		int last = count - 1;
+		minX[index] = minX[last];
+		minY[index] = minY[last];
+		minZ[index] = minZ[last];
+		maxX[index] = maxX[last];
+		maxY[index] = maxY[last];
+		maxZ[index] = maxZ[last];
+		platform[index] = platform[last];
+		count--;
+	}
+
+	/*
+	 * Check a sphere against the objects indexed in a grid, same rules as
+	 * MapObject.checkCollision (no allocation, only the arrays are read)
+	 */
+	public boolean collides(SpatialGrid grid, float x, float y, float z, float radius) {
+		int startX = grid.cellX(x - radius), endX = grid.cellX(x + radius);
+		int startZ = grid.cellZ(z - radius), endZ = grid.cellZ(z + radius);
+
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				int cell = grid.cellIndex(cx, cz);
+				int[] ids = grid.getCellObjects(cell);
+				int cellCount = grid.getCellCount(cell);
+				for (int i = 0; i < cellCount; i++) {
+					int id = ids[i];
+					if (x + radius <= minX[id] || x - radius >= maxX[id] ||
+							z + radius <= minZ[id] || z - radius >= maxZ[id]) {
+						continue;
+					}
+					// The player can stand on a platform if he comes from above
+					if (platform[id] && y >= maxY[id] - 0.5f && y <= maxY[id] + 2f) {
+						continue;
+					}
+					if (y + radius > minY[id] && y - radius < maxY[id]) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Highest platform top under a point among the objects of its grid cell,
+	 * 0 (the ground) if none
+	 */
+	public float platformHeightAt(SpatialGrid grid, float x, float z) {
+		float maxHeight = 0f; // base ground height
+		int cell = grid.cellIndex(grid.cellX(x), grid.cellZ(z));
+		int[] ids = grid.getCellObjects(cell);
+		int cellCount = grid.getCellCount(cell);
+		for (int i = 0; i < cellCount; i++) {
+			int id = ids[i];
+			if (platform[id] && x >= minX[id] && x <= maxX[id] &&
+					z >= minZ[id] && z <= maxZ[id]) {
+				if (maxY[id] > maxHeight) {
+					maxHeight = maxY[id];
+				}
+			}
+		}
+		return maxHeight;
+	}
+
+	/*
+	 * Fraction of the segment from (ox, oy, oz) to (ox + dx, oy + dy, oz + dz)
+	 * travelled before entering an object indexed in the grid, 1 if it enters none.
+	 * Meant for short segments (a projectile step) : every object of the cells
+	 * under the segment is tested.
+	 */
+	public float sweep(SpatialGrid grid, float ox, float oy, float oz, float dx, float dy, float dz) {
+		int startX = grid.cellX(Math.min(ox, ox + dx)), endX = grid.cellX(Math.max(ox, ox + dx));
+		int startZ = grid.cellZ(Math.min(oz, oz + dz)), endZ = grid.cellZ(Math.max(oz, oz + dz));
+		float invX = 1f / dx, invY = 1f / dy, invZ = 1f / dz;
+		float fraction = 1f;
+
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				int cell = grid.cellIndex(cx, cz);
+				int[] ids = grid.getCellObjects(cell);
+				int cellCount = grid.getCellCount(cell);
+				for (int i = 0; i < cellCount; i++) {
+					int id = ids[i];
+					float t = ObjectBvh.slab(minX[id], minY[id], minZ[id], maxX[id], maxY[id], maxZ[id],
+							ox, oy, oz, invX, invY, invZ, fraction);
+					if (t >= 0f) {
+						fraction = t;
+					}
+				}
+			}
+		}
+		return fraction;
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	private void grow(int capacity) {
+		minX = Arrays.copyOf(minX, capacity);
+		minY = Arrays.copyOf(minY, capacity);
+		minZ = Arrays.copyOf(minZ, capacity);
+		maxX = Arrays.copyOf(maxX, capacity);
+		maxY = Arrays.copyOf(maxY, capacity);
+		maxZ = Arrays.copyOf(maxZ, capacity);
+		platform = Arrays.copyOf(platform, capacity);
+	}
+}
@@ -0,0 +1,243 @@
+package com.mygame.world;
+
+import java.util.Arrays;
+
+/*
+ * Bounding volume hierarchy over the cached AABBs of an ObjectBounds, used to
+ * cast rays (shots) without testing every object nor walking the scene graph.
+ * Nodes are stored depth first in flat arrays : the left child of a node
+ * follows it, the right child index is stored. A leaf owns a range of the
+ * object index array.
+ *
+ * The hierarchy is a snapshot of the bounds : it must be rebuilt when objects
+ * are added, moved or removed. Casts only read the arrays, so several
+ * threads can cast at the same time with their own RayQuery.
+ */
+public class ObjectBvh {
+
+	private static final int LEAF_SIZE = 4;
+
+	private final ObjectBounds bounds;
+	private final MapObject[] objects;
+
+	// Node boxes, 6 floats per node (minX, minY, minZ, maxX, maxY, maxZ)
+	private final float[] boxes;
+	// Inner node : index of the right child, leaf : first index in items
+	private final int[] first;
+	// Object count of a leaf, 0 for an inner node
+	private final int[] count;
+	private final int[] items;
+	private int nodeCount = 0;
+
+	// Centroids along the split axis while building
+	private final float[] keys;
+
+	/*
+	 * Build over the bounds, objects[id] is the object of bounds id
+	 */
+	public ObjectBvh(ObjectBounds bounds, MapObject[] objects) {
+		this.bounds = bounds;
+		this.objects = objects;
+		int size = bounds.size();
+		int maxNodes = Math.max(1, 2 * size); // at most one leaf per object
+		boxes = new float[maxNodes * 6];
+		first = new int[maxNodes];
+		count = new int[maxNodes];
+		items = new int[size];
+		keys = new float[size];
+		for (int i = 0; i < size; i++) {
+			items[i] = i;
+		}
+		if (size > 0) {
+			build(0, size);
+		}
+	}
+
+	/*
+	 * Create the node of items[start, end) and its children, return its index
+	 */
+	private int build(int start, int end) {
+		int node = nodeCount++;
+		float minCX = Float.MAX_VALUE, minCY = Float.MAX_VALUE, minCZ = Float.MAX_VALUE;
+		float maxCX = -Float.MAX_VALUE, maxCY = -Float.MAX_VALUE, maxCZ = -Float.MAX_VALUE;
+		int b = node * 6;
+		boxes[b] = boxes[b + 1] = boxes[b + 2] = Float.MAX_VALUE;
+		boxes[b + 3] = boxes[b + 4] = boxes[b + 5] = -Float.MAX_VALUE;
+		for (int i = start; i < end; i++) {
+			int id = items[i];
+			boxes[b] = Math.min(boxes[b], bounds.minX[id]);
+			boxes[b + 1] = Math.min(boxes[b + 1], bounds.minY[id]);
+			boxes[b + 2] = Math.min(boxes[b + 2], bounds.minZ[id]);
+			boxes[b + 3] = Math.max(boxes[b + 3], bounds.maxX[id]);
+			boxes[b + 4] = Math.max(boxes[b + 4], bounds.maxY[id]);
+			boxes[b + 5] = Math.max(boxes[b + 5], bounds.maxZ[id]);
+			float cx = bounds.minX[id] + bounds.maxX[id];
+			float cy = bounds.minY[id] + bounds.maxY[id];
+			float cz = bounds.minZ[id] + bounds.maxZ[id];
+			minCX = Math.min(minCX, cx); maxCX = Math.max(maxCX, cx);
+			minCY = Math.min(minCY, cy); maxCY = Math.max(maxCY, cy);
+			minCZ = Math.min(minCZ, cz); maxCZ = Math.max(maxCZ, cz);
+		}
+
+		int size = end - start;
+		float extentX = maxCX - minCX, extentY = maxCY - minCY, extentZ = maxCZ - minCZ;
+		if (size <= LEAF_SIZE || Math.max(extentX, Math.max(extentY, extentZ)) <= 0f) {
+			first[node] = start;
+			count[node] = size;
+			return node;
+		}
+
+		// Median split of the centroids along the widest axis
+		int axis = extentX >= extentY && extentX >= extentZ ? 0 : (extentY >= extentZ ? 1 : 2);
+		for (int i = start; i < end; i++) {
+			int id = items[i];
+			keys[i] = axis == 0 ? bounds.minX[id] + bounds.maxX[id]
+					: axis == 1 ? bounds.minY[id] + bounds.maxY[id]
+					: bounds.minZ[id] + bounds.maxZ[id];
+		}
+		int middle = (start + end) >>> 1;
+		select(start, end - 1, middle);
+
+		count[node] = 0;
+		build(start, middle);
+		first[node] = build(middle, end);
+		return node;
+	}
+
+	/*
+	 * Quickselect : items[k] gets the k-th key of [left, right], smaller keys before
+	 */
+	private void select(int left, int right, int k) {
+		while (left < right) {
+			float pivot = keys[(left + right) >>> 1];
+			int i = left, j = right;
+			while (i <= j) {
+				while (keys[i] < pivot) i++;
+				while (keys[j] > pivot) j--;
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void swap(int i, int j) {
+		int item = items[i];
+		items[i] = items[j];
+		items[j] = item;
+		float key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+	}
+
+	/*
+	 * Nearest object hit by a ray closer than query.distance, the query is
+	 * updated with the hit. The direction doesn't have to be normalized, the
+	 * distances are then in direction lengths.
+	 */
+	public boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz, RayQuery query) {
+		if (nodeCount == 0) {
+			return false;
+		}
+		float invX = 1f / dx, invY = 1f / dy, invZ = 1f / dz;
+		if (entry(0, ox, oy, oz, invX, invY, invZ, query.distance) < 0f) {
+			return false;
+		}
+		int[] stack = query.stack;
+		int top = 0;
+		stack[top++] = 0;
+		boolean hit = false;
+
+		// Nodes on the stack were entered by the ray, the nearer child is visited first
+		while (top > 0) {
+			int node = stack[--top];
+			if (count[node] > 0) {
+				for (int i = first[node], end = first[node] + count[node]; i < end; i++) {
+					int id = items[i];
+					float t = slab(bounds.minX[id], bounds.minY[id], bounds.minZ[id],
+							bounds.maxX[id], bounds.maxY[id], bounds.maxZ[id],
+							ox, oy, oz, invX, invY, invZ, query.distance);
+					if (t >= 0f) {
+						query.distance = t;
+						query.object = objects[id];
+						hit = true;
+					}
+				}
+				continue;
+			}
+
+			int left = node + 1, right = first[node];
+			float leftEntry = entry(left, ox, oy, oz, invX, invY, invZ, query.distance);
+			float rightEntry = entry(right, ox, oy, oz, invX, invY, invZ, query.distance);
+			if (top + 2 > stack.length) {
+				stack = query.stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			if (leftEntry >= 0f && rightEntry >= 0f) {
+				boolean leftFirst = leftEntry <= rightEntry;
+				stack[top++] = leftFirst ? right : left;
+				stack[top++] = leftFirst ? left : right;
+			} else if (leftEntry >= 0f) {
+				stack[top++] = left;
+			} else if (rightEntry >= 0f) {
+				stack[top++] = right;
+			}
+		}
+		return hit;
+	}
+
+	private float entry(int node, float ox, float oy, float oz, float invX, float invY, float invZ, float maxDistance) {
+		int b = node * 6;
+		return slab(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5],
+				ox, oy, oz, invX, invY, invZ, maxDistance);
+	}
+
+	/*
+	 * Entry distance of a ray in a box, -1 if it misses or enters beyond maxDistance.
+	 * A ray starting inside the box enters at 0. A zero direction component
+	 * (infinite inverse) keeps the ray inside the slabs of that axis or never
+	 * in them : tested on the origin, (min - o) * inf is NaN on a face plane.
+	 */
+	public static float slab(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+			float ox, float oy, float oz, float invX, float invY, float invZ, float maxDistance) {
+		float near = 0f, far = Float.POSITIVE_INFINITY;
+		if (Float.isInfinite(invX)) {
+			if (ox < minX || ox > maxX) {
+				return -1f;
+			}
+		} else {
+			float t1 = (minX - ox) * invX, t2 = (maxX - ox) * invX;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		if (Float.isInfinite(invY)) {
+			if (oy < minY || oy > maxY) {
+				return -1f;
+			}
+		} else {
+			float t1 = (minY - oy) * invY, t2 = (maxY - oy) * invY;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		if (Float.isInfinite(invZ)) {
+			if (oz < minZ || oz > maxZ) {
+				return -1f;
+			}
+		} else {
+			float t1 = (minZ - oz) * invZ, t2 = (maxZ - oz) * invZ;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		return near <= far && near < maxDistance ? near : -1f;
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+}
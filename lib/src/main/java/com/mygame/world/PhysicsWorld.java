@@ -0,0 +1,241 @@
+package com.mygame.world;
+
+import com.jme3.app.state.AppStateManager;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.PhysicsRayTestResult;
+import com.jme3.bullet.collision.PhysicsSweepTestResult;
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.CapsuleCollisionShape;
+import com.jme3.bullet.collision.shapes.PlaneCollisionShape;
+import com.jme3.bullet.control.CharacterControl;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Plane;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*
+ * Bullet backend for the collisions of a map : a static box body per object
+ * on the cached bounds, a ground plane and the character of the player.
+ * The BulletAppState runs in PARALLEL mode, the physics step of a frame runs
+ * on its own thread while the scene is rendered, so the space must only be
+ * changed or queried from the app state updates of the render thread.
+ *
+ * The queries follow the rules of the grid collider of the map, which
+ * stays available (Map.checkCollision) to compare both backends.
+ */
+public class PhysicsWorld implements Collider {
+
+	private static final float CHARACTER_STEP_HEIGHT = 0.3f;
+	// Ground rays start above the highest object
+	private static final float RAY_TOP = 1000f;
+
+	private final AppStateManager stateManager;
+	private final BulletAppState bulletAppState;
+	private final PhysicsSpace space;
+	private final IdentityHashMap<MapObject, RigidBodyControl> bodies = new IdentityHashMap<>();
+	private final RigidBodyControl ground;
+	private float mapSize = Float.POSITIVE_INFINITY;
+	private boolean shutdown = false;
+
+	// Scratch objects of the queries (render thread only)
+	private final List<PhysicsRayTestResult> rayResults = new ArrayList<>();
+	private final Vector3f rayFrom = new Vector3f();
+	private final Vector3f rayTo = new Vector3f();
+	private final List<PhysicsSweepTestResult> sweepResults = new ArrayList<>();
+	private final Transform sweepFrom = new Transform();
+	private final Transform sweepTo = new Transform();
+	private final Vector3f boxCenter = new Vector3f();
+	private BoxCollisionShape probe;
+
+	/*
+	 * Attach a Bullet app state stepping in parallel with the rendering
+	 */
+	public PhysicsWorld(AppStateManager stateManager) {
+		this.stateManager = stateManager;
+		this.bulletAppState = new BulletAppState();
+		bulletAppState.setThreadingType(BulletAppState.ThreadingType.PARALLEL);
+		stateManager.attach(bulletAppState);
+		this.space = bulletAppState.getPhysicsSpace();
+
+		ground = new RigidBodyControl(new PlaneCollisionShape(new Plane(Vector3f.UNIT_Y, 0f)), 0f);
+		space.add(ground);
+	}
+
+	/*
+	 * Register the objects of a map (with their cached bounds) and its limits
+	 */
+	void addMap(List<MapObject> objects, ObjectBounds bounds, float mapSize) {
+		this.mapSize = mapSize;
+		for (int id = 0; id < objects.size(); id++) {
+			addObject(objects.get(id), bounds, id);
+		}
+	}
+
+	void addObject(MapObject object, ObjectBounds bounds, int id) {
+		Vector3f halfExtents = new Vector3f(
+				(bounds.maxX[id] - bounds.minX[id]) / 2,
+				(bounds.maxY[id] - bounds.minY[id]) / 2,
+				(bounds.maxZ[id] - bounds.minZ[id]) / 2);
+		RigidBodyControl body = new RigidBodyControl(new BoxCollisionShape(halfExtents), 0f);
+		// Tells the queries the map objects from the ground and the characters
+		body.setUserObject(object);
+		body.setPhysicsLocation(center(bounds, id, new Vector3f()));
+		space.add(body);
+		bodies.put(object, body);
+	}
+
+	/*
+	 * The bounds of the object changed (same size)
+	 */
+	void moveObject(MapObject object, ObjectBounds bounds, int id) {
+		RigidBodyControl body = bodies.get(object);
+		if (body != null) {
+			body.setPhysicsLocation(center(bounds, id, new Vector3f()));
+		}
+	}
+
+	void removeObject(MapObject object) {
+		RigidBodyControl body = bodies.remove(object);
+		if (body != null) {
+			space.remove(body);
+		}
+	}
+
+	private static Vector3f center(ObjectBounds bounds, int id, Vector3f store) {
+		return store.set(
+				(bounds.minX[id] + bounds.maxX[id]) / 2,
+				(bounds.minY[id] + bounds.maxY[id]) / 2,
+				(bounds.minZ[id] + bounds.maxZ[id]) / 2);
+	}
+
+	/*
+	 * Capsule character standing at a position (center of the player)
+	 */
+	public CharacterControl addCharacter(Vector3f position, float width, float height) {
+		float radius = width / 2;
+		CapsuleCollisionShape shape = new CapsuleCollisionShape(radius, height - 2 * radius);
+		CharacterControl character = new CharacterControl(shape, CHARACTER_STEP_HEIGHT);
+		character.setPhysicsLocation(position);
+		space.add(character);
+		return character;
+	}
+
+	public void removeCharacter(CharacterControl character) {
+		if (!shutdown) {
+			space.remove(character);
+		}
+	}
+
+	@Override
+	public boolean checkCollision(float x, float y, float z, float radius) {
+		// Check map limits like the grid collider
+		if (x - radius < - mapSize / 2 || x + radius > mapSize / 2 ||
+				z - radius < - mapSize / 2 || z + radius > mapSize / 2) {
+			return true;
+		}
+
+		/*
+		 * Broad phase : sweep a cube around the sphere down from above every
+		 * object to the position, each body it touches on the way is reported.
+		 * The grid collider tests the square footprint of the sphere, a cube
+		 * reaches the same boxes. A sweep starting inside an object misses it.
+		 */
+		if (probe == null || probe.getHalfExtents().x != radius) {
+			probe = new BoxCollisionShape(new Vector3f(radius, radius, radius));
+		}
+		sweepFrom.setTranslation(x, RAY_TOP, z);
+		sweepTo.setTranslation(x, y, z);
+		sweepResults.clear();
+		space.sweepTest(probe, sweepFrom, sweepTo, sweepResults, 0f);
+
+		// Narrow phase : same rules as the grid collider (ObjectBounds.collides)
+		for (int i = 0; i < sweepResults.size(); i++) {
+			PhysicsCollisionObject object = sweepResults.get(i).getCollisionObject();
+			if (!(object.getUserObject() instanceof MapObject)) {
+				continue; // Standing on the ground plane, players are not obstacles
+			}
+			PhysicsRigidBody body = (PhysicsRigidBody) object;
+			Vector3f halfExtents = ((BoxCollisionShape) body.getCollisionShape()).getHalfExtents();
+			body.getPhysicsLocation(boxCenter);
+			if (x + radius <= boxCenter.x - halfExtents.x || x - radius >= boxCenter.x + halfExtents.x ||
+					z + radius <= boxCenter.z - halfExtents.z || z - radius >= boxCenter.z + halfExtents.z) {
+				continue;
+			}
+			// The player can stand on a platform if he comes from above
+			float top = boxCenter.y + halfExtents.y;
+			if (isPlatform(object) && y >= top - 0.5f && y <= top + 2f) {
+				continue;
+			}
+			if (y + radius > boxCenter.y - halfExtents.y && y - radius < top) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Highest platform top under a point, like the grid collider : other
+	 * objects are not ground. The ray finds the platforms, their height comes
+	 * from their box so both backends give the same value.
+	 */
+	@Override
+	public float getGroundHeightAt(float x, float z) {
+		rayResults.clear();
+		space.rayTest(rayFrom.set(x, RAY_TOP, z), rayTo.set(x, -1f, z), rayResults);
+
+		float height = 0f;
+		for (int i = 0; i < rayResults.size(); i++) {
+			PhysicsCollisionObject object = rayResults.get(i).getCollisionObject();
+			if (!isPlatform(object)) {
+				continue;
+			}
+			Vector3f halfExtents = ((BoxCollisionShape) object.getCollisionShape()).getHalfExtents();
+			((PhysicsRigidBody) object).getPhysicsLocation(boxCenter);
+			height = Math.max(height, boxCenter.y + halfExtents.y);
+		}
+		return height;
+	}
+
+	private static boolean isPlatform(PhysicsCollisionObject object) {
+		return object.getUserObject() instanceof MapObject
+				&& ((MapObject) object.getUserObject()).getType() == MapObject.ObjectType.PLATFORM;
+	}
+
+	/*
+	 * Duration of a physics step : character walk directions are given per step
+	 */
+	public float getStepTime() {
+		return space.getAccuracy();
+	}
+
+	public void setDebugEnabled(boolean debug) {
+		bulletAppState.setDebugEnabled(debug);
+	}
+
+	public int getBodyCount() {
+		return bodies.size();
+	}
+
+	/*
+	 * Remove every body and detach the Bullet app state, the world can't be used anymore
+	 */
+	public void shutdown() {
+		if (shutdown) {
+			return;
+		}
+		for (RigidBodyControl body : bodies.values()) {
+			space.remove(body);
+		}
+		bodies.clear();
+		space.remove(ground);
+		stateManager.detach(bulletAppState);
+		shutdown = true;
+	}
+}
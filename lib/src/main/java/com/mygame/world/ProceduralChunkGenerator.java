@@ -0,0 +1,69 @@
+package com.mygame.world;
+
+import com.jme3.math.Vector3f;
+
+import java.util.Random;
+
+/*
+ * Random props for streamed worlds, with the shapes of Map.loadGeneratedMap
+ * and the object density of the hand made map. Every chunk has its own seed
+ * so it is identical each time it is built. A clearing is kept around the
+ * spawn point at the center of the world.
+ */
+public class ProceduralChunkGenerator implements ChunkGenerator {
+
+	// Ground area per object of the hand made map (about 8.5 x 8.5 units)
+	private static final float AREA_PER_OBJECT = 72f;
+	private static final float SPAWN_CLEARING = 8f;
+
+	private static final MapObject.ObjectType[] TYPES = {
+			MapObject.ObjectType.HOUSE, MapObject.ObjectType.TREE, MapObject.ObjectType.TREE,
+			MapObject.ObjectType.TREE, MapObject.ObjectType.PILLAR, MapObject.ObjectType.FENCE,
+			MapObject.ObjectType.PLATFORM };
+
+	private final long seed;
+
+	public ProceduralChunkGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public void generate(int chunkX, int chunkZ, float minX, float minZ, float size, Sink sink) {
+		Random random = new Random(seed ^ (chunkX * 0x9E3779B97F4A7C15L) ^ (chunkZ * 0xC2B2AE3D27D4EB4FL));
+		int count = Math.round(size * size / AREA_PER_OBJECT);
+
+		for (int i = 0; i < count; i++) {
+			MapObject.ObjectType type = TYPES[random.nextInt(TYPES.length)];
+			Vector3f objectSize;
+			switch (type) {
+				case HOUSE:
+					objectSize = new Vector3f(4 + random.nextFloat() * 4, 4 + random.nextFloat() * 2, 5 + random.nextFloat() * 7);
+					break;
+				case TREE:
+					float width = 0.8f + random.nextFloat() * 0.6f;
+					objectSize = new Vector3f(width, 6f + random.nextFloat() * 4f, width);
+					break;
+				case FENCE:
+					objectSize = random.nextBoolean() ? new Vector3f(4, 2, 0.2f) : new Vector3f(0.2f, 2, 4);
+					break;
+				case PLATFORM:
+					objectSize = new Vector3f(4 + random.nextFloat() * 6, 1, 4 + random.nextFloat() * 6);
+					break;
+				default:
+					objectSize = new Vector3f(1, 4, 1);
+					break;
+			}
+
+			// Whole footprint inside the chunk
+			float halfX = objectSize.x / 2, halfZ = objectSize.z / 2;
+			float x = minX + halfX + random.nextFloat() * (size - 2 * halfX);
+			float z = minZ + halfZ + random.nextFloat() * (size - 2 * halfZ);
+			if (Math.abs(x) < SPAWN_CLEARING + halfX && Math.abs(z) < SPAWN_CLEARING + halfZ) {
+				continue;
+			}
+
+			float y = type == MapObject.ObjectType.PLATFORM ? 3.5f : objectSize.y / 2;
+			sink.add(type, new Vector3f(x, y, z), objectSize);
+		}
+	}
+}
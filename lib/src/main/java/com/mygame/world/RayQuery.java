@@ -0,0 +1,21 @@
+package com.mygame.world;
+
+/*
+ * Result of a ray cast against the map, reused between casts so they don't
+ * allocate. One query per thread : it also holds the traversal stack.
+ */
+public class RayQuery {
+
+	// Distance along the ray of the nearest hit
+	public float distance;
+	// Object hit, null for the ground or no hit
+	public MapObject object;
+
+	// Nodes left to visit by ObjectBvh.raycast
+	int[] stack = new int[64];
+
+	void reset(float maxDistance) {
+		distance = maxDistance;
+		object = null;
+	}
+}
@@ -0,0 +1,147 @@
+package com.mygame.world;
+
+import java.util.Arrays;
+
+/*
+ * Uniform grid over the XZ plane used to find map objects near a point.
+ * Each cell keeps the ids (indices in the map object list) of the objects
+ * whose footprint overlaps it. Coordinates outside the grid are clamped to
+ * the border cells, so queries stay exact for any position.
+ */
+public class SpatialGrid {
+
+	// Upper bound of cells per axis, the cell size grows with the area instead
+	private static final int MAX_CELLS_PER_AXIS = 256;
+	private static final int INITIAL_CELL_CAPACITY = 4;
+
+	private final float originX;
+	private final float originZ;
+	private final float cellSize;
+	private final float invCellSize;
+	private final int cellsX;
+	private final int cellsZ;
+
+	private final int[][] cellObjects;
+	private final int[] cellCounts;
+
+	public SpatialGrid(float originX, float originZ, float width, float depth, float preferredCellSize) {
+		float largestSide = Math.max(width, depth);
+		this.cellSize = Math.max(preferredCellSize, largestSide / MAX_CELLS_PER_AXIS);
+		this.invCellSize = 1f / cellSize;
+		this.originX = originX;
+		this.originZ = originZ;
+		this.cellsX = Math.max(1, (int) Math.ceil(width / cellSize));
+		this.cellsZ = Math.max(1, (int) Math.ceil(depth / cellSize));
+		this.cellObjects = new int[cellsX * cellsZ][];
+		this.cellCounts = new int[cellsX * cellsZ];
+	}
+
+	/*
+	 * Register an object footprint (world space AABB on the XZ plane)
+	 */
+	public void insert(int id, float minX, float minZ, float maxX, float maxZ) {
+		int startX = cellX(minX), endX = cellX(maxX);
+		int startZ = cellZ(minZ), endZ = cellZ(maxZ);
+
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				int cell = cz * cellsX + cx;
+				int[] ids = cellObjects[cell];
+				if (ids == null) {
+					ids = new int[INITIAL_CELL_CAPACITY];
+					cellObjects[cell] = ids;
+				} else if (cellCounts[cell] == ids.length) {
+					ids = Arrays.copyOf(ids, ids.length * 2);
+					cellObjects[cell] = ids;
+				}
+				ids[cellCounts[cell]++] = id;
+			}
+		}
+	}
+
+	/*
+	 * Unregister an object, the footprint must be the one used to insert it
+	 */
+	public void remove(int id, float minX, float minZ, float maxX, float maxZ) {
+		int startX = cellX(minX), endX = cellX(maxX);
+		int startZ = cellZ(minZ), endZ = cellZ(maxZ);
+
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				int cell = cz * cellsX + cx;
+				int[] ids = cellObjects[cell];
+				int count = cellCounts[cell];
+				for (int i = 0; i < count; i++) {
+					if (ids[i] == id) {
+						ids[i] = ids[count - 1];
+						cellCounts[cell] = count - 1;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Replace the ids of a cell, for grids loaded from a prebuilt index (see MapFile)
+	 */
+	public void setCell(int cell, int[] ids) {
+		cellObjects[cell] = ids.length > 0 ? ids : null;
+		cellCounts[cell] = ids.length;
+	}
+
+	/*
+	 * Remove all objects from the grid
+	 */
+	public void clear() {
+		Arrays.fill(cellObjects, null);
+		Arrays.fill(cellCounts, 0);
+	}
+
+	// Cell lookups, coordinates are clamped to the grid
+
+	public int cellX(float x) {
+		int cx = (int) Math.floor((x - originX) * invCellSize);
+		return cx < 0 ? 0 : (cx >= cellsX ? cellsX - 1 : cx);
+	}
+
+	public int cellZ(float z) {
+		int cz = (int) Math.floor((z - originZ) * invCellSize);
+		return cz < 0 ? 0 : (cz >= cellsZ ? cellsZ - 1 : cz);
+	}
+
+	public int cellIndex(int cx, int cz) {
+		return cz * cellsX + cx;
+	}
+
+	/*
+	 * Ids stored in a cell, only the first getCellCount(cell) entries are valid
+	 */
+	public int[] getCellObjects(int cell) {
+		return cellObjects[cell];
+	}
+
+	public int getCellCount(int cell) {
+		return cellCounts[cell];
+	}
+
+	public float getOriginX() {
+		return originX;
+	}
+
+	public float getOriginZ() {
+		return originZ;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	public int getCellsX() {
+		return cellsX;
+	}
+
+	public int getCellsZ() {
+		return cellsZ;
+	}
+}
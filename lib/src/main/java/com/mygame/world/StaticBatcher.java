@@ -0,0 +1,191 @@
+package com.mygame.world;
+
+import com.jme3.material.Material;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+
+import jme3tools.optimize.GeometryBatchFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*
+ * Merge the visuals of static map objects into a few large meshes.
+ * Geometries sharing a material are grouped per square cell of the map and
+ * each group becomes a single geometry. Collision data is not touched, the
+ * objects keep their bounds and their (now empty) nodes for debug display.
+ */
+public class StaticBatcher {
+
+	// Name of the node holding the batches, child of the batched node
+	public static final String BATCH_NODE_NAME = "Static Batches";
+
+	private final float cellSize;
+
+	public StaticBatcher(float cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	/*
+	 * Batch the visuals of the given objects under a new node of the map node
+	 */
+	public Report batch(Node mapNode, List<MapObject> objects) {
+		int geometriesBefore = countGeometries(mapNode);
+		int drawCallsBefore = countDrawCalls(mapNode);
+
+		// Material -> cell -> geometries
+		IdentityHashMap<Material, HashMap<Long, List<Geometry>>> groups = new IdentityHashMap<>();
+		List<MapObject> batchedObjects = new ArrayList<>();
+
+		for (MapObject obj : objects) {
+			Spatial visual = obj.getVisualRoot();
+			if (visual == null) {
+				continue;
+			}
+			Long cell = cellKey(obj.worldCenter.x, obj.worldCenter.z);
+			visual.depthFirstTraversal(spatial -> {
+				if (spatial instanceof Geometry) {
+					Geometry geom = (Geometry) spatial;
+					groups.computeIfAbsent(geom.getMaterial(), m -> new HashMap<>())
+							.computeIfAbsent(cell, c -> new ArrayList<>())
+							.add(geom);
+				}
+			});
+			batchedObjects.add(obj);
+		}
+
+		Node batchNode = new Node(BATCH_NODE_NAME);
+		long meshBytes = 0;
+		for (java.util.Map.Entry<Material, HashMap<Long, List<Geometry>>> entry : groups.entrySet()) {
+			for (List<Geometry> geometries : entry.getValue().values()) {
+				// mergeGeometries bakes the world transform of each geometry
+				Mesh merged = new Mesh();
+				GeometryBatchFactory.mergeGeometries(geometries, merged);
+				merged.updateBound();
+				meshBytes += meshBytes(merged);
+
+				Geometry batch = new Geometry("Static Batch", merged);
+				batch.setMaterial(entry.getKey());
+				batchNode.attachChild(batch);
+			}
+		}
+
+		for (MapObject obj : batchedObjects) {
+			obj.releaseVisual();
+		}
+		mapNode.attachChild(batchNode);
+
+		return new Report(geometriesBefore, countGeometries(mapNode),
+				drawCallsBefore, countDrawCalls(mapNode), batchedObjects.size(), meshBytes);
+	}
+
+	private Long cellKey(float x, float z) {
+		long cx = (long) Math.floor(x / cellSize);
+		long cz = (long) Math.floor(z / cellSize);
+		return (cx << 32) ^ (cz & 0xffffffffL);
+	}
+
+	/*
+	 * Number of geometries in a subtree
+	 */
+	public static int countGeometries(Spatial root) {
+		int[] count = {0};
+		root.depthFirstTraversal(spatial -> {
+			if (spatial instanceof Geometry) {
+				count[0]++;
+			}
+		});
+		return count[0];
+	}
+
+	/*
+	 * Size of the vertex and index data of a mesh
+	 */
+	public static long meshBytes(Mesh mesh) {
+		long bytes = 0;
+		for (VertexBuffer buffer : mesh.getBufferList()) {
+			if (buffer.getData() != null) {
+				bytes += (long) buffer.getData().capacity() * buffer.getFormat().getComponentSize();
+			}
+		}
+		return bytes;
+	}
+
+	/*
+	 * Draw calls needed for a subtree without any culling : one per visible
+	 * geometry and per pass of its technique (Unshaded has a single pass)
+	 */
+	public static int countDrawCalls(Spatial root) {
+		int[] count = {0};
+		root.depthFirstTraversal(spatial -> {
+			if (spatial instanceof Geometry) {
+				Geometry geom = (Geometry) spatial;
+				if (geom.getCullHint() != Spatial.CullHint.Always && geom.getMaterial() != null
+						&& geom.getMesh().getVertexCount() > 0) {
+					count[0]++;
+				}
+			}
+		});
+		return count[0];
+	}
+
+	/*
+	 * Scene statistics before and after batching
+	 */
+	public static class Report {
+		private final int geometriesBefore;
+		private final int geometriesAfter;
+		private final int drawCallsBefore;
+		private final int drawCallsAfter;
+		private final int batchedObjects;
+		private final long meshBytes;
+
+		Report(int geometriesBefore, int geometriesAfter, int drawCallsBefore, int drawCallsAfter, int batchedObjects,
+				long meshBytes) {
+			this.geometriesBefore = geometriesBefore;
+			this.geometriesAfter = geometriesAfter;
+			this.drawCallsBefore = drawCallsBefore;
+			this.drawCallsAfter = drawCallsAfter;
+			this.batchedObjects = batchedObjects;
+			this.meshBytes = meshBytes;
+		}
+
+		public int getGeometriesBefore() {
+			return geometriesBefore;
+		}
+
+		public int getGeometriesAfter() {
+			return geometriesAfter;
+		}
+
+		public int getDrawCallsBefore() {
+			return drawCallsBefore;
+		}
+
+		public int getDrawCallsAfter() {
+			return drawCallsAfter;
+		}
+
+		public int getBatchedObjects() {
+			return batchedObjects;
+		}
+
+		/*
+		 * Memory used by the merged meshes (vertex and index data)
+		 */
+		public long getMeshBytes() {
+			return meshBytes;
+		}
+
+		@Override
+		public String toString() {
+			return "Static batching: " + batchedObjects + " objects, geometries " + geometriesBefore + " -> " + geometriesAfter
+					+ ", draw calls " + drawCallsBefore + " -> " + drawCallsAfter + ", " + meshBytes / 1024 + " KB of meshes";
+		}
+	}
+}
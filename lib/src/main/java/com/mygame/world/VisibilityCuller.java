@@ -0,0 +1,149 @@
+package com.mygame.world;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.scene.Spatial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Hides the spatials of a map that can't be seen from the viewer cells of a
+ * VisibilitySet. Each spatial covers the rectangle of cells under its world
+ * bound and is culled when none of them is visible. The cull hints are only
+ * rewritten when a viewer changes cell.
+ */
+public class VisibilityCuller {
+
+	private final VisibilitySet visibilitySet;
+	private final List<Spatial> units = new ArrayList<>();
+	// Cell rectangle (startX, startZ, endX, endZ) of each unit, null if always visible
+	private final List<int[]> areas = new ArrayList<>();
+
+	private int viewerCell = -1;
+	private int secondViewerCell = -1;
+	private int culledCount = 0;
+
+	public VisibilityCuller(VisibilitySet visibilitySet) {
+		this.visibilitySet = visibilitySet;
+	}
+
+	/*
+	 * Cull a spatial with the visibility of the cells under its world bound
+	 */
+	public void add(Spatial unit) {
+		units.add(unit);
+		areas.add(computeArea(unit));
+		viewerCell = -1;
+	}
+
+	public void remove(Spatial unit) {
+		int index = units.indexOf(unit);
+		if (index >= 0) {
+			unit.setCullHint(Spatial.CullHint.Inherit);
+			units.remove(index);
+			areas.remove(index);
+			viewerCell = -1;
+		}
+	}
+
+	/*
+	 * The unit moved, its cells are recomputed
+	 */
+	public void refresh(Spatial unit) {
+		int index = units.indexOf(unit);
+		if (index >= 0) {
+			areas.set(index, computeArea(unit));
+			viewerCell = -1;
+		}
+	}
+
+	private int[] computeArea(Spatial unit) {
+		BoundingVolume bound = unit.getWorldBound();
+		if (!(bound instanceof BoundingBox)) {
+			return null;
+		}
+		BoundingBox box = (BoundingBox) bound;
+		float x = box.getCenter().x, z = box.getCenter().z;
+		return new int[] {
+				visibilitySet.cellX(x - box.getXExtent()), visibilitySet.cellZ(z - box.getZExtent()),
+				visibilitySet.cellX(x + box.getXExtent()), visibilitySet.cellZ(z + box.getZExtent()) };
+	}
+
+	/*
+	 * Show what is visible from either viewer position (the player and the
+	 * camera following him), hide the rest
+	 */
+	public void update(float x, float z, float secondX, float secondZ) {
+		int cell = visibilitySet.cellIndex(x, z);
+		int secondCell = visibilitySet.cellIndex(secondX, secondZ);
+		if (cell == viewerCell && secondCell == secondViewerCell) {
+			return;
+		}
+		viewerCell = cell;
+		secondViewerCell = secondCell;
+
+		culledCount = 0;
+		for (int i = 0; i < units.size(); i++) {
+			boolean visible = isVisible(areas.get(i), cell, secondCell);
+			Spatial.CullHint hint = visible ? Spatial.CullHint.Inherit : Spatial.CullHint.Always;
+			Spatial unit = units.get(i);
+			if (unit.getCullHint() != hint) {
+				unit.setCullHint(hint);
+			}
+			if (!visible) {
+				culledCount++;
+			}
+		}
+	}
+
+	private boolean isVisible(int[] area, int cell, int secondCell) {
+		return area == null
+				|| visibilitySet.isAreaVisible(cell, area[0], area[1], area[2], area[3])
+				|| visibilitySet.isAreaVisible(secondCell, area[0], area[1], area[2], area[3]);
+	}
+
+	/*
+	 * Fraction of the units hidden from a position, without touching the scene
+	 * (headless statistics)
+	 */
+	public float getCulledFraction(float x, float z) {
+		if (units.isEmpty()) {
+			return 0f;
+		}
+		int cell = visibilitySet.cellIndex(x, z);
+		int culled = 0;
+		for (int[] area : areas) {
+			if (!isVisible(area, cell, cell)) {
+				culled++;
+			}
+		}
+		return culled / (float) units.size();
+	}
+
+	/*
+	 * Show every unit again
+	 */
+	public void reset() {
+		for (Spatial unit : units) {
+			unit.setCullHint(Spatial.CullHint.Inherit);
+		}
+		viewerCell = -1;
+		culledCount = 0;
+	}
+
+	public int getUnitCount() {
+		return units.size();
+	}
+
+	/*
+	 * Units hidden by the last update
+	 */
+	public int getCulledCount() {
+		return culledCount;
+	}
+
+	public VisibilitySet getVisibilitySet() {
+		return visibilitySet;
+	}
+}
@@ -0,0 +1,355 @@
+package com.mygame.world;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * Potentially visible set of a map : the map is cut in square cells and each
+ * cell records, as one bit per cell, which cells can be seen from it.
+ *
+ * Computed at load time by casting rays between sample points of the two
+ * cells against the occluders (houses and walls). Viewer points are at the
+ * player and camera heights above the floor of the cell (platforms included),
+ * target points go from the ground to the top of the tallest object of the
+ * cell. A pair is visible as soon as one ray gets through.
+ * Occluders are slightly shrunk and adjacent cells are always visible, so
+ * grazing rays and the close surroundings never disappear. Sampling is not
+ * exact : a thin gap between two occluders can be missed.
+ */
+public class VisibilitySet {
+
+	private static final int MAX_CELLS_PER_AXIS = 64;
+	// Viewer heights above the floor : player center, highest camera position
+	private static final float[] VIEWER_HEIGHTS = {1f, 4.5f};
+	// Target heights, as fractions of the tallest object top of the cell
+	private static final float[] TARGET_HEIGHTS = {0f, 0.5f, 1f};
+	private static final float MIN_TARGET_HEIGHT = 0.5f;
+	// Corners (inset) and center of a cell, as fractions of the cell size
+	private static final float[][] SAMPLE_OFFSETS = {{0.1f, 0.1f}, {0.9f, 0.1f}, {0.1f, 0.9f}, {0.9f, 0.9f}, {0.5f, 0.5f}};
+	private static final float OCCLUDER_SHRINK = 0.05f;
+	private static final float OCCLUDER_GRID_CELL_SIZE = 4f;
+
+	private final float originX;
+	private final float originZ;
+	private final float cellSize;
+	private final int cellsX;
+	private final int cellsZ;
+	private final int words; // longs per row
+	private final long[] visible;
+
+	private VisibilitySet(float originX, float originZ, float width, float depth, float preferredCellSize) {
+		float largestSide = Math.max(width, depth);
+		this.cellSize = Math.max(preferredCellSize, largestSide / MAX_CELLS_PER_AXIS);
+		this.originX = originX;
+		this.originZ = originZ;
+		this.cellsX = Math.max(1, (int) Math.ceil(width / cellSize));
+		this.cellsZ = Math.max(1, (int) Math.ceil(depth / cellSize));
+		int cells = cellsX * cellsZ;
+		this.words = (cells + 63) >>> 6;
+		this.visible = new long[cells * words];
+	}
+
+	/*
+	 * Ground height under a point, platforms included
+	 */
+	public interface FloorHeight {
+		float at(float x, float z);
+	}
+
+	/*
+	 * Compute the visibility of an area holding the objects of bounds, the ones
+	 * flagged in occluder hide what is behind them. Rows are computed in
+	 * parallel on the common pool, floor must be safe to read from several threads.
+	 */
+	public static VisibilitySet build(float originX, float originZ, float width, float depth, float preferredCellSize,
+			ObjectBounds bounds, boolean[] occluder, FloorHeight floor) {
+		VisibilitySet set = new VisibilitySet(originX, originZ, width, depth, preferredCellSize);
+		Occluders occluders = new Occluders(originX, originZ, width, depth, bounds, occluder);
+		float[][] viewers = set.createViewerSamples(floor);
+		float[][] targets = set.createTargetSamples(bounds);
+		IntStream.range(0, set.cellsX * set.cellsZ).parallel()
+				.forEach(from -> set.computeRow(from, viewers[from], targets, occluders));
+		return set;
+	}
+
+	/*
+	 * Viewer points (x, y, z triplets) of every cell
+	 */
+	private float[][] createViewerSamples(FloorHeight floor) {
+		float[][] samples = new float[cellsX * cellsZ][];
+		for (int cz = 0; cz < cellsZ; cz++) {
+			for (int cx = 0; cx < cellsX; cx++) {
+				float[] points = new float[SAMPLE_OFFSETS.length * VIEWER_HEIGHTS.length * 3];
+				int p = 0;
+				for (float[] offset : SAMPLE_OFFSETS) {
+					float x = originX + (cx + offset[0]) * cellSize;
+					float z = originZ + (cz + offset[1]) * cellSize;
+					float floorHeight = floor.at(x, z);
+					for (float height : VIEWER_HEIGHTS) {
+						points[p++] = x;
+						points[p++] = floorHeight + height;
+						points[p++] = z;
+					}
+				}
+				samples[cz * cellsX + cx] = points;
+			}
+		}
+		return samples;
+	}
+
+	/*
+	 * Target points (x, y, z triplets) of every cell, up to its tallest object
+	 */
+	private float[][] createTargetSamples(ObjectBounds bounds) {
+		float[] top = new float[cellsX * cellsZ];
+		Arrays.fill(top, MIN_TARGET_HEIGHT);
+		for (int id = 0; id < bounds.size(); id++) {
+			for (int cz = cellZ(bounds.minZ[id]); cz <= cellZ(bounds.maxZ[id]); cz++) {
+				for (int cx = cellX(bounds.minX[id]); cx <= cellX(bounds.maxX[id]); cx++) {
+					int cell = cz * cellsX + cx;
+					top[cell] = Math.max(top[cell], bounds.maxY[id]);
+				}
+			}
+		}
+
+		float[][] samples = new float[cellsX * cellsZ][];
+		for (int cz = 0; cz < cellsZ; cz++) {
+			for (int cx = 0; cx < cellsX; cx++) {
+				int cell = cz * cellsX + cx;
+				float[] points = new float[SAMPLE_OFFSETS.length * TARGET_HEIGHTS.length * 3];
+				int p = 0;
+				for (float[] offset : SAMPLE_OFFSETS) {
+					for (float height : TARGET_HEIGHTS) {
+						points[p++] = originX + (cx + offset[0]) * cellSize;
+						points[p++] = Math.max(MIN_TARGET_HEIGHT, height * top[cell]);
+						points[p++] = originZ + (cz + offset[1]) * cellSize;
+					}
+				}
+				samples[cell] = points;
+			}
+		}
+		return samples;
+	}
+
+	private void computeRow(int from, float[] sources, float[][] samples, Occluders occluders) {
+		int fromX = from % cellsX, fromZ = from / cellsX;
+
+		// A cell entirely inside occluders can't hold a viewer : see everything
+		boolean anySource = false;
+		for (int s = 0; s < sources.length; s += 3) {
+			anySource |= !occluders.contains(sources[s], sources[s + 1], sources[s + 2]);
+		}
+
+		for (int to = 0; to < cellsX * cellsZ; to++) {
+			int toX = to % cellsX, toZ = to / cellsX;
+			boolean seen = !anySource || (Math.abs(toX - fromX) <= 1 && Math.abs(toZ - fromZ) <= 1)
+					|| anyRayThrough(sources, samples[to], occluders);
+			if (seen) {
+				visible[from * words + (to >>> 6)] |= 1L << (to & 63);
+			}
+		}
+	}
+
+	private boolean anyRayThrough(float[] sources, float[] targets, Occluders occluders) {
+		for (int s = 0; s < sources.length; s += 3) {
+			float x0 = sources[s], y0 = sources[s + 1], z0 = sources[s + 2];
+			if (occluders.contains(x0, y0, z0)) {
+				continue;
+			}
+			for (int t = 0; t < targets.length; t += 3) {
+				if (!occluders.blocks(x0, y0, z0, targets[t], targets[t + 1], targets[t + 2])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// Runtime queries
+
+	/*
+	 * Cell of a position, clamped to the area
+	 */
+	public int cellIndex(float x, float z) {
+		return cellZ(z) * cellsX + cellX(x);
+	}
+
+	public int cellX(float x) {
+		int cx = (int) Math.floor((x - originX) / cellSize);
+		return cx < 0 ? 0 : (cx >= cellsX ? cellsX - 1 : cx);
+	}
+
+	public int cellZ(float z) {
+		int cz = (int) Math.floor((z - originZ) / cellSize);
+		return cz < 0 ? 0 : (cz >= cellsZ ? cellsZ - 1 : cz);
+	}
+
+	public boolean isVisible(int from, int to) {
+		return (visible[from * words + (to >>> 6)] & (1L << (to & 63))) != 0;
+	}
+
+	/*
+	 * True if any cell of the rectangle [startX, endX] x [startZ, endZ] is visible from a cell
+	 */
+	public boolean isAreaVisible(int from, int startX, int startZ, int endX, int endZ) {
+		for (int cz = startZ; cz <= endZ; cz++) {
+			for (int cx = startX; cx <= endX; cx++) {
+				if (isVisible(from, cz * cellsX + cx)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Average fraction of the cells visible from a cell (1 = no occlusion)
+	 */
+	public float getVisibleFraction() {
+		long count = 0;
+		for (long word : visible) {
+			count += Long.bitCount(word);
+		}
+		int cells = cellsX * cellsZ;
+		return count / ((float) cells * cells);
+	}
+
+	public int getCellCount() {
+		return cellsX * cellsZ;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/*
+	 * Occluder boxes indexed in a grid, rays walk the grid cells they cross
+	 */
+	private static class Occluders {
+		private final float[] minX, minY, minZ, maxX, maxY, maxZ;
+		private final SpatialGrid grid;
+		private final float originX, originZ;
+
+		Occluders(float originX, float originZ, float width, float depth, ObjectBounds bounds, boolean[] occluder) {
+			int count = 0;
+			for (int id = 0; id < bounds.size(); id++) {
+				if (occluder[id]) {
+					count++;
+				}
+			}
+			this.originX = originX;
+			this.originZ = originZ;
+			this.minX = new float[count];
+			this.minY = new float[count];
+			this.minZ = new float[count];
+			this.maxX = new float[count];
+			this.maxY = new float[count];
+			this.maxZ = new float[count];
+			this.grid = new SpatialGrid(originX, originZ, width, depth, OCCLUDER_GRID_CELL_SIZE);
+			for (int id = 0, i = 0; id < bounds.size(); id++) {
+				if (!occluder[id]) {
+					continue;
+				}
+				minX[i] = bounds.minX[id] + OCCLUDER_SHRINK;
+				minY[i] = bounds.minY[id] + OCCLUDER_SHRINK;
+				minZ[i] = bounds.minZ[id] + OCCLUDER_SHRINK;
+				maxX[i] = bounds.maxX[id] - OCCLUDER_SHRINK;
+				maxY[i] = bounds.maxY[id] - OCCLUDER_SHRINK;
+				maxZ[i] = bounds.maxZ[id] - OCCLUDER_SHRINK;
+				grid.insert(i, minX[i], minZ[i], maxX[i], maxZ[i]);
+				i++;
+			}
+		}
+
+		boolean contains(float x, float y, float z) {
+			int cell = grid.cellIndex(grid.cellX(x), grid.cellZ(z));
+			int[] ids = grid.getCellObjects(cell);
+			for (int i = 0, n = grid.getCellCount(cell); i < n; i++) {
+				if (inside(ids[i], x, y, z)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean inside(int i, float x, float y, float z) {
+			return x >= minX[i] && x <= maxX[i] && y >= minY[i] && y <= maxY[i] && z >= minZ[i] && z <= maxZ[i];
+		}
+
+		/*
+		 * True if an occluder cuts the segment. The occluder holding the target,
+		 * if any, is what is seen there and does not count.
+		 */
+		boolean blocks(float x0, float y0, float z0, float x1, float y1, float z1) {
+			float dx = x1 - x0, dy = y1 - y0, dz = z1 - z0;
+			int cx = grid.cellX(x0), cz = grid.cellZ(z0);
+			int endX = grid.cellX(x1), endZ = grid.cellZ(z1);
+			float size = grid.getCellSize();
+
+			// Walk the grid cells crossed by the segment (2D DDA on the XZ plane)
+			int stepX = dx > 0 ? 1 : -1, stepZ = dz > 0 ? 1 : -1;
+			float tDeltaX = dx != 0 ? size / Math.abs(dx) : Float.POSITIVE_INFINITY;
+			float tDeltaZ = dz != 0 ? size / Math.abs(dz) : Float.POSITIVE_INFINITY;
+			float tMaxX = dx != 0 ? (originX + (cx + (stepX > 0 ? 1 : 0)) * size - x0) / dx : Float.POSITIVE_INFINITY;
+			float tMaxZ = dz != 0 ? (originZ + (cz + (stepZ > 0 ? 1 : 0)) * size - z0) / dz : Float.POSITIVE_INFINITY;
+			int steps = Math.abs(endX - cx) + Math.abs(endZ - cz);
+
+			for (int step = 0; step <= steps; step++) {
+				int cell = grid.cellIndex(cx, cz);
+				int[] ids = grid.getCellObjects(cell);
+				for (int k = 0, n = grid.getCellCount(cell); k < n; k++) {
+					int i = ids[k];
+					if (!inside(i, x1, y1, z1) && hits(i, x0, y0, z0, dx, dy, dz)) {
+						return true;
+					}
+				}
+				if (tMaxX < tMaxZ) {
+					cx += stepX;
+					tMaxX += tDeltaX;
+				} else {
+					cz += stepZ;
+					tMaxZ += tDeltaZ;
+				}
+				if (cx < 0 || cz < 0 || cx >= grid.getCellsX() || cz >= grid.getCellsZ()) {
+					break;
+				}
+			}
+			return false;
+		}
+
+		/*
+		 * Segment p + t * d, t in [0, 1], against an occluder box (slab test)
+		 */
+		private boolean hits(int i, float x, float y, float z, float dx, float dy, float dz) {
+			float tMin = 0f, tMax = 1f;
+			if (dx == 0) {
+				if (x < minX[i] || x > maxX[i]) {
+					return false;
+				}
+			} else {
+				float t1 = (minX[i] - x) / dx, t2 = (maxX[i] - x) / dx;
+				tMin = Math.max(tMin, Math.min(t1, t2));
+				tMax = Math.min(tMax, Math.max(t1, t2));
+			}
+			if (dy == 0) {
+				if (y < minY[i] || y > maxY[i]) {
+					return false;
+				}
+			} else {
+				float t1 = (minY[i] - y) / dy, t2 = (maxY[i] - y) / dy;
+				tMin = Math.max(tMin, Math.min(t1, t2));
+				tMax = Math.min(tMax, Math.max(t1, t2));
+			}
+			if (dz == 0) {
+				if (z < minZ[i] || z > maxZ[i]) {
+					return false;
+				}
+			} else {
+				float t1 = (minZ[i] - z) / dz, t2 = (maxZ[i] - z) / dz;
+				tMin = Math.max(tMin, Math.min(t1, t2));
+				tMax = Math.min(tMax, Math.max(t1, t2));
+			}
+			return tMin <= tMax;
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.mygame.world;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Square piece of a streamed world : the objects generated for its area with
+ * their own node, cached bounds, spatial grid and height field. Built once on
+ * a loader thread, then only used by the render thread (see ChunkStreamer).
+ */
+class WorldChunk {
+
+	private static final float GRID_CELL_SIZE = 4f;
+	private static final float HEIGHT_FIELD_CELL_SIZE = 1f;
+	// Node or geometry without its mesh : transforms, bounds, lists, user data
+	private static final long SPATIAL_BYTES = 512;
+	// Transform of one instance in the buffers of InstancedProps (a 4x4 float matrix)
+	private static final long INSTANCE_BYTES = 64;
+
+	final int chunkX;
+	final int chunkZ;
+	final int index;
+	final float minX;
+	final float minZ;
+	final float size;
+
+	private final Node node;
+	private final List<MapObject> objects = new ArrayList<>();
+	private final ObjectBounds bounds = new ObjectBounds();
+	private final SpatialGrid grid;
+	private final HeightField heightField;
+	private ObjectBvh bvh;
+	private LodController lod;
+	private long memoryBytes;
+
+	// Memory booked by the streamer while the chunk was building
+	long reservedBytes;
+
+	WorldChunk(int chunkX, int chunkZ, int index, float minX, float minZ, float size) {
+		this.chunkX = chunkX;
+		this.chunkZ = chunkZ;
+		this.index = index;
+		this.minX = minX;
+		this.minZ = minZ;
+		this.size = size;
+		this.node = new Node("Chunk " + chunkX + "," + chunkZ);
+		this.grid = new SpatialGrid(minX, minZ, size, size, GRID_CELL_SIZE);
+		this.heightField = new HeightField(minX, minZ, size, size, HEIGHT_FIELD_CELL_SIZE);
+	}
+
+	/*
+	 * Create the objects, the collision data and the batches of the chunk.
+	 * Does not touch the scene of the application.
+	 */
+	void build(SimpleApplication app, ChunkGenerator generator, boolean staticBatching, boolean instancing,
+			boolean levelOfDetail, float batchCellSize, boolean debugMode) {
+		InstancedProps instancedProps = instancing ? new InstancedProps() : null;
+		generator.generate(chunkX, chunkZ, minX, minZ, size, (type, position, objectSize) -> {
+			MapObject object = new MapObject(app, type, position, objectSize, instancing);
+			addObject(object, instancedProps, debugMode);
+		});
+		if (instancedProps != null) {
+			node.attachChild(instancedProps);
+		}
+
+		long batchBytes = 0;
+		if (staticBatching && !objects.isEmpty()) {
+			batchBytes = new StaticBatcher(batchCellSize).batch(node, objects).getMeshBytes();
+		}
+		if (levelOfDetail) {
+			lod = new LodController(instancedProps);
+			for (MapObject object : objects) {
+				if (object.hasLod()) {
+					lod.add(object);
+				}
+			}
+		}
+		bvh = new ObjectBvh(bounds, objects.toArray(new MapObject[0]));
+		
+		// Grid cells hold an id array, height field cells a height and a border flag, nodes a box and two ints
+		int heightCells = (int) Math.ceil(size / heightField.getCellSize());
+		memoryBytes = meshBytes() + batchBytes + sceneBytes(instancedProps)
+				+ grid.getCellsX() * grid.getCellsZ() * 32L
+				+ heightCells * heightCells * 5L
+				+ bvh.getNodeCount() * 32L;
+	}
+
+	/*
+	 * Vertex and index data of the cached meshes the objects hold, every level
+	 * of detail included. A shape shared with another chunk is counted by both :
+	 * procedural shapes rarely repeat, and an overestimate only evicts earlier.
+	 */
+	private long meshBytes() {
+		Set<Mesh> meshes = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (MapObject object : objects) {
+			meshes.addAll(object.getSharedMeshes());
+		}
+		long bytes = 0;
+		for (Mesh mesh : meshes) {
+			bytes += StaticBatcher.meshBytes(mesh);
+		}
+		return bytes;
+	}
+
+	/*
+	 * Spatials of the chunk (batches and instancing groups included), the
+	 * detached instance parts and their transforms in the instance buffers
+	 */
+	private long sceneBytes(InstancedProps instancedProps) {
+		int[] spatials = {0};
+		node.depthFirstTraversal(spatial -> spatials[0]++);
+		for (MapObject object : objects) {
+			spatials[0] += object.getInstanceParts().size();
+		}
+		long bytes = spatials[0] * SPATIAL_BYTES;
+		if (instancedProps != null) {
+			bytes += instancedProps.getInstanceCount() * INSTANCE_BYTES;
+		}
+		return bytes;
+	}
+
+	private void addObject(MapObject object, InstancedProps instancedProps, boolean debugMode) {
+		objects.add(object);
+		object.setDebugMode(debugMode);
+		node.attachChild(object.getNode());
+		if (instancedProps != null) {
+			for (Geometry part : object.getInstanceParts()) {
+				instancedProps.addInstance(part);
+			}
+		}
+
+		object.refreshWorldBounds();
+		int id = bounds.add(object);
+		grid.insert(id, bounds.minX[id], bounds.minZ[id], bounds.maxX[id], bounds.maxZ[id]);
+		if (bounds.platform[id]) {
+			heightField.addPlatform(bounds, id);
+		}
+	}
+
+	/*
+	 * Same as Map.checkCollision for the objects of this chunk
+	 */
+	boolean checkCollision(float x, float y, float z, float radius) {
+		return bounds.collides(grid, x, y, z, radius);
+	}
+
+	/*
+	 * Same as Map.sweep for the objects of this chunk
+	 */
+	float sweep(float ox, float oy, float oz, float dx, float dy, float dz) {
+		return bounds.sweep(grid, ox, oy, oz, dx, dy, dz);
+	}
+	
+	/*
+	 * Nearest hit of a ray on the objects of this chunk, see ObjectBvh.raycast
+	 */
+	boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz, RayQuery query) {
+		return bvh != null && bvh.raycast(ox, oy, oz, dx, dy, dz, query);
+	}
+	
+	/*
+	 * Highest platform of this chunk under a point, 0 (the ground) if none
+	 */
+	float getGroundHeightAt(float x, float z) {
+		float height = heightField.lookup(x, z);
+		if (Float.isNaN(height)) {
+			height = bounds.platformHeightAt(grid, x, z);
+		}
+		return height;
+	}
+
+	/*
+	 * Level of detail pass of the chunk objects, render thread only
+	 */
+	void updateLod(float cameraX, float cameraZ) {
+		if (lod != null) {
+			lod.update(cameraX, cameraZ);
+		}
+	}
+
+	void setDebugMode(boolean debug) {
+		for (MapObject object : objects) {
+			object.setDebugMode(debug);
+		}
+	}
+
+	/*
+	 * Drop the objects and the collision data, the chunk can't be used anymore
+	 */
+	void release() {
+		node.removeFromParent();
+		node.detachAllChildren();
+		for (MapObject object : objects) {
+			object.release();
+		}
+		objects.clear();
+		bvh = null;
+		if (lod != null) {
+			lod.clear();
+		}
+		bounds.clear();
+		grid.clear();
+		heightField.clear();
+	}
+
+	Node getNode() {
+		return node;
+	}
+
+	int getObjectCount() {
+		return objects.size();
+	}
+
+	/*
+	 * Estimated memory of the chunk : its meshes, batches, spatials and
+	 * collision data. Shared materials excluded.
+	 */
+	long getMemoryBytes() {
+		return memoryBytes;
+	}
+}
@@ -0,0 +1,33 @@
+package com.mygame;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AppState;
+import com.jme3.input.InputManager;
+import com.jme3.input.dummy.DummyKeyInput;
+import com.jme3.input.dummy.DummyMouseInput;
+import com.jme3.renderer.Camera;
+import com.jme3.system.JmeSystem;
+
+/*
+ * Application that is never started : a desktop asset manager, an empty
+ * scene, dummy inputs and a camera, enough to build maps and players in the
+ * tests.
+ */
+public class TestApplication extends SimpleApplication {
+
+	public TestApplication() {
+		super((AppState[]) null);
+		assetManager = JmeSystem.newAssetManager(
+				Thread.currentThread().getContextClassLoader().getResource("com/jme3/asset/Desktop.cfg"));
+		DummyMouseInput mouse = new DummyMouseInput();
+		DummyKeyInput keys = new DummyKeyInput();
+		mouse.initialize();
+		keys.initialize();
+		inputManager = new InputManager(mouse, keys, null, null);
+		cam = new Camera(640, 480);
+	}
+
+	@Override
+	public void simpleInitApp() {
+	}
+}
@@ -0,0 +1,74 @@
+package com.mygame.entities;
+
+import com.mygame.TestApplication;
+import com.mygame.interest.InterestManager;
+import com.mygame.world.Map;
+
+import com.jme3.math.Vector3f;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Bots only write their own slots : ticking the ranges on several workers
+ * must give exactly the positions of a single worker running them in order.
+ */
+class BotSystemTest {
+
+	private static final float STEP = 1f / 60f;
+	private static final int BOTS = 2000; // several ranges of GRAIN bots
+	private static final int TICKS = 600;
+	private static final long SEED = 21L;
+
+	@Test
+	void parallelTickMatchesSequential() {
+		Map map = new Map(new TestApplication(), 200f);
+		map.loadGeneratedMap(400, 3L);
+		// Players standing still, seen by the bots close to them
+		InterestManager players = new InterestManager(map, 16f, 120f, 64);
+		for (int i = 0; i < 16; i++) {
+			players.add(i * 10f - 80f, (i % 4) * 30f - 45f);
+		}
+
+		ForkJoinPool workers = new ForkJoinPool(4);
+		ForkJoinPool single = new ForkJoinPool(1);
+		try {
+			BotSystem parallel = new BotSystem(map, BOTS, workers);
+			BotSystem sequential = new BotSystem(map, BOTS, single);
+			assertEquals(BOTS, parallel.spawnRandom(BOTS, SEED));
+			assertEquals(BOTS, sequential.spawnRandom(BOTS, SEED));
+			parallel.setPerception(players);
+			sequential.setPerception(players);
+
+			Vector3f[] starts = new Vector3f[BOTS];
+			for (int i = 0; i < BOTS; i++) {
+				starts[i] = parallel.getPosition(i, new Vector3f());
+			}
+			for (int tick = 0; tick < TICKS; tick++) {
+				parallel.tick(STEP);
+				sequential.tick(STEP);
+			}
+
+			Vector3f a = new Vector3f(), b = new Vector3f();
+			int moved = 0;
+			for (int i = 0; i < BOTS; i++) {
+				parallel.getPosition(i, a);
+				sequential.getPosition(i, b);
+				assertEquals(b, a, "bot " + i);
+				if (a.distance(starts[i]) > 1f) {
+					moved++;
+				}
+			}
+			assertTrue(moved > BOTS / 2, moved + " bots moved");
+			assertEquals(parallel.getChasingCount(), sequential.getChasingCount());
+			assertTrue(parallel.getChasingCount() > 0, "no bot saw a player");
+		} finally {
+			workers.shutdown();
+			single.shutdown();
+		}
+	}
+}
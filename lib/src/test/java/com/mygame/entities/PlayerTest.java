@@ -0,0 +1,80 @@
+package com.mygame.entities;
+
+import com.mygame.TestApplication;
+import com.mygame.world.Map;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * The player tick runs 60 times a second for every player : once warm it
+ * must not allocate, so it never feeds the garbage collector.
+ */
+class PlayerTest {
+
+	private static final float STEP = 1f / 60f;
+	private static final int SCRIPT_PERIOD_TICKS = 60;
+	private static final int TICKS = 1000;
+	private static final int ROUNDS = 20;
+	private static final int WARMUP_TICKS = 50000;
+
+	@Test
+	void updateLoopDoesNotAllocate() {
+		TestApplication app = new TestApplication();
+		Map map = new Map(app);
+		map.loadMap();
+		Player player = new Player(app, map, false);
+		Random script = new Random(3L);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assertTrue(threads.isThreadAllocatedMemorySupported());
+		long thread = Thread.currentThread().threadId();
+
+		// Warm up : first calls load classes and fill the caches, the JIT compiles the tick
+		tick(player, script, WARMUP_TICKS);
+		Vector3f start = player.getPosition(new Vector3f());
+
+		/*
+		 * A tick allocating anything allocates it in every round. Late JIT
+		 * recompilations may still allocate a few bytes once : some rounds
+		 * must be exactly zero, none above a byte per tick.
+		 */
+		long least = Long.MAX_VALUE, most = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			tick(player, script, TICKS);
+			long allocated = threads.getThreadAllocatedBytes(thread) - before;
+			least = Math.min(least, allocated);
+			most = Math.max(most, allocated);
+		}
+		assertEquals(0L, least, least + " bytes allocated by " + TICKS + " ticks at least");
+		assertTrue(most < TICKS, most + " bytes allocated by " + TICKS + " ticks at most");
+		// The ticks did move the player
+		assertTrue(player.getPosition(new Vector3f()).distance(start) > 1f);
+	}
+
+	/*
+	 * Scripted inputs changing every second of simulated time, like the headless simulation
+	 */
+	private static void tick(Player player, Random script, int ticks) {
+		for (int tick = 0; tick < ticks; tick++) {
+			if (tick % SCRIPT_PERIOD_TICKS == 0) {
+				player.setHorizontalAngle(script.nextFloat() * FastMath.TWO_PI);
+				player.setMoveState(0, script.nextFloat() < 0.8f);
+				player.setMoveState(3, script.nextFloat() < 0.2f);
+				if (script.nextFloat() < 0.3f) {
+					player.jump();
+				}
+			}
+			player.update(STEP);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.mygame.entities;
+
+import com.mygame.TestApplication;
+import com.mygame.world.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Slots of dead projectiles are reused before the pool grows, and a step
+ * longer than an object is thick still stops on it.
+ */
+class ProjectileSystemTest {
+
+	// Empty map : the ground and the perimeter walls (1 unit thick) only
+	private static Map map;
+	private static float wallX;
+
+	@BeforeAll
+	static void buildMap() {
+		map = new Map(new TestApplication());
+		map.loadGeneratedMap(0, 1L);
+		wallX = map.getMapSize() / 2 - 0.5f;
+	}
+
+	@Test
+	void deadSlotsAreRecycled() {
+		ProjectileSystem projectiles = new ProjectileSystem(map, 8, null);
+		// Half fly up for their whole life, half die on the east wall
+		Set<Integer> hitting = new HashSet<>();
+		for (int i = 0; i < 4; i++) {
+			assertTrue(projectiles.spawn(ProjectileSystem.Kind.ROCKET, i, 1f, 0f, 0f, 1f, 0f) >= 0);
+			hitting.add(projectiles.spawn(ProjectileSystem.Kind.ROCKET, wallX - 2f, 1f, i, 1f, 0f, 0f));
+		}
+		assertEquals(-1, projectiles.spawn(ProjectileSystem.Kind.ROCKET, 0f, 1f, 0f, 0f, 1f, 0f));
+		assertEquals(1L, projectiles.getDroppedCount());
+
+		projectiles.step(0.1f);
+		assertEquals(4, projectiles.getLiveCount());
+		assertEquals(4L, projectiles.getImpactCount());
+		// The freed slots are handed out again, the pool does not grow
+		Set<Integer> reused = new HashSet<>();
+		for (int i = 0; i < 4; i++) {
+			reused.add(projectiles.spawn(ProjectileSystem.Kind.GRENADE, 0f, 1f, 0f, 0f, 1f, 0f));
+		}
+		assertEquals(hitting, reused);
+		assertEquals(-1, projectiles.spawn(ProjectileSystem.Kind.ROCKET, 0f, 1f, 0f, 0f, 1f, 0f));
+
+		// Everything expires, then the whole pool is free
+		for (int i = 0; i < 50; i++) {
+			projectiles.step(0.1f);
+		}
+		assertEquals(0, projectiles.getLiveCount());
+		Set<Integer> slots = new HashSet<>();
+		for (int i = 0; i < 8; i++) {
+			slots.add(projectiles.spawn(ProjectileSystem.Kind.SLOW_BULLET, 0f, 1f, 0f, 0f, 1f, 0f));
+		}
+		assertEquals(8, slots.size());
+		assertTrue(slots.stream().allMatch(slot -> slot >= 0 && slot < 8));
+		assertEquals(20L, projectiles.getSpawnedCount());
+		assertEquals(2L, projectiles.getDroppedCount());
+	}
+
+	@Test
+	void fastProjectilesDoNotTunnel() {
+		// Steps of 0.1 s move a slow bullet 6 units, a rocket 3.5 : both jump over the wall without the sweep
+		ProjectileSystem projectiles = new ProjectileSystem(map, 1024, null);
+		int fired = 0;
+		for (int i = 0; i < 100; i++) {
+			float start = wallX - 0.5f - i * 0.05f;
+			float z = (i - 50) * 0.5f;
+			projectiles.spawn(ProjectileSystem.Kind.SLOW_BULLET, start, 2f, z, 1f, 0f, 0f);
+			projectiles.spawn(ProjectileSystem.Kind.ROCKET, start, 2f, z, 1f, 0f, 0f);
+			fired += 2;
+		}
+		// Straight down on the ground, no horizontal motion at all
+		for (int i = 0; i < 10; i++) {
+			projectiles.spawn(ProjectileSystem.Kind.ROCKET, i, 0.5f, 0f, 0f, -1f, 0f);
+			fired++;
+		}
+		for (int i = 0; i < 10; i++) {
+			projectiles.step(0.1f);
+		}
+		// Leaving the map kills without an impact : every one of them hit something
+		assertEquals(fired, projectiles.getImpactCount());
+		assertEquals(0, projectiles.getLiveCount());
+	}
+}
@@ -0,0 +1,240 @@
+package com.mygame.interest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * The incremental sets must hold what a brute force pass over every pair
+ * gives : an entity enters within the view distance (in cells), leaves one
+ * cell further, and keeps its membership in between. The radius queries must
+ * match a scan of every entity.
+ */
+class InterestManagerTest {
+
+	private static final float SIZE = 1000f;
+	private static final float ORIGIN = -SIZE / 2;
+	private static final float CELL_SIZE = 16f;
+	private static final float VIEW_DISTANCE = 120f;
+	private static final int CAPACITY = 400;
+	private static final int OBSERVERS = 24;
+	private static final int STEPS = 400;
+
+	private final InterestManager interest = new InterestManager(ORIGIN, ORIGIN, SIZE, SIZE, CELL_SIZE,
+			VIEW_DISTANCE, CAPACITY);
+	private final int enterRadius = (int) Math.ceil(VIEW_DISTANCE / CELL_SIZE);
+	private final int leaveRadius = enterRadius + 1;
+
+	// Reference state : live handles, their positions and the expected sets
+	private final boolean[] live = new boolean[CAPACITY];
+	private final float[] x = new float[CAPACITY], z = new float[CAPACITY];
+	private final int[] observers = new int[OBSERVERS];
+	private final boolean[][] expected = new boolean[OBSERVERS][CAPACITY];
+
+	@Test
+	void setsMatchBruteForceAfterRandomMoves() {
+		Random random = new Random(8L);
+		for (int i = 0; i < CAPACITY - 50; i++) {
+			add(random.nextFloat() * SIZE + ORIGIN, random.nextFloat() * SIZE + ORIGIN);
+		}
+		for (int o = 0; o < OBSERVERS; o++) {
+			observers[o] = o * 7;
+			interest.observe(observers[o]);
+			for (int e = 0; e < CAPACITY; e++) {
+				expected[o][e] = live[e] && distance(observers[o], e) <= enterRadius;
+			}
+		}
+		check();
+
+		for (int step = 0; step < STEPS; step++) {
+			for (int e = 0; e < CAPACITY; e++) {
+				if (!live[e]) {
+					continue;
+				}
+				float roll = random.nextFloat();
+				if (roll < 0.005f) {
+					// Teleport, sometimes out of the grid (clamped to the border)
+					move(e, (random.nextFloat() * 1.2f - 0.1f) * SIZE + ORIGIN,
+							(random.nextFloat() * 1.2f - 0.1f) * SIZE + ORIGIN);
+				} else if (roll < 0.8f) {
+					move(e, x[e] + (random.nextFloat() - 0.5f) * 12f, z[e] + (random.nextFloat() - 0.5f) * 12f);
+				}
+			}
+			// Some entities leave and others come, their handles are reused
+			for (int i = 0; i < 3; i++) {
+				int e = random.nextInt(CAPACITY);
+				if (live[e] && !isObserver(e)) {
+					remove(e);
+				}
+				add(random.nextFloat() * SIZE + ORIGIN, random.nextFloat() * SIZE + ORIGIN);
+			}
+			check();
+		}
+		assertTrue(interest.getCellChangeCount() > 0);
+	}
+
+	@Test
+	void borderWalkDoesNotFlicker() {
+		// Center of a cell, the entity walks along the X axis away from it
+		float center = ORIGIN + 20.5f * CELL_SIZE;
+		int observer = interest.add(center, center);
+		interest.observe(observer);
+		// Border between the last cell in range and the first one out
+		float border = center + (enterRadius + 0.5f) * CELL_SIZE;
+		int entity = interest.add(border + 1f, center);
+		assertFalse(interest.getInterest(observer).contains(entity));
+		interest.move(entity, border - 1f, center);
+		assertTrue(interest.getInterest(observer).contains(entity));
+
+		// Back and forth across the border : it stays
+		long changes = interest.getSetChangeCount();
+		for (int i = 0; i < 10; i++) {
+			interest.move(entity, border + 1f, center);
+			interest.move(entity, border - 1f, center);
+		}
+		assertTrue(interest.getInterest(observer).contains(entity));
+		assertEquals(changes, interest.getSetChangeCount());
+
+		// Past the leave radius : out
+		interest.move(entity, border + CELL_SIZE + 1f, center);
+		assertFalse(interest.getInterest(observer).contains(entity));
+
+		interest.remove(entity);
+		assertFalse(interest.getInterest(observer).contains(entity));
+		assertEquals(1, interest.getEntityCount());
+	}
+
+	@Test
+	void queriesMatchLinearScan() {
+		Random random = new Random(12L);
+		for (int i = 0; i < CAPACITY; i++) {
+			add((random.nextFloat() - 0.5f) * 400f, (random.nextFloat() - 0.5f) * 400f);
+		}
+		int[] found = new int[CAPACITY];
+		for (int q = 0; q < 500; q++) {
+			float qx = (random.nextFloat() - 0.5f) * 500f, qz = (random.nextFloat() - 0.5f) * 500f;
+			float range = 5f + random.nextFloat() * 60f;
+			int count = interest.query(qx, qz, range, found);
+
+			boolean[] inRange = new boolean[CAPACITY];
+			int expectedCount = 0;
+			int nearest = -1;
+			float best = range * range;
+			for (int e = 0; e < CAPACITY; e++) {
+				float dx = x[e] - qx, dz = z[e] - qz;
+				float d = dx * dx + dz * dz;
+				if (d <= range * range) {
+					inRange[e] = true;
+					expectedCount++;
+				}
+				if (d <= best && e != 0) {
+					best = d;
+					nearest = e;
+				}
+			}
+			assertEquals(expectedCount, count);
+			for (int i = 0; i < count; i++) {
+				assertTrue(inRange[found[i]]);
+			}
+			int actual = interest.nearest(qx, qz, range, 0);
+			if (nearest < 0) {
+				assertEquals(-1, actual);
+			} else {
+				// Ties can pick either entity
+				float dx = x[actual] - qx, dz = z[actual] - qz;
+				assertEquals(best, dx * dx + dz * dz, 1e-3f);
+			}
+		}
+	}
+
+	private void add(float px, float pz) {
+		int e = interest.add(px, pz);
+		if (e < 0) {
+			return;
+		}
+		live[e] = true;
+		x[e] = px;
+		z[e] = pz;
+		for (int o = 0; o < OBSERVERS; o++) {
+			if (live[observers[o]] && interest.getInterest(observers[o]) != null) {
+				expected[o][e] = distance(observers[o], e) <= enterRadius;
+			}
+		}
+	}
+
+	private void remove(int e) {
+		interest.remove(e);
+		live[e] = false;
+		for (int o = 0; o < OBSERVERS; o++) {
+			expected[o][e] = false;
+		}
+	}
+
+	private void move(int e, float px, float pz) {
+		interest.move(e, px, pz);
+		x[e] = px;
+		z[e] = pz;
+		for (int o = 0; o < OBSERVERS; o++) {
+			int observer = observers[o];
+			if (observer == e) {
+				// The observer moved : every entity is at a new distance
+				for (int other = 0; other < CAPACITY; other++) {
+					if (live[other]) {
+						update(o, other);
+					}
+				}
+			} else {
+				update(o, e);
+			}
+		}
+	}
+
+	private void update(int o, int e) {
+		int d = distance(observers[o], e);
+		if (d <= enterRadius) {
+			expected[o][e] = true;
+		} else if (d > leaveRadius) {
+			expected[o][e] = false;
+		}
+	}
+
+	private void check() {
+		for (int o = 0; o < OBSERVERS; o++) {
+			InterestSet set = interest.getInterest(observers[o]);
+			int size = 0;
+			for (int e = 0; e < CAPACITY; e++) {
+				assertEquals(expected[o][e], set.contains(e), "entity " + e + " in set of " + observers[o]);
+				if (expected[o][e]) {
+					size++;
+				}
+			}
+			assertEquals(size, set.size());
+		}
+	}
+
+	private boolean isObserver(int e) {
+		for (int observer : observers) {
+			if (observer == e) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Chebyshev distance in cells, positions clamped to the grid
+	 */
+	private int distance(int a, int b) {
+		return Math.max(Math.abs(cell(x[a]) - cell(x[b])), Math.abs(cell(z[a]) - cell(z[b])));
+	}
+
+	private int cell(float coordinate) {
+		int cells = (int) Math.ceil(SIZE / CELL_SIZE);
+		int c = (int) Math.floor((coordinate - ORIGIN) * (1f / CELL_SIZE));
+		return c < 0 ? 0 : (c >= cells ? cells - 1 : c);
+	}
+}
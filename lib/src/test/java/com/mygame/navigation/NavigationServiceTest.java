@@ -0,0 +1,125 @@
+package com.mygame.navigation;
+
+import com.mygame.TestApplication;
+import com.mygame.entities.BotSystem;
+import com.mygame.world.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Requests between the same cells share one search, the cache keeps the most
+ * recently used answers, and the paths only cross walkable cells.
+ */
+class NavigationServiceTest {
+
+	private static final float CELL_SIZE = 1f;
+	private static final int REQUESTS = 64;
+	// Cell centers of opposite corners of the built-in map
+	private static final float START = -19.5f;
+	private static final float GOAL = 19.5f;
+
+	private static NavGrid grid;
+
+	@BeforeAll
+	static void bakeGrid() {
+		Map map = new Map(new TestApplication());
+		map.buildMap();
+		grid = NavGrid.bake(map, BotSystem.WIDTH / 2, BotSystem.HEIGHT, CELL_SIZE);
+	}
+
+	@Test
+	void sameCellsShareOneSearch() {
+		NavigationService navigation = new NavigationService(grid, 2, 64);
+		try {
+			// Different positions in the same two cells
+			List<CompletableFuture<NavPath>> futures = new ArrayList<>();
+			for (int i = 0; i < REQUESTS; i++) {
+				float jitter = (i % 8 - 4) * 0.1f * CELL_SIZE;
+				futures.add(navigation.requestPath(START + jitter, START - jitter, GOAL - jitter, GOAL + jitter));
+			}
+			NavPath path = futures.get(0).join();
+			assertFalse(path.isEmpty());
+			for (CompletableFuture<NavPath> future : futures) {
+				assertSame(path, future.join());
+			}
+			assertEquals(1L, navigation.getSearchCount());
+			// Every other request joined the running search or found its answer in the cache
+			assertEquals(REQUESTS - 1, navigation.getMergedCount() + navigation.getCache().getHits());
+			assertEquals(0, navigation.getPendingCount());
+
+			// The synchronous path reads the same cache
+			assertSame(path, navigation.findPath(START, START, GOAL, GOAL));
+			assertEquals(1L, navigation.getSearchCount());
+		} finally {
+			navigation.shutdown();
+		}
+	}
+
+	@Test
+	void pathsCrossWalkableCells() {
+		NavigationService navigation = new NavigationService(grid, 1, 256);
+		Random random = new Random(2L);
+		float half = grid.getCellsX() * grid.getCellSize() / 2;
+		int found = 0;
+		try {
+			for (int i = 0; i < 200; i++) {
+				float sx = (random.nextFloat() - 0.5f) * 2 * half, sz = (random.nextFloat() - 0.5f) * 2 * half;
+				float gx = (random.nextFloat() - 0.5f) * 2 * half, gz = (random.nextFloat() - 0.5f) * 2 * half;
+				NavPath path = navigation.findPath(sx, sz, gx, gz);
+				if (path.isEmpty()) {
+					continue;
+				}
+				found++;
+				int previous = grid.cellAt(path.getX(0), path.getZ(0));
+				assertTrue(grid.isWalkable(previous));
+				for (int w = 1; w < path.size(); w++) {
+					int cell = grid.cellAt(path.getX(w), path.getZ(w));
+					assertTrue(grid.isWalkable(cell));
+					assertTrue(grid.isStraightWalkable(previous, cell), "segment " + w + " of path " + i);
+					previous = cell;
+				}
+			}
+		} finally {
+			navigation.shutdown();
+		}
+		// The built-in map is open : most random pairs are connected
+		assertTrue(found > 150, found + " paths found");
+	}
+
+	@Test
+	void cacheEvictsLeastRecentlyUsed() {
+		PathCache cache = new PathCache(3);
+		NavPath a = new NavPath(new float[] {0, 0}), b = new NavPath(new float[] {1, 1});
+		NavPath c = new NavPath(new float[] {2, 2}), d = new NavPath(new float[] {3, 3});
+		cache.put(PathCache.key(1, 2), a);
+		cache.put(PathCache.key(2, 1), b);
+		cache.put(PathCache.key(3, 4), c);
+		// Reading a refreshes it : b is now the eldest
+		assertSame(a, cache.get(PathCache.key(1, 2)));
+		cache.put(PathCache.key(5, 6), d);
+
+		assertEquals(3, cache.size());
+		assertNull(cache.get(PathCache.key(2, 1)));
+		assertSame(a, cache.get(PathCache.key(1, 2)));
+		assertSame(c, cache.get(PathCache.key(3, 4)));
+		assertSame(d, cache.get(PathCache.key(5, 6)));
+		assertEquals(4L, cache.getHits());
+		assertEquals(1L, cache.getMisses());
+		// Start and goal are not interchangeable
+		assertNotNull(cache.get(PathCache.key(1, 2)));
+		assertTrue(PathCache.key(1, 2) != PathCache.key(2, 1));
+	}
+}
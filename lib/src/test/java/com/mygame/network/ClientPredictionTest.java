@@ -0,0 +1,116 @@
+package com.mygame.network;
+
+import com.mygame.TestApplication;
+import com.mygame.entities.Player;
+import com.mygame.world.Map;
+
+import com.jme3.math.FastMath;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Predicting clients behind a link with latency, jitter and loss, ticked in
+ * real time since the link delays by the clock. The movement is
+ * deterministic : once connected, the predictions acknowledged by the server
+ * must match it, a correction only follows an input lost with all its copies.
+ */
+class ClientPredictionTest {
+
+	private static final int TICK_RATE = 60;
+	private static final float STEP = 1f / TICK_RATE;
+	private static final long TICK_NANOS = 1_000_000_000L / TICK_RATE;
+	private static final int CLIENTS = 4;
+	private static final int TICKS = 6 * TICK_RATE;
+	private static final int SCRIPT_PERIOD_TICKS = 30;
+	private static final float LATENCY = 100f; // milliseconds, round trip
+	private static final float JITTER = 20f;
+	private static final float LOSS = 0.05f;
+	private static final float MAX_MEAN_ERROR = 0.02f; // a tenth of a running step
+
+	@Test
+	void predictionMatchesServerThroughBadLink() throws IOException {
+		TestApplication app = new TestApplication();
+		Map map = new Map(app);
+		map.loadMap();
+		GameServer server = new GameServer(app, map, TICK_RATE);
+		server.open(0);
+		LinkConditioner link = new LinkConditioner(new InetSocketAddress("127.0.0.1", server.getPort()),
+				LATENCY, JITTER, LOSS, 7L);
+		link.open();
+
+		ClientPrediction[] predictions = new ClientPrediction[CLIENTS];
+		for (int i = 0; i < CLIENTS; i++) {
+			GameClient client = new GameClient(link.getAddress());
+			client.connect();
+			predictions[i] = new ClientPrediction(client, new Player(app, map, false));
+		}
+		Random script = new Random(9L);
+		int[] buttons = new int[CLIENTS];
+		float[] yaws = new float[CLIENTS];
+		boolean[] connected = new boolean[CLIENTS];
+		try {
+			long next = System.nanoTime();
+			for (int tick = 0; tick < TICKS; tick++) {
+				for (int i = 0; i < CLIENTS; i++) {
+					if (tick % SCRIPT_PERIOD_TICKS == 0) {
+						int pressed = Protocol.MOVE_FORWARD;
+						if (script.nextFloat() < 0.3f) pressed |= Protocol.MOVE_LEFT;
+						if (script.nextFloat() < 0.5f) pressed |= Protocol.JUMP;
+						buttons[i] = pressed;
+						yaws[i] = script.nextFloat() * FastMath.TWO_PI;
+					}
+					InputCommand.apply(predictions[i].getPlayer(), buttons[i], yaws[i], 0f);
+					predictions[i].tick(STEP);
+					buttons[i] &= ~Protocol.JUMP;
+				}
+				link.pump();
+				server.tick(STEP);
+				link.pump();
+				// The first acknowledgement corrects the inputs predicted before the accept
+				for (int i = 0; i < CLIENTS; i++) {
+					if (!connected[i] && predictions[i].getReconciliations() > 0) {
+						connected[i] = true;
+						predictions[i].resetStatistics();
+					}
+				}
+
+				next += TICK_NANOS;
+				LockSupport.parkNanos(next - System.nanoTime());
+			}
+
+			assertTrue(link.getDroppedCount() > 0, "the link lost no datagram");
+			long skipped = 0;
+			for (int i = 0; i < server.getClientCount(); i++) {
+				skipped += server.getClientInputsSkipped(i);
+			}
+			long corrections = 0;
+			for (ClientPrediction prediction : predictions) {
+				long reconciliations = prediction.getReconciliations();
+				// A snapshot every other tick, less the lost ones and the connection
+				assertTrue(reconciliations > TICKS / GameServer.SNAPSHOT_INTERVAL / 2,
+						reconciliations + " snapshots reconciled");
+				// Inputs stay in flight for about the round trip
+				assertTrue(prediction.getPendingInputs() < TICK_RATE / 2,
+						prediction.getPendingInputs() + " inputs in flight");
+				// A skipped input is a step of difference on a single acknowledgement
+				assertTrue(prediction.getMeanError() < MAX_MEAN_ERROR, "mean error " + prediction.getMeanError());
+				corrections += prediction.getCorrections();
+			}
+			assertTrue(corrections <= skipped, corrections + " corrections for " + skipped + " inputs skipped");
+		} finally {
+			for (ClientPrediction prediction : predictions) {
+				prediction.getClient().disconnect();
+				prediction.getPlayer().cleanup();
+			}
+			link.close();
+			server.close();
+		}
+	}
+}
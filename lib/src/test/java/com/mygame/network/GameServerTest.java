@@ -0,0 +1,130 @@
+package com.mygame.network;
+
+import com.mygame.TestApplication;
+import com.mygame.world.Map;
+
+import com.jme3.math.FastMath;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * A server on a loopback port and simulated clients sending scripted inputs,
+ * as the dedicated server runs them. The built-in map is smaller than the
+ * view distance : every client gets every player in its snapshots.
+ */
+class GameServerTest {
+
+	private static final int TICK_RATE = 60;
+	private static final float STEP = 1f / TICK_RATE;
+	private static final int CLIENTS = 8;
+	private static final int TICKS = 300;
+	private static final int SCRIPT_PERIOD_TICKS = 60;
+
+	@Test
+	void clientsJoinAndReceiveEveryPlayer() throws IOException {
+		TestApplication app = new TestApplication();
+		Map map = new Map(app);
+		map.loadMap();
+		GameServer server = new GameServer(app, map, TICK_RATE);
+		server.open(0);
+		InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", server.getPort());
+
+		GameClient[] clients = new GameClient[CLIENTS];
+		int[] buttons = new int[CLIENTS];
+		float[] yaws = new float[CLIENTS];
+		int[] sequences = new int[CLIENTS];
+		for (int i = 0; i < CLIENTS; i++) {
+			clients[i] = new GameClient(loopback);
+			clients[i].connect();
+		}
+		Random script = new Random(5L);
+		try {
+			for (int tick = 0; tick < TICKS; tick++) {
+				for (int i = 0; i < CLIENTS; i++) {
+					if (tick % SCRIPT_PERIOD_TICKS == 0) {
+						buttons[i] = script.nextFloat() < 0.8f ? Protocol.MOVE_FORWARD : Protocol.MOVE_LEFT;
+						yaws[i] = script.nextFloat() * FastMath.TWO_PI;
+					}
+					clients[i].poll();
+					sequences[i] = clients[i].sendInput(buttons[i], yaws[i], 0f);
+				}
+				server.tick(STEP);
+			}
+			for (GameClient client : clients) {
+				client.poll();
+			}
+
+			assertEquals(CLIENTS, server.getClientCount());
+			assertEquals(0L, server.getRejectedPacketCount());
+			// One full snapshot per client, then deltas against the acknowledged ones
+			assertTrue(server.getDeltaSnapshotCount() > server.getFullSnapshotCount(),
+					server.getFullSnapshotCount() + " full and " + server.getDeltaSnapshotCount() + " delta snapshots");
+
+			Set<Integer> ids = new HashSet<>();
+			for (int i = 0; i < CLIENTS; i++) {
+				GameClient client = clients[i];
+				assertTrue(client.isConnected());
+				ids.add(client.getPlayerId());
+				Snapshot latest = client.getLatestSnapshot();
+				assertNotNull(latest);
+				assertEquals(server.getTick(), latest.getTick());
+				assertEquals(CLIENTS, latest.size());
+				assertTrue(latest.indexOf(client.getPlayerId()) >= 0);
+				assertNotNull(latest.getSelf());
+				// Inputs before the accept are not sent, every input since is simulated
+				assertTrue(latest.getInputAck() > sequences[i] - 3,
+						"input " + latest.getInputAck() + " acked of " + sequences[i]);
+				assertEquals(0L, client.getSnapshotsDropped());
+			}
+			assertEquals(CLIENTS, ids.size());
+
+			// Decoded from different baselines, the clients agree on every player
+			Snapshot first = clients[0].getLatestSnapshot();
+			for (int i = 1; i < CLIENTS; i++) {
+				Snapshot other = clients[i].getLatestSnapshot();
+				for (int e = 0; e < CLIENTS; e++) {
+					assertEquals(first.getId(e), other.getId(e));
+					for (int field = 0; field < Snapshot.FIELDS; field++) {
+						assertEquals(first.getField(e, field), other.getField(e, field));
+					}
+				}
+			}
+			// Each player ends where its own client was told it is
+			for (GameClient client : clients) {
+				Snapshot latest = client.getLatestSnapshot();
+				int index = first.indexOf(client.getPlayerId());
+				assertEquals(Protocol.quantizePosition(latest.getSelf().x), first.getField(index, Snapshot.X));
+				assertEquals(Protocol.quantizePosition(latest.getSelf().z), first.getField(index, Snapshot.Z));
+			}
+
+			// Leaving clients are removed from the server and from the snapshots
+			clients[0].disconnect();
+			clients[1].disconnect();
+			for (int tick = 0; tick < GameServer.SNAPSHOT_INTERVAL * 2; tick++) {
+				for (int i = 2; i < CLIENTS; i++) {
+					clients[i].poll();
+					clients[i].sendInput(buttons[i], yaws[i], 0f);
+				}
+				server.tick(STEP);
+			}
+			clients[2].poll();
+			assertEquals(CLIENTS - 2, server.getClientCount());
+			assertEquals(CLIENTS - 2, clients[2].getLatestSnapshot().size());
+		} finally {
+			for (GameClient client : clients) {
+				client.disconnect();
+			}
+			server.close();
+		}
+	}
+}
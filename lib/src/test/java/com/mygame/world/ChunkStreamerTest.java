@@ -0,0 +1,95 @@
+package com.mygame.world;
+
+import com.mygame.TestApplication;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * A streamed ray only visits the chunks it crosses : it must find the same
+ * nearest hit as a cast over the objects of every chunk.
+ */
+class ChunkStreamerTest {
+
+	private static final int QUERIES = 20000;
+	private static final float WORLD_SIZE = 512f;
+	private static final float CHUNK_SIZE = 64f;
+
+	@Test
+	void raycastMatchesEveryChunk() {
+		TestApplication app = new TestApplication();
+		List<MapObject> objects = new ArrayList<>();
+		ProceduralChunkGenerator procedural = new ProceduralChunkGenerator(4L);
+		ChunkGenerator recording = (chunkX, chunkZ, minX, minZ, size, sink) ->
+				procedural.generate(chunkX, chunkZ, minX, minZ, size, (type, position, objectSize) -> {
+					sink.add(type, position, objectSize);
+					synchronized (objects) {
+						objects.add(new MapObject(app, type, position, objectSize, false));
+					}
+				});
+
+		ChunkStreamer streamer = new ChunkStreamer(app, WORLD_SIZE, CHUNK_SIZE, recording);
+		// Every chunk in range of the center
+		streamer.setLoadRadius(WORLD_SIZE);
+		streamer.preload(0f, 0f, null);
+		streamer.update(0f, 0f);
+		int chunks = (int) (WORLD_SIZE / CHUNK_SIZE);
+		assertEquals(chunks * chunks, streamer.getAttachedChunkCount());
+
+		ObjectBounds bounds = new ObjectBounds();
+		for (MapObject object : objects) {
+			object.refreshWorldBounds();
+			bounds.add(object);
+		}
+		ObjectBvh everything = new ObjectBvh(bounds, objects.toArray(new MapObject[0]));
+
+		Random random = new Random(6L);
+		RayQuery streamed = new RayQuery(), expected = new RayQuery();
+		int hits = 0;
+		try {
+			for (int i = 0; i < QUERIES; i++) {
+				// Some rays start outside the world, some run along an axis
+				float ox = (random.nextFloat() - 0.5f) * WORLD_SIZE * 1.2f;
+				float oz = (random.nextFloat() - 0.5f) * WORLD_SIZE * 1.2f;
+				float oy = random.nextFloat() * 12f;
+				float angle = random.nextFloat() * 6.2831855f;
+				float dx = (float) Math.cos(angle), dz = (float) Math.sin(angle);
+				float dy = (random.nextFloat() - 0.7f) * 0.2f;
+				switch (i % 8) {
+					case 0:
+						dx = 0f;
+						break;
+					case 1:
+						dz = 0f;
+						break;
+					default:
+						break;
+				}
+				float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+				dx /= length;
+				dy /= length;
+				dz /= length;
+				float maxDistance = 1f + random.nextFloat() * WORLD_SIZE;
+
+				streamed.reset(maxDistance);
+				expected.reset(maxDistance);
+				boolean hit = streamer.raycast(ox, oy, oz, dx, dy, dz, streamed);
+				assertEquals(everything.raycast(ox, oy, oz, dx, dy, dz, expected), hit, "ray " + i);
+				assertEquals(expected.distance, streamed.distance, 1e-4f, "ray " + i);
+				if (hit) {
+					hits++;
+				}
+			}
+		} finally {
+			streamer.shutdown();
+		}
+		// Enough rays hit something for the comparison to mean anything
+		assertTrue(hits > QUERIES / 4, hits + " hits");
+	}
+}
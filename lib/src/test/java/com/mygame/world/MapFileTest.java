@@ -0,0 +1,134 @@
+package com.mygame.world;
+
+import com.mygame.TestApplication;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * A written map opens with the same objects, its index is the grid a map
+ * builds by inserting every object, and a map loaded from it answers the
+ * collision queries like the map it was written from.
+ */
+class MapFileTest {
+
+	private static final float MAP_SIZE = 200f;
+	private static final int QUERIES = 20000;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void writeThenOpenGivesTheSameMap() throws IOException {
+		TestApplication app = new TestApplication();
+		Map original = new Map(app, MAP_SIZE);
+		original.loadGeneratedMap(2000, 5L);
+		Path path = directory.resolve("generated.map");
+		original.exportMap(path);
+
+		MapFile file = MapFile.open(path);
+		List<MapObject> objects = original.getMapObjects();
+		assertEquals(MAP_SIZE, file.getMapSize());
+		assertEquals(objects.size(), file.getObjectCount());
+		for (int i = 0; i < objects.size(); i++) {
+			MapObject object = objects.get(i);
+			assertEquals(object.getType(), file.getType(i));
+			assertEquals(object.getPosition().x, file.getPositionX(i));
+			assertEquals(object.getPosition().y, file.getPositionY(i));
+			assertEquals(object.getPosition().z, file.getPositionZ(i));
+			assertEquals(object.getSize().x, file.getSizeX(i));
+			assertEquals(object.getSize().y, file.getSizeY(i));
+			assertEquals(object.getSize().z, file.getSizeZ(i));
+		}
+
+		// Cell for cell, ids in the same order
+		SpatialGrid inserted = mapGrid();
+		for (int id = 0; id < objects.size(); id++) {
+			MapObject object = objects.get(id);
+			inserted.insert(id, object.worldCenter.x - object.halfSize.x, object.worldCenter.z - object.halfSize.z,
+					object.worldCenter.x + object.halfSize.x, object.worldCenter.z + object.halfSize.z);
+		}
+		SpatialGrid loaded = mapGrid();
+		assertTrue(file.loadIndex(loaded));
+		for (int cell = 0; cell < inserted.getCellsX() * inserted.getCellsZ(); cell++) {
+			assertEquals(inserted.getCellCount(cell), loaded.getCellCount(cell), "cell " + cell);
+			if (inserted.getCellCount(cell) > 0) {
+				assertArrayEquals(Arrays.copyOf(inserted.getCellObjects(cell), inserted.getCellCount(cell)),
+						Arrays.copyOf(loaded.getCellObjects(cell), loaded.getCellCount(cell)), "cell " + cell);
+			}
+		}
+
+		Map reloaded = new Map(app);
+		reloaded.loadMap(path);
+		assertEquals(objects.size(), reloaded.getMapObjects().size());
+		Random random = new Random(12L);
+		float half = MAP_SIZE / 2;
+		int collisions = 0;
+		try {
+			for (int i = 0; i < QUERIES; i++) {
+				float x = (random.nextFloat() - 0.5f) * 2 * half;
+				float z = (random.nextFloat() - 0.5f) * 2 * half;
+				float y = random.nextFloat() * 6f;
+				boolean collides = original.checkCollision(x, y, z, 0.4f);
+				assertEquals(collides, reloaded.checkCollision(x, y, z, 0.4f), "sphere " + i);
+				assertEquals(original.getGroundHeightAt(x, z), reloaded.getGroundHeightAt(x, z), "ground " + i);
+				if (collides) {
+					collisions++;
+				}
+			}
+		} finally {
+			original.unloadMap();
+			reloaded.unloadMap();
+		}
+		assertTrue(collisions > QUERIES / 20, collisions + " collisions");
+	}
+
+	@Test
+	void damagedFilesAreRejected() throws IOException {
+		Map map = new Map(new TestApplication(), MAP_SIZE);
+		map.loadGeneratedMap(100, 6L);
+		Path path = directory.resolve("damaged.map");
+		map.exportMap(path);
+		map.unloadMap();
+		byte[] bytes = Files.readAllBytes(path);
+
+		// Cut short : the size does not match the header
+		Path truncated = directory.resolve("truncated.map");
+		Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 4));
+		assertThrows(IOException.class, () -> MapFile.open(truncated));
+
+		// The last index entry names an object the file does not have
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			ByteBuffer id = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 1 << 20);
+			channel.write(id, bytes.length - 4);
+		}
+		MapFile file = MapFile.open(path);
+		assertThrows(IOException.class, () -> file.loadIndex(mapGrid()));
+		assertThrows(IOException.class, () -> new Map(new TestApplication()).loadMap(path));
+	}
+
+	/*
+	 * Empty grid built like the object grid of a map (Map.createObjectGrid)
+	 */
+	private static SpatialGrid mapGrid() {
+		float margin = 4f;
+		return new SpatialGrid(-MAP_SIZE / 2 - margin, -MAP_SIZE / 2 - margin,
+				MAP_SIZE + 2 * margin, MAP_SIZE + 2 * margin, 4f);
+	}
+}
@@ -0,0 +1,71 @@
+package com.mygame.world;
+
+import com.mygame.TestApplication;
+
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.scene.Geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * A map draws thousands of geometries with a handful of materials : one per
+ * material type and color, whatever the number of objects.
+ */
+class MaterialCacheTest {
+
+	@Test
+	void mapGeometriesShareTheCachedMaterials() {
+		TestApplication app = new TestApplication();
+		Map map = new Map(app);
+		map.loadMap();
+
+		Set<Material> materials = Collections.newSetFromMap(new IdentityHashMap<>());
+		int[] geometries = {0};
+		app.getRootNode().depthFirstTraversal(spatial -> {
+			if (spatial instanceof Geometry) {
+				materials.add(((Geometry) spatial).getMaterial());
+				geometries[0]++;
+			}
+		});
+
+		int cached = MaterialCache.get(app.getAssetManager()).getMaterialCount();
+		// Every material drawn comes from the cache, far fewer than the geometries
+		assertTrue(materials.size() <= cached, materials.size() + " materials for " + cached + " cached");
+		assertTrue(cached * 4 < geometries[0], cached + " materials for " + geometries[0] + " geometries");
+
+		// Loading the map again creates no material
+		map.unloadMap();
+		map.loadMap();
+		assertEquals(cached, MaterialCache.get(app.getAssetManager()).getMaterialCount());
+	}
+
+	@Test
+	void sameColorSameMaterial() {
+		TestApplication app = new TestApplication();
+		MaterialCache cache = MaterialCache.get(app.getAssetManager());
+		assertSame(cache, MaterialCache.get(app.getAssetManager()));
+
+		Material red = cache.getUnshaded(new ColorRGBA(1, 0, 0, 1));
+		assertSame(red, cache.getUnshaded(new ColorRGBA(1, 0, 0, 1)));
+		assertNotSame(red, cache.getUnshaded(ColorRGBA.Blue));
+		assertNotSame(red, cache.getInstanced(new ColorRGBA(1, 0, 0, 1)));
+		assertEquals(3, cache.getMaterialCount());
+
+		// An other asset manager gets its own registry
+		TestApplication other = new TestApplication();
+		assertNotSame(red, MaterialCache.get(other.getAssetManager()).getUnshaded(new ColorRGBA(1, 0, 0, 1)));
+
+		cache.clear();
+		assertEquals(0, cache.getMaterialCount());
+	}
+}
@@ -0,0 +1,130 @@
+package com.mygame.world;
+
+import com.mygame.TestApplication;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.shape.Cylinder;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Objects of the same shape share one mesh : the memory of a map grows with
+ * its number of distinct shapes, not with its number of objects. The cache
+ * only holds the shapes of objects still in a map or a loaded chunk.
+ */
+class MeshCacheTest {
+
+	private static final int OBJECTS = 2000;
+	private static final int SHAPES = 4;
+
+	@Test
+	void objectsOfOneShapeShareOneMesh() {
+		TestApplication app = new TestApplication();
+		for (int i = 0; i < SHAPES; i++) {
+			pillar(app, i);
+		}
+		// Visual and level of detail meshes of each shape
+		int cached = MeshCache.getMeshCount();
+
+		Set<Mesh> meshes = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int i = 0; i < OBJECTS; i++) {
+			MapObject pillar = pillar(app, i);
+			pillar.getNode().depthFirstTraversal(spatial -> {
+				if (spatial instanceof Geometry) {
+					meshes.add(((Geometry) spatial).getMesh());
+				}
+			});
+		}
+		assertEquals(SHAPES, meshes.size());
+		assertEquals(cached, MeshCache.getMeshCount());
+	}
+
+	@Test
+	void releasedObjectsLeaveTheCache() {
+		TestApplication app = new TestApplication();
+		int before = MeshCache.getMeshCount();
+		// Procedural chunks : nearly every object has a shape of its own
+		ChunkStreamer streamer = new ChunkStreamer(app, 256f, 64f, new ProceduralChunkGenerator(9L));
+		streamer.setLoadRadius(256f);
+		streamer.preload(0f, 0f, null);
+		streamer.update(0f, 0f);
+		assertTrue(MeshCache.getMeshCount() > before + 100, MeshCache.getMeshCount() - before + " meshes");
+		streamer.shutdown();
+		assertEquals(before, MeshCache.getMeshCount());
+
+		Map map = new Map(app, 200f);
+		map.loadGeneratedMap(400, 17L);
+		assertTrue(MeshCache.getMeshCount() > before);
+		map.unloadMap();
+		assertEquals(before, MeshCache.getMeshCount());
+	}
+
+	@Test
+	void objectsTakeLessMemoryThanTheirMeshes() {
+		TestApplication app = new TestApplication();
+		// Shared meshes and materials created before the measures
+		for (int i = 0; i < SHAPES; i++) {
+			pillar(app, i);
+		}
+
+		long before = usedMemory();
+		List<MapObject> pillars = new ArrayList<>();
+		for (int i = 0; i < OBJECTS; i++) {
+			pillars.add(pillar(app, i));
+		}
+		long objectBytes = usedMemory() - before;
+
+		// What every pillar allocated with a mesh of its own (nothing is freed in between)
+		before = usedMemory();
+		List<Mesh> ownMeshes = new ArrayList<>();
+		for (int i = 0; i < OBJECTS; i++) {
+			ownMeshes.add(new Cylinder(12, 24, radius(i), 3f, true));
+		}
+		long meshBytes = usedMemory() - before;
+		Reference.reachabilityFence(pillars);
+		Reference.reachabilityFence(ownMeshes);
+
+		// The whole objects (nodes, geometries, bounds) weigh a fraction of the meshes alone
+		assertTrue(objectBytes * 4 < meshBytes,
+				"objects " + objectBytes / OBJECTS + " bytes each, meshes " + meshBytes / OBJECTS + " bytes each");
+	}
+
+	private static MapObject pillar(TestApplication app, int i) {
+		float radius = radius(i);
+		return new MapObject(app, MapObject.ObjectType.PILLAR, new Vector3f(i, 1.5f, 0), new Vector3f(radius * 2, 3f, radius * 2));
+	}
+
+	private static float radius(int i) {
+		return 0.5f + (i % SHAPES) * 0.25f;
+	}
+
+	/*
+	 * Heap and direct buffers (mesh data) still reachable
+	 */
+	private static long usedMemory() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				used += pool.getMemoryUsed();
+			}
+		}
+		return used;
+	}
+}
@@ -0,0 +1,60 @@
+package com.mygame.world;
+
+import com.mygame.TestApplication;
+
+import com.jme3.math.Vector3f;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+ * Rays running along an axis have infinite inverse components : starting in
+ * the plane of a face they must still hit the box, like any ray touching it.
+ */
+class ObjectBvhTest {
+
+	private static final float INF = Float.POSITIVE_INFINITY;
+
+	@Test
+	void axisRaysOnAFacePlaneHitTheBox() {
+		// Along X in the plane of the bottom face, then on the top front edge
+		assertEquals(2f, slab(-2f, 0f, 0.5f, 1f, INF, INF));
+		assertEquals(2f, slab(-2f, 1f, 1f, 1f, INF, INF));
+		// Just out of the planes : missed
+		assertEquals(-1f, slab(-2f, 1.01f, 0.5f, 1f, INF, INF));
+		assertEquals(-1f, slab(-2f, 0.5f, -0.01f, 1f, INF, INF));
+		// Straight down on a side face, the zero components signed differently
+		assertEquals(0.5f, slab(0f, 1.5f, 0.5f, INF, -1f, -INF));
+		assertEquals(0.5f, slab(1f, 1.5f, 1f, -INF, -1f, INF));
+		// From inside, and away from the box
+		assertEquals(0f, slab(0.5f, 0.5f, 0.5f, INF, INF, 1f));
+		assertEquals(-1f, slab(0f, 1.5f, 0.5f, INF, 1f, INF));
+	}
+
+	@Test
+	void sweepAlongAFaceStops() {
+		// Wall from (0, 0, 0) to (2, 3, 1)
+		MapObject wall = new MapObject(new TestApplication(), MapObject.ObjectType.WALL,
+				new Vector3f(1f, 1.5f, 0.5f), new Vector3f(2f, 3f, 1f));
+		ObjectBounds bounds = new ObjectBounds();
+		SpatialGrid grid = new SpatialGrid(-8f, -8f, 16f, 16f, 4f);
+		int id = bounds.add(wall);
+		grid.insert(id, bounds.minX[id], bounds.minZ[id], bounds.maxX[id], bounds.maxZ[id]);
+
+		// Falling from 4 to 0 on the corner of the wall : stops on its top
+		assertEquals(0.25f, bounds.sweep(grid, 2f, 4f, 1f, 0f, -4f, 0f));
+		assertEquals(0.25f, bounds.sweep(grid, 0f, 4f, 0.5f, 0f, -4f, 0f));
+		// Sliding along its front face into its side
+		assertEquals(0.5f, bounds.sweep(grid, -1f, 1f, 1f, 2f, 0f, 0f));
+		// Falling next to it
+		assertEquals(1f, bounds.sweep(grid, 2.01f, 4f, 1f, 0f, -4f, 0f));
+	}
+
+	/*
+	 * Entry distance in the unit box from (0, 0, 0) to (1, 1, 1)
+	 */
+	private static float slab(float ox, float oy, float oz, float invX, float invY, float invZ) {
+		return ObjectBvh.slab(0f, 0f, 0f, 1f, 1f, 1f, ox, oy, oz, invX, invY, invZ, 10f);
+	}
+}
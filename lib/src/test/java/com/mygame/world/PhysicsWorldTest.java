@@ -0,0 +1,64 @@
+package com.mygame.world;
+
+import com.mygame.TestApplication;
+
+import com.jme3.system.NativeLibraryLoader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Both collision backends answer the same queries the same way : the Bullet
+ * space of a map and its grid give the same collisions and ground heights.
+ */
+class PhysicsWorldTest {
+
+	private static final int QUERIES = 20000;
+
+	@Test
+	void physicsMatchesTheGrid() {
+		// Loaded by the desktop context of a started application
+		NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+		TestApplication app = new TestApplication();
+		Map map = new Map(app);
+		map.setPhysics(new PhysicsWorld(app.getStateManager()));
+		map.buildMap();
+		map.attachMap();
+		Collider grid = map;
+		Collider physics = map.getCollider();
+		assertTrue(physics instanceof PhysicsWorld);
+
+		Random random = new Random(18L);
+		float half = map.getMapSize() / 2;
+		int collisions = 0, platforms = 0;
+		try {
+			for (int i = 0; i < QUERIES; i++) {
+				float x = (random.nextFloat() - 0.5f) * 2 * half;
+				float z = (random.nextFloat() - 0.5f) * 2 * half;
+				// From the ground to above the houses, through the platform tops
+				float y = random.nextFloat() * 8f;
+				float radius = 0.2f + random.nextFloat() * 0.6f;
+
+				boolean collides = grid.checkCollision(x, y, z, radius);
+				assertEquals(collides, physics.checkCollision(x, y, z, radius), "sphere " + i);
+				float height = grid.getGroundHeightAt(x, z);
+				assertEquals(height, physics.getGroundHeightAt(x, z), 1e-5f, "ground " + i);
+				if (collides) {
+					collisions++;
+				}
+				if (height > 0f) {
+					platforms++;
+				}
+			}
+		} finally {
+			map.unloadMap();
+		}
+		// Enough of both kinds of answers for the comparison to mean anything
+		assertTrue(collisions > QUERIES / 10, collisions + " collisions");
+		assertTrue(platforms > 0, platforms + " points over a platform");
+	}
+}
@@ -0,0 +1,118 @@
+package com.mygame.world;
+
+import com.mygame.TestApplication;
+
+import com.jme3.math.Vector3f;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * The grid only narrows down the objects tested : every query must answer
+ * like the linear scan over all the objects it replaced.
+ */
+class SpatialGridTest {
+
+	private static final int QUERIES = 20000;
+
+	private static Map map;
+	private static List<MapObject> objects;
+
+	@BeforeAll
+	static void buildMap() {
+		map = new Map(new TestApplication());
+		map.buildMap();
+		objects = map.getMapObjects();
+	}
+
+	@Test
+	void collisionsMatchLinearScan() {
+		Random random = new Random(1L);
+		float half = map.getMapSize() / 2;
+		Vector3f position = new Vector3f();
+		int collisions = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			position.set((random.nextFloat() * 2 - 1) * half, random.nextFloat() * 12f, (random.nextFloat() * 2 - 1) * half);
+			float radius = 0.1f + random.nextFloat() * 2f;
+			boolean expected = linearCollision(position, radius);
+			assertEquals(expected, map.checkCollision(position.x, position.y, position.z, radius), "at " + position);
+			collisions += expected ? 1 : 0;
+		}
+		// Both answers are exercised
+		assertTrue(collisions > 0 && collisions < QUERIES);
+	}
+
+	@Test
+	void groundHeightsMatchLinearScan() {
+		Random random = new Random(2L);
+		float half = map.getMapSize() / 2;
+		Vector3f position = new Vector3f();
+		for (int i = 0; i < QUERIES; i++) {
+			position.set((random.nextFloat() * 2 - 1) * half, 0f, (random.nextFloat() * 2 - 1) * half);
+			float expected = 0f;
+			for (MapObject object : objects) {
+				expected = Math.max(expected, object.getGroundHeightAt(position));
+			}
+			assertEquals(expected, map.getGroundHeightAt(position.x, position.z), "at " + position);
+		}
+	}
+
+	@Test
+	void cellsHoldEveryOverlappingBox() {
+		Random random = new Random(3L);
+		SpatialGrid grid = new SpatialGrid(-50f, -50f, 100f, 100f, 4f);
+		int count = 500;
+		float[][] boxes = new float[count][];
+		for (int id = 0; id < count; id++) {
+			float x = random.nextFloat() * 100f - 50f, z = random.nextFloat() * 100f - 50f;
+			boxes[id] = new float[] {x, z, x + random.nextFloat() * 10f, z + random.nextFloat() * 10f};
+			grid.insert(id, boxes[id][0], boxes[id][1], boxes[id][2], boxes[id][3]);
+		}
+		// Removed boxes must leave no trace
+		for (int id = 0; id < count; id += 3) {
+			grid.remove(id, boxes[id][0], boxes[id][1], boxes[id][2], boxes[id][3]);
+		}
+
+		for (int i = 0; i < 2000; i++) {
+			float x = random.nextFloat() * 100f - 50f, z = random.nextFloat() * 100f - 50f;
+			int cell = grid.cellIndex(grid.cellX(x), grid.cellZ(z));
+			int[] ids = grid.getCellObjects(cell);
+			int cellCount = grid.getCellCount(cell);
+			for (int id = 0; id < count; id++) {
+				boolean inside = id % 3 != 0 && x >= boxes[id][0] && x <= boxes[id][2] && z >= boxes[id][1] && z <= boxes[id][3];
+				boolean listed = false;
+				for (int k = 0; k < cellCount; k++) {
+					listed |= ids[k] == id;
+				}
+				if (inside) {
+					assertTrue(listed, "box " + id + " missing from the cell of " + x + ", " + z);
+				} else if (id % 3 == 0) {
+					assertTrue(!listed, "removed box " + id + " still listed");
+				}
+			}
+		}
+	}
+
+	/*
+	 * The query before the grid : map limits, then every object
+	 */
+	private static boolean linearCollision(Vector3f position, float radius) {
+		float half = map.getMapSize() / 2;
+		if (position.x - radius < -half || position.x + radius > half ||
+				position.z - radius < -half || position.z + radius > half) {
+			return true;
+		}
+		for (MapObject object : objects) {
+			if (object.checkCollision(position, radius)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
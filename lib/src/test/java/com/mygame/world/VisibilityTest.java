@@ -0,0 +1,115 @@
+package com.mygame.world;
+
+import com.mygame.TestApplication;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Precomputed visibility measured without display, like the headless report :
+ * houses and walls must hide part of the map from the players, never what
+ * is around them.
+ */
+class VisibilityTest {
+
+	private static final int VIEWERS = 500;
+	private static final float PLAYER_RADIUS = 0.5f;
+
+	private static TestApplication app;
+	private static Map map;
+
+	@BeforeAll
+	static void buildMap() {
+		app = new TestApplication();
+		map = new Map(app);
+		map.setVisibilityCulling(true);
+		map.loadMap();
+	}
+
+	@Test
+	void housesAndWallsCullPartOfTheMap() {
+		VisibilityCuller culler = map.getVisibilityCuller();
+		assertTrue(culler.getUnitCount() > 0);
+
+		Random random = new Random(5L);
+		float culled = 0f, most = 0f;
+		for (int i = 0; i < VIEWERS; i++) {
+			Vector3f viewer = freePosition(random);
+			float fraction = culler.getCulledFraction(viewer.x, viewer.z);
+			culled += fraction;
+			most = Math.max(most, fraction);
+		}
+		float average = culled / VIEWERS;
+		// About 3% on average on the open built-in map, more than half of it behind the houses
+		assertTrue(average > 0.01f, "culls " + average + " of the map on average");
+		assertTrue(most > 0.25f, "culls " + most + " of the map at most");
+		assertTrue(culler.getVisibilitySet().getVisibleFraction() < 1f);
+	}
+
+	@Test
+	void whatSurroundsTheViewerIsNeverCulled() {
+		VisibilityCuller culler = map.getVisibilityCuller();
+		float near = culler.getVisibilitySet().getCellSize();
+		Random random = new Random(6L);
+		for (int i = 0; i < VIEWERS; i++) {
+			Vector3f viewer = freePosition(random);
+			culler.update(viewer.x, viewer.z, viewer.x, viewer.z);
+			// The hints written by the update match the headless statistics
+			assertEquals(culler.getCulledFraction(viewer.x, viewer.z),
+					culler.getCulledCount() / (float) culler.getUnitCount(), 1e-6f);
+
+			// Anything within a cell of the viewer lies in its cell or a neighbour, always visible
+			for (Spatial unit : map.getMapNode().getChildren()) {
+				if (unit.getCullHint() == Spatial.CullHint.Always) {
+					BoundingBox bound = (BoundingBox) unit.getWorldBound();
+					float dx = Math.abs(viewer.x - bound.getCenter().x) - bound.getXExtent();
+					float dz = Math.abs(viewer.z - bound.getCenter().z) - bound.getZExtent();
+					assertTrue(dx > near || dz > near, unit.getName() + " culled next to " + viewer);
+				}
+			}
+		}
+		culler.reset();
+	}
+
+	@Test
+	void tallWallHidesTheOtherSide() {
+		ObjectBounds bounds = new ObjectBounds();
+		bounds.add(new MapObject(app, MapObject.ObjectType.WALL, new Vector3f(0, 10, 0), new Vector3f(1, 20, 40)));
+
+		VisibilitySet open = VisibilitySet.build(-20, -20, 40, 40, 4f, bounds, new boolean[] {false}, (x, z) -> 0f);
+		assertEquals(1f, open.getVisibleFraction());
+
+		VisibilitySet walled = VisibilitySet.build(-20, -20, 40, 40, 4f, bounds, new boolean[] {true}, (x, z) -> 0f);
+		int east = walled.cellIndex(15, 0), west = walled.cellIndex(-15, 0);
+		assertFalse(walled.isVisible(east, west));
+		assertFalse(walled.isVisible(west, east));
+		assertTrue(walled.isVisible(east, walled.cellIndex(15, 15)));
+		// The wall itself is seen from both sides
+		assertTrue(walled.isVisible(east, walled.cellIndex(0, 0)));
+		assertTrue(walled.isVisible(west, walled.cellIndex(0, 0)));
+	}
+
+	/*
+	 * A random position a player can stand on
+	 */
+	private static Vector3f freePosition(Random random) {
+		float half = map.getMapSize() / 2 - 1f;
+		Vector3f position = new Vector3f();
+		do {
+			position.x = (random.nextFloat() * 2 - 1) * half;
+			position.z = (random.nextFloat() * 2 - 1) * half;
+			position.y = map.getGroundHeightAt(position.x, position.z) + 1f;
+		} while (map.checkCollision(position.x, position.y, position.z, PLAYER_RADIUS));
+		return position;
+	}
+}